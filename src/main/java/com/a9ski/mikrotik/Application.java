@@ -1,16 +1,43 @@
 package com.a9ski.mikrotik;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+import com.a9ski.mikrotik.alerting.AlertNotifier;
+import com.a9ski.mikrotik.alerting.LoggingNotifier;
+import com.a9ski.mikrotik.alerting.WebhookNotifier;
+import com.a9ski.mikrotik.archive.ArchiveTotalsCommand;
+import com.a9ski.mikrotik.backfill.BackfillCommand;
+import com.a9ski.mikrotik.cluster.ClusterCoordinator;
+import com.a9ski.mikrotik.config.ConfigLoader;
+import com.a9ski.mikrotik.config.ConfigWatcher;
+import com.a9ski.mikrotik.config.DatabaseConfig;
+import com.a9ski.mikrotik.config.RouterConfig;
+import com.a9ski.mikrotik.config.ServiceConfig;
+import com.a9ski.mikrotik.diagnostics.DiagnosticsServer;
+import com.a9ski.mikrotik.enrichment.HostEnricher;
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+import com.a9ski.mikrotik.influxdb.WriteScheduler;
+import com.a9ski.mikrotik.matrix.TrafficMatrix;
+import com.a9ski.mikrotik.matrix.TrafficMatrixServer;
+import com.a9ski.mikrotik.prometheus.PrometheusExporter;
+import com.a9ski.mikrotik.routeros.RouterOsApiClient;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
@@ -27,24 +54,150 @@ public class Application {
 	@Parameter(names = { "--console", "-c" }, description = "Console mode")
 	private boolean consoleMode;
 
-	@Parameter(names = { "--router-ip", "-r" }, required = true, description = "Router IP addres")
+	@Parameter(names = { "--config", "-f" }, description = "Configuration file with routers and databases. It is reloaded when changed. Replaces the router and database options")
+	private Path configFile;
+
+	@Parameter(names = { "--router-ip", "-r" }, description = "Router IP addres")
 	private String routerIp;
 
-	@Parameter(names = { "--db-url", "-d" }, required = true, description = "Database URL (e.g. http://192.168.1.1:8086)")
+	@Parameter(names = { "--db-url", "-d" }, description = "Database URL (e.g. http://192.168.1.1:8086)")
 	private String dbUrl;
 
-	@Parameter(names = { "--db-user", "-u" }, required = true, description = "Database user")
+	@Parameter(names = { "--db-user", "-u" }, description = "Database user")
 	private String dbUser;
 
-	@Parameter(names = { "--db-password", "-p" }, required = true, description = "Database password")
+	@Parameter(names = { "--db-password", "-p" }, description = "Database password")
 	private String dbPassword;
 
-	@Parameter(names = { "--db-name", "-db" }, required = true, description = "Database name")
+	@Parameter(names = { "--db-name", "-db" }, description = "Database name")
 	private String dbName;
 
-	@Parameter(names = { "--subnet", "-n" }, required = true, variableArity = true, description = "LAN subnets (e.g. 192.168.1.0/24)")
+	@Parameter(names = { "--subnet", "-n" }, variableArity = true, description = "LAN subnets (e.g. 192.168.1.0/24)")
 	public List<String> subnets = new ArrayList<>();
 
+	@Parameter(names = { "--source", "-s" }, description = "Accounting source: 'http' (accounting web page) or 'api' (RouterOS API)")
+	private String source = RouterConfig.SOURCE_HTTP;
+
+	@Parameter(names = { "--api-port" }, description = "RouterOS API port")
+	private int apiPort = RouterOsApiClient.DEFAULT_PORT;
+
+	@Parameter(names = { "--api-user" }, description = "RouterOS API (or REST API for the 'http' source) user")
+	private String apiUser;
+
+	@Parameter(names = { "--api-password" }, description = "RouterOS API (or REST API for the 'http' source) password")
+	private String apiPassword = "";
+
+	@Parameter(names = { "--interfaces", "-i" }, description = "Collect interface and simple queue counters (the 'http' source requires RouterOS 7 REST API)")
+	private boolean collectInterfaces;
+
+	@Parameter(names = { "--incremental" }, description = "Incremental mode: skip the points of IPs without traffic")
+	private boolean incremental;
+
+	@Parameter(names = { "--heartbeat" }, description = "Interval in seconds between the zero valued points of IPs without traffic (incremental mode, 0 disables them)")
+	private long heartbeat = 300;
+
+	@Parameter(names = { "--forget-after" }, description = "Time in seconds after which an IP without traffic is forgotten (incremental mode)")
+	private long forgetAfter = 3600;
+
+	@Parameter(names = { "--execution-mode" }, description = "Poll execution mode: 'auto', 'virtual' (virtual threads, Java 21+) or 'platform' (fixed thread pool)")
+	private String executionMode = "auto";
+
+	@Parameter(names = { "--poll-threads" }, description = "Number of poll threads in platform execution mode")
+	private int pollThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	@Parameter(names = { "--degraded-polls" }, description = "Maximal number of concurrent polls of degraded (failing or slow) routers. Defaults to half of the poll threads")
+	private Integer degradedPolls;
+
+	@Parameter(names = { "--poll-jitter" }, description = "Delay the first poll of every router by a random part of its interval, so the routers don't poll and write at the same moment")
+	private boolean pollJitter;
+
+	@Parameter(names = { "--write-rate" }, description = "Maximal number of points per second written to the databases by all routers (0 for unlimited). When throttled the LAN points are written first")
+	private long writeRate;
+
+	@Parameter(names = { "--write-bytes-rate" }, description = "Maximal number of bytes per second written to the databases by all routers (0 for unlimited)")
+	private long writeBytesRate;
+
+	@Parameter(names = { "--latency-slo" }, description = "Fetch latency objective in seconds. A router exceeding it or failing in 3 consecutive polls is polled with backoff")
+	private double latencySlo = RouterHealth.DEFAULT_LATENCY_SLO / 1000.0;
+
+	@Parameter(names = { "--exporter-port" }, description = "Serve the per-IP traffic counters for Prometheus at http://host:port/metrics. The database options become optional")
+	private Integer exporterPort;
+
+	@Parameter(names = { "--exporter-expiry" }, description = "Time in seconds after which the counters of an IP without traffic are removed from the exporter")
+	private long exporterExpiry = PrometheusExporter.DEFAULT_EXPIRE_AFTER / 1000;
+
+	@Parameter(names = { "--ipv6-rollup" }, description = "Prefix length to which the LAN IPv6 addresses are rolled up, e.g. 64 aggregates the rotating privacy addresses of a host (0 keeps every address)")
+	private int ipv6Rollup;
+
+	@Parameter(names = { "--ipv6-mapping" }, description = "File mapping IPv6 addresses to host addresses (lines 'ipv6-address host-address'), reloaded when changed")
+	private Path ipv6Mapping;
+
+	@Parameter(names = { "--hosts-file" }, description = "File with the host names and MAC addresses of the LAN IPs (CSV 'ip,mac,hostname', dnsmasq or ISC dhcpd leases), added as tags to the LAN points")
+	private Path hostsFile;
+
+	@Parameter(names = { "--hosts-ttl" }, description = "Time in seconds a host stays known after it disappeared from the hosts file")
+	private long hostsTtl = HostEnricher.DEFAULT_TTL / 1000;
+
+	@Parameter(names = { "--alert-ip-rate" }, description = "Alert when a LAN IP transfers more bytes per second (0 disables the rule)")
+	private long alertIpRate;
+
+	@Parameter(names = { "--alert-subnet-rate" }, description = "Alert when a LAN subnet or the WAN transfers more bytes per second (0 disables the rule)")
+	private long alertSubnetRate;
+
+	@Parameter(names = { "--alert-anomaly" }, description = "Alert when a LAN IP transfers more than this number of standard deviations above its moving average (0 disables the rule)")
+	private double alertAnomaly;
+
+	@Parameter(names = { "--alert-webhook" }, description = "URL receiving the alerts as JSON POST requests. Without it the alerts are logged")
+	private URI alertWebhook;
+
+	@Parameter(names = { "--capture-dir" }, description = "Directory where the raw accounting responses are stored for later replay")
+	private Path captureDir;
+
+	@Parameter(names = { "--cluster-dir" }, description = "Cluster mode: coordination directory shared by the instances (e.g. on a shared file system). The routers are split among the live instances")
+	private Path clusterDir;
+
+	@Parameter(names = { "--cluster-node" }, description = "Unique identifier of this instance in the cluster. Defaults to host name and process ID")
+	private String clusterNode;
+
+	@Parameter(names = { "--cluster-lease" }, description = "Time in seconds after which the routers of an instance without heartbeat are taken over by the other instances")
+	private long clusterLease = ClusterCoordinator.DEFAULT_LEASE_TIMEOUT / 1000;
+
+	@Parameter(names = { "--cluster-max-poll" }, description = "Maximal duration of a poll in seconds (fetch and database write). A router is polled only while its lease is valid for longer. Defaults to a third of the lease")
+	private Long clusterMaxPoll;
+
+	@Parameter(names = { "--archive-dir" }, description = "Directory where the per-IP traffic is archived in compact columnar daily files (see the 'archive-totals' command)")
+	private Path archiveDir;
+
+	@Parameter(names = { "--matrix-port" }, description = "Serve the top-N queries of the LAN host to remote prefix traffic matrix at http://127.0.0.1:port/matrix")
+	private Integer matrixPort;
+
+	@Parameter(names = { "--matrix-retention" }, description = "Time in seconds the traffic matrix is kept")
+	private long matrixRetention = TrafficMatrix.DEFAULT_RETENTION / 1000;
+
+	@Parameter(names = { "--matrix-bucket" }, description = "Duration in seconds of a time bucket of the traffic matrix, the resolution of the query windows")
+	private long matrixBucket = TrafficMatrix.DEFAULT_BUCKET / 1000;
+
+	@Parameter(names = { "--matrix-ipv4-prefix" }, description = "Prefix length to which the remote IPv4 addresses of the traffic matrix are bucketed")
+	private int matrixIpv4Prefix = TrafficMatrix.DEFAULT_IPV4_PREFIX;
+
+	@Parameter(names = { "--matrix-ipv6-prefix" }, description = "Prefix length to which the remote IPv6 addresses of the traffic matrix are bucketed")
+	private int matrixIpv6Prefix = TrafficMatrix.DEFAULT_IPV6_PREFIX;
+
+	@Parameter(names = { "--admin-port" }, description = "Serve the diagnostics endpoint (pipeline state and JFR recordings of the poller) at http://127.0.0.1:port/diagnostics")
+	private Integer adminPort;
+
+	@Parameter(names = { "--jfr-dir" }, description = "Directory of the JFR recordings started through the diagnostics endpoint")
+	private Path jfrDir = Paths.get(System.getProperty("java.io.tmpdir"));
+
+	@Parameter(names = { "--fast-start" }, description = "Warm up the poll path with synthetic polls before the first poll, so the first polls don't run in the interpreter")
+	private boolean fastStart;
+
+	@Parameter(names = { "--warm-up-polls" }, description = "Number of synthetic polls of the warm-up")
+	private int warmUpPolls = WarmUp.DEFAULT_POLLS;
+
+	@Parameter(names = { "--warm-up-only" }, description = "Run the warm-up and exit. Used as the training run of the class data sharing archive")
+	private boolean warmUpOnly;
+
 	@Parameter(names = { "--help", "-h" }, help = true)
 	private boolean help;
 
@@ -59,18 +212,29 @@ public class Application {
 	 * @throws IOException            throw if an input/output error occures
 	 * @throws InterruptedException   throw if program is interrupted.
 	 * @throws AddressStringException thrown if there is invalid subnet.
+	 * @throws ConfigurationException thrown if the configuration is not valid.
 	 */
-	public static void main(String[] args) throws AccountingException, IOException, InterruptedException, AddressStringException {
+	public static void main(String[] args) throws AccountingException, IOException, InterruptedException, AddressStringException, ConfigurationException {
 		final Application app = new Application();
+		final BackfillCommand backfill = new BackfillCommand();
+		final ArchiveTotalsCommand archiveTotals = new ArchiveTotalsCommand();
 		//@formatter:off
         final JCommander c = JCommander.newBuilder()
             .addObject(app)
+            .addCommand(BackfillCommand.NAME, backfill)
+            .addCommand(ArchiveTotalsCommand.NAME, archiveTotals)
             .build();
         //@formatter:on
 		c.setProgramName("mikrotik-accounting");
 		try {
 			c.parse(args);
-			app.run();
+			if (BackfillCommand.NAME.equals(c.getParsedCommand())) {
+				backfill.run();
+			} else if (ArchiveTotalsCommand.NAME.equals(c.getParsedCommand())) {
+				archiveTotals.run();
+			} else {
+				app.run();
+			}
 		} catch (final ParameterException ex) {
 			System.err.println(ex.getMessage());
 			c.usage();
@@ -83,12 +247,53 @@ public class Application {
 	 * Main routine.
 	 *
 	 * @throws InterruptedException   throw when the app is interrupted.
-	 * @throws AddressStringException thrown if there is invalid subnet.
+	 * @throws IOException            thrown if the configuration file cannot be
+	 *                                read.
+	 * @throws ConfigurationException thrown if the configuration is not valid.
 	 */
-	private void run() throws InterruptedException, AddressStringException {
+	private void run() throws InterruptedException, IOException, ConfigurationException {
+		if (warmUpOnly) {
+			WarmUp.run(warmUpPolls, WarmUp.DEFAULT_MAX_TIME);
+			return;
+		}
+		final ConfigLoader loader = new ConfigLoader(exporterPort == null);
+		final ServiceConfig config = configFile != null ? loader.load(configFile) : createConfig();
+		if (fastStart) {
+			WarmUp.run(warmUpPolls, WarmUp.DEFAULT_MAX_TIME);
+		}
 		final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-		try (TrafficService service = new TrafficService(routerIp, subnets, dbUrl, dbUser, dbPassword, dbName)) {
-			executor.scheduleAtFixedRate(() -> printInfo(service), 10, 30, TimeUnit.SECONDS);
+		final int bulkhead = degradedPolls != null ? degradedPolls : Math.max(1, pollThreads / 2);
+		final WriteScheduler writeScheduler = new WriteScheduler(writeRate, writeBytesRate);
+		try (PollScheduler scheduler = new PollScheduler(parseExecutionMode(), pollThreads, bulkhead);
+				PrometheusExporter exporter = exporterPort != null ? new PrometheusExporter(new InetSocketAddress(exporterPort), TimeUnit.SECONDS.toMillis(exporterExpiry)) : null;
+				ClusterCoordinator cluster = clusterDir != null ? new ClusterCoordinator(clusterDir, clusterNode != null ? clusterNode : defaultNode(), TimeUnit.SECONDS.toMillis(clusterLease),
+						clusterMaxPoll != null ? TimeUnit.SECONDS.toMillis(clusterMaxPoll) : TimeUnit.SECONDS.toMillis(clusterLease) / 3) : null;
+				TrafficMatrixServer matrixServer = matrixPort != null ? new TrafficMatrixServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), matrixPort), TimeUnit.SECONDS.toMillis(matrixBucket),
+						TimeUnit.SECONDS.toMillis(matrixRetention), matrixIpv4Prefix, matrixIpv6Prefix) : null;
+				RouterManager manager = new RouterManager(TrafficServiceFactory.builder().scheduler(scheduler).exporter(exporter).notifier(createNotifier()).pollGuard(cluster)
+						.writeScheduler(writeScheduler).matrixServer(matrixServer).build());
+				DiagnosticsServer diagnostics = adminPort != null ? new DiagnosticsServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), adminPort), manager, scheduler, writeScheduler, jfrDir) : null;
+				ConfigWatcher watcher = configFile != null ? new ConfigWatcher(configFile, loader, cluster != null ? cluster::apply : manager::apply) : null) {
+			scheduler.setPhaseJitter(pollJitter);
+			if (matrixServer != null) {
+				log.info(String.format("Traffic matrix endpoint at %s", matrixServer.getUri()));
+			}
+			if (diagnostics != null) {
+				log.info(String.format("Diagnostics endpoint at %s", diagnostics.getUri()));
+			}
+			if (watcher != null) {
+				log.info(String.format("Watching configuration file %s for changes", configFile));
+			}
+			if (cluster != null) {
+				log.info(String.format("Joining cluster %s as node '%s'", clusterDir, cluster.getNode()));
+				cluster.start(manager, config);
+			} else {
+				manager.apply(config);
+			}
+			executor.scheduleAtFixedRate(() -> {
+				printInfo(manager);
+				printWriteInfo(writeScheduler);
+			}, 10, 30, TimeUnit.SECONDS);
 			if (consoleMode) {
 				try (Scanner scanner = new Scanner(System.in)) {
 					System.out.println("System ready. Press enter to exit");
@@ -106,16 +311,140 @@ public class Application {
 		}
 	}
 
+	/**
+	 * Prints the statistics of the write scheduler.
+	 *
+	 * @param writeScheduler the write scheduler.
+	 */
+	private static void printWriteInfo(final WriteScheduler writeScheduler) {
+		if (writeScheduler.isLimited()) {
+			log.info(String.format("Write scheduler: waited %d ms, rejected %d writes of %d WAN points", writeScheduler.getWaitMillis(), writeScheduler.getRejectedWrites(),
+					writeScheduler.getRejectedPoints()));
+		}
+	}
+
+	/**
+	 * Gets the default cluster node identifier.
+	 *
+	 * @return the host name and the process ID.
+	 */
+	private static String defaultNode() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (final UnknownHostException ex) {
+			host = "localhost";
+		}
+		return String.format("%s-%d", host, ProcessHandle.current().pid());
+	}
+
+	/**
+	 * Creates the receiver of the alerts.
+	 *
+	 * @return the webhook notifier if <tt>--alert-webhook</tt> is given,
+	 *         otherwise a notifier writing to the log.
+	 */
+	private AlertNotifier createNotifier() {
+		return alertWebhook != null ? new WebhookNotifier(alertWebhook) : new LoggingNotifier();
+	}
+
+	/**
+	 * Parses the <tt>--execution-mode</tt> option.
+	 *
+	 * @return the poll execution mode.
+	 */
+	private PollScheduler.Mode parseExecutionMode() {
+		try {
+			return PollScheduler.Mode.valueOf(executionMode.toUpperCase(Locale.ROOT));
+		} catch (final IllegalArgumentException ex) {
+			throw new ParameterException(String.format("Unknown execution mode '%s'. Expected 'auto', 'virtual' or 'platform'", executionMode));
+		}
+	}
+
+	/**
+	 * Creates the configuration of a single router from the command line
+	 * arguments.
+	 *
+	 * @return the configuration.
+	 */
+	private ServiceConfig createConfig() {
+		final List<String> missing = new ArrayList<>();
+		if (routerIp == null) {
+			missing.add("[--router-ip | -r]");
+		}
+		final boolean database = exporterPort == null || dbUrl != null;
+		if (database && dbUrl == null) {
+			missing.add("[--db-url | -d]");
+		}
+		if (database && dbUser == null) {
+			missing.add("[--db-user | -u]");
+		}
+		if (database && dbPassword == null) {
+			missing.add("[--db-password | -p]");
+		}
+		if (database && dbName == null) {
+			missing.add("[--db-name | -db]");
+		}
+		if (subnets.isEmpty()) {
+			missing.add("[--subnet | -n]");
+		}
+		if (!missing.isEmpty()) {
+			throw new ParameterException(String.format("The following options are required: %s", String.join(", ", missing)));
+		}
+		// @formatter:off
+		final RouterConfig router = RouterConfig.builder()
+				.name(routerIp)
+				.host(routerIp)
+				.source(source)
+				.apiPort(apiPort)
+				.user(apiUser)
+				.password(apiPassword)
+				.subnets(subnets)
+				.interfaces(collectInterfaces)
+				.incremental(incremental)
+				.heartbeat(TimeUnit.SECONDS.toMillis(heartbeat))
+				.forgetAfter(TimeUnit.SECONDS.toMillis(forgetAfter))
+				.latencySlo(Math.round(latencySlo * 1000))
+				.captureDir(captureDir)
+				.archiveDir(archiveDir)
+				.ipv6Rollup(ipv6Rollup)
+				.ipv6Mapping(ipv6Mapping)
+				.hostsFile(hostsFile)
+				.hostsTtl(TimeUnit.SECONDS.toMillis(hostsTtl))
+				.alertIpRate(alertIpRate)
+				.alertSubnetRate(alertSubnetRate)
+				.alertAnomaly(alertAnomaly)
+				.database(database ? DatabaseConfig.builder()
+						.url(dbUrl)
+						.user(dbUser)
+						.password(dbPassword)
+						.name(dbName)
+						.build() : null)
+				.build();
+		// @formatter:on
+		return ServiceConfig.builder().routers(Collections.singletonMap(router.getName(), router)).build();
+	}
+
 	/**
 	 * Prints information about current statistics.
 	 *
-	 * @param service
+	 * @param manager the router manager.
 	 */
-	public void printInfo(TrafficService service) {
-		final long records = service.getRecordsCount();
-		final long iterations = service.getIterationsCount();
+	public void printInfo(RouterManager manager) {
+		final long records = manager.getRecordsCount();
+		final long iterations = manager.getIterationsCount();
 		log.info(String.format("[%s] Iteration %d: %d records (total %d, avg: %f) ", LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME), iterations, records - lastRecordsCount, records,
 				records / (double) iterations));
 		lastRecordsCount = records;
+		final long decoded = manager.getDecodedBytes();
+		if (decoded > 0) {
+			log.info(String.format("Fetched %d bytes of accounting pages (%d bytes transferred)", decoded, manager.getTransferredBytes()));
+		}
+		manager.getStatus().forEach((name, status) -> {
+			if (status.isDegraded()) {
+				log.warn(String.format("Router '%s' degraded: p50 %d ms, p95 %d ms, p99 %d ms, error rate %.2f, %d consecutive failures", name, status.getLatencyP50(), status.getLatencyP95(),
+						status.getLatencyP99(), status.getErrorRate(), status.getConsecutiveFailures()));
+			}
+		});
 	}
 }
@@ -0,0 +1,58 @@
+package com.a9ski.mikrotik;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.a9ski.mikrotik.model.InterfaceCounters;
+
+import lombok.NonNull;
+
+/**
+ * Converts the cumulative interface and queue counters into deltas between two
+ * consecutive polls, so they can be compared with the accounting data (which
+ * is reset on every snapshot).
+ *
+ */
+public class InterfaceCountersTracker {
+	private final Map<String, InterfaceCounters> previous = new HashMap<>();
+
+	/**
+	 * Computes the deltas since the previous poll. The first poll of each
+	 * interface only records the base values and produces no delta. A counter
+	 * smaller than the previous value is treated as a counter reset (e.g. router
+	 * reboot) and its current value is used as a delta.
+	 *
+	 * @param current the cumulative counters of the current poll.
+	 * @return the deltas since the previous poll.
+	 */
+	public synchronized List<InterfaceCounters> update(@NonNull final List<InterfaceCounters> current) {
+		final List<InterfaceCounters> deltas = new ArrayList<>(current.size());
+		final Map<String, InterfaceCounters> seen = new HashMap<>(current.size() * 2);
+		for (final InterfaceCounters counters : current) {
+			final String key = counters.getType() + "/" + counters.getName();
+			seen.put(key, counters);
+			final InterfaceCounters last = previous.get(key);
+			if (last != null) {
+				// @formatter:off
+				deltas.add(counters.toBuilder()
+						.rxBytes(delta(last.getRxBytes(), counters.getRxBytes()))
+						.txBytes(delta(last.getTxBytes(), counters.getTxBytes()))
+						.rxPackets(delta(last.getRxPackets(), counters.getRxPackets()))
+						.txPackets(delta(last.getTxPackets(), counters.getTxPackets()))
+						.rxDrops(delta(last.getRxDrops(), counters.getRxDrops()))
+						.txDrops(delta(last.getTxDrops(), counters.getTxDrops()))
+						.build());
+				// @formatter:on
+			}
+		}
+		previous.clear();
+		previous.putAll(seen);
+		return deltas;
+	}
+
+	private static long delta(final long last, final long current) {
+		return current >= last ? current - last : current;
+	}
+}
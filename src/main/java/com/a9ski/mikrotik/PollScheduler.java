@@ -0,0 +1,377 @@
+package com.a9ski.mikrotik;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Schedules the polls of many routers. A single timer thread triggers the
+ * polls and every poll runs on an executor:
+ * <ul>
+ * <li>{@link Mode#VIRTUAL} - a new virtual thread per poll (Java 21+). A poll
+ * blocked on a slow router holds no platform thread, so the number of threads
+ * doesn't grow with the number of routers.</li>
+ * <li>{@link Mode#PLATFORM} - a fixed pool of platform threads.</li>
+ * <li>{@link Mode#AUTO} - virtual threads if the runtime supports them,
+ * platform threads otherwise.</li>
+ * </ul>
+ * A router is never polled concurrently: a trigger arriving while the previous
+ * poll of the same router still runs is skipped.
+ * <p>
+ * The polls of degraded routers (see {@link RouterHealth}) run in a bulkhead:
+ * at most <tt>degradedPolls</tt> of them run at the same time and a poll not
+ * fitting in the bulkhead is rejected. Slow routers therefore cannot occupy
+ * all pool threads and starve the healthy ones.
+ * <p>
+ * With phase jitter the first poll of a router is delayed by a random part of
+ * its period, so routers with the same period don't poll (and write to the
+ * database) at the same moment.
+ *
+ */
+@Log4j2
+public class PollScheduler implements Closeable {
+	/**
+	 * Execution mode of the polls.
+	 */
+	public enum Mode {
+		/**
+		 * Virtual threads if supported by the runtime, platform threads otherwise.
+		 */
+		AUTO,
+		/**
+		 * Virtual thread per poll.
+		 */
+		VIRTUAL,
+		/**
+		 * Fixed pool of platform threads.
+		 */
+		PLATFORM
+	}
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("poll-timer"));
+	private final ExecutorService executor;
+	private final boolean virtual;
+	private final AtomicLong skippedPolls = new AtomicLong();
+	private final AtomicLong rejectedPolls = new AtomicLong();
+	private final AtomicInteger runningPolls = new AtomicInteger();
+	private final Semaphore degradedBulkhead;
+	private volatile boolean phaseJitter;
+
+	/**
+	 * Creates a new scheduler. Up to half of the pool threads are available to
+	 * the degraded routers.
+	 *
+	 * @param mode            the execution mode.
+	 * @param platformThreads number of pool threads in platform mode.
+	 */
+	public PollScheduler(@NonNull final Mode mode, final int platformThreads) {
+		this(mode, platformThreads, Math.max(1, platformThreads / 2));
+	}
+
+	/**
+	 * Creates a new scheduler.
+	 *
+	 * @param mode            the execution mode.
+	 * @param platformThreads number of pool threads in platform mode.
+	 * @param degradedPolls   maximal number of concurrent polls of degraded
+	 *                        routers.
+	 */
+	public PollScheduler(@NonNull final Mode mode, final int platformThreads, final int degradedPolls) {
+		if (platformThreads < 1) {
+			throw new IllegalArgumentException("Invalid number of poll threads. Expected positive value");
+		}
+		if (degradedPolls < 1) {
+			throw new IllegalArgumentException("Invalid number of degraded polls. Expected positive value");
+		}
+		this.degradedBulkhead = new Semaphore(degradedPolls);
+		final ExecutorService virtualExecutor = mode != Mode.PLATFORM ? newVirtualThreadExecutor() : null;
+		if (mode == Mode.VIRTUAL && virtualExecutor == null) {
+			throw new IllegalStateException(String.format("Virtual threads are not supported by Java %s", Runtime.version()));
+		}
+		this.virtual = virtualExecutor != null;
+		this.executor = virtual ? virtualExecutor : Executors.newFixedThreadPool(platformThreads, daemonThreadFactory("poll"));
+		log.info(String.format("Polls run on %s", virtual ? "virtual threads" : String.format("%d platform threads", platformThreads)));
+	}
+
+	/**
+	 * Checks if the runtime supports virtual threads.
+	 *
+	 * @return <tt>true</tt> if virtual threads are supported.
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (final NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates an executor starting a new virtual thread for each task. The
+	 * project is compiled for Java 14, so the executor is looked up by
+	 * reflection.
+	 *
+	 * @return new executor or <tt>null</tt> if virtual threads are not
+	 *         supported.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (final NoSuchMethodException ex) {
+			return null;
+		} catch (final IllegalAccessException | InvocationTargetException ex) {
+			log.warn(String.format("Cannot create virtual thread executor: %s", ex));
+			return null;
+		}
+	}
+
+	private static ThreadFactory daemonThreadFactory(final String prefix) {
+		final AtomicInteger counter = new AtomicInteger();
+		return r -> {
+			final Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Schedules periodic polls.
+	 *
+	 * @param name   the name of the poll (e.g. router name), used as thread name.
+	 * @param task   the poll routine.
+	 * @param period the period in milliseconds.
+	 * @return the scheduled poll.
+	 */
+	public ScheduledPoll schedule(@NonNull final String name, @NonNull final Runnable task, final long period) {
+		return schedule(name, task, period, null);
+	}
+
+	/**
+	 * Schedules periodic polls of a router with health tracking. The polls of a
+	 * degraded router follow its backoff and run in the degraded bulkhead.
+	 *
+	 * @param name   the name of the poll (e.g. router name), used as thread name.
+	 * @param task   the poll routine.
+	 * @param period the period in milliseconds.
+	 * @param health the health of the router or <tt>null</tt>.
+	 * @return the scheduled poll.
+	 */
+	public ScheduledPoll schedule(@NonNull final String name, @NonNull final Runnable task, final long period, final RouterHealth health) {
+		final ScheduledPoll poll = new ScheduledPoll(name, task, health);
+		final long phase = phaseJitter && period > 1 ? ThreadLocalRandom.current().nextLong(period) : 0L;
+		poll.future = timer.scheduleAtFixedRate(poll::trigger, phase, period, TimeUnit.MILLISECONDS);
+		return poll;
+	}
+
+	/**
+	 * Enables the phase jitter of the polls scheduled afterwards: the first
+	 * poll is delayed by a random time up to the period.
+	 *
+	 * @param phaseJitter <tt>true</tt> to enable the phase jitter.
+	 */
+	public void setPhaseJitter(final boolean phaseJitter) {
+		this.phaseJitter = phaseJitter;
+	}
+
+	/**
+	 * Checks if the polls run on virtual threads.
+	 *
+	 * @return <tt>true</tt> if the polls run on virtual threads.
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Number of polls skipped, because the previous poll of the same router was
+	 * still running.
+	 *
+	 * @return number of skipped polls.
+	 */
+	public long getSkippedPolls() {
+		return skippedPolls.get();
+	}
+
+	/**
+	 * Number of polls of degraded routers rejected, because the degraded bulkhead
+	 * was full.
+	 *
+	 * @return number of rejected polls.
+	 */
+	public long getRejectedPolls() {
+		return rejectedPolls.get();
+	}
+
+	/**
+	 * Number of polls triggered and not finished yet, either running or waiting
+	 * for a pool thread.
+	 *
+	 * @return number of polls in flight.
+	 */
+	public int getPollsInFlight() {
+		return runningPolls.get();
+	}
+
+	/**
+	 * Number of polls waiting for a pool thread (platform mode).
+	 *
+	 * @return number of queued polls.
+	 */
+	public int getQueuedPolls() {
+		return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+	}
+
+	/**
+	 * Number of free places in the degraded bulkhead.
+	 *
+	 * @return number of polls of degraded routers which may start.
+	 */
+	public int getAvailableDegradedPolls() {
+		return degradedBulkhead.availablePermits();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		timer.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Periodic poll of a single router.
+	 */
+	public class ScheduledPoll {
+		// the states of the poll; a cancelled poll never starts again, so the
+		// cancel and the start of a poll are a single transition of the state
+		private static final int IDLE = 0;
+		private static final int RUNNING = 1;
+		private static final int CANCELLING = 2;
+		private static final int CANCELLED = 3;
+
+		private final String name;
+		private final Runnable task;
+		private final RouterHealth health;
+		private final AtomicInteger state = new AtomicInteger(IDLE);
+		private volatile boolean isolated;
+		private volatile ScheduledFuture<?> future;
+
+		private ScheduledPoll(final String name, final Runnable task, final RouterHealth health) {
+			this.name = name;
+			this.task = task;
+			this.health = health;
+		}
+
+		private void trigger() {
+			if (state.get() >= CANCELLING) {
+				return;
+			}
+			if (health != null && !health.shouldPoll(System.currentTimeMillis())) {
+				return;
+			}
+			if (!state.compareAndSet(IDLE, RUNNING)) {
+				if (state.get() == RUNNING) {
+					skippedPolls.incrementAndGet();
+				}
+				return;
+			}
+			runningPolls.incrementAndGet();
+			isolated = health != null && health.isDegraded();
+			if (isolated && !degradedBulkhead.tryAcquire()) {
+				rejectedPolls.incrementAndGet();
+				isolated = false;
+				finished();
+				return;
+			}
+			try {
+				executor.execute(this::execute);
+			} catch (final RejectedExecutionException ex) {
+				finished();
+			}
+		}
+
+		private void execute() {
+			final Thread thread = Thread.currentThread();
+			final String threadName = thread.getName();
+			thread.setName("poll-" + name);
+			try {
+				task.run();
+			} catch (final RuntimeException ex) {
+				log.error(ex);
+			} finally {
+				thread.setName(threadName);
+				finished();
+			}
+		}
+
+		private void finished() {
+			if (isolated) {
+				isolated = false;
+				degradedBulkhead.release();
+			}
+			runningPolls.decrementAndGet();
+			synchronized (this) {
+				if (!state.compareAndSet(RUNNING, IDLE)) {
+					state.set(CANCELLED);
+				}
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Checks if a poll is running at the moment.
+		 *
+		 * @return <tt>true</tt> if a poll is running.
+		 */
+		public boolean isRunning() {
+			final int current = state.get();
+			return current == RUNNING || current == CANCELLING;
+		}
+
+		/**
+		 * Cancels the future polls and waits for the running poll to finish. No
+		 * poll starts after the cancel, so a poll is running only if it started
+		 * before.
+		 *
+		 * @param timeout the maximum time to wait in milliseconds.
+		 * @return <tt>true</tt> if no poll is running.
+		 * @throws InterruptedException thrown if interrupted while waiting.
+		 */
+		public boolean cancel(final long timeout) throws InterruptedException {
+			int current;
+			do {
+				current = state.get();
+			} while (current < CANCELLING && !state.compareAndSet(current, current == IDLE ? CANCELLED : CANCELLING));
+			if (future != null) {
+				future.cancel(false);
+			}
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+			synchronized (this) {
+				while (state.get() == CANCELLING) {
+					final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (remaining <= 0) {
+						return false;
+					}
+					wait(remaining);
+				}
+			}
+			return true;
+		}
+	}
+}
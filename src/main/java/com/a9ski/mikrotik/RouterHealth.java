@@ -0,0 +1,188 @@
+package com.a9ski.mikrotik;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.a9ski.mikrotik.model.RouterStatus;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Tracks the health of a router over a rolling window of the most recent
+ * fetches. A router failing or exceeding the latency objective in
+ * {@value #FAILURE_THRESHOLD} consecutive fetches is degraded: it is polled
+ * with an exponential backoff (starting at twice the poll interval, up to
+ * {@value #MAX_BACKOFF} ms) and its polls are isolated in the degraded
+ * bulkhead of the {@link PollScheduler}. A single successful fetch within the
+ * latency objective restores the normal schedule.
+ *
+ */
+@Log4j2
+public class RouterHealth {
+	/**
+	 * Default fetch latency objective in milliseconds.
+	 */
+	public static final long DEFAULT_LATENCY_SLO = 3000L;
+	/**
+	 * Number of fetches in the rolling window.
+	 */
+	public static final int WINDOW_SIZE = 128;
+	/**
+	 * Number of consecutive failed or slow fetches degrading the router.
+	 */
+	public static final int FAILURE_THRESHOLD = 3;
+	/**
+	 * Maximal backoff between the polls of a degraded router in milliseconds.
+	 */
+	public static final long MAX_BACKOFF = 300_000L;
+
+	private final String name;
+	private final long interval;
+	private final long latencySlo;
+	private final long[] latencies = new long[WINDOW_SIZE];
+	private final boolean[] failures = new boolean[WINDOW_SIZE];
+	private final AtomicLong deferredPolls = new AtomicLong();
+	private int samples;
+	private int next;
+	private int failuresInWindow;
+	private int consecutiveFailures;
+	private int consecutiveSlow;
+	private volatile boolean degraded;
+	private volatile long nextPollTime;
+
+	/**
+	 * Creates a new tracker.
+	 *
+	 * @param name       the router name, used in the logs.
+	 * @param interval   the poll interval in milliseconds.
+	 * @param latencySlo the fetch latency objective in milliseconds.
+	 */
+	public RouterHealth(@NonNull final String name, final long interval, final long latencySlo) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Invalid interval. Expected positive value");
+		}
+		if (latencySlo < 1) {
+			throw new IllegalArgumentException("Invalid latency objective. Expected positive value");
+		}
+		this.name = name;
+		this.interval = interval;
+		this.latencySlo = latencySlo;
+	}
+
+	/**
+	 * Records a successful fetch.
+	 *
+	 * @param latency the fetch latency in milliseconds.
+	 * @param now     the current time in milliseconds.
+	 */
+	public synchronized void recordSuccess(final long latency, final long now) {
+		record(latency, false);
+		consecutiveFailures = 0;
+		consecutiveSlow = latency > latencySlo ? consecutiveSlow + 1 : 0;
+		evaluate(now);
+	}
+
+	/**
+	 * Records a failed fetch.
+	 *
+	 * @param latency the time in milliseconds until the failure.
+	 * @param now     the current time in milliseconds.
+	 */
+	public synchronized void recordFailure(final long latency, final long now) {
+		record(latency, true);
+		consecutiveFailures++;
+		evaluate(now);
+	}
+
+	private void record(final long latency, final boolean failed) {
+		if (samples == WINDOW_SIZE) {
+			if (failures[next]) {
+				failuresInWindow--;
+			}
+		} else {
+			samples++;
+		}
+		latencies[next] = latency;
+		failures[next] = failed;
+		if (failed) {
+			failuresInWindow++;
+		}
+		next = (next + 1) % WINDOW_SIZE;
+	}
+
+	private void evaluate(final long now) {
+		final int strikes = Math.max(consecutiveFailures, consecutiveSlow);
+		if (strikes >= FAILURE_THRESHOLD) {
+			if (!degraded) {
+				log.warn(String.format("Router '%s' degraded after %d failed or slow polls", name, strikes));
+			}
+			degraded = true;
+			nextPollTime = now + backoff(strikes - FAILURE_THRESHOLD);
+		} else if (degraded) {
+			log.info(String.format("Router '%s' recovered", name));
+			degraded = false;
+			nextPollTime = 0L;
+		}
+	}
+
+	private long backoff(final int step) {
+		final long max = Math.max(MAX_BACKOFF, interval);
+		final int shift = Math.min(step + 1, Long.numberOfLeadingZeros(interval) - 1);
+		return Math.min(interval << shift, max);
+	}
+
+	/**
+	 * Checks if the router should be polled now. A poll of a degraded router
+	 * before the end of its backoff is counted as deferred.
+	 *
+	 * @param now the current time in milliseconds.
+	 * @return <tt>true</tt> if the router should be polled.
+	 */
+	public boolean shouldPoll(final long now) {
+		if (now >= nextPollTime) {
+			return true;
+		}
+		deferredPolls.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Checks if the router is degraded.
+	 *
+	 * @return <tt>true</tt> if the router is polled on the degraded schedule.
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	/**
+	 * Gets the current health of the router.
+	 *
+	 * @return the router status.
+	 */
+	public synchronized RouterStatus getStatus() {
+		final long[] sorted = Arrays.copyOf(latencies, samples);
+		Arrays.sort(sorted);
+		// @formatter:off
+		return RouterStatus.builder()
+				.degraded(degraded)
+				.samples(samples)
+				.latencyP50(percentile(sorted, 50))
+				.latencyP95(percentile(sorted, 95))
+				.latencyP99(percentile(sorted, 99))
+				.errorRate(samples > 0 ? failuresInWindow / (double) samples : 0.0)
+				.consecutiveFailures(consecutiveFailures)
+				.deferredPolls(deferredPolls.get())
+				.build();
+		// @formatter:on
+	}
+
+	private static long percentile(final long[] sorted, final int percentile) {
+		if (sorted.length == 0) {
+			return 0L;
+		}
+		final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+		return sorted[Math.max(rank - 1, 0)];
+	}
+}
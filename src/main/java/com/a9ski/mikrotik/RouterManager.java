@@ -0,0 +1,225 @@
+package com.a9ski.mikrotik;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.a9ski.mikrotik.arena.TrafficSnapshot;
+import com.a9ski.mikrotik.config.RouterConfig;
+import com.a9ski.mikrotik.config.ServiceConfig;
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+import com.a9ski.mikrotik.model.RouterStatus;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Runs a traffic service for every configured router. A new configuration is
+ * applied as a difference: only the added, removed and changed routers are
+ * started or stopped, the others keep polling without interruption.
+ *
+ */
+@Log4j2
+public class RouterManager implements Closeable {
+	private final TrafficServiceFactory factory;
+	private final Map<String, RunningRouter> routers = new ConcurrentHashMap<>();
+	private final Map<String, TrafficService> stopping = new ConcurrentHashMap<>();
+	private boolean closed;
+
+	/**
+	 * Creates a new manager.
+	 *
+	 * @param factory the factory of the traffic services.
+	 */
+	public RouterManager(@NonNull final TrafficServiceFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Applies a new configuration. The new service of a changed router is
+	 * created before its running service is stopped, so an invalid change or a
+	 * failed creation keeps the previous service running; it starts polling
+	 * only after the previous service is stopped, so a router is never polled
+	 * by two services at once.
+	 *
+	 * @param config the new configuration.
+	 * @throws ConfigurationException thrown if some of the routers cannot be
+	 *                                started. All other routers are applied.
+	 * @throws IllegalStateException  thrown if the manager is closed.
+	 */
+	public synchronized void apply(@NonNull final ServiceConfig config) throws ConfigurationException {
+		if (closed) {
+			throw new IllegalStateException("Router manager closed");
+		}
+		final List<String> failures = new ArrayList<>();
+		for (final String name : new TreeSet<>(routers.keySet())) {
+			if (!config.getRouters().containsKey(name)) {
+				stop(routers.remove(name));
+				factory.release(name);
+				log.info(String.format("Router '%s' removed", name));
+			}
+		}
+
+		for (final RouterConfig router : config.getRouters().values()) {
+			final RunningRouter current = routers.get(router.getName());
+			if (current != null && current.config.equals(router)) {
+				continue;
+			}
+			try {
+				factory.validate(router);
+				// create first, so a failed creation keeps the previous service running
+				final TrafficService service = factory.create(router);
+				stop(routers.put(router.getName(), new RunningRouter(router, service)));
+				service.start();
+				log.info(String.format("Router '%s' (%s) %s", router.getName(), router.getHost(), current != null ? "reconfigured" : "started"));
+			} catch (final Exception ex) {
+				failures.add(String.format("%s: %s", router.getName(), ex.getMessage()));
+			}
+		}
+
+		if (!failures.isEmpty()) {
+			throw new ConfigurationException(String.format("Cannot start routers %s", failures));
+		}
+	}
+
+	private void stop(final RunningRouter router) {
+		if (router != null) {
+			router.service.close();
+			if (router.service.isPollRunning()) {
+				stopping.put(router.config.getName(), router.service);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a stopped service of a router still runs a poll, because the
+	 * poll didn't finish within the stop timeout.
+	 *
+	 * @param name the router name.
+	 * @return <tt>true</tt> if a poll of a stopped service of the router is
+	 *         running.
+	 */
+	public boolean isStopping(final String name) {
+		final TrafficService service = stopping.get(name);
+		if (service == null) {
+			return false;
+		}
+		if (service.isPollRunning()) {
+			return true;
+		}
+		stopping.remove(name, service);
+		return false;
+	}
+
+	/**
+	 * Gets the names of the running routers.
+	 *
+	 * @return the names of the running routers.
+	 */
+	public Set<String> getRouterNames() {
+		return Collections.unmodifiableSet(new TreeSet<>(routers.keySet()));
+	}
+
+	/**
+	 * Gets the traffic service of a router.
+	 *
+	 * @param name the router name.
+	 * @return the traffic service or <tt>null</tt> if the router is not running.
+	 */
+	public TrafficService getService(final String name) {
+		final RunningRouter router = routers.get(name);
+		return router != null ? router.service : null;
+	}
+
+	/**
+	 * Gets the number of records written to the database by the running
+	 * routers.
+	 *
+	 * @return number of records written to the database.
+	 */
+	public long getRecordsCount() {
+		return routers.values().stream().mapToLong(r -> r.service.getRecordsCount()).sum();
+	}
+
+	/**
+	 * Gets the number of iterations of the read/write routine of the running
+	 * routers.
+	 *
+	 * @return number of iterations.
+	 */
+	public long getIterationsCount() {
+		return routers.values().stream().mapToLong(r -> r.service.getIterationsCount()).sum();
+	}
+
+	/**
+	 * Gets the number of accounting page bytes transferred from the running
+	 * routers, before decompression.
+	 *
+	 * @return number of transferred bytes.
+	 */
+	public long getTransferredBytes() {
+		return routers.values().stream().mapToLong(r -> r.service.getTransferredBytes()).sum();
+	}
+
+	/**
+	 * Gets the number of accounting page bytes of the running routers after
+	 * decompression.
+	 *
+	 * @return number of decoded bytes.
+	 */
+	public long getDecodedBytes() {
+		return routers.values().stream().mapToLong(r -> r.service.getDecodedBytes()).sum();
+	}
+
+	/**
+	 * Gets the health of the running routers.
+	 *
+	 * @return the status of each router, sorted by router name.
+	 */
+	public Map<String, RouterStatus> getStatus() {
+		final Map<String, RouterStatus> status = new TreeMap<>();
+		routers.forEach((name, router) -> status.put(name, router.service.getStatus()));
+		return status;
+	}
+
+	/**
+	 * Gets the traffic of the latest poll of the running routers. The snapshots
+	 * are immutable, so they can be read without locking.
+	 *
+	 * @return the latest snapshot of each router, sorted by router name.
+	 */
+	public Map<String, TrafficSnapshot> getSnapshots() {
+		final Map<String, TrafficSnapshot> snapshots = new TreeMap<>();
+		routers.forEach((name, router) -> snapshots.put(name, router.service.getSnapshot()));
+		return snapshots;
+	}
+
+	/**
+	 * Stops all routers. A closed manager doesn't start routers anymore.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		routers.values().forEach(this::stop);
+		routers.clear();
+	}
+
+	/**
+	 * A running router with its configuration.
+	 */
+	private static class RunningRouter {
+		private final RouterConfig config;
+		private final TrafficService service;
+
+		RunningRouter(final RouterConfig config, final TrafficService service) {
+			this.config = config;
+			this.service = service;
+		}
+	}
+}
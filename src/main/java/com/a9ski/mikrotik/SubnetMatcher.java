@@ -0,0 +1,219 @@
+package com.a9ski.mikrotik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.SubnetTotals;
+import com.a9ski.mikrotik.arena.TrafficTable;
+
+import inet.ipaddr.AddressStringException;
+import inet.ipaddr.IPAddress;
+import inet.ipaddr.IPAddressString;
+import lombok.NonNull;
+
+/**
+ * Matches IP addresses against a list of LAN subnets. The subnets are parsed
+ * once, when the matcher is compiled, into the network and mask values of the
+ * numeric IPv4 addresses and of the 128-bit IPv6 keys (see {@link Ipv6}), so
+ * matching a numeric address allocates nothing.
+ *
+ */
+public class SubnetMatcher {
+	private final IPAddress[] subnets;
+	private final List<String> names;
+	private final long[] ipv4Networks;
+	private final long[] ipv4Masks;
+	private final long[] ipv6NetworksHigh;
+	private final long[] ipv6NetworksLow;
+	private final long[] ipv6MasksHigh;
+	private final long[] ipv6MasksLow;
+
+	private SubnetMatcher(final IPAddress[] subnets) {
+		this.subnets = subnets;
+		this.names = Arrays.stream(subnets).map(IPAddress::toCanonicalString).collect(Collectors.toUnmodifiableList());
+		this.ipv4Networks = new long[subnets.length];
+		this.ipv4Masks = new long[subnets.length];
+		this.ipv6NetworksHigh = new long[subnets.length];
+		this.ipv6NetworksLow = new long[subnets.length];
+		this.ipv6MasksHigh = new long[subnets.length];
+		this.ipv6MasksLow = new long[subnets.length];
+		for (int i = 0; i < subnets.length; i++) {
+			final Integer prefix = subnets[i].getNetworkPrefixLength();
+			if (subnets[i].isIPv4()) {
+				ipv4Masks[i] = (0xFFFFFFFFL << (32 - (prefix != null ? prefix : 32))) & 0xFFFFFFFFL;
+				ipv4Networks[i] = subnets[i].getLower().getValue().longValue() & ipv4Masks[i];
+				// never matches an IPv6 key
+				ipv6MasksHigh[i] = 0L;
+				ipv6NetworksHigh[i] = -1L;
+			} else {
+				// never matches an IPv4 address
+				ipv4Masks[i] = 0L;
+				ipv4Networks[i] = -1L;
+				final int bits = prefix != null ? prefix : 128;
+				ipv6MasksHigh[i] = mask(bits);
+				ipv6MasksLow[i] = mask(bits - 64);
+				final byte[] network = subnets[i].getLower().getBytes();
+				ipv6NetworksHigh[i] = toLong(network, 0) & ipv6MasksHigh[i];
+				ipv6NetworksLow[i] = toLong(network, 8) & ipv6MasksLow[i];
+			}
+		}
+	}
+
+	/**
+	 * Mask of the first bits of a 64-bit half of an IPv6 key.
+	 */
+	private static long mask(final int bits) {
+		if (bits <= 0) {
+			return 0L;
+		}
+		return bits >= 64 ? -1L : -1L << (64 - bits);
+	}
+
+	private static long toLong(final byte[] bytes, final int from) {
+		long value = 0;
+		for (int i = from; i < from + 8; i++) {
+			value = (value << 8) | (bytes[i] & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Compiles a matcher.
+	 *
+	 * @param subnets the LAN subnets (e.g. 192.168.1.0/24)
+	 * @return new matcher.
+	 * @throws AddressStringException thrown if there is invalid subnet.
+	 */
+	public static SubnetMatcher compile(@NonNull final Collection<String> subnets) throws AddressStringException {
+		final List<IPAddressString> addresses = new ArrayList<>(subnets.size());
+		for (final String subnet : subnets) {
+			addresses.add(new IPAddressString(subnet.strip()));
+		}
+		return compileAddresses(addresses);
+	}
+
+	/**
+	 * Compiles a matcher.
+	 *
+	 * @param subnets the LAN subnets.
+	 * @return new matcher.
+	 * @throws AddressStringException thrown if there is invalid subnet.
+	 */
+	public static SubnetMatcher compileAddresses(@NonNull final Collection<IPAddressString> subnets) throws AddressStringException {
+		if (subnets.isEmpty()) {
+			throw new IllegalArgumentException("Invalid sub nets value. Expected at least one LAN subnet");
+		}
+		final IPAddress[] compiled = new IPAddress[subnets.size()];
+		int i = 0;
+		for (final IPAddressString subnet : subnets) {
+			compiled[i++] = subnet.toAddress().toPrefixBlock();
+		}
+		return new SubnetMatcher(compiled);
+	}
+
+	/**
+	 * Check if the IP belongs to one of the subnets.
+	 *
+	 * @param ip the IP to be checked
+	 * @return if the IP is belonging to one of the subnets.
+	 */
+	public boolean matches(final String ip) {
+		final IPAddress address = new IPAddressString(ip).getAddress();
+		if (address == null) {
+			return false;
+		}
+		for (final IPAddress subnet : subnets) {
+			if (subnet.contains(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the first subnet containing a numeric IPv4 address. The check
+	 * allocates nothing.
+	 *
+	 * @param ipv4 the numeric IPv4 address (see
+	 *             {@link com.a9ski.mikrotik.arena.Ipv4}).
+	 * @return the index of the subnet or <tt>-1</tt> if the IP doesn't belong to
+	 *         any subnet.
+	 */
+	public int indexOf(final long ipv4) {
+		for (int i = 0; i < ipv4Networks.length; i++) {
+			if ((ipv4 & ipv4Masks[i]) == ipv4Networks[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first subnet containing an IP address given by its 128-bit key.
+	 * The check allocates nothing.
+	 *
+	 * @param high the high 64 bits of the key.
+	 * @param low  the low 64 bits of the key.
+	 * @return the index of the subnet or <tt>-1</tt> if the IP doesn't belong to
+	 *         any subnet.
+	 */
+	public int indexOf(final long high, final long low) {
+		if (Ipv6.isIpv4(high, low)) {
+			return indexOf(low);
+		}
+		for (int i = 0; i < ipv6NetworksHigh.length; i++) {
+			if ((high & ipv6MasksHigh[i]) == ipv6NetworksHigh[i] && (low & ipv6MasksLow[i]) == ipv6NetworksLow[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check if a numeric IPv4 address belongs to one of the subnets.
+	 *
+	 * @param ipv4 the numeric IPv4 address.
+	 * @return if the IP is belonging to one of the subnets.
+	 */
+	public boolean matches(final long ipv4) {
+		return indexOf(ipv4) >= 0;
+	}
+
+	/**
+	 * Classifies the rows of a traffic table as LAN or WAN and computes the
+	 * totals of every subnet and of the WAN addresses in the same pass.
+	 *
+	 * @param traffic the traffic table.
+	 * @param totals  the totals, reset before the classification.
+	 */
+	public void classify(final TrafficTable traffic, final SubnetTotals totals) {
+		totals.reset(names);
+		for (int row = 0; row < traffic.size(); row++) {
+			final int subnet = indexOf(traffic.ipHighAt(row), traffic.ipAt(row));
+			traffic.setLanAt(row, subnet >= 0);
+			totals.add(subnet, traffic, row);
+		}
+	}
+
+	/**
+	 * Gets the subnets in canonical form (e.g. 192.168.1.0/24).
+	 *
+	 * @return the subnets.
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * Number of subnets.
+	 *
+	 * @return number of subnets.
+	 */
+	public int size() {
+		return subnets.length;
+	}
+}
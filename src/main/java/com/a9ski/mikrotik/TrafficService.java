@@ -1,30 +1,45 @@
 package com.a9ski.mikrotik;
 
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.BiFunction;
-import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.message.StringMapMessage;
+import org.influxdb.InfluxDBException;
 
 import com.a9ski.mikrotik.accounting.AccountingClient;
-import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.accounting.AccountingSource;
+import com.a9ski.mikrotik.accounting.InterfaceCountersSource;
+import com.a9ski.mikrotik.alerting.AlertEngine;
+import com.a9ski.mikrotik.alerting.AlertNotifier;
+import com.a9ski.mikrotik.alerting.AlertRules;
+import com.a9ski.mikrotik.archive.ArchiveWriter;
+import com.a9ski.mikrotik.arena.Ipv6Rollup;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.arena.TrafficSnapshot;
+import com.a9ski.mikrotik.arena.TrafficTable;
+import com.a9ski.mikrotik.cluster.PollGuard;
+import com.a9ski.mikrotik.diagnostics.PollStage;
+import com.a9ski.mikrotik.diagnostics.PollTrace;
+import com.a9ski.mikrotik.incremental.IncrementalFilter;
 import com.a9ski.mikrotik.influxdb.InfluxDbClient;
-import com.a9ski.mikrotik.model.TrafficData;
+import com.a9ski.mikrotik.logging.LogLimiter;
+import com.a9ski.mikrotik.matrix.TrafficMatrix;
+import com.a9ski.mikrotik.model.InterfaceCounters;
+import com.a9ski.mikrotik.model.PipelineState;
+import com.a9ski.mikrotik.model.RouterStatus;
+import com.a9ski.mikrotik.model.WriteResult;
+import com.a9ski.mikrotik.prometheus.PrometheusExporter;
 
-import inet.ipaddr.AddressStringException;
-import inet.ipaddr.IPAddressString;
 import io.github.resilience4j.core.IntervalFunction;
 import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
+import lombok.Builder;
 import lombok.NonNull;
 import lombok.extern.log4j.Log4j2;
 
@@ -39,87 +54,125 @@ public class TrafficService implements Closeable {
 	/**
 	 * Default value for max number of retries for DB operation.
 	 */
-	private static final int MAX_RETRIES = 3;
+	public static final int MAX_RETRIES = 3;
 	/**
 	 * Number of milliseconds to sleep between executions of the read/write routine.
 	 */
-	private static final long SLEEP_TIME = 10000;
+	public static final long SLEEP_TIME = 10000;
 	/**
-	 * Default value used for bytes/packets.
+	 * Time in milliseconds after which the alert state of an IP without traffic is removed.
 	 */
-	private static final Long DEFAULT_VALUE = Long.valueOf(0L);
+	public static final long ALERT_FORGET_AFTER = 3_600_000L;
+	private static final long POLL_FAILURE_LOG_INTERVAL = 60_000L;
+	private static final String STOP_TIMEOUT_MSG = "Poll of router '%s' still running after the stop timeout";
+	private static final String FAILED_BATCHES_MSG = "Failed to write %d of %d batches (%d points) of router '%s'";
 
-	private final AccountingClient accountingClient;
+	private final AccountingSource accountingClient;
+	private final InterfaceCountersSource interfaceSource;
+	private final InterfaceCountersTracker interfaceTracker = new InterfaceCountersTracker();
+	private final IncrementalFilter incrementalFilter;
+	private final Ipv6Rollup rollup;
 	private final InfluxDbClient dbClient;
-	private final List<IPAddressString> routerSubnets;
+	private final PrometheusExporter exporter;
+	private final AlertEngine alertEngine;
+	private final PollGuard pollGuard;
+	private final ArchiveWriter archive;
+	private final TrafficMatrix matrix;
+	private final AtomicLong guardedPolls = new AtomicLong();
+	private final SubnetMatcher subnetMatcher;
 	private final AtomicLong iterations = new AtomicLong();
+	private final AtomicLong writtenBatches = new AtomicLong();
+	private final AtomicLong retriedWrites = new AtomicLong();
+	private final AtomicLong failedBatches = new AtomicLong();
 	private final long sleepTime;
 	private final int maxRetries;
 
-	private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
-
-	/**
-	 * Creates a new object.
-	 * @param routerIp the router IP address.
-	 * @param routerSubNets router subnets (e.g. 192.168.0.0/24)
-	 * @param dbUrl the URL for Influx DB (e.g. http://192.168.1.1:8086)
-	 * @param dbUserName the database user name
-	 * @param dbPassword the database password
-	 * @param dbName the database name
-	 * @throws AddressStringException thrown if the subnets are not valid.
-	 */
-	public TrafficService(@NonNull final String routerIp, @NonNull final List<String> routerSubNets, @NonNull final String dbUrl, @NonNull final String dbUserName, @NonNull final String dbPassword, @NonNull final String dbName) throws AddressStringException {
-		this(new AccountingClient(routerIp),
-				routerSubNets.stream().map(net -> new IPAddressString(net)).collect(Collectors.toList()),
-				new InfluxDbClient(dbUrl, dbUserName, dbPassword, dbName, routerIp),
-				SLEEP_TIME,
-				MAX_RETRIES);
-	}
+	private final PollScheduler scheduler;
+	private final boolean ownScheduler;
+	private final String name;
+	private final RouterHealth health;
+	private final PollTrace trace;
+	private final Retry retry;
+	private final PollArena arena = new PollArena();
+	private volatile TrafficSnapshot snapshot = TrafficSnapshot.EMPTY;
+	private final LogLimiter pollFailures;
+	// the polls of a router never run concurrently
+	private int consecutiveFailures;
+	private long lastPollTimestamp;
+	private volatile PollScheduler.ScheduledPoll poll;
 
 	/**
 	 * Creates a new object
-	 * @param accountingClient the MikroTik accounting client.
-	 * @param routerSubnets the router subnets.
-	 * @param dbClient the InfuxDB client.
+	 * @param accountingClient the MikroTik accounting source.
+	 * @param subnetMatcher the compiled router subnets.
+	 * @param dbClient the InfuxDB client. <tt>null</tt> writes nothing to database (exporter mode).
+	 * @param exporter the Prometheus exporter receiving the per-IP counters. <tt>null</tt> disables the exporter.
+	 * @param interfaceSource source of the interface and queue counters, read in the same poll cycle as the accounting records. <tt>null</tt> disables the interface counters.
+	 * @param incrementalFilter filter suppressing the points of IPs without traffic. <tt>null</tt> writes all points.
+	 * @param rollup the rollup of the IPv6 addresses of the LAN hosts. <tt>null</tt> aggregates every IPv6 address separately.
+	 * @param alertRules the alert rules evaluated on every poll. <tt>null</tt> disables the alerts.
+	 * @param notifier the receiver of the alerts. <tt>null</tt> disables the alerts.
+	 * @param archive the writer archiving the per-IP traffic of every poll in columnar daily files. <tt>null</tt> disables the archive.
+	 * @param matrix the traffic matrix receiving the source/destination pairs of every poll. <tt>null</tt> disables the matrix.
+	 * @param pollGuard the guard checked before every poll (cluster mode). <tt>null</tt> polls always.
+	 * @param scheduler the scheduler shared by the routers. <tt>null</tt> creates a scheduler with a single platform thread, owned by this service.
+	 * @param name the name of the router, used in the thread names and logs. <tt>null</tt> uses the name of the accounting source class.
+	 * @param latencySlo the fetch latency objective in milliseconds. <tt>0</tt> uses {@link RouterHealth#DEFAULT_LATENCY_SLO}.
 	 * @param sleepTime time to sleep between executions of the routine that reads traffic data from the router and writes it to the database.
 	 * @param maxRetries max number of retries for writing data to database.
-	 * @throws AddressStringException thrown if the subnets are not valid.
+	 * @param deferStart <tt>true</tt> to start polling only with {@link #start()}, e.g. after the previous service of the router is stopped. <tt>false</tt> starts polling immediately.
 	 */
-	public TrafficService(@NonNull final AccountingClient accountingClient, @NonNull final Collection<IPAddressString> routerSubnets, @NonNull final InfluxDbClient dbClient, long sleepTime, int maxRetries) throws AddressStringException {
-		validateSubnets(routerSubnets);
+	@Builder
+	public TrafficService(@NonNull final AccountingSource accountingClient, @NonNull final SubnetMatcher subnetMatcher, final InfluxDbClient dbClient, final PrometheusExporter exporter, final InterfaceCountersSource interfaceSource, final IncrementalFilter incrementalFilter, final Ipv6Rollup rollup, final AlertRules alertRules, final AlertNotifier notifier, final ArchiveWriter archive, final TrafficMatrix matrix, final PollGuard pollGuard, final PollScheduler scheduler, final String name, long latencySlo, long sleepTime, int maxRetries, boolean deferStart) {
 		this.accountingClient = accountingClient;
-		this.routerSubnets = new ArrayList<>(routerSubnets);
+		this.interfaceSource = interfaceSource;
+		this.incrementalFilter = incrementalFilter;
+		this.rollup = rollup;
+		arena.setRollup(rollup);
+		this.subnetMatcher = subnetMatcher;
 		this.dbClient = dbClient;
+		this.exporter = exporter;
+		this.archive = archive;
+		this.matrix = matrix;
+		arena.setPairsEnabled(matrix != null);
+		this.pollGuard = pollGuard;
 		this.sleepTime = sleepTime;
 		this.maxRetries = maxRetries;
-		if (routerSubnets.isEmpty()) {
-			throw new IllegalArgumentException("Invalid sub nets value. Expected at least one LAN subnet");
-		}
+		this.name = name != null ? name : accountingClient.getClass().getSimpleName();
 		if (sleepTime < 1) {
 			throw new IllegalArgumentException("Invalid sleep time. Expected positive value");
 		}
 		if (maxRetries < 1) {
 			throw new IllegalArgumentException("Invalid max retries value. Expected positive value");
 		}
-		start();
-	}
-
-	/**
-	 * Validate LAN subnets.
-	 * @param ips LAN subnets
-	 * @throws AddressStringException thrown if there is invalid subnet.
-	 */
-	protected void validateSubnets(@NonNull Collection<IPAddressString> ips) throws AddressStringException {
-		for(IPAddressString ip : ips) {
-			ip.validate();
+		if (dbClient == null && exporter == null) {
+			throw new IllegalArgumentException("Missing database client or exporter");
+		}
+		// @formatter:off
+		this.retry = Retry.of("dbClient.write", RetryConfig.custom()
+				.maxAttempts(maxRetries)
+				.intervalFunction(IntervalFunction.ofExponentialRandomBackoff())
+				.retryOnException(ex -> !(ex instanceof InfluxDBException) || ((InfluxDBException) ex).isRetryWorth())
+				.build());
+		// @formatter:on
+		this.alertEngine = alertRules != null && alertRules.isEnabled() && notifier != null ? new AlertEngine(this.name, alertRules, notifier, sleepTime, ALERT_FORGET_AFTER) : null;
+		this.pollFailures = new LogLimiter(Math.max(POLL_FAILURE_LOG_INTERVAL, sleepTime));
+		this.trace = new PollTrace(this.name);
+		this.health = new RouterHealth(this.name, sleepTime, latencySlo > 0 ? latencySlo : RouterHealth.DEFAULT_LATENCY_SLO);
+		this.ownScheduler = scheduler == null;
+		this.scheduler = scheduler != null ? scheduler : new PollScheduler(PollScheduler.Mode.PLATFORM, 1);
+		if (!deferStart) {
+			start();
 		}
 	}
 
 	/**
-	 * Starts the routine that reads from the router and writes into the database.
+	 * Starts the routine that reads from the router and writes into the database. A started service is not started again.
 	 */
-	protected void start() {
-		executorService.scheduleAtFixedRate(() -> run(), 0L, sleepTime, TimeUnit.MILLISECONDS);
+	public synchronized void start() {
+		if (poll == null) {
+			poll = scheduler.schedule(name, this::run, sleepTime, health);
+		}
 	}
 
 	/**
@@ -127,113 +180,189 @@ public class TrafficService implements Closeable {
 	 * @throws InterruptedException thrown if interrupted while waiting to stop the service.
 	 */
 	protected void stop() throws InterruptedException {
-		executorService.shutdown();
-		executorService.awaitTermination(3 * sleepTime, TimeUnit.MILLISECONDS);
+		try {
+			final PollScheduler.ScheduledPoll current = poll;
+			if (current != null && !current.cancel(3 * sleepTime)) {
+				log.warn(String.format(STOP_TIMEOUT_MSG, name));
+			}
+		} finally {
+			if (ownScheduler) {
+				scheduler.close();
+			}
+		}
 	}
 
 	/**
-	 * The routine that reads from the router and writes into the database.
+	 * The routine that reads from the router and writes into the database and
+	 * the exporter counters, evaluating the alert rules on the way. All the data of a poll is kept in the poll arena of
+	 * the router, which is reset and reused by the next poll.
 	 */
 	protected void run() {
+		if (pollGuard != null && !pollGuard.mayPoll(name)) {
+			guardedPolls.incrementAndGet();
+			log.debug(String.format("Poll of router '%s' skipped by the poll guard", name));
+			return;
+		}
+		trace.start();
 		try {
-			final List<AccountingRecord> records = accountingClient.loadRecords();
-
-			final Map<String, Long> bytesSent = new TreeMap<>();
-			final Map<String, Long> bytesReceived = new TreeMap<>();
-			final Map<String, Long> packetsSent = new TreeMap<>();
-			final Map<String, Long> packetsReceived = new TreeMap<>();
-			records.forEach(r -> {
-				bytesSent.compute(r.getSourceIp(), add(r.getByteCount()));
-				packetsSent.compute(r.getSourceIp(), add(r.getPacketCount()));
-				bytesReceived.compute(r.getDestinationIp(), add(r.getByteCount()));
-				packetsReceived.compute(r.getDestinationIp(), add(r.getPacketCount()));
-			});
-
-			final Map<String, TrafficData> traffic = new TreeMap<>();
-			packetsSent.keySet().forEach(ip -> traffic.put(ip, createTrafficData(ip, bytesSent, bytesReceived, packetsSent, packetsReceived)));
-
-			packetsReceived.keySet().stream()
-				.filter(ip -> !packetsSent.containsKey(ip))
-				.forEach(ip -> traffic.put(ip, createTrafficData(ip, bytesSent, bytesReceived, packetsSent, packetsReceived)));
-
-			// @formatter:off
-			final Set<String> lanIps = traffic.keySet().stream()
-					.filter(this::isLanIp)
-					.collect(Collectors.toCollection(TreeSet::new));
-			// @formatter:on
-
-			writeToDatabase(lanIps, traffic);
-			iterations.incrementAndGet();
+			arena.reset();
+			if (rollup != null) {
+				rollup.refresh(System.currentTimeMillis());
+			}
+			trace.begin(PollStage.LOAD);
+			loadRecords();
+			trace.end(arena.getRecords());
+			trace.buffered(arena.getRecords(), arena.getText().length());
+			trace.begin(PollStage.INTERFACES);
+			final List<InterfaceCounters> interfaces = loadInterfaceCounters();
+			trace.end(interfaces.size());
+
+			// the timestamp identifies the points of the poll, so it is unique
+			// per router even if the clock goes back
+			final long now = Math.max(System.currentTimeMillis(), lastPollTimestamp + 1);
+			lastPollTimestamp = now;
+			final TrafficTable traffic = arena.getTraffic();
+			if (incrementalFilter != null) {
+				trace.begin(PollStage.FILTER);
+				incrementalFilter.filter(now, traffic);
+				trace.end(traffic.size());
+			}
+			trace.begin(PollStage.CLASSIFY);
+			subnetMatcher.classify(traffic, arena.getSubnetTotals());
+			snapshot = TrafficSnapshot.of(now, traffic);
+			trace.end(traffic.size());
+			if (matrix != null) {
+				trace.begin(PollStage.MATRIX);
+				matrix.add(now, arena.getPairs(), subnetMatcher);
+				trace.end(arena.getPairs().size());
+			}
+			if (archive != null) {
+				trace.begin(PollStage.ARCHIVE);
+				archiveSnapshot();
+				trace.end(traffic.size());
+			}
+			if (alertEngine != null) {
+				trace.begin(PollStage.ALERTS);
+				alertEngine.evaluate(now, traffic, arena.getSubnetTotals());
+				trace.end(traffic.size());
+			}
+			if (exporter != null) {
+				trace.begin(PollStage.EXPORT);
+				exporter.counters(name).add(now, traffic);
+				trace.end(traffic.size());
+			}
+			if (dbClient != null && (traffic.getWrittenCount() > 0 || !interfaces.isEmpty())) {
+				trace.begin(PollStage.WRITE);
+				trace.end(writeToDatabase(interfaces, now));
+				trace.buffered(arena.getRecords(), arena.getText().length());
+			}
+			if (iterations.incrementAndGet() == 1) {
+				// the time to the first poll shows the start-up cost of a restart
+				log.info(new StringMapMessage().with("event", "first_poll").with("router", name).with("uptime_ms", ManagementFactory.getRuntimeMXBean().getUptime()));
+			}
+			pollSucceeded();
 		} catch (InterruptedException ex) {
 			log.error(ex);
 			Thread.interrupted();
 		} catch (Exception ex) {
-			log.error(ex);
+			pollFailed(ex);
+		} finally {
+			trace.finish();
 		}
 	}
 
 	/**
-	 * Writes traffica data to database.
-	 * @param lanIps list of IPs belonging to local area network (LAN)
-	 * @param traffic the traffic for each IP.
+	 * Logs a failed poll. The first failure is logged with its stack trace; the
+	 * following failures are logged without it, at most one per minute (or
+	 * poll interval), so an unreachable router doesn't flood the log.
+	 *
+	 * @param ex the failure.
 	 */
-	private void writeToDatabase(final Set<String> lanIps, final Map<String, TrafficData> traffic) {
-		final IntervalFunction intervalFn = IntervalFunction.ofExponentialRandomBackoff();
-
-		final RetryConfig retryConfig = RetryConfig.custom()
-				.maxAttempts(maxRetries)
-				.intervalFunction(intervalFn)
-				.build();
+	private void pollFailed(final Exception ex) {
+		if (++consecutiveFailures == 1) {
+			log.error(new StringMapMessage().with("event", "poll_failed").with("router", name).with("error", String.valueOf(ex)), ex);
+		} else if (pollFailures.tryAcquire(System.currentTimeMillis())) {
+			log.warn(pollFailures.message("poll_failed").with("router", name).with("failures", consecutiveFailures).with("error", String.valueOf(ex)));
+		}
+	}
 
-		final Retry retry = Retry.of("dbClient.write", retryConfig);
+	private void pollSucceeded() {
+		if (consecutiveFailures > 0) {
+			log.info(new StringMapMessage().with("event", "poll_recovered").with("router", name).with("failures", consecutiveFailures));
+			consecutiveFailures = 0;
+		}
+	}
 
-		final Runnable runnable = Retry.decorateRunnable(retry, () -> dbClient.write(lanIps, traffic));
-		runnable.run();
+	/**
+	 * Archives the snapshot of the poll. A failure to archive doesn't prevent
+	 * writing the data.
+	 */
+	private void archiveSnapshot() {
+		try {
+			archive.append(snapshot);
+		} catch (IOException | RuntimeException ex) {
+			log.warn(ex);
+		}
 	}
 
 	/**
-	 * Check if the IP belongs to the local area network (LAN).
-	 * @param ip the IP to be checked
-	 * @return if the IP is belonging to the LAN.
+	 * Loads the accounting records into the poll arena and records the fetch latency and outcome in the router health.
+	 * @throws Exception thrown if the records cannot be loaded.
 	 */
-	private boolean isLanIp(String ip) {
-		final IPAddressString ipAddr = new IPAddressString(ip);
-		// @formatter:off
-		return routerSubnets.stream()
-				.filter(subnet -> subnet.contains(ipAddr))
-				.findAny()
-				.isPresent();
-		// @formatter:on
+	private void loadRecords() throws Exception {
+		final long start = System.nanoTime();
+		try {
+			accountingClient.loadRecords(arena);
+			health.recordSuccess(elapsedMillis(start), System.currentTimeMillis());
+		} catch (InterruptedException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			health.recordFailure(elapsedMillis(start), System.currentTimeMillis());
+			throw ex;
+		}
+	}
+
+	private static long elapsedMillis(final long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
 	}
 
 	/**
-	 * Creates a traffic data based on the maps with bytes and packets sent/received for each IP address.
-	 * @param ip the IP address
-	 * @param bytesSent map with bytes sent by each IP address.
-	 * @param bytesReceived map with bytes received by each IP address.
-	 * @param packetsSent map with packets sent by each IP address.
-	 * @param packetsReceived map with packets received by each IP address.
-	 * @return new traffic data object.
+	 * Reads the interface and queue counters and converts them to deltas since the previous poll.
+	 * A failure to read the counters doesn't prevent writing the accounting data.
+	 * @return the deltas of the interface and queue counters.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
 	 */
-	private TrafficData createTrafficData(String ip, final Map<String, Long> bytesSent, final Map<String, Long> bytesReceived, final Map<String, Long> packetsSent,
-			final Map<String, Long> packetsReceived) {
-		// @formatter:off
-		return TrafficData.builder()
-				.bytesSent(bytesSent.getOrDefault(ip, DEFAULT_VALUE))
-				.packetsSent(packetsSent.getOrDefault(ip, DEFAULT_VALUE))
-				.bytesReceived(bytesReceived.getOrDefault(ip, DEFAULT_VALUE))
-				.packetsReceived(packetsReceived.getOrDefault(ip, DEFAULT_VALUE))
-				.build();
-		// @formatter:on
+	private List<InterfaceCounters> loadInterfaceCounters() throws InterruptedException {
+		if (interfaceSource == null) {
+			return Collections.emptyList();
+		}
+		try {
+			return interfaceTracker.update(interfaceSource.loadInterfaceCounters());
+		} catch (InterruptedException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			log.warn(ex);
+			return Collections.emptyList();
+		}
 	}
 
 	/**
-	 * Creates a BiFunction that adds <tt>value</tt> to a map value for IP address.
-	 * @param value the value to be added
-	 * @return the BiFunction to be used with map.compute(...)
+	 * Writes the traffic data of the poll arena to database. The points have the timestamp of the poll and every batch is retried on its own,
+	 * so a retried batch overwrites the points written by a failed attempt instead of duplicating them.
+	 * @param interfaces the interface and queue counters.
+	 * @param timestamp the timestamp of the poll.
+	 * @return the number of written points.
+	 * @throws InfluxDBException thrown if a batch cannot be written, after the other batches are written.
 	 */
-	private BiFunction<String, Long, Long> add(long value) {
-		return (k, oldVal) -> oldVal != null ? oldVal.longValue() : 0 + value;
+	private long writeToDatabase(final List<InterfaceCounters> interfaces, final long timestamp) {
+		final WriteResult result = dbClient.write(arena, interfaces, timestamp, retry);
+		writtenBatches.addAndGet(result.getBatches());
+		retriedWrites.addAndGet(result.getRetries());
+		failedBatches.addAndGet(result.getFailedBatches());
+		if (result.getFailedBatches() > 0) {
+			throw new InfluxDBException(String.format(FAILED_BATCHES_MSG, result.getFailedBatches(), result.getBatches() + result.getFailedBatches(), result.getFailedPoints(), name), result.getError());
+		}
+		return result.getPoints();
 	}
 
 	/**
@@ -246,16 +375,45 @@ public class TrafficService implements Closeable {
 		} catch (InterruptedException ex) {
 			Thread.interrupted();
 		} finally {
-			dbClient.close();
+			try {
+				if (accountingClient instanceof Closeable) {
+					((Closeable) accountingClient).close();
+				}
+			} catch (IOException ex) {
+				log.warn(ex);
+			} finally {
+				closeArchive();
+				if (dbClient != null) {
+					dbClient.close();
+				}
+			}
+		}
+	}
+
+	private void closeArchive() {
+		if (archive != null) {
+			try {
+				archive.close();
+			} catch (IOException ex) {
+				log.warn(ex);
+			}
 		}
 	}
 
+	/**
+	 * Checks if a poll is running, also after the service is stopped if the poll didn't finish within the stop timeout.
+	 * @return <tt>true</tt> if a poll is running.
+	 */
+	public boolean isPollRunning() {
+		return poll != null && poll.isRunning();
+	}
+
 	/**
 	 * Gets the number of record written to the database with this service.
 	 * @return  number of record written to the database with this service.
 	 */
 	public long getRecordsCount() {
-		return dbClient.getRecordsCount();
+		return dbClient != null ? dbClient.getRecordsCount() : 0L;
 	}
 
 	/**
@@ -265,4 +423,93 @@ public class TrafficService implements Closeable {
 	public long getIterationsCount() {
 		return iterations.get();
 	}
+
+	/**
+	 * Number of batches written to the database.
+	 * @return number of written batches.
+	 */
+	public long getWrittenBatchesCount() {
+		return writtenBatches.get();
+	}
+
+	/**
+	 * Number of repeated write attempts of batches. A repeated attempt overwrites the points of the failed one, so it never duplicates points.
+	 * @return number of retried writes.
+	 */
+	public long getRetriedWritesCount() {
+		return retriedWrites.get();
+	}
+
+	/**
+	 * Number of batches not written to the database after all attempts.
+	 * @return number of failed batches.
+	 */
+	public long getFailedBatchesCount() {
+		return failedBatches.get();
+	}
+
+	/**
+	 * Number of polls skipped because the poll guard didn't allow them.
+	 * @return number of skipped polls.
+	 */
+	public long getGuardedPollsCount() {
+		return guardedPolls.get();
+	}
+
+	/**
+	 * Number of accounting page bytes transferred from the router, before decompression.
+	 * @return number of transferred bytes or <tt>0</tt> if the accounting source doesn't fetch a page.
+	 */
+	public long getTransferredBytes() {
+		return accountingClient instanceof AccountingClient ? ((AccountingClient) accountingClient).getTransferredBytes() : 0L;
+	}
+
+	/**
+	 * Number of accounting page bytes after decompression.
+	 * @return number of decoded bytes or <tt>0</tt> if the accounting source doesn't fetch a page.
+	 */
+	public long getDecodedBytes() {
+		return accountingClient instanceof AccountingClient ? ((AccountingClient) accountingClient).getDecodedBytes() : 0L;
+	}
+
+	/**
+	 * Gets the traffic of the latest poll. The snapshot is immutable and replaced after every poll, so it can be read by any thread without locking.
+	 * @return the latest snapshot or {@link TrafficSnapshot#EMPTY} if the router has not been polled yet.
+	 */
+	public TrafficSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Gets the health of the router: rolling fetch latency percentiles, error rate and schedule.
+	 * @return the router status.
+	 */
+	public RouterStatus getStatus() {
+		return health.getStatus();
+	}
+
+	/**
+	 * Gets the state of the poll pipeline: the running stage, the durations of the stages of the last poll and the write counters.
+	 * The state is read without stopping the polls and without touching the poll buffers, so the values may come from different moments of a running poll.
+	 * @return the pipeline state.
+	 */
+	public PipelineState getPipelineState() {
+		final PollStage stage = trace.getStage();
+		// @formatter:off
+		return PipelineState.builder()
+				.router(name)
+				.polling(trace.isPolling())
+				.stage(stage != null ? stage.name().toLowerCase(Locale.ROOT) : null)
+				.stageMillis(trace.getStageMillis())
+				.lastPollMillis(trace.getLastPollMillis())
+				.lastStageMillis(trace.getLastStageMillis())
+				.records(trace.getRecords())
+				.spoolBytes(trace.getSpoolBytes())
+				.writtenBatches(writtenBatches.get())
+				.retriedWrites(retriedWrites.get())
+				.failedBatches(failedBatches.get())
+				.degraded(health.isDegraded())
+				.build();
+		// @formatter:on
+	}
 }
@@ -0,0 +1,213 @@
+package com.a9ski.mikrotik;
+
+import java.io.IOException;
+import java.net.URI;
+
+import com.a9ski.mikrotik.accounting.AccountingClient;
+import com.a9ski.mikrotik.accounting.AccountingSource;
+import com.a9ski.mikrotik.accounting.InterfaceCountersSource;
+import com.a9ski.mikrotik.alerting.AlertNotifier;
+import com.a9ski.mikrotik.alerting.AlertRules;
+import com.a9ski.mikrotik.archive.ArchiveWriter;
+import com.a9ski.mikrotik.arena.Ipv6Rollup;
+import com.a9ski.mikrotik.cluster.PollGuard;
+import com.a9ski.mikrotik.config.DatabaseConfig;
+import com.a9ski.mikrotik.config.RouterConfig;
+import com.a9ski.mikrotik.enrichment.HostEnricher;
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+import com.a9ski.mikrotik.incremental.IncrementalFilter;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+import com.a9ski.mikrotik.influxdb.WriteScheduler;
+import com.a9ski.mikrotik.loadgen.CapturingAccountingClient;
+import com.a9ski.mikrotik.matrix.TrafficMatrixServer;
+import com.a9ski.mikrotik.prometheus.PrometheusExporter;
+import com.a9ski.mikrotik.routeros.RouterOsApiClient;
+
+import inet.ipaddr.AddressStringException;
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * Creates the traffic service of a router from its configuration.
+ *
+ */
+public class TrafficServiceFactory {
+	private final PollScheduler scheduler;
+	private final PrometheusExporter exporter;
+	private final AlertNotifier notifier;
+	private final PollGuard pollGuard;
+	private final WriteScheduler writeScheduler;
+	private final TrafficMatrixServer matrixServer;
+
+	/**
+	 * Creates a new factory. All parameters are optional.
+	 *
+	 * @param scheduler      the scheduler shared by all services or
+	 *                       <tt>null</tt> to give every service its own poll
+	 *                       thread.
+	 * @param exporter       the Prometheus exporter receiving the counters of
+	 *                       all services or <tt>null</tt>. With an exporter the
+	 *                       database of a router is optional.
+	 * @param notifier       the receiver of the alerts of all services or
+	 *                       <tt>null</tt> to disable the alerts.
+	 * @param pollGuard      the guard checked before every poll of all services
+	 *                       (cluster mode) or <tt>null</tt>.
+	 * @param writeScheduler the scheduler limiting the database writes of all
+	 *                       services or <tt>null</tt>.
+	 * @param matrixServer   the server of the traffic matrices of all services
+	 *                       or <tt>null</tt> to disable the traffic matrix.
+	 */
+	@Builder
+	public TrafficServiceFactory(final PollScheduler scheduler, final PrometheusExporter exporter, final AlertNotifier notifier, final PollGuard pollGuard,
+			final WriteScheduler writeScheduler, final TrafficMatrixServer matrixServer) {
+		this.matrixServer = matrixServer;
+		this.writeScheduler = writeScheduler;
+		this.scheduler = scheduler;
+		this.exporter = exporter;
+		this.notifier = notifier;
+		this.pollGuard = pollGuard;
+	}
+
+	/**
+	 * Creates a new traffic service. The service doesn't poll until it is
+	 * started with {@link TrafficService#start()}, so the previous service of
+	 * the router can be stopped first.
+	 *
+	 * @param config the router configuration.
+	 * @return the traffic service, not started yet.
+	 * @throws ConfigurationException thrown if the configuration is invalid.
+	 * @throws AddressStringException thrown if there is invalid subnet.
+	 * @throws IOException            thrown if the capture directory cannot be
+	 *                                created.
+	 */
+	public TrafficService create(@NonNull final RouterConfig config) throws ConfigurationException, AddressStringException, IOException {
+		final SubnetMatcher subnets = SubnetMatcher.compile(config.getSubnets());
+		final AccountingSource accountingSource = createAccountingSource(config);
+		final DatabaseConfig db = config.getDatabase();
+		// @formatter:off
+		return TrafficService.builder()
+				.accountingClient(accountingSource)
+				.subnetMatcher(subnets)
+				.dbClient(db != null ? createDbClient(config) : null)
+				.exporter(exporter)
+				.interfaceSource(config.isInterfaces() ? (InterfaceCountersSource) accountingSource : null)
+				.incrementalFilter(config.isIncremental() ? new IncrementalFilter(config.getHeartbeat(), config.getForgetAfter()) : null)
+				.rollup(config.getIpv6Rollup() > 0 || config.getIpv6Mapping() != null ? new Ipv6Rollup(subnets, config.getIpv6Rollup(), config.getIpv6Mapping()) : null)
+				.alertRules(AlertRules.builder()
+						.ipRate(config.getAlertIpRate())
+						.subnetRate(config.getAlertSubnetRate())
+						.anomalySigma(config.getAlertAnomaly())
+						.build())
+				.notifier(notifier)
+				.archive(config.getArchiveDir() != null ? new ArchiveWriter(config.getArchiveDir().resolve(config.getName()), config.getName()) : null)
+				.matrix(matrixServer != null ? matrixServer.matrix(config.getName()) : null)
+				.pollGuard(pollGuard)
+				.scheduler(scheduler)
+				.name(config.getName())
+				.latencySlo(config.getLatencySlo())
+				.sleepTime(config.getInterval())
+				.maxRetries(TrafficService.MAX_RETRIES)
+				.deferStart(true)
+				.build();
+		// @formatter:on
+	}
+
+	/**
+	 * Releases the state kept for a removed router across its services (its
+	 * traffic matrix).
+	 *
+	 * @param name the name of the router.
+	 */
+	public void release(@NonNull final String name) {
+		if (matrixServer != null) {
+			matrixServer.remove(name);
+		}
+	}
+
+	/**
+	 * Creates the database client of a router.
+	 *
+	 * @param config the router configuration.
+	 * @return new database client.
+	 */
+	private InfluxDbClient createDbClient(final RouterConfig config) {
+		final DatabaseConfig db = config.getDatabase();
+		final InfluxDbClient client = new InfluxDbClient(db.getUrl(), db.getUser(), db.getPassword(), db.getName(), config.getHost());
+		if (config.getHostsFile() != null) {
+			client.setHostEnricher(new HostEnricher(config.getHostsFile(), HostEnricher.DEFAULT_REFRESH_INTERVAL, config.getHostsTtl(), HostEnricher.DEFAULT_MAX_SIZE));
+		}
+		if (writeScheduler != null && writeScheduler.isLimited()) {
+			// the WAN points are dropped if they cannot be written within half of the interval
+			client.setWriteScheduler(writeScheduler, config.getInterval() / 2);
+		}
+		return client;
+	}
+
+	/**
+	 * Validates the router configuration without starting a service.
+	 *
+	 * @param config the router configuration.
+	 * @throws ConfigurationException thrown if the configuration is invalid.
+	 */
+	public void validate(@NonNull final RouterConfig config) throws ConfigurationException {
+		if (config.getHost() == null || config.getHost().isBlank()) {
+			throw new ConfigurationException(String.format("Missing host of router '%s'", config.getName()));
+		}
+		if (config.getDatabase() == null && exporter == null) {
+			throw new ConfigurationException(String.format("Missing database of router '%s'", config.getName()));
+		}
+		if (config.getInterval() < 1) {
+			throw new ConfigurationException(String.format("Invalid interval of router '%s'. Expected positive value", config.getName()));
+		}
+		if (config.getIpv6Rollup() < 0 || config.getIpv6Rollup() > 128) {
+			throw new ConfigurationException(String.format("Invalid IPv6 rollup prefix length of router '%s'. Expected value between 0 and 128", config.getName()));
+		}
+		if (config.getHostsTtl() < 1) {
+			throw new ConfigurationException(String.format("Invalid hosts TTL of router '%s'. Expected positive value", config.getName()));
+		}
+		if (config.getAlertIpRate() < 0 || config.getAlertSubnetRate() < 0 || config.getAlertAnomaly() < 0) {
+			throw new ConfigurationException(String.format("Invalid alert rule of router '%s'. Expected non-negative value", config.getName()));
+		}
+		if (!RouterConfig.SOURCE_HTTP.equals(config.getSource()) && !RouterConfig.SOURCE_API.equals(config.getSource())) {
+			throw new ConfigurationException(String.format("Unknown accounting source '%s'. Expected 'http' or 'api'", config.getSource()));
+		}
+		if (RouterConfig.SOURCE_API.equals(config.getSource()) && config.getUser() == null) {
+			throw new ConfigurationException(String.format("The RouterOS API source of router '%s' requires a user", config.getName()));
+		}
+		try {
+			SubnetMatcher.compile(config.getSubnets());
+		} catch (final AddressStringException | IllegalArgumentException ex) {
+			throw new ConfigurationException(String.format("Invalid subnets of router '%s': %s", config.getName(), ex.getMessage()), ex);
+		}
+	}
+
+	/**
+	 * Creates the accounting source of a router.
+	 *
+	 * @param config the router configuration.
+	 * @return new accounting source.
+	 * @throws ConfigurationException thrown if the configuration is invalid.
+	 * @throws IOException            thrown if the capture directory cannot be
+	 *                                created.
+	 */
+	protected AccountingSource createAccountingSource(final RouterConfig config) throws ConfigurationException, IOException {
+		switch (config.getSource()) {
+		case RouterConfig.SOURCE_HTTP:
+			final URI uri = URI.create(String.format("http://%s/accounting/ip.cgi", config.getHost()));
+			if (config.getCaptureDir() != null) {
+				return new CapturingAccountingClient(uri, config.getCaptureDir(), config.getUser(), config.getPassword());
+			}
+			return new AccountingClient(uri, config.getUser(), config.getPassword());
+		case RouterConfig.SOURCE_API:
+			if (config.getUser() == null) {
+				throw new ConfigurationException(String.format("The RouterOS API source of router '%s' requires a user", config.getName()));
+			}
+			if (config.getCaptureDir() != null) {
+				throw new ConfigurationException("Capturing is supported only for the 'http' source");
+			}
+			return new RouterOsApiClient(config.getHost(), config.getApiPort(), config.getUser(), config.getPassword());
+		default:
+			throw new ConfigurationException(String.format("Unknown accounting source '%s'. Expected 'http' or 'api'", config.getSource()));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.a9ski.mikrotik;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.accounting.parsers.LineParser;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.arena.TrafficSnapshot;
+import com.a9ski.mikrotik.arena.TrafficTable;
+import com.a9ski.mikrotik.influxdb.LineProtocolFormatter;
+import com.a9ski.mikrotik.loadgen.SyntheticSnapshotSource;
+
+import inet.ipaddr.AddressStringException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Synthetic warm-up of the poll path, run before the first poll of a fast
+ * start. A restarted service would otherwise run its first polls in the
+ * interpreter, while the accounting buffer of the router keeps filling. The
+ * warm-up runs the hot code of a poll on synthetic accounting pages (IPv4 and
+ * IPv6 lines) until the JIT compiler has compiled it: the body parser and the
+ * {@link LineParser} with the aggregation into the traffic table, the
+ * LAN/WAN classification, the snapshot and the line protocol formatting of the
+ * database write. Nothing is sent over the network.
+ * <p>
+ * The warm-up is also the training run of the class data sharing archive built
+ * by the <tt>cds</tt> profile: it loads the classes of the poll path, so the
+ * archive contains them.
+ *
+ */
+@Log4j2
+public final class WarmUp {
+	/**
+	 * Default number of synthetic polls.
+	 */
+	public static final int DEFAULT_POLLS = 200;
+	/**
+	 * Default maximal duration of the warm-up in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_TIME = 5_000L;
+
+	private static final int RECORDS = 5_000;
+	private static final int IPV6_RECORDS = 250;
+	private static final int BODIES = 4;
+	private static final String IPV6_LAN = "fd00:a9::/64";
+
+	// keeps the results of the warm-up alive, so the JIT compiler cannot drop
+	// the warmed up code as dead
+	private static volatile long sink;
+
+	private WarmUp() {
+	}
+
+	/**
+	 * Runs the warm-up.
+	 *
+	 * @param polls   number of synthetic polls.
+	 * @param maxTime maximal duration of the warm-up in milliseconds; the
+	 *                warm-up stops earlier on a slow machine.
+	 * @return number of synthetic polls run.
+	 */
+	public static int run(final int polls, final long maxTime) {
+		if (polls < 0 || maxTime < 0) {
+			throw new IllegalArgumentException("Invalid warm-up polls or time. Expected non-negative value");
+		}
+		final long start = System.nanoTime();
+		// @formatter:off
+		final SyntheticSnapshotSource source = SyntheticSnapshotSource.builder()
+				.routerIndex(0)
+				.recordsPerPoll(RECORDS)
+				.lanHosts(500)
+				.wanPeers(5_000)
+				.zipfExponent(1.1)
+				.wanChurn(0.1)
+				.seed(start)
+				.build();
+		// @formatter:on
+		final SubnetMatcher lan;
+		try {
+			lan = SubnetMatcher.compile(Arrays.asList(source.getLanSubnet(), IPV6_LAN));
+		} catch (final AddressStringException ex) {
+			throw new IllegalStateException(ex);
+		}
+		final byte[][] bodies = new byte[BODIES][];
+		for (int i = 0; i < BODIES; i++) {
+			bodies[i] = body(source, i);
+		}
+
+		final PollArena arena = new PollArena();
+		final PollArena recordArena = new PollArena();
+		final LineParser lineParser = new LineParser();
+		long result = 0;
+		int poll = 0;
+		final LineProtocolFormatter formatter = new LineProtocolFormatter("warm-up");
+		final long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxTime);
+		for (; poll < polls && System.nanoTime() < deadline; poll++) {
+			final byte[] body = bodies[poll % BODIES];
+			result += poll(arena, body, lan, formatter);
+			result += parseLines(recordArena, lineParser, body, lan);
+		}
+		sink = result;
+		log.info(String.format("Warm-up of %d synthetic polls of %d records took %d ms", poll, RECORDS + IPV6_RECORDS, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+		return poll;
+	}
+
+	private static byte[] body(final SyntheticSnapshotSource source, final int index) {
+		final StringBuilder body = new StringBuilder(source.nextSnapshot());
+		for (int i = 0; i < IPV6_RECORDS; i++) {
+			body.append("fd00:a9::").append(Integer.toHexString(i % 64 + 1)).append(" 2001:db8:").append(Integer.toHexString(index)).append("::").append(Integer.toHexString(i + 1));
+			body.append(' ').append(1000 + i).append(' ').append(1 + i % 10).append(" * *\n");
+		}
+		return body.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Runs the poll path of the body parser.
+	 */
+	private static long poll(final PollArena arena, final byte[] body, final SubnetMatcher lan, final LineProtocolFormatter formatter) {
+		final long now = System.currentTimeMillis();
+		arena.reset();
+		try {
+			arena.readBody(new ByteArrayInputStream(body));
+		} catch (final IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		arena.parseBody();
+		final TrafficTable traffic = arena.getTraffic();
+		lan.classify(traffic, arena.getSubnetTotals());
+		final TrafficSnapshot snapshot = TrafficSnapshot.of(now, traffic);
+		final StringBuilder text = arena.getText();
+		text.setLength(0);
+		final int points = formatter.appendPoints(text, now, traffic, Collections.emptyList()) + formatter.appendPoints(text, now, arena.getSubnetTotals());
+		return points + snapshot.size() + text.length();
+	}
+
+	/**
+	 * Runs the path of the line parser, aggregating the records like the
+	 * accounting sources without a raw body.
+	 */
+	private static long parseLines(final PollArena arena, final LineParser lineParser, final byte[] body, final SubnetMatcher lan) {
+		arena.reset();
+		new String(body, StandardCharsets.US_ASCII).lines().forEach(line -> {
+			final AccountingRecord record = lineParser.tryParse(line);
+			if (record != null) {
+				arena.addRecord(record.getSourceIp(), record.getDestinationIp(), record.getByteCount(), record.getPacketCount());
+			}
+		});
+		lan.classify(arena.getTraffic(), arena.getSubnetTotals());
+		return arena.getRecords();
+	}
+}
@@ -1,6 +1,9 @@
 package com.a9ski.mikrotik.accounting;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpClient.Redirect;
@@ -8,14 +11,29 @@ import java.net.http.HttpClient.Version;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import com.a9ski.mikrotik.accounting.ContentDecoder.CountingInputStream;
 import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
 import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.accounting.parsers.JsonArrayParser;
 import com.a9ski.mikrotik.accounting.parsers.LineParser;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.model.InterfaceCounters;
 
 import lombok.NonNull;
 
@@ -23,10 +41,19 @@ import lombok.NonNull;
  * @author Kiril Arabadzhiyski
  *
  */
-public class AccountingClient {
+public class AccountingClient implements AccountingSource, InterfaceCountersSource {
 	private static final String INVALID_ERROR_CODE_MSG = "Error listing accounting records. Received http status code %d";
+	private static final String INVALID_REST_ERROR_CODE_MSG = "Error reading %s. Received http status code %d";
+	private static final String INTERFACE_PROPERTIES = "name,rx-byte,tx-byte,rx-packet,tx-packet,rx-drop,tx-drop";
+	private static final String QUEUE_PROPERTIES = "name,bytes,packets,dropped";
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+	private static final String CONTENT_ENCODING = "Content-Encoding";
 
 	private final URI uri;
+	private final String authorization;
+	private final AtomicLong transferredBytes = new AtomicLong();
+	private final AtomicLong decodedBytes = new AtomicLong();
+	private volatile HttpClient httpClient;
 
 	/**
 	 * Creates new MikroTik accounting client. It retrieves information from
@@ -54,7 +81,39 @@ public class AccountingClient {
 	 *      manual: IP/Accounting</a>
 	 */
 	public AccountingClient(final URI routerUri) {
+		this(routerUri, null, null);
+	}
+
+	/**
+	 * Creates new MikroTik accounting client, which is also able to read the
+	 * interface and queue counters through the
+	 * <a href="https://help.mikrotik.com/docs/display/ROS/REST+API">RouterOS REST
+	 * API</a> (RouterOS 7.1+). The REST API shares the HTTP connection with the
+	 * accounting page.
+	 *
+	 * @param routerUri the URI of the Mikrotik accounting page. Usually this is
+	 *                  <tt>http://routerIP/accounting/ip.cgi</tt>
+	 * @param user      the REST API user or <tt>null</tt> if no authentication
+	 *                  is required.
+	 * @param password  the REST API password.
+	 */
+	public AccountingClient(final URI routerUri, final String user, final String password) {
 		this.uri = routerUri;
+		if (user != null) {
+			final String credentials = user + ":" + (password != null ? password : "");
+			this.authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+		} else {
+			this.authorization = null;
+		}
+	}
+
+	/**
+	 * Gets the URI of the accounting page.
+	 *
+	 * @return the URI of the accounting page.
+	 */
+	public URI getUri() {
+		return uri;
 	}
 
 	/**
@@ -74,7 +133,28 @@ public class AccountingClient {
 	}
 
 	/**
-	 * Creates a new HTTP request for the <tt>uri</tt>
+	 * Gets the HTTP client shared by all requests of this accounting client, so
+	 * the connection to the router is reused between the polls.
+	 *
+	 * @return the HTTP client.
+	 */
+	protected HttpClient getHttpClient() {
+		HttpClient client = httpClient;
+		if (client == null) {
+			synchronized (this) {
+				client = httpClient;
+				if (client == null) {
+					client = createHttpClient();
+					httpClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Creates a new HTTP request for the <tt>uri</tt>. The request accepts
+	 * compressed bodies, which are sent by compressing proxies and relays.
 	 *
 	 * @return new HTTP request.
 	 */
@@ -82,7 +162,9 @@ public class AccountingClient {
 		// @formatter:off
 		final HttpRequest request = HttpRequest.newBuilder()
 				.uri(this.uri)
+				.timeout(REQUEST_TIMEOUT)
 				.header("Content-Type", "text/plain")
+				.header("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING)
 				.GET()
 				.build();
 		return request;
@@ -108,18 +190,222 @@ public class AccountingClient {
 	 * @throws IOException          thrown if a communication error occurs.
 	 * @throws InterruptedException thrown if the current thread is interrupted.
 	 */
+	@Override
 	public List<AccountingRecord> loadRecords() throws AccountingException, InterruptedException, IOException {
+		return parseBody(loadBody());
+	}
+
+	/**
+	 * Retrieves the
+	 * <a href="https://wiki.mikrotik.com/wiki/Manual:IP/Accounting">Mirkotik
+	 * accounting page</a> into the body buffer of the arena and aggregates it
+	 * without creating strings or records.
+	 *
+	 * @param arena the poll arena of the router.
+	 * @throws AccountingException  thrown if the router responds with an error.
+	 * @throws IOException          thrown if a communication error occurs.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
+	 */
+	@Override
+	public void loadRecords(final PollArena arena) throws AccountingException, InterruptedException, IOException {
+		loadBody(arena);
+		arena.parseBody();
+	}
+
+	/**
+	 * Retrieves the raw content of the
+	 * <a href="https://wiki.mikrotik.com/wiki/Manual:IP/Accounting">Mirkotik
+	 * accounting page</a> into the body buffer of the arena.
+	 *
+	 * @param arena the poll arena of the router.
+	 * @throws AccountingException  thrown if the router responds with an error.
+	 * @throws IOException          thrown if a communication error occurs.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
+	 */
+	protected void loadBody(final PollArena arena) throws AccountingException, InterruptedException, IOException {
+		final HttpResponse<InputStream> response = getHttpClient().send(createHttpRequest(), BodyHandlers.ofInputStream());
+		try (CountingInputStream raw = new CountingInputStream(response.body())) {
+			if (response.statusCode() != 200) {
+				throw new AccountingException(String.format(INVALID_ERROR_CODE_MSG, response.statusCode()));
+			}
+			// the body is decompressed while it is received
+			try (InputStream in = ContentDecoder.decode(response.headers().firstValue(CONTENT_ENCODING).orElse(null), raw)) {
+				arena.readBody(in);
+			}
+			transferredBytes.addAndGet(raw.getCount());
+			decodedBytes.addAndGet(arena.getBodyLength());
+		}
+	}
+
+	/**
+	 * Retrieves the raw content of the
+	 * <a href="https://wiki.mikrotik.com/wiki/Manual:IP/Accounting">Mirkotik
+	 * accounting page</a>.
+	 *
+	 * @return the response body.
+	 * @throws AccountingException  thrown if the router responds with an error.
+	 * @throws IOException          thrown if a communication error occurs.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
+	 */
+	protected String loadBody() throws AccountingException, InterruptedException, IOException {
 		//@formatter:off
 		final HttpRequest request = createHttpRequest();
-		final HttpClient client = createHttpClient();
-		final HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+		final HttpClient client = getHttpClient();
+		final HttpResponse<String> response = client.send(request, this::decodingBodyHandler);
 		//@formatter:on
 
 		if (response.statusCode() != 200) {
 			throw new AccountingException(String.format(INVALID_ERROR_CODE_MSG, response.statusCode()));
 		}
 
-		return parseBody(response.body());
+		return response.body();
+	}
+
+	/**
+	 * Body handler decoding a possibly compressed body into a string.
+	 *
+	 * @param info the response info.
+	 * @return the body subscriber.
+	 */
+	private BodySubscriber<String> decodingBodyHandler(final ResponseInfo info) {
+		final String encoding = info.headers().firstValue(CONTENT_ENCODING).orElse(null);
+		return BodySubscribers.mapping(BodySubscribers.ofByteArray(), raw -> {
+			try (InputStream in = ContentDecoder.decode(encoding, new ByteArrayInputStream(raw))) {
+				final byte[] body = in.readAllBytes();
+				transferredBytes.addAndGet(raw.length);
+				decodedBytes.addAndGet(body.length);
+				return new String(body, StandardCharsets.UTF_8);
+			} catch (final IOException ex) {
+				throw new UncheckedIOException(ex);
+			} catch (final AccountingException ex) {
+				throw new UncheckedIOException(new IOException(ex.getMessage(), ex));
+			}
+		});
+	}
+
+	/**
+	 * Number of accounting page bytes transferred from the router, before
+	 * decompression.
+	 *
+	 * @return number of transferred bytes.
+	 */
+	public long getTransferredBytes() {
+		return transferredBytes.get();
+	}
+
+	/**
+	 * Number of accounting page bytes after decompression.
+	 *
+	 * @return number of decoded bytes.
+	 */
+	public long getDecodedBytes() {
+		return decodedBytes.get();
+	}
+
+	/**
+	 * Reads the interface and simple queue counters through the RouterOS REST
+	 * API. Both resources are requested concurrently over the shared HTTP client.
+	 *
+	 * @return list of cumulative counters.
+	 * @throws AccountingException  thrown if the router responds with an error.
+	 * @throws IOException          thrown if a communication error occurs.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
+	 */
+	@Override
+	public List<InterfaceCounters> loadInterfaceCounters() throws AccountingException, InterruptedException, IOException {
+		final HttpClient client = getHttpClient();
+		final CompletableFuture<HttpResponse<String>> interfaces = client.sendAsync(createRestRequest("interface", INTERFACE_PROPERTIES), BodyHandlers.ofString());
+		final CompletableFuture<HttpResponse<String>> queues = client.sendAsync(createRestRequest("queue/simple", QUEUE_PROPERTIES), BodyHandlers.ofString());
+
+		final JsonArrayParser parser = new JsonArrayParser();
+		final List<InterfaceCounters> counters = new ArrayList<>();
+		for (final Map<String, String> item : parser.parse(restBody("interface", interfaces))) {
+			// @formatter:off
+			counters.add(InterfaceCounters.builder()
+					.name(item.get("name"))
+					.rxBytes(parseCounter(item.get("rx-byte")))
+					.txBytes(parseCounter(item.get("tx-byte")))
+					.rxPackets(parseCounter(item.get("rx-packet")))
+					.txPackets(parseCounter(item.get("tx-packet")))
+					.rxDrops(parseCounter(item.get("rx-drop")))
+					.txDrops(parseCounter(item.get("tx-drop")))
+					.build());
+			// @formatter:on
+		}
+		for (final Map<String, String> item : parser.parse(restBody("queue/simple", queues))) {
+			final String[] bytes = splitUpDown(item.get("bytes"));
+			final String[] packets = splitUpDown(item.get("packets"));
+			final String[] dropped = splitUpDown(item.get("dropped"));
+			// @formatter:off
+			counters.add(InterfaceCounters.builder()
+					.name(item.get("name"))
+					.type(InterfaceCounters.Type.QUEUE)
+					.txBytes(parseCounter(bytes[0]))
+					.rxBytes(parseCounter(bytes[1]))
+					.txPackets(parseCounter(packets[0]))
+					.rxPackets(parseCounter(packets[1]))
+					.txDrops(parseCounter(dropped[0]))
+					.rxDrops(parseCounter(dropped[1]))
+					.build());
+			// @formatter:on
+		}
+		return counters;
+	}
+
+	/**
+	 * Creates a new HTTP request for a RouterOS REST API resource.
+	 *
+	 * @param resource   the resource path (e.g. <tt>interface</tt>)
+	 * @param properties comma separated list of the requested properties.
+	 * @return new HTTP request.
+	 */
+	protected HttpRequest createRestRequest(final String resource, final String properties) {
+		// @formatter:off
+		final HttpRequest.Builder builder = HttpRequest.newBuilder()
+				.uri(uri.resolve(String.format("/rest/%s?.proplist=%s", resource, properties)))
+				.timeout(REQUEST_TIMEOUT)
+				.header("Accept", "application/json")
+				.GET();
+		// @formatter:on
+		if (authorization != null) {
+			builder.header("Authorization", authorization);
+		}
+		return builder.build();
+	}
+
+	private String restBody(final String resource, final CompletableFuture<HttpResponse<String>> future) throws AccountingException, InterruptedException, IOException {
+		final HttpResponse<String> response;
+		try {
+			response = future.get();
+		} catch (final ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			throw new AccountingException(ex.getCause());
+		}
+		if (response.statusCode() != 200) {
+			throw new AccountingException(String.format(INVALID_REST_ERROR_CODE_MSG, resource, response.statusCode()));
+		}
+		return response.body();
+	}
+
+	private String[] splitUpDown(final String value) {
+		if (value == null) {
+			return new String[2];
+		}
+		final int slash = value.indexOf('/');
+		return slash < 0 ? new String[] { value, null } : new String[] { value.substring(0, slash), value.substring(slash + 1) };
+	}
+
+	private long parseCounter(final String value) throws AccountingException {
+		if (value == null || value.isEmpty()) {
+			return 0L;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (final NumberFormatException ex) {
+			throw new AccountingException(String.format("Invalid counter value '%s'", value), ex);
+		}
 	}
 
 	/**
@@ -129,6 +415,9 @@ public class AccountingClient {
 	 * @return list of accounting records.
 	 */
 	protected List<AccountingRecord> parseBody(final String body) {
+		if (body.isEmpty()) {
+			return Collections.emptyList();
+		}
 		final LineParser lineParser = createLineParser();
 		// @formatter:off
 		return body.lines()
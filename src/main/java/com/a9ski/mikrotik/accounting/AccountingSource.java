@@ -0,0 +1,41 @@
+package com.a9ski.mikrotik.accounting;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.arena.PollArena;
+
+/**
+ * Source of MikroTik accounting records.
+ *
+ */
+public interface AccountingSource {
+	/**
+	 * Takes a new accounting snapshot from the router and returns its records.
+	 *
+	 * @return list of accounting records
+	 * @throws AccountingException  thrown if the accounting data cannot be read.
+	 * @throws IOException          thrown if a communication error occurs.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
+	 */
+	List<AccountingRecord> loadRecords() throws AccountingException, InterruptedException, IOException;
+
+	/**
+	 * Takes a new accounting snapshot from the router and aggregates its records
+	 * into the poll arena. The default implementation aggregates the records
+	 * returned by {@link #loadRecords()}; sources reading a raw accounting page
+	 * override it to parse the page without creating records.
+	 *
+	 * @param arena the poll arena of the router.
+	 * @throws AccountingException  thrown if the accounting data cannot be read.
+	 * @throws IOException          thrown if a communication error occurs.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
+	 */
+	default void loadRecords(final PollArena arena) throws AccountingException, InterruptedException, IOException {
+		for (final AccountingRecord record : loadRecords()) {
+			arena.addRecord(record.getSourceIp(), record.getDestinationIp(), record.getByteCount(), record.getPacketCount());
+		}
+	}
+}
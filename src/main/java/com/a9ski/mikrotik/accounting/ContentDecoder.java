@@ -0,0 +1,157 @@
+package com.a9ski.mikrotik.accounting;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+
+/**
+ * Decodes compressed HTTP response bodies as they are read. RouterOS itself
+ * doesn't compress the accounting page, but a reverse proxy or relay in front
+ * of the router may. Supported are the <tt>gzip</tt> and <tt>deflate</tt>
+ * content encodings (both zlib wrapped and raw deflate) and gzip bodies served
+ * without a content encoding (e.g. a relay serving a <tt>.gz</tt> file).
+ *
+ */
+public final class ContentDecoder {
+	/**
+	 * Value of the <tt>Accept-Encoding</tt> request header.
+	 */
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	private static final String UNSUPPORTED_ENCODING_MSG = "Unsupported content encoding '%s'";
+	private static final int GZIP_MAGIC_1 = 0x1f;
+	private static final int GZIP_MAGIC_2 = 0x8b;
+
+	private ContentDecoder() {
+	}
+
+	/**
+	 * Wraps a response body stream with a decoder for its content encoding.
+	 *
+	 * @param contentEncoding the value of the <tt>Content-Encoding</tt> header
+	 *                        or <tt>null</tt>.
+	 * @param in              the raw response body.
+	 * @return the decoded response body.
+	 * @throws AccountingException thrown if the content encoding is not
+	 *                             supported.
+	 * @throws IOException         thrown if the body cannot be read.
+	 */
+	public static InputStream decode(final String contentEncoding, final InputStream in) throws AccountingException, IOException {
+		final String encoding = contentEncoding != null ? contentEncoding.strip().toLowerCase(Locale.ROOT) : "";
+		switch (encoding) {
+		case "gzip":
+		case "x-gzip":
+			return new GZIPInputStream(in);
+		case "deflate":
+			return inflate(in);
+		case "":
+		case "identity":
+			return sniffGzip(in);
+		default:
+			throw new AccountingException(String.format(UNSUPPORTED_ENCODING_MSG, contentEncoding));
+		}
+	}
+
+	/**
+	 * Decodes a deflate body. The HTTP specification requires a zlib wrapper,
+	 * but some servers send raw deflate data, so the first byte is inspected.
+	 * Closing the returned stream ends the inflater.
+	 */
+	private static InputStream inflate(final InputStream in) throws IOException {
+		final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		final int cmf = pushback.read();
+		final int flg = pushback.read();
+		if (flg >= 0) {
+			pushback.unread(flg);
+		}
+		if (cmf >= 0) {
+			pushback.unread(cmf);
+		}
+		final boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+		return new InflaterInputStream(pushback, new Inflater(!zlib)) {
+			@Override
+			public void close() throws IOException {
+				// the stream ends only its default inflater, release the native memory of this one
+				try {
+					super.close();
+				} finally {
+					inf.end();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Decodes a gzip body served without a content encoding. Other bodies are
+	 * returned unchanged.
+	 */
+	private static InputStream sniffGzip(final InputStream in) throws IOException {
+		final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		final int first = pushback.read();
+		final int second = first >= 0 ? pushback.read() : -1;
+		if (second >= 0) {
+			pushback.unread(second);
+		}
+		if (first >= 0) {
+			pushback.unread(first);
+		}
+		return first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2 ? new GZIPInputStream(pushback) : pushback;
+	}
+
+	/**
+	 * Input stream counting the bytes read from the underlying stream.
+	 */
+	public static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		/**
+		 * Creates a new counting stream.
+		 *
+		 * @param in the underlying stream.
+		 */
+		public CountingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		/**
+		 * Number of bytes read.
+		 *
+		 * @return number of bytes read.
+		 */
+		public long getCount() {
+			return count;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.a9ski.mikrotik.accounting;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+import com.a9ski.mikrotik.model.InterfaceCounters;
+
+/**
+ * Source of the cumulative interface and queue counters of a router.
+ *
+ */
+public interface InterfaceCountersSource {
+	/**
+	 * Reads the counters of all router interfaces and simple queues.
+	 *
+	 * @return list of cumulative counters.
+	 * @throws AccountingException  thrown if the counters cannot be read.
+	 * @throws IOException          thrown if a communication error occurs.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
+	 */
+	List<InterfaceCounters> loadInterfaceCounters() throws AccountingException, InterruptedException, IOException;
+}
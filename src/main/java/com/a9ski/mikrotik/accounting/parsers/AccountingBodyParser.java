@@ -0,0 +1,159 @@
+package com.a9ski.mikrotik.accounting.parsers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.a9ski.mikrotik.arena.Ipv4;
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.Ipv6Rollup;
+import com.a9ski.mikrotik.arena.TrafficTable;
+import com.a9ski.mikrotik.logging.LogLimiter;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Parser of the raw bytes of the MikroTik
+ * <a href="https://wiki.mikrotik.com/wiki/Manual:IP/Accounting">accounting
+ * page</a>. Unlike {@link LineParser} it creates no strings or records: every
+ * line is aggregated directly into a {@link TrafficTable}. Invalid lines are
+ * counted and skipped; a sample of them is logged, at most one per minute. IPv6 addresses are parsed into 128-bit keys (see
+ * {@link Ipv6}) and rolled up by the optional {@link Ipv6Rollup}.
+ * <p>
+ * The parser is not thread safe.
+ *
+ */
+@Log4j2
+public class AccountingBodyParser {
+	private static final LogLimiter BAD_LINES = new LogLimiter(TimeUnit.MINUTES.toMillis(1));
+	private static final int MAX_SAMPLE = 200;
+
+	private final long[] sourceKey = new long[2];
+	private final long[] destinationKey = new long[2];
+	private Ipv6Rollup rollup;
+	private int invalidLines;
+
+	/**
+	 * Sets the rollup of the IPv6 addresses.
+	 *
+	 * @param rollup the rollup or <tt>null</tt> to aggregate every IPv6 address
+	 *               separately.
+	 */
+	public void setRollup(final Ipv6Rollup rollup) {
+		this.rollup = rollup;
+	}
+
+	/**
+	 * Parses the accounting page and adds the traffic of every line to the
+	 * table.
+	 *
+	 * @param body    the body of the accounting page.
+	 * @param length  the length of the body.
+	 * @param traffic the table receiving the traffic.
+	 * @return number of valid lines.
+	 */
+	public int parse(final byte[] body, final int length, final TrafficTable traffic) {
+		int valid = 0;
+		invalidLines = 0;
+		int lineStart = 0;
+		while (lineStart < length) {
+			int lineEnd = lineStart;
+			while (lineEnd < length && body[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			final int first = skipSpaces(body, lineStart, lineEnd);
+			if (first < lineEnd) {
+				if (parseLine(body, first, lineEnd, traffic)) {
+					valid++;
+				} else {
+					invalidLines++;
+					if (BAD_LINES.tryAcquire(System.currentTimeMillis())) {
+						log.warn(BAD_LINES.message("bad_line").with("sample", new String(body, first, Math.min(lineEnd - first, MAX_SAMPLE), StandardCharsets.US_ASCII).strip()));
+					}
+				}
+			}
+			lineStart = lineEnd + 1;
+		}
+		return valid;
+	}
+
+	/**
+	 * Number of invalid lines skipped by the last {@link #parse} call.
+	 *
+	 * @return number of invalid lines.
+	 */
+	public int getInvalidLines() {
+		return invalidLines;
+	}
+
+	/**
+	 * Parses a single line: <tt>source destination bytes packets [users]</tt>.
+	 *
+	 * @return <tt>false</tt> if the line is invalid.
+	 */
+	private boolean parseLine(final byte[] body, final int sourceStart, final int to, final TrafficTable traffic) {
+		final int sourceEnd = skipToken(body, sourceStart, to);
+		final int destinationStart = skipSpaces(body, sourceEnd, to);
+		final int destinationEnd = skipToken(body, destinationStart, to);
+		final int bytesStart = skipSpaces(body, destinationEnd, to);
+		final int bytesEnd = skipToken(body, bytesStart, to);
+		final int packetsStart = skipSpaces(body, bytesEnd, to);
+		final int packetsEnd = skipToken(body, packetsStart, to);
+
+		final long source = Ipv4.parse(body, sourceStart, sourceEnd);
+		final long destination = Ipv4.parse(body, destinationStart, destinationEnd);
+		final long bytes = parseLong(body, bytesStart, bytesEnd);
+		final long packets = parseLong(body, packetsStart, packetsEnd);
+		if (bytes < 0 || packets < 0) {
+			return false;
+		} else if (source != Ipv4.INVALID && destination != Ipv4.INVALID) {
+			traffic.add(source, destination, bytes, packets);
+			return true;
+		} else if (!Ipv6.parse(body, sourceStart, sourceEnd, sourceKey) || !Ipv6.parse(body, destinationStart, destinationEnd, destinationKey)) {
+			return false;
+		}
+		if (rollup != null) {
+			rollup.rollup(sourceKey);
+			rollup.rollup(destinationKey);
+		}
+		traffic.add(sourceKey, destinationKey, bytes, packets);
+		return true;
+	}
+
+	private static boolean isSpace(final byte c) {
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	private static int skipSpaces(final byte[] body, int i, final int to) {
+		while (i < to && isSpace(body[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipToken(final byte[] body, int i, final int to) {
+		while (i < to && !isSpace(body[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Parses a non-negative decimal number.
+	 *
+	 * @return the number or <tt>-1</tt> if it is invalid.
+	 */
+	private static long parseLong(final byte[] body, final int from, final int to) {
+		if (from == to || to - from > 18) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			final int digit = body[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,164 @@
+package com.a9ski.mikrotik.accounting.parsers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.a9ski.mikrotik.accounting.exceptions.IllegalRecordException;
+
+/**
+ * Parser for the responses of the
+ * <a href="https://help.mikrotik.com/docs/display/ROS/REST+API">RouterOS REST
+ * API</a>. The responses are JSON arrays of flat objects, where all values are
+ * strings (numbers, booleans and <tt>null</tt> are accepted as well).
+ *
+ */
+public class JsonArrayParser {
+	private static final String UNEXPECTED_CHAR_MSG = "Unexpected character '%s' at position %d";
+	private static final String UNEXPECTED_END_MSG = "Unexpected end of JSON input";
+
+	private String json;
+	private int pos;
+
+	/**
+	 * Parses a JSON array of flat objects.
+	 *
+	 * @param content the JSON content.
+	 * @return list of objects. Each object is represented as a map of its
+	 *         attributes.
+	 * @throws IllegalRecordException thrown if the content is not a JSON array
+	 *                                of flat objects.
+	 */
+	public List<Map<String, String>> parse(final String content) throws IllegalRecordException {
+		this.json = content;
+		this.pos = 0;
+		final List<Map<String, String>> result = new ArrayList<>();
+		expect('[');
+		if (peek() == ']') {
+			pos++;
+			return result;
+		}
+		while (true) {
+			result.add(parseObject());
+			final char c = next();
+			if (c == ']') {
+				return result;
+			} else if (c != ',') {
+				throw unexpected(c);
+			}
+		}
+	}
+
+	private Map<String, String> parseObject() throws IllegalRecordException {
+		final Map<String, String> object = new LinkedHashMap<>();
+		expect('{');
+		if (peek() == '}') {
+			pos++;
+			return object;
+		}
+		while (true) {
+			expect('"');
+			final String key = parseString();
+			expect(':');
+			object.put(key, parseValue());
+			final char c = next();
+			if (c == '}') {
+				return object;
+			} else if (c != ',') {
+				throw unexpected(c);
+			}
+		}
+	}
+
+	private String parseValue() throws IllegalRecordException {
+		final char c = next();
+		if (c == '"') {
+			return parseString();
+		}
+		final int start = pos - 1;
+		while (pos < json.length() && json.charAt(pos) != ',' && json.charAt(pos) != '}' && !Character.isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+		final String literal = json.substring(start, pos);
+		if (literal.isEmpty() || c == '{' || c == '[') {
+			throw unexpected(c);
+		}
+		return "null".equals(literal) ? null : literal;
+	}
+
+	private String parseString() throws IllegalRecordException {
+		final StringBuilder value = new StringBuilder();
+		while (pos < json.length()) {
+			final char c = json.charAt(pos++);
+			if (c == '"') {
+				return value.toString();
+			} else if (c == '\\') {
+				if (pos >= json.length()) {
+					break;
+				}
+				final char escaped = json.charAt(pos++);
+				switch (escaped) {
+				case 'n':
+					value.append('\n');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'u':
+					if (pos + 4 > json.length()) {
+						throw new IllegalRecordException(UNEXPECTED_END_MSG);
+					}
+					value.append((char) Integer.parseInt(json, pos, pos + 4, 16));
+					pos += 4;
+					break;
+				default:
+					value.append(escaped);
+				}
+			} else {
+				value.append(c);
+			}
+		}
+		throw new IllegalRecordException(UNEXPECTED_END_MSG);
+	}
+
+	private void expect(final char expected) throws IllegalRecordException {
+		final char c = next();
+		if (c != expected) {
+			throw unexpected(c);
+		}
+	}
+
+	private char peek() throws IllegalRecordException {
+		skipWhitespace();
+		if (pos >= json.length()) {
+			throw new IllegalRecordException(UNEXPECTED_END_MSG);
+		}
+		return json.charAt(pos);
+	}
+
+	private char next() throws IllegalRecordException {
+		final char c = peek();
+		pos++;
+		return c;
+	}
+
+	private void skipWhitespace() {
+		while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private IllegalRecordException unexpected(final char c) {
+		return new IllegalRecordException(String.format(UNEXPECTED_CHAR_MSG, c, pos - 1));
+	}
+}
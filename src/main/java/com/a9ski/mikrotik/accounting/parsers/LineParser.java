@@ -1,7 +1,10 @@
 package com.a9ski.mikrotik.accounting.parsers;
 
+import java.util.concurrent.TimeUnit;
+
 import com.a9ski.mikrotik.accounting.exceptions.IllegalRecordException;
 import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.logging.LogLimiter;
 
 import lombok.extern.log4j.Log4j2;
 
@@ -17,6 +20,12 @@ import lombok.extern.log4j.Log4j2;
 public class LineParser {
 	private static final String INVALID_LINE_NOT_A_NUMBER_MSG = "Line with invalid number for field '%s': '%s'";
 	private static final String INVALID_LINE_NOT_ENOUGH_PARAMS_MSG = "Expected line with 4 parametes but found only %d: '%s'";
+	private static final LogLimiter BAD_LINES = new LogLimiter(TimeUnit.MINUTES.toMillis(1));
+	private static final int MAX_SAMPLE = 200;
+	// Long.MAX_VALUE has 19 digits
+	private static final int MAX_DIGITS = 18;
+
+	private long invalidLines;
 
 	/**
 	 * Parses a single line and creates <tt>AccountingRecord</tt>.
@@ -52,19 +61,64 @@ public class LineParser {
 
 	/**
 	 * Parses a single line and creates <tt>AccountingRecord</tt>. If cannot parse
-	 * the line a <tt>null</tt> is returned. The error message is logged via log4j2.
+	 * the line a <tt>null</tt> is returned and the line is counted as invalid.
+	 * No exception is created for an invalid line; a sample of the invalid lines
+	 * is logged, at most one per minute.
 	 *
 	 * @param line the line being parsed
 	 * @return <tt>AccountingRecord</tt> representing the line or <tt>null</tt> in
 	 *         case of a parsing error.
 	 */
 	public AccountingRecord tryParse(final String line) {
-		try {
-			return parse(line);
-		} catch (final IllegalRecordException ex) {
-			log.warn(ex);
+		final String[] items = line.strip().split("\\s+");
+		final long bytes = items.length < 4 ? -1 : parseCount(items[2]);
+		final long packets = items.length < 4 ? -1 : parseCount(items[3]);
+		if (bytes < 0 || packets < 0) {
+			invalidLines++;
+			if (BAD_LINES.tryAcquire(System.currentTimeMillis())) {
+				log.warn(BAD_LINES.message("bad_line").with("fields", items.length).with("sample", line.length() > MAX_SAMPLE ? line.substring(0, MAX_SAMPLE) : line));
+			}
 			return null;
 		}
+
+		// @formatter:off
+		return AccountingRecord.builder()
+			.sourceIp(items[0])
+			.destinationIp(items[1])
+			.byteCount(bytes)
+			.packetCount(packets)
+			.build();
+		// @formatter:on
+	}
+
+	/**
+	 * Parses a non-negative decimal number without creating an exception.
+	 *
+	 * @param value the number.
+	 * @return the number or <tt>-1</tt> if it is invalid.
+	 */
+	private static long parseCount(final String value) {
+		if (value.isEmpty() || value.length() > MAX_DIGITS) {
+			return -1;
+		}
+		long number = 0;
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			number = number * 10 + (c - '0');
+		}
+		return number;
+	}
+
+	/**
+	 * Number of invalid lines skipped by {@link #tryParse(String)}.
+	 *
+	 * @return number of invalid lines.
+	 */
+	public long getInvalidLines() {
+		return invalidLines;
 	}
 
 }
@@ -0,0 +1,293 @@
+package com.a9ski.mikrotik.alerting;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.SubnetTotals;
+import com.a9ski.mikrotik.arena.TrafficTable;
+import com.a9ski.mikrotik.model.Alert;
+
+import lombok.NonNull;
+
+/**
+ * Evaluates the alert rules of a router on the traffic of every poll. The
+ * per-IP rules (rate threshold and anomaly) are evaluated for the LAN IPs; the
+ * subnet rate threshold for every LAN subnet and for the WAN total.
+ * <p>
+ * An anomaly is a byte rate more than the configured number of standard
+ * deviations above the exponentially weighted moving average (EWMA) of the
+ * IP. The moving average and variance of every LAN IP are kept in primitive
+ * arrays located through an open addressing index, so the evaluation of a
+ * poll allocates only for the raised alerts. IPs without traffic for the
+ * forget time are removed.
+ * <p>
+ * The engine is not thread safe; it is evaluated by the poll of its router.
+ *
+ */
+public class AlertEngine {
+	private static final int MIN_CAPACITY = 64;
+
+	private final String router;
+	private final AlertRules rules;
+	private final AlertNotifier notifier;
+	private final long interval;
+	private final long forgetAfter;
+
+	private long[] ipsHigh;
+	private long[] ips;
+	private double[] mean;
+	private double[] variance;
+	private int[] samples;
+	private long[] lastSeen;
+	private long[] lastIpAlert;
+	private long[] lastAnomalyAlert;
+	private int[] index;
+	private int size;
+	private long[] lastSubnetAlert = new long[0];
+	private long lastEvaluation;
+	private long lastForget;
+	private long alerts;
+
+	/**
+	 * Creates a new engine.
+	 *
+	 * @param router      the name of the router.
+	 * @param rules       the alert rules.
+	 * @param notifier    the receiver of the alerts.
+	 * @param interval    the poll interval in milliseconds, used for the rates
+	 *                    of the first poll.
+	 * @param forgetAfter time in milliseconds after which the state of an IP
+	 *                    without traffic is removed.
+	 */
+	public AlertEngine(@NonNull final String router, @NonNull final AlertRules rules, @NonNull final AlertNotifier notifier, final long interval, final long forgetAfter) {
+		if (interval < 1 || forgetAfter < 1) {
+			throw new IllegalArgumentException("Invalid interval. Expected positive value");
+		}
+		this.router = router;
+		this.rules = rules;
+		this.notifier = notifier;
+		this.interval = interval;
+		this.forgetAfter = forgetAfter;
+		allocate(MIN_CAPACITY);
+	}
+
+	private void allocate(final int capacity) {
+		ipsHigh = new long[capacity];
+		ips = new long[capacity];
+		mean = new double[capacity];
+		variance = new double[capacity];
+		samples = new int[capacity];
+		lastSeen = new long[capacity];
+		lastIpAlert = new long[capacity];
+		lastAnomalyAlert = new long[capacity];
+		index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+		size = 0;
+	}
+
+	/**
+	 * Evaluates the rules on the traffic of a poll.
+	 *
+	 * @param now     the time of the poll in milliseconds.
+	 * @param traffic the classified traffic table of the poll.
+	 * @param totals  the subnet totals of the poll.
+	 */
+	public void evaluate(final long now, final TrafficTable traffic, final SubnetTotals totals) {
+		final long elapsed = lastEvaluation > 0 && now > lastEvaluation ? now - lastEvaluation : interval;
+		lastEvaluation = now;
+		if (rules.getIpRate() > 0 || rules.getAnomalySigma() > 0) {
+			for (int row = 0; row < traffic.size(); row++) {
+				if (traffic.isLanAt(row)) {
+					evaluateIp(now, traffic.ipHighAt(row), traffic.ipAt(row), rate(traffic.bytesSentAt(row) + traffic.bytesReceivedAt(row), elapsed));
+				}
+			}
+		}
+		if (rules.getSubnetRate() > 0) {
+			if (lastSubnetAlert.length != totals.size()) {
+				lastSubnetAlert = new long[totals.size()];
+			}
+			for (int i = 0; i < totals.size(); i++) {
+				final long rate = rate(totals.bytesSentAt(i) + totals.bytesReceivedAt(i), elapsed);
+				if (rate > rules.getSubnetRate() && cooledDown(lastSubnetAlert[i], now)) {
+					lastSubnetAlert[i] = now;
+					raise(Alert.SUBNET_RATE, totals.nameAt(i), rate, rules.getSubnetRate(), now);
+				}
+			}
+		}
+		if (now - lastForget >= forgetAfter) {
+			lastForget = now;
+			forget(now);
+		}
+	}
+
+	private static long rate(final long bytes, final long elapsedMillis) {
+		return bytes * 1000 / elapsedMillis;
+	}
+
+	private boolean cooledDown(final long lastAlert, final long now) {
+		return lastAlert == 0 || now - lastAlert >= rules.getCooldown();
+	}
+
+	private void evaluateIp(final long now, final long high, final long ip, final long rate) {
+		final int i = row(high, ip);
+		lastSeen[i] = now;
+		if (rules.getIpRate() > 0 && rate > rules.getIpRate() && cooledDown(lastIpAlert[i], now)) {
+			lastIpAlert[i] = now;
+			raise(Alert.IP_RATE, Ipv6.format(high, ip), rate, rules.getIpRate(), now);
+		}
+		if (rules.getAnomalySigma() > 0) {
+			final double threshold = mean[i] + rules.getAnomalySigma() * Math.sqrt(variance[i]);
+			if (samples[i] >= rules.getAnomalyWarmup() && rate >= rules.getAnomalyMinRate() && rate > threshold && cooledDown(lastAnomalyAlert[i], now)) {
+				lastAnomalyAlert[i] = now;
+				raise(Alert.ANOMALY, Ipv6.format(high, ip), rate, Math.round(threshold), now);
+			}
+			// incremental EWMA of the mean and the variance
+			if (samples[i] == 0) {
+				mean[i] = rate;
+			} else {
+				final double diff = rate - mean[i];
+				final double increment = rules.getAnomalyAlpha() * diff;
+				mean[i] += increment;
+				variance[i] = (1 - rules.getAnomalyAlpha()) * (variance[i] + diff * increment);
+			}
+			if (samples[i] < Integer.MAX_VALUE) {
+				samples[i]++;
+			}
+		}
+	}
+
+	private void raise(final String rule, final String target, final long rate, final long threshold, final long now) {
+		alerts++;
+		// @formatter:off
+		notifier.notify(Alert.builder()
+				.router(router)
+				.rule(rule)
+				.target(target)
+				.rate(rate)
+				.threshold(threshold)
+				.timestamp(now)
+				.build());
+		// @formatter:on
+	}
+
+	private int slot(final long high, final long ip) {
+		return (int) (Ipv6.hash(high, ip) >>> 32) & (index.length - 1);
+	}
+
+	/**
+	 * Finds the state of an IP, adding an empty state if missing.
+	 */
+	private int row(final long high, final long ip) {
+		int i = slot(high, ip);
+		for (;; i = (i + 1) & (index.length - 1)) {
+			final int row = index[i] - 1;
+			if (row < 0) {
+				break;
+			} else if (ips[row] == ip && ipsHigh[row] == high) {
+				return row;
+			}
+		}
+		if (size == ips.length) {
+			resize(ips.length * 2, Long.MIN_VALUE);
+			return row(high, ip);
+		}
+		final int row = size++;
+		ipsHigh[row] = high;
+		ips[row] = ip;
+		mean[row] = 0;
+		variance[row] = 0;
+		samples[row] = 0;
+		lastSeen[row] = 0;
+		lastIpAlert[row] = 0;
+		lastAnomalyAlert[row] = 0;
+		index[i] = row + 1;
+		return row;
+	}
+
+	/**
+	 * Copies the states seen after a time into new arrays.
+	 */
+	private void resize(final int capacity, final long seenAfter) {
+		final long[] oldIpsHigh = ipsHigh;
+		final long[] oldIps = ips;
+		final double[] oldMean = mean;
+		final double[] oldVariance = variance;
+		final int[] oldSamples = samples;
+		final long[] oldLastSeen = lastSeen;
+		final long[] oldLastIpAlert = lastIpAlert;
+		final long[] oldLastAnomalyAlert = lastAnomalyAlert;
+		final int oldSize = size;
+		allocate(capacity);
+		for (int old = 0; old < oldSize; old++) {
+			if (oldLastSeen[old] > seenAfter) {
+				final int row = row(oldIpsHigh[old], oldIps[old]);
+				mean[row] = oldMean[old];
+				variance[row] = oldVariance[old];
+				samples[row] = oldSamples[old];
+				lastSeen[row] = oldLastSeen[old];
+				lastIpAlert[row] = oldLastIpAlert[old];
+				lastAnomalyAlert[row] = oldLastAnomalyAlert[old];
+			}
+		}
+	}
+
+	/**
+	 * Removes the state of the IPs without traffic for the forget time.
+	 */
+	private void forget(final long now) {
+		int live = 0;
+		for (int row = 0; row < size; row++) {
+			if (now - lastSeen[row] < forgetAfter) {
+				live++;
+			}
+		}
+		if (live < size) {
+			resize(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, live) * 2 - 1) << 1), now - forgetAfter);
+		}
+	}
+
+	/**
+	 * Number of tracked IP addresses.
+	 *
+	 * @return number of tracked IP addresses.
+	 */
+	public int getTrackedCount() {
+		return size;
+	}
+
+	/**
+	 * Number of raised alerts.
+	 *
+	 * @return number of raised alerts.
+	 */
+	public long getAlertsCount() {
+		return alerts;
+	}
+
+	/**
+	 * Gets the moving average of the byte rate of an IPv4 address.
+	 *
+	 * @param ip the numeric IPv4 address.
+	 * @return the moving average in bytes per second or <tt>NaN</tt> if the IP
+	 *         is not tracked.
+	 */
+	public double getMeanRate(final long ip) {
+		return getMeanRate(0L, ip);
+	}
+
+	/**
+	 * Gets the moving average of the byte rate of an IP address.
+	 *
+	 * @param high the high 64 bits of the IP key.
+	 * @param ip   the low 64 bits of the IP key.
+	 * @return the moving average in bytes per second or <tt>NaN</tt> if the IP
+	 *         is not tracked.
+	 */
+	public double getMeanRate(final long high, final long ip) {
+		for (int i = slot(high, ip);; i = (i + 1) & (index.length - 1)) {
+			final int row = index[i] - 1;
+			if (row < 0) {
+				return Double.NaN;
+			} else if (ips[row] == ip && ipsHigh[row] == high) {
+				return mean[row];
+			}
+		}
+	}
+}
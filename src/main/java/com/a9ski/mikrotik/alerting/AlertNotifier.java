@@ -0,0 +1,18 @@
+package com.a9ski.mikrotik.alerting;
+
+import com.a9ski.mikrotik.model.Alert;
+
+/**
+ * Receives the alerts raised by the rule engines. The notifier is called from
+ * the poll threads, so it must not block.
+ *
+ */
+@FunctionalInterface
+public interface AlertNotifier {
+	/**
+	 * Sends an alert.
+	 *
+	 * @param alert the alert.
+	 */
+	void notify(Alert alert);
+}
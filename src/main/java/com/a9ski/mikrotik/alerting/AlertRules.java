@@ -0,0 +1,58 @@
+package com.a9ski.mikrotik.alerting;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Alert rules of a router. The byte rates are the sum of the sent and received
+ * bytes per second.
+ *
+ */
+@Builder
+@Data
+public class AlertRules {
+	/**
+	 * Byte rate threshold of a LAN IP. <tt>0</tt> disables the rule.
+	 */
+	private final long ipRate;
+	/**
+	 * Byte rate threshold of a LAN subnet or of the WAN total. <tt>0</tt>
+	 * disables the rule.
+	 */
+	private final long subnetRate;
+	/**
+	 * Number of standard deviations above the moving average of a LAN IP
+	 * raising an anomaly alert. <tt>0</tt> disables the rule.
+	 */
+	private final double anomalySigma;
+	/**
+	 * Weight of the newest poll in the exponentially weighted moving average.
+	 */
+	@Builder.Default
+	private final double anomalyAlpha = 0.1;
+	/**
+	 * Byte rate below which no anomaly is raised.
+	 */
+	@Builder.Default
+	private final long anomalyMinRate = 125_000L;
+	/**
+	 * Number of polls of an IP before its anomalies are raised.
+	 */
+	@Builder.Default
+	private final int anomalyWarmup = 10;
+	/**
+	 * Time in milliseconds before the same rule alerts again for the same IP or
+	 * subnet.
+	 */
+	@Builder.Default
+	private final long cooldown = 300_000L;
+
+	/**
+	 * Checks if any rule is enabled.
+	 *
+	 * @return <tt>true</tt> if any rule is enabled.
+	 */
+	public boolean isEnabled() {
+		return ipRate > 0 || subnetRate > 0 || anomalySigma > 0;
+	}
+}
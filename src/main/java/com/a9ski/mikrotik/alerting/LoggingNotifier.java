@@ -0,0 +1,22 @@
+package com.a9ski.mikrotik.alerting;
+
+import com.a9ski.mikrotik.model.Alert;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Writes the alerts to the log.
+ *
+ */
+@Log4j2
+public class LoggingNotifier implements AlertNotifier {
+	private static final String ALERT_MSG = "Alert %s of router '%s': %s at %d bytes/s (threshold %d bytes/s)";
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void notify(final Alert alert) {
+		log.warn(String.format(ALERT_MSG, alert.getRule(), alert.getRouter(), alert.getTarget(), alert.getRate(), alert.getThreshold()));
+	}
+}
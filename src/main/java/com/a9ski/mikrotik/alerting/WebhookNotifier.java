@@ -0,0 +1,170 @@
+package com.a9ski.mikrotik.alerting;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.a9ski.mikrotik.model.Alert;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Posts the alerts as JSON objects to a webhook URL:
+ *
+ * <pre>
+ * {"router":"home","rule":"ip-rate","target":"192.168.88.10","rate":2500000,"threshold":1250000,"timestamp":1600000000000}
+ * </pre>
+ *
+ * The requests are sent asynchronously, so the polls never wait for the
+ * webhook. When too many requests are pending, new alerts are dropped and
+ * counted.
+ *
+ */
+@Log4j2
+public class WebhookNotifier implements AlertNotifier {
+	/**
+	 * Default maximal number of pending requests.
+	 */
+	public static final int DEFAULT_MAX_PENDING = 16;
+
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+	private static final String FAILED_MSG = "Webhook %s failed for alert %s";
+	private static final String DROPPED_MSG = "Webhook %s is busy, alert %s dropped";
+
+	private final URI uri;
+	private final HttpClient client;
+	private final Semaphore pending;
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Creates a new notifier.
+	 *
+	 * @param uri the webhook URL.
+	 */
+	public WebhookNotifier(@NonNull final URI uri) {
+		this(uri, DEFAULT_MAX_PENDING);
+	}
+
+	/**
+	 * Creates a new notifier.
+	 *
+	 * @param uri        the webhook URL.
+	 * @param maxPending maximal number of pending requests.
+	 */
+	public WebhookNotifier(@NonNull final URI uri, final int maxPending) {
+		if (maxPending < 1) {
+			throw new IllegalArgumentException("Invalid max pending requests. Expected positive value");
+		}
+		this.uri = uri;
+		this.pending = new Semaphore(maxPending);
+		this.client = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void notify(final Alert alert) {
+		if (!pending.tryAcquire()) {
+			dropped.incrementAndGet();
+			log.warn(String.format(DROPPED_MSG, uri, alert));
+			return;
+		}
+		try {
+			// @formatter:off
+			final HttpRequest request = HttpRequest.newBuilder(uri)
+					.timeout(REQUEST_TIMEOUT)
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(toJson(alert)))
+					.build();
+			// @formatter:on
+			client.sendAsync(request, BodyHandlers.discarding()).whenComplete((response, ex) -> {
+				pending.release();
+				if (ex == null && response.statusCode() / 100 == 2) {
+					sent.incrementAndGet();
+				} else {
+					failed.incrementAndGet();
+					log.warn(String.format(FAILED_MSG, uri, alert), ex);
+				}
+			});
+		} catch (final RuntimeException ex) {
+			// the request was not sent, so the completion handler never runs
+			pending.release();
+			failed.incrementAndGet();
+			log.warn(String.format(FAILED_MSG, uri, alert), ex);
+		}
+	}
+
+	/**
+	 * Formats an alert as a JSON object.
+	 *
+	 * @param alert the alert.
+	 * @return the JSON object.
+	 */
+	public static String toJson(@NonNull final Alert alert) {
+		final StringBuilder json = new StringBuilder(160);
+		json.append("{\"router\":");
+		appendString(json, alert.getRouter());
+		json.append(",\"rule\":");
+		appendString(json, alert.getRule());
+		json.append(",\"target\":");
+		appendString(json, alert.getTarget());
+		json.append(",\"rate\":").append(alert.getRate());
+		json.append(",\"threshold\":").append(alert.getThreshold());
+		json.append(",\"timestamp\":").append(alert.getTimestamp());
+		return json.append('}').toString();
+	}
+
+	private static void appendString(final StringBuilder json, final String value) {
+		if (value == null) {
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Number of delivered alerts.
+	 *
+	 * @return number of delivered alerts.
+	 */
+	public long getSentCount() {
+		return sent.get();
+	}
+
+	/**
+	 * Number of alerts rejected by the webhook or not delivered.
+	 *
+	 * @return number of failed alerts.
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Number of alerts dropped because too many requests were pending.
+	 *
+	 * @return number of dropped alerts.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+}
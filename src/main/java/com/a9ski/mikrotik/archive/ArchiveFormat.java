@@ -0,0 +1,107 @@
+package com.a9ski.mikrotik.archive;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the columnar archive files. An archive file holds the per-IP
+ * traffic of the polls of a router in one day (UTC):
+ *
+ * <pre>
+ * header   int magic, int version
+ * blocks   varint rows, 6 x varint column length, 6 columns:
+ *            timestamps  zigzag varint delta to the previous row (the first
+ *                        row to the minimal time of the block)
+ *            ips         varint (dictionary id &lt;&lt; 1 | LAN flag)
+ *            bytesSent, bytesReceived, packetsSent, packetsReceived
+ *                        varint
+ * footer   varint dictionary size, per IP: long high, long low
+ *          varint block count, per block: long offset, int length, int rows,
+ *            long minTime, long maxTime, int minId, int maxId
+ *          file index: long rows, long minTime, long maxTime,
+ *            long minIpHigh, long minIpLow, long maxIpHigh, long maxIpLow
+ *          short router name length, router name (UTF-8)
+ * trailer  long footer offset, int magic
+ * </pre>
+ *
+ * The IPs are 128-bit keys (see {@link com.a9ski.mikrotik.arena.Ipv6}); the
+ * counters are the deltas of the polls, so they are small and fit in a few
+ * varint bytes. The block index (minimal and maximal time and dictionary id)
+ * and the file index (minimal and maximal time and IP) allow a scan to skip
+ * the blocks and files outside of the scanned time and IP range.
+ *
+ */
+final class ArchiveFormat {
+	/**
+	 * "TCA1" - traffic columnar archive.
+	 */
+	static final int MAGIC = 0x54434131;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int TRAILER_SIZE = 12;
+	static final int COLUMNS = 6;
+	static final String EXTENSION = ".tca";
+	static final String PART_EXTENSION = ".tca.part";
+
+	private ArchiveFormat() {
+	}
+
+	/**
+	 * Reads a varint.
+	 *
+	 * @param buffer the buffer.
+	 * @param pos    the positions of the columns.
+	 * @param column the column; its position is advanced.
+	 * @return the value.
+	 */
+	static long readVarint(final ByteBuffer buffer, final int[] pos, final int column) {
+		int p = pos[column];
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(p++);
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		pos[column] = p;
+		return value;
+	}
+
+	/**
+	 * Reads a varint at the position of a buffer.
+	 *
+	 * @param buffer the buffer.
+	 * @return the value.
+	 */
+	static long readVarint(final ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	/**
+	 * Encodes a signed value for a varint, so small negative values are short.
+	 *
+	 * @param value the value.
+	 * @return the encoded value.
+	 */
+	static long zigzag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Decodes a zigzag encoded value.
+	 *
+	 * @param value the encoded value.
+	 * @return the value.
+	 */
+	static long unzigzag(final long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,363 @@
+package com.a9ski.mikrotik.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.TrafficSnapshot;
+import com.a9ski.mikrotik.arena.TrafficTable;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Reads a columnar archive file (see {@link ArchiveFormat}). The file is
+ * memory-mapped and the columns of a block are decoded in place, so a scan
+ * allocates nothing per row and runs at the speed of the disk (or the page
+ * cache). The blocks and files outside of the scanned time range, or without
+ * any IP of the scanned IP range, are skipped by their index.
+ * <p>
+ * A reader is immutable after it is opened; a scan may run in any thread.
+ *
+ */
+@Log4j2
+public final class ArchiveReader {
+	private static final int BLOCK_INDEX_SIZE = 40;
+	private static final long[] FIRST_IP = { 0, 0 };
+	private static final long[] LAST_IP = { -1L, -1L };
+
+	private final Path file;
+	private final MappedByteBuffer data;
+	private final String router;
+	private final long[] dictionaryHigh;
+	private final long[] dictionaryLow;
+	private final long[] blockOffsets;
+	private final long[] blockMinTimes;
+	private final long[] blockMaxTimes;
+	private final int[] blockMinIds;
+	private final int[] blockMaxIds;
+	private final long rows;
+	private final long minTime;
+	private final long maxTime;
+	private final long[] minIp = new long[2];
+	private final long[] maxIp = new long[2];
+
+	private ArchiveReader(final Path file, final MappedByteBuffer data) throws IOException {
+		this.file = file;
+		this.data = data;
+		final int size = data.capacity();
+		if (size < ArchiveFormat.HEADER_SIZE + ArchiveFormat.TRAILER_SIZE || data.getInt(0) != ArchiveFormat.MAGIC || data.getInt(size - 4) != ArchiveFormat.MAGIC) {
+			throw new IOException(String.format("Invalid archive file %s", file));
+		}
+		if (data.getInt(4) != ArchiveFormat.VERSION) {
+			throw new IOException(String.format("Unsupported version %d of archive file %s", data.getInt(4), file));
+		}
+		final ByteBuffer footer = data.duplicate();
+		footer.position((int) data.getLong(size - ArchiveFormat.TRAILER_SIZE));
+
+		final int dictionarySize = (int) ArchiveFormat.readVarint(footer);
+		dictionaryHigh = new long[dictionarySize];
+		dictionaryLow = new long[dictionarySize];
+		for (int id = 0; id < dictionarySize; id++) {
+			dictionaryHigh[id] = footer.getLong();
+			dictionaryLow[id] = footer.getLong();
+		}
+
+		final int blocks = (int) ArchiveFormat.readVarint(footer);
+		blockOffsets = new long[blocks];
+		blockMinTimes = new long[blocks];
+		blockMaxTimes = new long[blocks];
+		blockMinIds = new int[blocks];
+		blockMaxIds = new int[blocks];
+		for (int b = 0; b < blocks; b++) {
+			final int start = footer.position();
+			blockOffsets[b] = footer.getLong();
+			// the length and the rows of the block are in the block itself
+			footer.position(start + 16);
+			blockMinTimes[b] = footer.getLong();
+			blockMaxTimes[b] = footer.getLong();
+			blockMinIds[b] = footer.getInt();
+			blockMaxIds[b] = footer.getInt();
+			footer.position(start + BLOCK_INDEX_SIZE);
+		}
+
+		rows = footer.getLong();
+		minTime = footer.getLong();
+		maxTime = footer.getLong();
+		minIp[Ipv6.HIGH] = footer.getLong();
+		minIp[Ipv6.LOW] = footer.getLong();
+		maxIp[Ipv6.HIGH] = footer.getLong();
+		maxIp[Ipv6.LOW] = footer.getLong();
+		final byte[] name = new byte[footer.getShort()];
+		footer.get(name);
+		router = new String(name, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Opens an archive file.
+	 *
+	 * @param file the archive file.
+	 * @return new reader.
+	 * @throws IOException thrown if the file cannot be read or is not a
+	 *                     complete archive file.
+	 */
+	public static ArchiveReader open(@NonNull final Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(String.format("Archive file %s is larger than 2 GB", file));
+			}
+			// the mapping stays valid after the channel is closed
+			return new ArchiveReader(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Scans the rows of the file in a time range and adds the traffic of every
+	 * IP to a table. The table is not classified, the LAN flag of an IP is set
+	 * if it was set in any of its rows.
+	 *
+	 * @param from    the start of the time range in milliseconds (inclusive).
+	 * @param to      the end of the time range in milliseconds (exclusive).
+	 * @param traffic the table receiving the per-IP totals.
+	 * @return number of scanned rows in the time range.
+	 */
+	public long scan(final long from, final long to, @NonNull final TrafficTable traffic) {
+		return scan(from, to, FIRST_IP, LAST_IP, traffic);
+	}
+
+	/**
+	 * Scans the rows of the file in a time range and an IP range and adds the
+	 * traffic of every IP to a table. The file is skipped if the IP range is
+	 * outside of its minimal and maximal IP; a block is skipped if none of the
+	 * dictionary ids of the IPs in the range is between its minimal and maximal
+	 * id. The table is not classified, the LAN flag of an IP is set if it was
+	 * set in any of its rows.
+	 *
+	 * @param from    the start of the time range in milliseconds (inclusive).
+	 * @param to      the end of the time range in milliseconds (exclusive).
+	 * @param firstIp the key of the first IP of the range (inclusive, see
+	 *                {@link Ipv6}).
+	 * @param lastIp  the key of the last IP of the range (inclusive).
+	 * @param traffic the table receiving the per-IP totals.
+	 * @return number of scanned rows in the time and IP range.
+	 */
+	public long scan(final long from, final long to, @NonNull final long[] firstIp, @NonNull final long[] lastIp, @NonNull final TrafficTable traffic) {
+		if (rows == 0 || maxTime < from || minTime >= to || compare(maxIp, firstIp) < 0 || compare(minIp, lastIp) > 0) {
+			return 0;
+		}
+		final int ips = dictionaryLow.length;
+		// the ids of the IPs in the range; null if the range covers the file
+		boolean[] match = null;
+		int firstId = 0;
+		int lastId = ips - 1;
+		if (compare(minIp, firstIp) < 0 || compare(maxIp, lastIp) > 0) {
+			match = new boolean[ips];
+			firstId = Integer.MAX_VALUE;
+			lastId = -1;
+			final long[] ip = new long[2];
+			for (int id = 0; id < ips; id++) {
+				ip[Ipv6.HIGH] = dictionaryHigh[id];
+				ip[Ipv6.LOW] = dictionaryLow[id];
+				if (compare(ip, firstIp) >= 0 && compare(ip, lastIp) <= 0) {
+					match[id] = true;
+					firstId = Math.min(firstId, id);
+					lastId = id;
+				}
+			}
+			if (lastId < 0) {
+				return 0;
+			}
+		}
+		final long[] bytesSent = new long[ips];
+		final long[] bytesReceived = new long[ips];
+		final long[] packetsSent = new long[ips];
+		final long[] packetsReceived = new long[ips];
+		final boolean[] lan = new boolean[ips];
+		final boolean[] seen = new boolean[ips];
+		final int[] lengths = new int[ArchiveFormat.COLUMNS];
+		final int[] pos = new int[ArchiveFormat.COLUMNS];
+		long scanned = 0;
+		for (int b = 0; b < blockOffsets.length; b++) {
+			if (blockMaxTimes[b] < from || blockMinTimes[b] >= to || blockMaxIds[b] < firstId || blockMinIds[b] > lastId) {
+				continue;
+			}
+			final ByteBuffer block = data.duplicate();
+			block.position((int) blockOffsets[b]);
+			final int count = (int) ArchiveFormat.readVarint(block);
+			for (int c = 0; c < ArchiveFormat.COLUMNS; c++) {
+				lengths[c] = (int) ArchiveFormat.readVarint(block);
+			}
+			int columnStart = block.position();
+			for (int c = 0; c < ArchiveFormat.COLUMNS; c++) {
+				pos[c] = columnStart;
+				columnStart += lengths[c];
+			}
+			final boolean all = blockMinTimes[b] >= from && blockMaxTimes[b] < to;
+			long time = blockMinTimes[b];
+			for (int i = 0; i < count; i++) {
+				time += ArchiveFormat.unzigzag(ArchiveFormat.readVarint(data, pos, 0));
+				final int id = (int) ArchiveFormat.readVarint(data, pos, 1);
+				final long sent = ArchiveFormat.readVarint(data, pos, 2);
+				final long received = ArchiveFormat.readVarint(data, pos, 3);
+				final long sentPackets = ArchiveFormat.readVarint(data, pos, 4);
+				final long receivedPackets = ArchiveFormat.readVarint(data, pos, 5);
+				final int ip = id >>> 1;
+				if ((all || (time >= from && time < to)) && (match == null || match[ip])) {
+					bytesSent[ip] += sent;
+					bytesReceived[ip] += received;
+					packetsSent[ip] += sentPackets;
+					packetsReceived[ip] += receivedPackets;
+					lan[ip] |= (id & 1) != 0;
+					seen[ip] = true;
+					scanned++;
+				}
+			}
+		}
+		for (int ip = 0; ip < ips; ip++) {
+			if (seen[ip]) {
+				final int row = traffic.row(dictionaryHigh[ip], dictionaryLow[ip]);
+				traffic.addSent(dictionaryHigh[ip], dictionaryLow[ip], bytesSent[ip], packetsSent[ip]);
+				traffic.addReceived(dictionaryHigh[ip], dictionaryLow[ip], bytesReceived[ip], packetsReceived[ip]);
+				if (lan[ip]) {
+					traffic.setLanAt(row, true);
+				}
+			}
+		}
+		return scanned;
+	}
+
+	private static int compare(final long[] a, final long[] b) {
+		final int c = Long.compareUnsigned(a[Ipv6.HIGH], b[Ipv6.HIGH]);
+		return c != 0 ? c : Long.compareUnsigned(a[Ipv6.LOW], b[Ipv6.LOW]);
+	}
+
+	/**
+	 * Scans all complete archive files of a directory (and its subdirectories)
+	 * in parallel and sums the per-IP traffic in a time range.
+	 *
+	 * @param dir  the archive directory.
+	 * @param from the start of the time range in milliseconds (inclusive).
+	 * @param to   the end of the time range in milliseconds (exclusive).
+	 * @return the per-IP totals, sorted by IP, with the end of the time range
+	 *         as timestamp.
+	 * @throws IOException thrown if the directory cannot be read.
+	 */
+	public static TrafficSnapshot totals(@NonNull final Path dir, final long from, final long to) throws IOException {
+		return totals(dir, from, to, FIRST_IP, LAST_IP);
+	}
+
+	/**
+	 * Scans all complete archive files of a directory (and its subdirectories)
+	 * in parallel and sums the per-IP traffic in a time range and an IP range.
+	 *
+	 * @param dir     the archive directory.
+	 * @param from    the start of the time range in milliseconds (inclusive).
+	 * @param to      the end of the time range in milliseconds (exclusive).
+	 * @param firstIp the key of the first IP of the range (inclusive, see
+	 *                {@link Ipv6}).
+	 * @param lastIp  the key of the last IP of the range (inclusive).
+	 * @return the per-IP totals, sorted by IP, with the end of the time range
+	 *         as timestamp.
+	 * @throws IOException thrown if the directory cannot be read.
+	 */
+	public static TrafficSnapshot totals(@NonNull final Path dir, final long from, final long to, @NonNull final long[] firstIp, @NonNull final long[] lastIp) throws IOException {
+		final List<Path> files;
+		try (Stream<Path> paths = Files.walk(dir)) {
+			files = paths.filter(p -> p.getFileName().toString().endsWith(ArchiveFormat.EXTENSION)).sorted().collect(Collectors.toList());
+		}
+		final TrafficTable traffic = new TrafficTable(1024);
+		files.parallelStream().forEach(file -> {
+			try {
+				final ArchiveReader reader = open(file);
+				final TrafficTable totals = new TrafficTable(Math.max(16, reader.getDictionarySize()));
+				reader.scan(from, to, firstIp, lastIp, totals);
+				synchronized (traffic) {
+					for (int row = 0; row < totals.size(); row++) {
+						final long high = totals.ipHighAt(row);
+						final long low = totals.ipAt(row);
+						traffic.addSent(high, low, totals.bytesSentAt(row), totals.packetsSentAt(row));
+						traffic.addReceived(high, low, totals.bytesReceivedAt(row), totals.packetsReceivedAt(row));
+						if (totals.isLanAt(row)) {
+							traffic.setLanAt(traffic.indexOf(high, low), true);
+						}
+					}
+				}
+			} catch (final IOException | RuntimeException ex) {
+				log.warn(String.format("Cannot read archive file %s: %s", file, ex.getMessage()));
+			}
+		});
+		return TrafficSnapshot.of(to, traffic);
+	}
+
+	/**
+	 * Gets the archive file.
+	 *
+	 * @return the file.
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the name of the archived router.
+	 *
+	 * @return the router name.
+	 */
+	public String getRouter() {
+		return router;
+	}
+
+	/**
+	 * Gets the number of distinct IPs of the file.
+	 *
+	 * @return number of IPs.
+	 */
+	public int getDictionarySize() {
+		return dictionaryLow.length;
+	}
+
+	/**
+	 * Gets the number of blocks of the file.
+	 *
+	 * @return number of blocks.
+	 */
+	public int getBlocksCount() {
+		return blockOffsets.length;
+	}
+
+	/**
+	 * Gets the number of rows of the file.
+	 *
+	 * @return number of rows.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the time of the earliest row.
+	 *
+	 * @return time in milliseconds.
+	 */
+	public long getMinTime() {
+		return minTime;
+	}
+
+	/**
+	 * Gets the time of the latest row.
+	 *
+	 * @return time in milliseconds.
+	 */
+	public long getMaxTime() {
+		return maxTime;
+	}
+}
@@ -0,0 +1,85 @@
+package com.a9ski.mikrotik.archive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.TrafficSnapshot;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+
+import inet.ipaddr.IPAddress;
+import inet.ipaddr.IPAddressString;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The <tt>archive-totals</tt> command of the application: prints the per-IP
+ * traffic totals of the archive files in a range of days.
+ *
+ */
+@Log4j2
+@Parameters(commandDescription = "Prints the per-IP traffic totals of the archive files in a range of days (UTC)")
+public class ArchiveTotalsCommand {
+	/**
+	 * Name of the command.
+	 */
+	public static final String NAME = "archive-totals";
+
+	private static final String RESULT_MSG = "Scanned archive %s from %s to %s in %d ms: %d IPs";
+
+	@Parameter(names = { "--archive-dir" }, required = true, description = "Archive directory (of a router or of all routers)")
+	private Path archiveDir;
+
+	@Parameter(names = { "--from" }, required = true, description = "First day (e.g. 2020-05-01)")
+	private String from;
+
+	@Parameter(names = { "--to" }, description = "Last day (inclusive). Defaults to the first day")
+	private String to;
+
+	@Parameter(names = { "--ip" }, description = "IP address or subnet (e.g. 192.168.88.0/24) of the printed IPs. Defaults to all IPs")
+	private String ip;
+
+	@Parameter(names = { "--top" }, description = "Number of printed IPs with the most traffic (0 for all)")
+	private int top = 20;
+
+	/**
+	 * Scans the archive and prints the totals.
+	 *
+	 * @throws IOException thrown if the archive directory cannot be read.
+	 */
+	public void run() throws IOException {
+		final LocalDate fromDay = LocalDate.parse(from);
+		final LocalDate toDay = to != null ? LocalDate.parse(to) : fromDay;
+		final long[] firstIp = { 0, 0 };
+		final long[] lastIp = { -1L, -1L };
+		if (ip != null) {
+			final IPAddress range = new IPAddressString(ip).getAddress();
+			if (range == null) {
+				throw new ParameterException(String.format("Invalid IP address or subnet '%s'", ip));
+			}
+			Ipv6.parse(range.getLower().withoutPrefixLength().toCanonicalString(), firstIp);
+			Ipv6.parse(range.getUpper().withoutPrefixLength().toCanonicalString(), lastIp);
+		}
+		final long start = System.currentTimeMillis();
+		final TrafficSnapshot totals = ArchiveReader.totals(archiveDir, fromDay.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(),
+				toDay.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(), firstIp, lastIp);
+		log.info(String.format(RESULT_MSG, archiveDir, fromDay, toDay, System.currentTimeMillis() - start, totals.size()));
+
+		final Comparator<Integer> byTraffic = Comparator.comparingLong(row -> totals.bytesSentAt(row) + totals.bytesReceivedAt(row));
+		// @formatter:off
+		IntStream.range(0, totals.size())
+				.boxed()
+				.sorted(byTraffic.reversed())
+				.limit(top > 0 ? top : Long.MAX_VALUE)
+				.forEach(row -> System.out.println(String.format("%-39s %s %15d %15d %12d %12d",
+						Ipv6.format(totals.ipHighAt(row), totals.ipAt(row)), totals.isLanAt(row) ? "LAN" : "WAN",
+						totals.bytesSentAt(row), totals.bytesReceivedAt(row), totals.packetsSentAt(row), totals.packetsReceivedAt(row))));
+		// @formatter:on
+	}
+}
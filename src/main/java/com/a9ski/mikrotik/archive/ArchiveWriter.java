@@ -0,0 +1,374 @@
+package com.a9ski.mikrotik.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.a9ski.mikrotik.arena.TrafficSnapshot;
+import com.a9ski.mikrotik.arena.TrafficTable;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Archives the per-IP traffic of the polls of a router in columnar files, one
+ * per day (UTC), for cheap long-term storage beyond the retention of the
+ * database (see {@link ArchiveFormat}). The rows are buffered in blocks and
+ * encoded column by column when a block is full.
+ * <p>
+ * A file is written as <tt>&lt;day&gt;-&lt;start&gt;.tca.part</tt> and renamed
+ * to <tt>.tca</tt> when it is complete: at the end of the day or when the
+ * writer is closed. Every writer starts a new file, so a restarted service
+ * doesn't touch the complete files; the part file of a crashed service is not
+ * read. A failed write (e.g. a full disk) abandons the current file: its rows
+ * are lost and the next poll starts a new file.
+ * <p>
+ * The writer is not thread safe; it is used by the polls of its router.
+ *
+ */
+@Log4j2
+public class ArchiveWriter implements Closeable {
+	/**
+	 * Default number of rows of a block.
+	 */
+	public static final int DEFAULT_BLOCK_ROWS = 65_536;
+
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+
+	private final Path dir;
+	private final String router;
+	private final int blockRows;
+
+	// the block being filled
+	private final long[] times;
+	private final int[] ids;
+	private final long[][] counters;
+	private int rows;
+	private final ColumnBuffer[] columns = new ColumnBuffer[ArchiveFormat.COLUMNS];
+
+	// the file being written
+	private OutputStream out;
+	private Path part;
+	private long day = Long.MIN_VALUE;
+	private long offset;
+	private final TrafficTable dictionary = new TrafficTable(1024);
+	private long[] blockIndex = new long[0];
+	private int blocks;
+	private long fileRows;
+	private long fileMinTime;
+	private long fileMaxTime;
+	private final long[] minIp = new long[2];
+	private final long[] maxIp = new long[2];
+
+	/**
+	 * Creates a new writer with the default block size.
+	 *
+	 * @param dir    the directory of the archive files of the router.
+	 * @param router the router name, stored in the files.
+	 */
+	public ArchiveWriter(@NonNull final Path dir, @NonNull final String router) {
+		this(dir, router, DEFAULT_BLOCK_ROWS);
+	}
+
+	/**
+	 * Creates a new writer.
+	 *
+	 * @param dir       the directory of the archive files of the router.
+	 * @param router    the router name, stored in the files.
+	 * @param blockRows the number of rows of a block.
+	 */
+	public ArchiveWriter(@NonNull final Path dir, @NonNull final String router, final int blockRows) {
+		if (blockRows < 1) {
+			throw new IllegalArgumentException("Invalid block size. Expected positive value");
+		}
+		this.dir = dir;
+		this.router = router;
+		this.blockRows = blockRows;
+		this.times = new long[blockRows];
+		this.ids = new int[blockRows];
+		this.counters = new long[4][blockRows];
+		for (int c = 0; c < columns.length; c++) {
+			columns[c] = new ColumnBuffer();
+		}
+	}
+
+	/**
+	 * Appends the traffic of a poll. The file of the previous day is completed
+	 * when the poll is in a new day.
+	 *
+	 * @param snapshot the traffic of the poll.
+	 * @throws IOException thrown if the archive file cannot be written.
+	 */
+	public void append(@NonNull final TrafficSnapshot snapshot) throws IOException {
+		if (snapshot.size() == 0) {
+			return;
+		}
+		final long timestamp = snapshot.getTimestamp();
+		final long snapshotDay = Math.floorDiv(timestamp, DAY);
+		if (snapshotDay != day) {
+			finish();
+			open(snapshotDay, timestamp);
+		}
+		for (int row = 0; row < snapshot.size(); row++) {
+			final int id = dictionary.row(snapshot.ipHighAt(row), snapshot.ipAt(row));
+			times[rows] = timestamp;
+			ids[rows] = (id << 1) | (snapshot.isLanAt(row) ? 1 : 0);
+			counters[0][rows] = snapshot.bytesSentAt(row);
+			counters[1][rows] = snapshot.bytesReceivedAt(row);
+			counters[2][rows] = snapshot.packetsSentAt(row);
+			counters[3][rows] = snapshot.packetsReceivedAt(row);
+			if (++rows == blockRows) {
+				boolean written = false;
+				try {
+					writeBlock();
+					written = true;
+				} finally {
+					if (!written) {
+						abandon();
+					}
+				}
+			}
+		}
+	}
+
+	private void open(final long newDay, final long timestamp) throws IOException {
+		Files.createDirectories(dir);
+		part = dir.resolve(String.format("%s-%d%s", DAY_FORMAT.format(Instant.ofEpochMilli(timestamp)), timestamp, ArchiveFormat.PART_EXTENSION));
+		out = openFile(part);
+		try {
+			final DataOutputStream header = new DataOutputStream(out);
+			header.writeInt(ArchiveFormat.MAGIC);
+			header.writeInt(ArchiveFormat.VERSION);
+		} catch (final IOException ex) {
+			abandon();
+			throw ex;
+		}
+		day = newDay;
+		offset = ArchiveFormat.HEADER_SIZE;
+		dictionary.clear();
+		blocks = 0;
+		fileRows = 0;
+		fileMinTime = Long.MAX_VALUE;
+		fileMaxTime = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Opens the output stream of an archive file.
+	 *
+	 * @param file the archive file.
+	 * @return new buffered output stream.
+	 * @throws IOException thrown if the file cannot be created.
+	 */
+	protected OutputStream openFile(final Path file) throws IOException {
+		return new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+	}
+
+	/**
+	 * Abandons the current file after a failed write. The file is incomplete
+	 * (a part of a block may be written), so it is deleted with its rows and
+	 * the next poll starts a new file.
+	 */
+	private void abandon() {
+		rows = 0;
+		day = Long.MIN_VALUE;
+		try {
+			if (out != null) {
+				out.close();
+			}
+		} catch (final IOException ex) {
+			log.debug(ex);
+		} finally {
+			out = null;
+		}
+		try {
+			Files.deleteIfExists(part);
+		} catch (final IOException ex) {
+			log.warn(ex);
+		}
+		log.warn(String.format("Abandoned archive file %s after a failed write", part));
+	}
+
+	private void writeBlock() throws IOException {
+		if (rows == 0) {
+			return;
+		}
+		long minTime = Long.MAX_VALUE;
+		long maxTime = Long.MIN_VALUE;
+		int minId = Integer.MAX_VALUE;
+		int maxId = Integer.MIN_VALUE;
+		for (int i = 0; i < rows; i++) {
+			minTime = Math.min(minTime, times[i]);
+			maxTime = Math.max(maxTime, times[i]);
+			minId = Math.min(minId, ids[i] >>> 1);
+			maxId = Math.max(maxId, ids[i] >>> 1);
+		}
+		for (final ColumnBuffer column : columns) {
+			column.clear();
+		}
+		long previous = minTime;
+		for (int i = 0; i < rows; i++) {
+			columns[0].writeVarint(ArchiveFormat.zigzag(times[i] - previous));
+			previous = times[i];
+			columns[1].writeVarint(ids[i]);
+			for (int c = 0; c < counters.length; c++) {
+				columns[2 + c].writeVarint(counters[c][i]);
+			}
+		}
+		final ColumnBuffer blockHeader = new ColumnBuffer();
+		blockHeader.writeVarint(rows);
+		int length = 0;
+		for (final ColumnBuffer column : columns) {
+			blockHeader.writeVarint(column.size);
+			length += column.size;
+		}
+		blockHeader.writeTo(out);
+		for (final ColumnBuffer column : columns) {
+			column.writeTo(out);
+		}
+		length += blockHeader.size;
+
+		if ((blocks + 1) * 7 > blockIndex.length) {
+			blockIndex = Arrays.copyOf(blockIndex, Math.max(7 * 16, blockIndex.length * 2));
+		}
+		final int b = blocks++ * 7;
+		blockIndex[b] = offset;
+		blockIndex[b + 1] = length;
+		blockIndex[b + 2] = rows;
+		blockIndex[b + 3] = minTime;
+		blockIndex[b + 4] = maxTime;
+		blockIndex[b + 5] = minId;
+		blockIndex[b + 6] = maxId;
+		offset += length;
+		fileRows += rows;
+		fileMinTime = Math.min(fileMinTime, minTime);
+		fileMaxTime = Math.max(fileMaxTime, maxTime);
+		rows = 0;
+	}
+
+	/**
+	 * Completes the current file: writes the last block, the dictionary and
+	 * the index and renames the file to its final name.
+	 *
+	 * @throws IOException thrown if the file cannot be written.
+	 */
+	public void finish() throws IOException {
+		if (out == null) {
+			return;
+		}
+		try {
+			writeBlock();
+			final long footerOffset = offset;
+			final DataOutputStream footer = new DataOutputStream(out);
+			final ColumnBuffer sizes = new ColumnBuffer();
+			sizes.writeVarint(dictionary.size());
+			sizes.writeTo(footer);
+			for (int id = 0; id < dictionary.size(); id++) {
+				final long high = dictionary.ipHighAt(id);
+				final long low = dictionary.ipAt(id);
+				footer.writeLong(high);
+				footer.writeLong(low);
+				if (id == 0 || compare(high, low, minIp) < 0) {
+					minIp[0] = high;
+					minIp[1] = low;
+				}
+				if (id == 0 || compare(high, low, maxIp) > 0) {
+					maxIp[0] = high;
+					maxIp[1] = low;
+				}
+			}
+			sizes.clear();
+			sizes.writeVarint(blocks);
+			sizes.writeTo(footer);
+			for (int b = 0; b < blocks * 7; b += 7) {
+				footer.writeLong(blockIndex[b]);
+				footer.writeInt((int) blockIndex[b + 1]);
+				footer.writeInt((int) blockIndex[b + 2]);
+				footer.writeLong(blockIndex[b + 3]);
+				footer.writeLong(blockIndex[b + 4]);
+				footer.writeInt((int) blockIndex[b + 5]);
+				footer.writeInt((int) blockIndex[b + 6]);
+			}
+			footer.writeLong(fileRows);
+			footer.writeLong(fileMinTime);
+			footer.writeLong(fileMaxTime);
+			footer.writeLong(minIp[0]);
+			footer.writeLong(minIp[1]);
+			footer.writeLong(maxIp[0]);
+			footer.writeLong(maxIp[1]);
+			final byte[] name = router.getBytes(StandardCharsets.UTF_8);
+			footer.writeShort(name.length);
+			footer.write(name);
+			footer.writeLong(footerOffset);
+			footer.writeInt(ArchiveFormat.MAGIC);
+			footer.flush();
+			out.close();
+			out = null;
+			final String fileName = part.getFileName().toString();
+			final Path file = part.resolveSibling(fileName.substring(0, fileName.length() - ArchiveFormat.PART_EXTENSION.length()) + ArchiveFormat.EXTENSION);
+			Files.move(part, file, StandardCopyOption.ATOMIC_MOVE);
+			log.info(String.format("Archived %d rows of %d IPs in %s", fileRows, dictionary.size(), file));
+		} finally {
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+			day = Long.MIN_VALUE;
+			rows = 0;
+		}
+	}
+
+	private static int compare(final long high, final long low, final long[] key) {
+		final int c = Long.compareUnsigned(high, key[0]);
+		return c != 0 ? c : Long.compareUnsigned(low, key[1]);
+	}
+
+	/**
+	 * Completes the current file.
+	 *
+	 * @throws IOException thrown if the file cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	/**
+	 * Growable buffer of a column.
+	 */
+	private static final class ColumnBuffer {
+		private byte[] data = new byte[1024];
+		private int size;
+
+		private void writeVarint(final long value) {
+			if (size + 10 > data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			long v = value;
+			while ((v & ~0x7FL) != 0) {
+				data[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			data[size++] = (byte) v;
+		}
+
+		private void writeTo(final OutputStream out) throws IOException {
+			out.write(data, 0, size);
+		}
+
+		private void clear() {
+			size = 0;
+		}
+	}
+}
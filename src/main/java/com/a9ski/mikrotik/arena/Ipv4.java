@@ -0,0 +1,106 @@
+package com.a9ski.mikrotik.arena;
+
+/**
+ * Allocation free conversions between the textual form of an IPv4 address and
+ * its numeric value. The value is kept in a <tt>long</tt> (0 ..
+ * 2<sup>32</sup>-1), so it can be used directly as a key of the primitive
+ * tables.
+ *
+ */
+public final class Ipv4 {
+	/**
+	 * Value returned for an invalid address.
+	 */
+	public static final long INVALID = -1L;
+
+	private Ipv4() {
+	}
+
+	/**
+	 * Parses an IPv4 address from ASCII bytes.
+	 *
+	 * @param bytes the bytes.
+	 * @param from  the first byte (inclusive).
+	 * @param to    the last byte (exclusive).
+	 * @return the numeric value or {@link #INVALID}.
+	 */
+	public static long parse(final byte[] bytes, final int from, final int to) {
+		long value = 0;
+		int octet = -1;
+		int octets = 0;
+		for (int i = from; i < to; i++) {
+			final int c = bytes[i];
+			if (c >= '0' && c <= '9') {
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) {
+					return INVALID;
+				}
+			} else if (c == '.' && octet >= 0 && octets < 3) {
+				value = (value << 8) | octet;
+				octet = -1;
+				octets++;
+			} else {
+				return INVALID;
+			}
+		}
+		if (octet < 0 || octets != 3) {
+			return INVALID;
+		}
+		return (value << 8) | octet;
+	}
+
+	/**
+	 * Parses an IPv4 address.
+	 *
+	 * @param ip the IP address (e.g. 192.168.1.1)
+	 * @return the numeric value or {@link #INVALID}.
+	 */
+	public static long parse(final CharSequence ip) {
+		long value = 0;
+		int octet = -1;
+		int octets = 0;
+		for (int i = 0; i < ip.length(); i++) {
+			final char c = ip.charAt(i);
+			if (c >= '0' && c <= '9') {
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) {
+					return INVALID;
+				}
+			} else if (c == '.' && octet >= 0 && octets < 3) {
+				value = (value << 8) | octet;
+				octet = -1;
+				octets++;
+			} else {
+				return INVALID;
+			}
+		}
+		if (octet < 0 || octets != 3) {
+			return INVALID;
+		}
+		return (value << 8) | octet;
+	}
+
+	/**
+	 * Appends the dotted form of an IPv4 address.
+	 *
+	 * @param text the text to append to.
+	 * @param ip   the numeric value.
+	 * @return the text.
+	 */
+	public static StringBuilder append(final StringBuilder text, final long ip) {
+		text.append((ip >>> 24) & 0xFF).append('.');
+		text.append((ip >>> 16) & 0xFF).append('.');
+		text.append((ip >>> 8) & 0xFF).append('.');
+		return text.append(ip & 0xFF);
+	}
+
+	/**
+	 * Formats an IPv4 address.
+	 *
+	 * @param ip the numeric value.
+	 * @return the dotted form of the address.
+	 */
+	public static String format(final long ip) {
+		return append(new StringBuilder(15), ip).toString();
+	}
+}
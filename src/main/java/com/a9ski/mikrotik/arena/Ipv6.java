@@ -0,0 +1,263 @@
+package com.a9ski.mikrotik.arena;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation free conversions between the textual form of an IP address and
+ * its 128-bit key. The key is kept in two <tt>long</tt> values, the high and
+ * the low 64 bits of the IPv6 address. IPv4 addresses (and IPv4-mapped IPv6
+ * addresses) have a zero high part and the {@link Ipv4} value as low part, so
+ * the IPv4 keys of the primitive tables stay unchanged.
+ * <p>
+ * The IPv6 addresses of <tt>::/96</tt> (the unspecified, loopback and
+ * deprecated IPv4-compatible addresses) would collide with the IPv4 keys and
+ * are rejected; they never appear in the accounting of a router.
+ *
+ */
+public final class Ipv6 {
+	/**
+	 * Index of the high 64 bits in a key array.
+	 */
+	public static final int HIGH = 0;
+	/**
+	 * Index of the low 64 bits in a key array.
+	 */
+	public static final int LOW = 1;
+
+	private static final int GROUPS = 8;
+	private static final long IPV4_MAPPED = 0xFFFFL;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private Ipv6() {
+	}
+
+	/**
+	 * Checks if a key is an IPv4 address.
+	 *
+	 * @param high the high 64 bits of the key.
+	 * @param low  the low 64 bits of the key.
+	 * @return <tt>true</tt> if the key is an IPv4 address.
+	 */
+	public static boolean isIpv4(final long high, final long low) {
+		return high == 0 && (low >>> 32) == 0;
+	}
+
+	/**
+	 * Hashes a key for the open addressing tables. The hash of an IPv4 key is
+	 * the same as the hash of the plain {@link Ipv4} value.
+	 *
+	 * @param high the high 64 bits of the key.
+	 * @param low  the low 64 bits of the key.
+	 * @return the hash; the high 32 bits are the best distributed.
+	 */
+	public static long hash(final long high, final long low) {
+		return (low ^ (high * 0xC2B2AE3D27D4EB4FL)) * 0x9E3779B97F4A7C15L;
+	}
+
+	/**
+	 * Parses an IPv4 or IPv6 address from ASCII bytes. A zone index (e.g.
+	 * <tt>fe80::1%ether1</tt>) is ignored.
+	 *
+	 * @param bytes the bytes.
+	 * @param from  the first byte (inclusive).
+	 * @param to    the last byte (exclusive).
+	 * @param key   receives the high and the low 64 bits of the key.
+	 * @return <tt>false</tt> if the address is invalid.
+	 */
+	public static boolean parse(final byte[] bytes, final int from, final int to, final long[] key) {
+		final long ipv4 = Ipv4.parse(bytes, from, to);
+		if (ipv4 != Ipv4.INVALID) {
+			key[HIGH] = 0;
+			key[LOW] = ipv4;
+			return true;
+		}
+		int end = from;
+		while (end < to && bytes[end] != '%') {
+			end++;
+		}
+		if (end - from < 2) {
+			return false;
+		}
+
+		// the groups before "::" are in head, the groups after it in tail
+		long headHigh = 0;
+		long headLow = 0;
+		long tailHigh = 0;
+		long tailLow = 0;
+		int headGroups = 0;
+		int tailGroups = 0;
+		boolean compressed = false;
+		int i = from;
+		if (bytes[i] == ':') {
+			if (bytes[i + 1] != ':') {
+				return false;
+			}
+			compressed = true;
+			i += 2;
+		}
+		while (i < end) {
+			final int start = i;
+			long value = 0;
+			int digits = 0;
+			for (int d; i < end && digits <= 4 && (d = hexDigit(bytes[i])) >= 0; i++, digits++) {
+				value = (value << 4) | d;
+			}
+			int groups = 1;
+			if (i < end && bytes[i] == '.') {
+				// embedded IPv4 address (e.g. ::ffff:192.168.1.1) in the last two groups
+				value = Ipv4.parse(bytes, start, end);
+				if (value == Ipv4.INVALID) {
+					return false;
+				}
+				groups = 2;
+				i = end;
+			} else if (digits == 0 || digits > 4) {
+				return false;
+			}
+			for (int g = groups - 1; g >= 0; g--) {
+				final long group = (value >>> (16 * g)) & 0xFFFFL;
+				if (compressed) {
+					tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+					tailLow = (tailLow << 16) | group;
+					tailGroups++;
+				} else {
+					headHigh = (headHigh << 16) | (headLow >>> 48);
+					headLow = (headLow << 16) | group;
+					headGroups++;
+				}
+			}
+			if (i == end) {
+				break;
+			} else if (bytes[i] != ':' || ++i == end) {
+				return false;
+			} else if (bytes[i] == ':') {
+				if (compressed) {
+					return false;
+				}
+				compressed = true;
+				i++;
+			}
+		}
+		final int groups = headGroups + tailGroups;
+		if (groups > GROUPS || (compressed && groups == GROUPS) || (!compressed && groups != GROUPS)) {
+			return false;
+		}
+		// moves the head groups to the top, the compressed groups are zero
+		for (int g = headGroups; g < GROUPS; g++) {
+			headHigh = (headHigh << 16) | (headLow >>> 48);
+			headLow <<= 16;
+		}
+		final long high = headHigh | tailHigh;
+		final long low = headLow | tailLow;
+		if (high == 0 && (low >>> 32) == IPV4_MAPPED) {
+			key[HIGH] = 0;
+			key[LOW] = low & 0xFFFFFFFFL;
+			return true;
+		} else if (isIpv4(high, low)) {
+			return false;
+		}
+		key[HIGH] = high;
+		key[LOW] = low;
+		return true;
+	}
+
+	/**
+	 * Parses an IPv4 or IPv6 address.
+	 *
+	 * @param ip  the IP address (e.g. 192.168.1.1 or 2001:db8::1).
+	 * @param key receives the high and the low 64 bits of the key.
+	 * @return <tt>false</tt> if the address is invalid.
+	 */
+	public static boolean parse(final CharSequence ip, final long[] key) {
+		final long ipv4 = Ipv4.parse(ip);
+		if (ipv4 != Ipv4.INVALID) {
+			key[HIGH] = 0;
+			key[LOW] = ipv4;
+			return true;
+		}
+		final byte[] bytes = ip.toString().getBytes(StandardCharsets.US_ASCII);
+		return parse(bytes, 0, bytes.length, key);
+	}
+
+	private static int hexDigit(final byte c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private static int groupAt(final long high, final long low, final int group) {
+		final long half = group < 4 ? high : low;
+		return (int) (half >>> (16 * (3 - (group & 3)))) & 0xFFFF;
+	}
+
+	/**
+	 * Appends the canonical (RFC 5952) form of an IP address: lower case hex
+	 * groups without leading zeros and the longest run of zero groups replaced
+	 * by <tt>::</tt>. IPv4 keys are appended in dotted form.
+	 *
+	 * @param text the text to append to.
+	 * @param high the high 64 bits of the key.
+	 * @param low  the low 64 bits of the key.
+	 * @return the text.
+	 */
+	public static StringBuilder append(final StringBuilder text, final long high, final long low) {
+		if (isIpv4(high, low)) {
+			return Ipv4.append(text, low);
+		}
+		int zerosStart = -1;
+		int zerosLength = 1;
+		for (int g = 0; g < GROUPS;) {
+			if (groupAt(high, low, g) == 0) {
+				final int start = g;
+				while (g < GROUPS && groupAt(high, low, g) == 0) {
+					g++;
+				}
+				if (g - start > zerosLength) {
+					zerosStart = start;
+					zerosLength = g - start;
+				}
+			} else {
+				g++;
+			}
+		}
+		for (int g = 0; g < GROUPS; g++) {
+			if (g == zerosStart) {
+				text.append("::");
+				g += zerosLength - 1;
+				continue;
+			}
+			if (g > 0 && g != zerosStart + zerosLength) {
+				text.append(':');
+			}
+			appendHex(text, groupAt(high, low, g));
+		}
+		return text;
+	}
+
+	private static void appendHex(final StringBuilder text, final int group) {
+		boolean leading = true;
+		for (int shift = 12; shift >= 0; shift -= 4) {
+			final int digit = (group >>> shift) & 0xF;
+			if (digit != 0 || !leading || shift == 0) {
+				text.append(HEX_DIGITS[digit]);
+				leading = false;
+			}
+		}
+	}
+
+	/**
+	 * Formats an IP address.
+	 *
+	 * @param high the high 64 bits of the key.
+	 * @param low  the low 64 bits of the key.
+	 * @return the canonical form of the address.
+	 */
+	public static String format(final long high, final long low) {
+		return append(new StringBuilder(39), high, low).toString();
+	}
+}
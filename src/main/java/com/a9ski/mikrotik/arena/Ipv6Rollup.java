@@ -0,0 +1,216 @@
+package com.a9ski.mikrotik.arena;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.logging.LogLimiter;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Rolls up the IPv6 addresses of the LAN hosts, so the rotating privacy
+ * addresses of a host are aggregated (and written) as a single address:
+ * <ul>
+ * <li>an address found in the mapping file is replaced by its host address
+ * (e.g. the IPv4 address of the host from the DHCP leases);</li>
+ * <li>any other LAN address is replaced by its network address of the rollup
+ * prefix (e.g. <tt>2001:db8:1:2::</tt> for <tt>/64</tt>).</li>
+ * </ul>
+ * The mapping file has a line per address, built e.g. from the NDP table and
+ * the DHCP leases of the router:
+ *
+ * <pre>
+ * # address                    host
+ * 2001:db8:1:2:a1b2:c3d4:e5f6:1 192.168.88.10
+ * fe80::1234:56ff:fe78:9abc     192.168.88.10
+ * </pre>
+ *
+ * The mapping is held in primitive arrays located through an open addressing
+ * index, so rolling up an address allocates nothing. The file is reloaded by
+ * {@link #refresh(long)} when it is modified.
+ * <p>
+ * The rollup is not thread safe; it is used by the polls of its router.
+ *
+ */
+@Log4j2
+public class Ipv6Rollup {
+	/**
+	 * Interval in milliseconds between the checks for a modified mapping file.
+	 */
+	public static final long REFRESH_INTERVAL = 10_000L;
+
+	private static final String INVALID_LINE_MSG = "Invalid line %d of IPv6 mapping file %s: '%s'";
+	private static final String LOADED_MSG = "Loaded %d addresses from IPv6 mapping file %s";
+	private static final long MISSING_FILE_LOG_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+	private final SubnetMatcher lan;
+	private final long maskHigh;
+	private final long maskLow;
+	private final boolean prefixRollup;
+	private final Path mappingFile;
+	private final LogLimiter missingFile = new LogLimiter(MISSING_FILE_LOG_INTERVAL);
+	private FileTime mappingModified;
+	private long lastRefresh;
+
+	private long[] addressesHigh = new long[0];
+	private long[] addressesLow = new long[0];
+	private long[] hostsHigh = new long[0];
+	private long[] hostsLow = new long[0];
+	private int[] index = new int[1];
+	private int mappedCount;
+
+	/**
+	 * Creates a new rollup and loads the mapping file.
+	 *
+	 * @param lan          the LAN subnets; only the LAN addresses are rolled up
+	 *                     to the prefix.
+	 * @param prefixLength the rollup prefix length (e.g. <tt>64</tt>) or
+	 *                     <tt>0</tt> to roll up only the mapped addresses.
+	 * @param mappingFile  the mapping file or <tt>null</tt>.
+	 */
+	public Ipv6Rollup(@NonNull final SubnetMatcher lan, final int prefixLength, final Path mappingFile) {
+		if (prefixLength < 0 || prefixLength > 128) {
+			throw new IllegalArgumentException("Invalid IPv6 rollup prefix length. Expected value between 0 and 128");
+		}
+		this.lan = lan;
+		this.prefixRollup = prefixLength > 0;
+		this.maskHigh = mask(prefixLength);
+		this.maskLow = mask(prefixLength - 64);
+		this.mappingFile = mappingFile;
+		refresh(System.currentTimeMillis());
+	}
+
+	private static long mask(final int bits) {
+		if (bits <= 0) {
+			return 0L;
+		}
+		return bits >= 64 ? -1L : -1L << (64 - bits);
+	}
+
+	/**
+	 * Rolls up an address in place. IPv4 addresses and the IPv6 WAN addresses
+	 * without mapping are not changed.
+	 *
+	 * @param key the high and the low 64 bits of the key (see {@link Ipv6}).
+	 */
+	public void rollup(final long[] key) {
+		final long high = key[Ipv6.HIGH];
+		final long low = key[Ipv6.LOW];
+		if (Ipv6.isIpv4(high, low)) {
+			return;
+		}
+		final int row = indexOf(high, low);
+		if (row >= 0) {
+			key[Ipv6.HIGH] = hostsHigh[row];
+			key[Ipv6.LOW] = hostsLow[row];
+		} else if (prefixRollup && lan.indexOf(high, low) >= 0) {
+			key[Ipv6.HIGH] = high & maskHigh;
+			key[Ipv6.LOW] = low & maskLow;
+		}
+	}
+
+	private int indexOf(final long high, final long low) {
+		final int mask = index.length - 1;
+		for (int i = (int) (Ipv6.hash(high, low) >>> 32) & mask;; i = (i + 1) & mask) {
+			final int row = index[i] - 1;
+			if (row < 0) {
+				return -1;
+			} else if (addressesLow[row] == low && addressesHigh[row] == high) {
+				return row;
+			}
+		}
+	}
+
+	/**
+	 * Reloads the mapping file if it was modified. The file is checked at most
+	 * once per {@link #REFRESH_INTERVAL}. A file which cannot be read keeps the
+	 * previous mapping; a missing file is logged at most once per 10 minutes.
+	 *
+	 * @param now the current time in milliseconds.
+	 */
+	public void refresh(final long now) {
+		if (mappingFile == null || (lastRefresh > 0 && now - lastRefresh < REFRESH_INTERVAL)) {
+			return;
+		}
+		lastRefresh = now;
+		try {
+			final FileTime modified = Files.getLastModifiedTime(mappingFile);
+			if (!modified.equals(mappingModified)) {
+				load(Files.readAllLines(mappingFile, StandardCharsets.UTF_8));
+				mappingModified = modified;
+				log.info(String.format(LOADED_MSG, size(), mappingFile));
+			}
+		} catch (final NoSuchFileException ex) {
+			if (missingFile.tryAcquire(now)) {
+				log.warn(missingFile.message("ipv6_mapping_missing").with("file", String.valueOf(mappingFile)));
+			}
+		} catch (final IOException ex) {
+			log.warn(ex);
+		}
+	}
+
+	private void load(final List<String> lines) {
+		final long[] newAddressesHigh = new long[lines.size()];
+		final long[] newAddressesLow = new long[lines.size()];
+		final long[] newHostsHigh = new long[lines.size()];
+		final long[] newHostsLow = new long[lines.size()];
+		final int[] newIndex = new int[Integer.highestOneBit(Math.max(1, lines.size()) * 2 - 1) << 1];
+		final long[] address = new long[2];
+		final long[] host = new long[2];
+		int size = 0;
+		for (int n = 0; n < lines.size(); n++) {
+			final String line = lines.get(n).strip();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			final String[] fields = line.split("\\s+");
+			if (fields.length < 2 || !Ipv6.parse(fields[0], address) || !Ipv6.parse(fields[1], host)) {
+				log.warn(String.format(INVALID_LINE_MSG, n + 1, mappingFile, line));
+				continue;
+			}
+			final int mask = newIndex.length - 1;
+			int i = (int) (Ipv6.hash(address[Ipv6.HIGH], address[Ipv6.LOW]) >>> 32) & mask;
+			int row = -1;
+			while (newIndex[i] != 0) {
+				final int r = newIndex[i] - 1;
+				if (newAddressesHigh[r] == address[Ipv6.HIGH] && newAddressesLow[r] == address[Ipv6.LOW]) {
+					// the last line of an address wins
+					row = r;
+					break;
+				}
+				i = (i + 1) & mask;
+			}
+			if (row < 0) {
+				row = size++;
+				newIndex[i] = row + 1;
+			}
+			newAddressesHigh[row] = address[Ipv6.HIGH];
+			newAddressesLow[row] = address[Ipv6.LOW];
+			newHostsHigh[row] = host[Ipv6.HIGH];
+			newHostsLow[row] = host[Ipv6.LOW];
+		}
+		addressesHigh = newAddressesHigh;
+		addressesLow = newAddressesLow;
+		hostsHigh = newHostsHigh;
+		hostsLow = newHostsLow;
+		index = newIndex;
+		mappedCount = size;
+	}
+
+	/**
+	 * Number of addresses in the mapping file.
+	 *
+	 * @return number of mapped addresses.
+	 */
+	public int size() {
+		return mappedCount;
+	}
+}
@@ -0,0 +1,250 @@
+package com.a9ski.mikrotik.arena;
+
+import java.util.Arrays;
+
+/**
+ * Aggregation table of the traffic between pairs of IP addresses, keyed by the
+ * 128-bit keys of the two addresses (see {@link Ipv6}). The traffic of a row is
+ * sent by its first address to the second and received by its first address
+ * from the second. Like the {@link TrafficTable} the rows are stored in
+ * parallel primitive arrays located through an open addressing index, and
+ * clearing the table keeps the arrays.
+ * <p>
+ * The table is not thread safe.
+ *
+ */
+public class PairTable {
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] firstHigh;
+	private long[] firstLow;
+	private long[] secondHigh;
+	private long[] secondLow;
+	private long[] bytesSent;
+	private long[] bytesReceived;
+	private long[] packetsSent;
+	private long[] packetsReceived;
+	private int[] index;
+	private int size;
+
+	/**
+	 * Creates a new table.
+	 *
+	 * @param expectedSize expected number of pairs.
+	 */
+	public PairTable(final int expectedSize) {
+		final int rows = Math.max(MIN_CAPACITY, expectedSize);
+		firstHigh = new long[rows];
+		firstLow = new long[rows];
+		secondHigh = new long[rows];
+		secondLow = new long[rows];
+		bytesSent = new long[rows];
+		bytesReceived = new long[rows];
+		packetsSent = new long[rows];
+		packetsReceived = new long[rows];
+		index = new int[Integer.highestOneBit(rows * 2 - 1) << 1];
+	}
+
+	private int slot(final long firstHigh, final long firstLow, final long secondHigh, final long secondLow) {
+		return (int) (Ipv6.hash(secondHigh, secondLow ^ Ipv6.hash(firstHigh, firstLow)) >>> 32) & (index.length - 1);
+	}
+
+	/**
+	 * Finds the row of a pair, adding an empty row if the pair is missing.
+	 *
+	 * @param firstHigh  the high 64 bits of the key of the first address.
+	 * @param firstLow   the low 64 bits of the key of the first address.
+	 * @param secondHigh the high 64 bits of the key of the second address.
+	 * @param secondLow  the low 64 bits of the key of the second address.
+	 * @return the row.
+	 */
+	public int row(final long firstHigh, final long firstLow, final long secondHigh, final long secondLow) {
+		int i = slot(firstHigh, firstLow, secondHigh, secondLow);
+		for (;; i = (i + 1) & (index.length - 1)) {
+			final int row = index[i] - 1;
+			if (row < 0) {
+				break;
+			} else if (this.firstLow[row] == firstLow && this.secondLow[row] == secondLow && this.firstHigh[row] == firstHigh && this.secondHigh[row] == secondHigh) {
+				return row;
+			}
+		}
+		if (size == this.firstLow.length) {
+			grow();
+			return row(firstHigh, firstLow, secondHigh, secondLow);
+		}
+		final int row = size++;
+		this.firstHigh[row] = firstHigh;
+		this.firstLow[row] = firstLow;
+		this.secondHigh[row] = secondHigh;
+		this.secondLow[row] = secondLow;
+		bytesSent[row] = 0;
+		bytesReceived[row] = 0;
+		packetsSent[row] = 0;
+		packetsReceived[row] = 0;
+		index[i] = row + 1;
+		return row;
+	}
+
+	private void grow() {
+		final int rows = firstLow.length * 2;
+		firstHigh = Arrays.copyOf(firstHigh, rows);
+		firstLow = Arrays.copyOf(firstLow, rows);
+		secondHigh = Arrays.copyOf(secondHigh, rows);
+		secondLow = Arrays.copyOf(secondLow, rows);
+		bytesSent = Arrays.copyOf(bytesSent, rows);
+		bytesReceived = Arrays.copyOf(bytesReceived, rows);
+		packetsSent = Arrays.copyOf(packetsSent, rows);
+		packetsReceived = Arrays.copyOf(packetsReceived, rows);
+		index = new int[index.length * 2];
+		for (int row = 0; row < size; row++) {
+			int i = slot(firstHigh[row], firstLow[row], secondHigh[row], secondLow[row]);
+			while (index[i] != 0) {
+				i = (i + 1) & (index.length - 1);
+			}
+			index[i] = row + 1;
+		}
+	}
+
+	/**
+	 * Adds the traffic of an accounting record between two IPv4 addresses.
+	 *
+	 * @param source      the numeric source IP address.
+	 * @param destination the numeric destination IP address.
+	 * @param bytes       the number of bytes.
+	 * @param packets     the number of packets.
+	 */
+	public void add(final long source, final long destination, final long bytes, final long packets) {
+		final int row = row(0L, source, 0L, destination);
+		bytesSent[row] += bytes;
+		packetsSent[row] += packets;
+	}
+
+	/**
+	 * Adds the traffic of an accounting record with 128-bit keys.
+	 *
+	 * @param source      the key of the source IP address.
+	 * @param destination the key of the destination IP address.
+	 * @param bytes       the number of bytes.
+	 * @param packets     the number of packets.
+	 */
+	public void add(final long[] source, final long[] destination, final long bytes, final long packets) {
+		final int row = row(source[Ipv6.HIGH], source[Ipv6.LOW], destination[Ipv6.HIGH], destination[Ipv6.LOW]);
+		bytesSent[row] += bytes;
+		packetsSent[row] += packets;
+	}
+
+	/**
+	 * Adds traffic to a row.
+	 *
+	 * @param row             the row.
+	 * @param bytesSent       the bytes sent by the first address.
+	 * @param packetsSent     the packets sent by the first address.
+	 * @param bytesReceived   the bytes received by the first address.
+	 * @param packetsReceived the packets received by the first address.
+	 */
+	public void addAt(final int row, final long bytesSent, final long packetsSent, final long bytesReceived, final long packetsReceived) {
+		this.bytesSent[row] += bytesSent;
+		this.packetsSent[row] += packetsSent;
+		this.bytesReceived[row] += bytesReceived;
+		this.packetsReceived[row] += packetsReceived;
+	}
+
+	/**
+	 * Number of rows.
+	 *
+	 * @return number of rows.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all rows, keeping the allocated arrays.
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(index, 0);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Gets the high 64 bits of the key of the first address of a row.
+	 *
+	 * @param row the row.
+	 * @return the high 64 bits of the key.
+	 */
+	public long firstHighAt(final int row) {
+		return firstHigh[row];
+	}
+
+	/**
+	 * Gets the low 64 bits of the key of the first address of a row.
+	 *
+	 * @param row the row.
+	 * @return the low 64 bits of the key.
+	 */
+	public long firstLowAt(final int row) {
+		return firstLow[row];
+	}
+
+	/**
+	 * Gets the high 64 bits of the key of the second address of a row.
+	 *
+	 * @param row the row.
+	 * @return the high 64 bits of the key.
+	 */
+	public long secondHighAt(final int row) {
+		return secondHigh[row];
+	}
+
+	/**
+	 * Gets the low 64 bits of the key of the second address of a row.
+	 *
+	 * @param row the row.
+	 * @return the low 64 bits of the key.
+	 */
+	public long secondLowAt(final int row) {
+		return secondLow[row];
+	}
+
+	/**
+	 * Gets the bytes sent by the first address to the second.
+	 *
+	 * @param row the row.
+	 * @return the number of bytes.
+	 */
+	public long bytesSentAt(final int row) {
+		return bytesSent[row];
+	}
+
+	/**
+	 * Gets the bytes received by the first address from the second.
+	 *
+	 * @param row the row.
+	 * @return the number of bytes.
+	 */
+	public long bytesReceivedAt(final int row) {
+		return bytesReceived[row];
+	}
+
+	/**
+	 * Gets the packets sent by the first address to the second.
+	 *
+	 * @param row the row.
+	 * @return the number of packets.
+	 */
+	public long packetsSentAt(final int row) {
+		return packetsSent[row];
+	}
+
+	/**
+	 * Gets the packets received by the first address from the second.
+	 *
+	 * @param row the row.
+	 * @return the number of packets.
+	 */
+	public long packetsReceivedAt(final int row) {
+		return packetsReceived[row];
+	}
+}
@@ -0,0 +1,207 @@
+package com.a9ski.mikrotik.arena;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.a9ski.mikrotik.accounting.parsers.AccountingBodyParser;
+import com.a9ski.mikrotik.logging.LogLimiter;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Buffers of a single poll cycle, owned by a router and reused by all its
+ * polls: the raw response body, the aggregation table (and optionally the
+ * source/destination pairs), the subnet totals and the text of the database
+ * write. {@link #reset()} is called at the beginning of every poll;
+ * it keeps the allocated buffers, so once they have grown to the size of the
+ * router's traffic the poll cycle allocates close to nothing.
+ * <p>
+ * The arena is not thread safe. The polls of a router never overlap, see
+ * {@link com.a9ski.mikrotik.PollScheduler}.
+ *
+ */
+@Log4j2
+public class PollArena {
+	private static final int INITIAL_BODY_SIZE = 64 * 1024;
+	private static final int INITIAL_TEXT_SIZE = 64 * 1024;
+	private static final int EXPECTED_IPS = 1024;
+	private static final LogLimiter INVALID_RECORDS = new LogLimiter(TimeUnit.MINUTES.toMillis(1));
+
+	private final AccountingBodyParser parser = new AccountingBodyParser();
+	private final TrafficTable traffic = new TrafficTable(EXPECTED_IPS);
+	private final SubnetTotals subnetTotals = new SubnetTotals();
+	private final StringBuilder text = new StringBuilder(INITIAL_TEXT_SIZE);
+	private final long[] sourceKey = new long[2];
+	private final long[] destinationKey = new long[2];
+	private Ipv6Rollup rollup;
+	private PairTable pairs;
+	private byte[] body = new byte[INITIAL_BODY_SIZE];
+	private int bodyLength;
+	private int records;
+	private int invalidRecords;
+
+	/**
+	 * Sets the rollup of the IPv6 addresses of the router.
+	 *
+	 * @param rollup the rollup or <tt>null</tt> to aggregate every IPv6 address
+	 *               separately.
+	 */
+	public void setRollup(final Ipv6Rollup rollup) {
+		this.rollup = rollup;
+		parser.setRollup(rollup);
+	}
+
+	/**
+	 * Enables the source/destination pairs of the accounting records, kept in
+	 * {@link #getPairs()} in addition to the per-address traffic.
+	 *
+	 * @param enabled <tt>true</tt> to keep the pairs.
+	 */
+	public void setPairsEnabled(final boolean enabled) {
+		pairs = enabled ? new PairTable(EXPECTED_IPS) : null;
+		traffic.setPairs(pairs);
+	}
+
+	/**
+	 * Clears the arena for a new poll.
+	 */
+	public void reset() {
+		traffic.clear();
+		if (pairs != null) {
+			pairs.clear();
+		}
+		text.setLength(0);
+		bodyLength = 0;
+		records = 0;
+		invalidRecords = 0;
+	}
+
+	/**
+	 * Reads a raw response body into the body buffer, growing the buffer if
+	 * needed.
+	 *
+	 * @param in the response stream. The stream is not closed.
+	 * @throws IOException thrown if the stream cannot be read.
+	 */
+	public void readBody(final InputStream in) throws IOException {
+		bodyLength = 0;
+		int read;
+		while ((read = in.read(body, bodyLength, body.length - bodyLength)) >= 0) {
+			bodyLength += read;
+			if (bodyLength == body.length) {
+				body = Arrays.copyOf(body, body.length * 2);
+			}
+		}
+	}
+
+	/**
+	 * Parses the body buffer as an accounting page and aggregates its lines into
+	 * the traffic table.
+	 */
+	public void parseBody() {
+		records += parser.parse(body, bodyLength, traffic);
+		invalidRecords += parser.getInvalidLines();
+	}
+
+	/**
+	 * Aggregates a single accounting record into the traffic table. Used by the
+	 * accounting sources which don't provide a raw body.
+	 *
+	 * @param sourceIp      the source IP address.
+	 * @param destinationIp the destination IP address.
+	 * @param bytes         the number of bytes.
+	 * @param packets       the number of packets.
+	 */
+	public void addRecord(final String sourceIp, final String destinationIp, final long bytes, final long packets) {
+		if (!Ipv6.parse(sourceIp, sourceKey) || !Ipv6.parse(destinationIp, destinationKey)) {
+			invalidRecords++;
+			if (INVALID_RECORDS.tryAcquire(System.currentTimeMillis())) {
+				log.warn(INVALID_RECORDS.message("invalid_record").with("source", sourceIp).with("destination", destinationIp));
+			}
+			return;
+		}
+		if (rollup != null) {
+			rollup.rollup(sourceKey);
+			rollup.rollup(destinationKey);
+		}
+		traffic.add(sourceKey, destinationKey, bytes, packets);
+		records++;
+	}
+
+	/**
+	 * Gets the raw body buffer. Only the first {@link #getBodyLength()} bytes
+	 * are valid.
+	 *
+	 * @return the body buffer.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Gets the length of the raw body.
+	 *
+	 * @return the length of the body.
+	 */
+	public int getBodyLength() {
+		return bodyLength;
+	}
+
+	/**
+	 * Gets the traffic aggregated in the current poll.
+	 *
+	 * @return the traffic table.
+	 */
+	public TrafficTable getTraffic() {
+		return traffic;
+	}
+
+	/**
+	 * Gets the source/destination pairs of the accounting records of the
+	 * current poll.
+	 *
+	 * @return the pair table or <tt>null</tt> if the pairs are not enabled.
+	 */
+	public PairTable getPairs() {
+		return pairs;
+	}
+
+	/**
+	 * Gets the traffic totals of the subnets, computed when the traffic is
+	 * classified.
+	 *
+	 * @return the subnet totals.
+	 */
+	public SubnetTotals getSubnetTotals() {
+		return subnetTotals;
+	}
+
+	/**
+	 * Gets the text buffer used to build the database write.
+	 *
+	 * @return the text buffer.
+	 */
+	public StringBuilder getText() {
+		return text;
+	}
+
+	/**
+	 * Number of accounting records aggregated in the current poll.
+	 *
+	 * @return number of records.
+	 */
+	public int getRecords() {
+		return records;
+	}
+
+	/**
+	 * Number of invalid accounting records skipped in the current poll.
+	 *
+	 * @return number of invalid records.
+	 */
+	public int getInvalidRecords() {
+		return invalidRecords;
+	}
+}
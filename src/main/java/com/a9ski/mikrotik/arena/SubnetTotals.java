@@ -0,0 +1,132 @@
+package com.a9ski.mikrotik.arena;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Traffic totals of the LAN subnets of a router and of all WAN addresses,
+ * accumulated while the traffic table is classified. The totals are stored in
+ * primitive arrays indexed by the subnet index; the last index holds the WAN
+ * total.
+ * <p>
+ * The totals are not thread safe.
+ *
+ */
+public class SubnetTotals {
+	/**
+	 * Name of the WAN total.
+	 */
+	public static final String WAN = "WAN";
+
+	private List<String> names = List.of();
+	private long[] bytesSent = new long[1];
+	private long[] bytesReceived = new long[1];
+	private long[] packetsSent = new long[1];
+	private long[] packetsReceived = new long[1];
+
+	/**
+	 * Clears the totals.
+	 *
+	 * @param subnets the names of the LAN subnets (e.g. 192.168.1.0/24).
+	 */
+	public void reset(final List<String> subnets) {
+		names = subnets;
+		final int size = subnets.size() + 1;
+		if (bytesSent.length != size) {
+			bytesSent = new long[size];
+			bytesReceived = new long[size];
+			packetsSent = new long[size];
+			packetsReceived = new long[size];
+		} else {
+			Arrays.fill(bytesSent, 0L);
+			Arrays.fill(bytesReceived, 0L);
+			Arrays.fill(packetsSent, 0L);
+			Arrays.fill(packetsReceived, 0L);
+		}
+	}
+
+	/**
+	 * Adds the traffic of a table row.
+	 *
+	 * @param subnet  the index of the subnet of the row or <tt>-1</tt> for a WAN
+	 *                address.
+	 * @param traffic the traffic table.
+	 * @param row     the row.
+	 */
+	public void add(final int subnet, final TrafficTable traffic, final int row) {
+		final int i = subnet >= 0 ? subnet : names.size();
+		bytesSent[i] += traffic.bytesSentAt(row);
+		bytesReceived[i] += traffic.bytesReceivedAt(row);
+		packetsSent[i] += traffic.packetsSentAt(row);
+		packetsReceived[i] += traffic.packetsReceivedAt(row);
+	}
+
+	/**
+	 * Number of totals: the LAN subnets and the WAN total.
+	 *
+	 * @return number of totals.
+	 */
+	public int size() {
+		return names.size() + 1;
+	}
+
+	/**
+	 * Gets the name of a total.
+	 *
+	 * @param index the index of the total.
+	 * @return the subnet or {@link #WAN}.
+	 */
+	public String nameAt(final int index) {
+		return index < names.size() ? names.get(index) : WAN;
+	}
+
+	/**
+	 * Checks if a total is the WAN total.
+	 *
+	 * @param index the index of the total.
+	 * @return <tt>true</tt> for the WAN total.
+	 */
+	public boolean isWanAt(final int index) {
+		return index == names.size();
+	}
+
+	/**
+	 * Gets the bytes sent by the addresses of a total.
+	 *
+	 * @param index the index of the total.
+	 * @return the bytes sent.
+	 */
+	public long bytesSentAt(final int index) {
+		return bytesSent[index];
+	}
+
+	/**
+	 * Gets the bytes received by the addresses of a total.
+	 *
+	 * @param index the index of the total.
+	 * @return the bytes received.
+	 */
+	public long bytesReceivedAt(final int index) {
+		return bytesReceived[index];
+	}
+
+	/**
+	 * Gets the packets sent by the addresses of a total.
+	 *
+	 * @param index the index of the total.
+	 * @return the packets sent.
+	 */
+	public long packetsSentAt(final int index) {
+		return packetsSent[index];
+	}
+
+	/**
+	 * Gets the packets received by the addresses of a total.
+	 *
+	 * @param index the index of the total.
+	 * @return the packets received.
+	 */
+	public long packetsReceivedAt(final int index) {
+		return packetsReceived[index];
+	}
+}
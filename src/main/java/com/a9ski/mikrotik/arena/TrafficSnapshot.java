@@ -0,0 +1,270 @@
+package com.a9ski.mikrotik.arena;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import com.a9ski.mikrotik.model.TrafficData;
+
+/**
+ * Immutable copy of the per-IP traffic of a poll. The traffic service
+ * publishes a new snapshot after every poll by replacing the reference to the
+ * previous one, so any number of threads can read the latest traffic of a
+ * router without locking and without blocking the poll.
+ * <p>
+ * The rows are sorted by IP key (the IPv4 addresses before the IPv6
+ * addresses), so an IP is found with a binary search.
+ *
+ */
+public final class TrafficSnapshot {
+	/**
+	 * Snapshot of a router that has not been polled yet.
+	 */
+	public static final TrafficSnapshot EMPTY = new TrafficSnapshot(0L, new long[0], new long[0], new long[0], new long[0], new long[0], new long[0], new boolean[0]);
+
+	private final long timestamp;
+	private final long[] ipsHigh;
+	private final long[] ips;
+	private final long[] bytesSent;
+	private final long[] bytesReceived;
+	private final long[] packetsSent;
+	private final long[] packetsReceived;
+	private final boolean[] lan;
+
+	private TrafficSnapshot(final long timestamp, final long[] ipsHigh, final long[] ips, final long[] bytesSent, final long[] bytesReceived, final long[] packetsSent, final long[] packetsReceived,
+			final boolean[] lan) {
+		this.timestamp = timestamp;
+		this.ipsHigh = ipsHigh;
+		this.ips = ips;
+		this.bytesSent = bytesSent;
+		this.bytesReceived = bytesReceived;
+		this.packetsSent = packetsSent;
+		this.packetsReceived = packetsReceived;
+		this.lan = lan;
+	}
+
+	/**
+	 * Copies the rows with traffic of a classified traffic table.
+	 *
+	 * @param timestamp the time of the poll in milliseconds.
+	 * @param traffic   the traffic table.
+	 * @return new snapshot.
+	 */
+	public static TrafficSnapshot of(final long timestamp, final TrafficTable traffic) {
+		// sorts the IPv4 rows by IP: the IP is in the high and the row in the low
+		// 32 bits, the sign bit is flipped to keep the unsigned order of the IPs
+		final long[] keys = new long[traffic.size()];
+		int ipv4Size = 0;
+		int ipv6Size = 0;
+		for (int row = 0; row < traffic.size(); row++) {
+			if (!traffic.isZeroAt(row)) {
+				if (Ipv6.isIpv4(traffic.ipHighAt(row), traffic.ipAt(row))) {
+					keys[ipv4Size++] = ((traffic.ipAt(row) ^ 0x80000000L) << 32) | row;
+				} else {
+					ipv6Size++;
+				}
+			}
+		}
+		Arrays.sort(keys, 0, ipv4Size);
+		final int size = ipv4Size + ipv6Size;
+		if (ipv6Size > 0) {
+			// the IPv6 rows (usually few, after the rollup) follow in unsigned order
+			final Comparator<Integer> order = Comparator.<Integer>comparingLong(row -> traffic.ipHighAt(row) ^ Long.MIN_VALUE)
+					.thenComparingLong(row -> traffic.ipAt(row) ^ Long.MIN_VALUE);
+			// @formatter:off
+			final int[] rows = IntStream.range(0, traffic.size())
+					.filter(row -> !traffic.isZeroAt(row) && !Ipv6.isIpv4(traffic.ipHighAt(row), traffic.ipAt(row)))
+					.boxed()
+					.sorted(order)
+					.mapToInt(Integer::intValue)
+					.toArray();
+			// @formatter:on
+			for (int i = 0; i < rows.length; i++) {
+				keys[ipv4Size + i] = rows[i];
+			}
+		}
+
+		final long[] ipsHigh = new long[size];
+		final long[] ips = new long[size];
+		final long[] bytesSent = new long[size];
+		final long[] bytesReceived = new long[size];
+		final long[] packetsSent = new long[size];
+		final long[] packetsReceived = new long[size];
+		final boolean[] lan = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			final int row = (int) (keys[i] & 0xFFFFFFFFL);
+			ipsHigh[i] = traffic.ipHighAt(row);
+			ips[i] = traffic.ipAt(row);
+			bytesSent[i] = traffic.bytesSentAt(row);
+			bytesReceived[i] = traffic.bytesReceivedAt(row);
+			packetsSent[i] = traffic.packetsSentAt(row);
+			packetsReceived[i] = traffic.packetsReceivedAt(row);
+			lan[i] = traffic.isLanAt(row);
+		}
+		return new TrafficSnapshot(timestamp, ipsHigh, ips, bytesSent, bytesReceived, packetsSent, packetsReceived, lan);
+	}
+
+	/**
+	 * Gets the time of the poll.
+	 *
+	 * @return the time in milliseconds or <tt>0</tt> for {@link #EMPTY}.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Number of IP addresses with traffic.
+	 *
+	 * @return number of IP addresses.
+	 */
+	public int size() {
+		return ips.length;
+	}
+
+	/**
+	 * Finds the row of an IPv4 address.
+	 *
+	 * @param ip the numeric IPv4 address.
+	 * @return the row or <tt>-1</tt> if the IP had no traffic.
+	 */
+	public int indexOf(final long ip) {
+		return indexOf(0L, ip);
+	}
+
+	/**
+	 * Finds the row of an IP address.
+	 *
+	 * @param high the high 64 bits of the key.
+	 * @param low  the low 64 bits of the key.
+	 * @return the row or <tt>-1</tt> if the IP had no traffic.
+	 */
+	public int indexOf(final long high, final long low) {
+		int from = 0;
+		int to = ips.length - 1;
+		while (from <= to) {
+			final int middle = (from + to) >>> 1;
+			int c = Long.compareUnsigned(ipsHigh[middle], high);
+			if (c == 0) {
+				c = Long.compareUnsigned(ips[middle], low);
+			}
+			if (c < 0) {
+				from = middle + 1;
+			} else if (c > 0) {
+				to = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the traffic of an IP address.
+	 *
+	 * @param ip the IP address (e.g. 192.168.1.1 or 2001:db8::1).
+	 * @return the traffic or <tt>null</tt> if the IP had no traffic.
+	 */
+	public TrafficData get(final String ip) {
+		final long[] key = new long[2];
+		final int row = Ipv6.parse(ip, key) ? indexOf(key[Ipv6.HIGH], key[Ipv6.LOW]) : -1;
+		return row >= 0 ? trafficAt(row) : null;
+	}
+
+	/**
+	 * Gets the traffic of all IP addresses.
+	 *
+	 * @return the traffic by IP address, sorted by IP address.
+	 */
+	public Map<String, TrafficData> toMap() {
+		final Map<String, TrafficData> map = new LinkedHashMap<>();
+		for (int row = 0; row < ips.length; row++) {
+			map.put(Ipv6.format(ipsHigh[row], ips[row]), trafficAt(row));
+		}
+		return map;
+	}
+
+	private TrafficData trafficAt(final int row) {
+		// @formatter:off
+		return TrafficData.builder()
+				.bytesSent(bytesSent[row])
+				.bytesReceived(bytesReceived[row])
+				.packetsSent(packetsSent[row])
+				.packetsReceived(packetsReceived[row])
+				.build();
+		// @formatter:on
+	}
+
+	/**
+	 * Gets the IP address of a row: the numeric IPv4 address or the low 64 bits
+	 * of the IPv6 key.
+	 *
+	 * @param row the row.
+	 * @return the numeric IP address.
+	 */
+	public long ipAt(final int row) {
+		return ips[row];
+	}
+
+	/**
+	 * Gets the high 64 bits of the IP key of a row.
+	 *
+	 * @param row the row.
+	 * @return the high 64 bits, <tt>0</tt> for an IPv4 address.
+	 */
+	public long ipHighAt(final int row) {
+		return ipsHigh[row];
+	}
+
+	/**
+	 * Gets the bytes sent by the IP of a row.
+	 *
+	 * @param row the row.
+	 * @return the bytes sent.
+	 */
+	public long bytesSentAt(final int row) {
+		return bytesSent[row];
+	}
+
+	/**
+	 * Gets the bytes received by the IP of a row.
+	 *
+	 * @param row the row.
+	 * @return the bytes received.
+	 */
+	public long bytesReceivedAt(final int row) {
+		return bytesReceived[row];
+	}
+
+	/**
+	 * Gets the packets sent by the IP of a row.
+	 *
+	 * @param row the row.
+	 * @return the packets sent.
+	 */
+	public long packetsSentAt(final int row) {
+		return packetsSent[row];
+	}
+
+	/**
+	 * Gets the packets received by the IP of a row.
+	 *
+	 * @param row the row.
+	 * @return the packets received.
+	 */
+	public long packetsReceivedAt(final int row) {
+		return packetsReceived[row];
+	}
+
+	/**
+	 * Checks if the IP of a row belongs to the LAN.
+	 *
+	 * @param row the row.
+	 * @return <tt>true</tt> if the IP belongs to the LAN.
+	 */
+	public boolean isLanAt(final int row) {
+		return lan[row];
+	}
+}
@@ -0,0 +1,394 @@
+package com.a9ski.mikrotik.arena;
+
+import java.util.Arrays;
+
+/**
+ * Aggregation table of the traffic of a poll, keyed by the 128-bit key of the
+ * IP address (see {@link Ipv6}); the methods taking a single <tt>long</tt>
+ * are the shortcuts for the numeric IPv4 addresses. The rows are stored in parallel primitive arrays in insertion order
+ * and located through an open addressing (linear probing) index. Clearing the
+ * table keeps the arrays, so after the first polls a router aggregates its
+ * traffic without allocating.
+ * <p>
+ * The table is not thread safe.
+ *
+ */
+public class TrafficTable {
+	private static final int MIN_CAPACITY = 16;
+	private static final byte LAN = 1;
+	private static final byte SKIPPED = 2;
+
+	private long[] ips;
+	private long[] ipsHigh;
+	private long[] bytesSent;
+	private long[] bytesReceived;
+	private long[] packetsSent;
+	private long[] packetsReceived;
+	private byte[] flags;
+	private int[] index;
+	private int size;
+	private PairTable pairs;
+
+	/**
+	 * Creates a new table.
+	 *
+	 * @param expectedSize expected number of IP addresses.
+	 */
+	public TrafficTable(final int expectedSize) {
+		final int rows = Math.max(MIN_CAPACITY, expectedSize);
+		ips = new long[rows];
+		ipsHigh = new long[rows];
+		bytesSent = new long[rows];
+		bytesReceived = new long[rows];
+		packetsSent = new long[rows];
+		packetsReceived = new long[rows];
+		flags = new byte[rows];
+		index = new int[Integer.highestOneBit(rows * 2 - 1) << 1];
+	}
+
+	private int slot(final long high, final long low) {
+		return (int) (Ipv6.hash(high, low) >>> 32) & (index.length - 1);
+	}
+
+	/**
+	 * Finds the row of an IPv4 address.
+	 *
+	 * @param ip the numeric IPv4 address.
+	 * @return the row or <tt>-1</tt> if the IP is missing.
+	 */
+	public int indexOf(final long ip) {
+		return indexOf(0L, ip);
+	}
+
+	/**
+	 * Finds the row of an IP address.
+	 *
+	 * @param high the high 64 bits of the key.
+	 * @param low  the low 64 bits of the key.
+	 * @return the row or <tt>-1</tt> if the IP is missing.
+	 */
+	public int indexOf(final long high, final long low) {
+		for (int i = slot(high, low);; i = (i + 1) & (index.length - 1)) {
+			final int row = index[i] - 1;
+			if (row < 0) {
+				return -1;
+			} else if (ips[row] == low && ipsHigh[row] == high) {
+				return row;
+			}
+		}
+	}
+
+	/**
+	 * Finds the row of an IPv4 address, adding an empty row if the IP is
+	 * missing.
+	 *
+	 * @param ip the numeric IPv4 address.
+	 * @return the row.
+	 */
+	public int row(final long ip) {
+		return row(0L, ip);
+	}
+
+	/**
+	 * Finds the row of an IP address, adding an empty row if the IP is missing.
+	 *
+	 * @param high the high 64 bits of the key.
+	 * @param low  the low 64 bits of the key.
+	 * @return the row.
+	 */
+	public int row(final long high, final long low) {
+		int i = slot(high, low);
+		for (;; i = (i + 1) & (index.length - 1)) {
+			final int row = index[i] - 1;
+			if (row < 0) {
+				break;
+			} else if (ips[row] == low && ipsHigh[row] == high) {
+				return row;
+			}
+		}
+		if (size == ips.length) {
+			grow();
+			return row(high, low);
+		}
+		final int row = size++;
+		ips[row] = low;
+		ipsHigh[row] = high;
+		bytesSent[row] = 0;
+		bytesReceived[row] = 0;
+		packetsSent[row] = 0;
+		packetsReceived[row] = 0;
+		flags[row] = 0;
+		index[i] = row + 1;
+		return row;
+	}
+
+	private void grow() {
+		final int rows = ips.length * 2;
+		ips = Arrays.copyOf(ips, rows);
+		ipsHigh = Arrays.copyOf(ipsHigh, rows);
+		bytesSent = Arrays.copyOf(bytesSent, rows);
+		bytesReceived = Arrays.copyOf(bytesReceived, rows);
+		packetsSent = Arrays.copyOf(packetsSent, rows);
+		packetsReceived = Arrays.copyOf(packetsReceived, rows);
+		flags = Arrays.copyOf(flags, rows);
+		index = new int[index.length * 2];
+		for (int row = 0; row < size; row++) {
+			int i = slot(ipsHigh[row], ips[row]);
+			while (index[i] != 0) {
+				i = (i + 1) & (index.length - 1);
+			}
+			index[i] = row + 1;
+		}
+	}
+
+	/**
+	 * Adds the traffic of an accounting record: the bytes and packets are sent
+	 * by the source and received by the destination.
+	 *
+	 * @param source      the numeric source IP address.
+	 * @param destination the numeric destination IP address.
+	 * @param bytes       the number of bytes.
+	 * @param packets     the number of packets.
+	 */
+	public void add(final long source, final long destination, final long bytes, final long packets) {
+		addSent(source, bytes, packets);
+		addReceived(destination, bytes, packets);
+		if (pairs != null) {
+			pairs.add(source, destination, bytes, packets);
+		}
+	}
+
+	/**
+	 * Adds the traffic of an accounting record with 128-bit keys.
+	 *
+	 * @param source      the key of the source IP address.
+	 * @param destination the key of the destination IP address.
+	 * @param bytes       the number of bytes.
+	 * @param packets     the number of packets.
+	 */
+	public void add(final long[] source, final long[] destination, final long bytes, final long packets) {
+		addSent(source[Ipv6.HIGH], source[Ipv6.LOW], bytes, packets);
+		addReceived(destination[Ipv6.HIGH], destination[Ipv6.LOW], bytes, packets);
+		if (pairs != null) {
+			pairs.add(source, destination, bytes, packets);
+		}
+	}
+
+	/**
+	 * Sets the table receiving the source/destination pairs of the accounting
+	 * records added with {@link #add(long, long, long, long)}, before they are
+	 * collapsed into the per-address rows. The pairs are not cleared with the
+	 * table.
+	 *
+	 * @param pairs the pair table or <tt>null</tt> to keep no pairs.
+	 */
+	public void setPairs(final PairTable pairs) {
+		this.pairs = pairs;
+	}
+
+	/**
+	 * Adds traffic sent by an IPv4 address.
+	 *
+	 * @param ip      the numeric IPv4 address.
+	 * @param bytes   the number of bytes.
+	 * @param packets the number of packets.
+	 */
+	public void addSent(final long ip, final long bytes, final long packets) {
+		addSent(0L, ip, bytes, packets);
+	}
+
+	/**
+	 * Adds traffic sent by an IP address.
+	 *
+	 * @param high    the high 64 bits of the key.
+	 * @param low     the low 64 bits of the key.
+	 * @param bytes   the number of bytes.
+	 * @param packets the number of packets.
+	 */
+	public void addSent(final long high, final long low, final long bytes, final long packets) {
+		final int row = row(high, low);
+		bytesSent[row] += bytes;
+		packetsSent[row] += packets;
+	}
+
+	/**
+	 * Adds traffic received by an IPv4 address.
+	 *
+	 * @param ip      the numeric IPv4 address.
+	 * @param bytes   the number of bytes.
+	 * @param packets the number of packets.
+	 */
+	public void addReceived(final long ip, final long bytes, final long packets) {
+		addReceived(0L, ip, bytes, packets);
+	}
+
+	/**
+	 * Adds traffic received by an IP address.
+	 *
+	 * @param high    the high 64 bits of the key.
+	 * @param low     the low 64 bits of the key.
+	 * @param bytes   the number of bytes.
+	 * @param packets the number of packets.
+	 */
+	public void addReceived(final long high, final long low, final long bytes, final long packets) {
+		final int row = row(high, low);
+		bytesReceived[row] += bytes;
+		packetsReceived[row] += packets;
+	}
+
+	/**
+	 * Number of rows.
+	 *
+	 * @return number of rows.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all rows, keeping the allocated arrays.
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(index, 0);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Gets the IP address of a row: the numeric IPv4 address or the low 64 bits
+	 * of the IPv6 key.
+	 *
+	 * @param row the row.
+	 * @return the numeric IP address.
+	 */
+	public long ipAt(final int row) {
+		return ips[row];
+	}
+
+	/**
+	 * Gets the high 64 bits of the IP key of a row.
+	 *
+	 * @param row the row.
+	 * @return the high 64 bits, <tt>0</tt> for an IPv4 address.
+	 */
+	public long ipHighAt(final int row) {
+		return ipsHigh[row];
+	}
+
+	/**
+	 * Appends the IP address of a row.
+	 *
+	 * @param text the text to append to.
+	 * @param row  the row.
+	 * @return the text.
+	 */
+	public StringBuilder appendIp(final StringBuilder text, final int row) {
+		return Ipv6.append(text, ipsHigh[row], ips[row]);
+	}
+
+	/**
+	 * Gets the bytes sent by the IP of a row.
+	 *
+	 * @param row the row.
+	 * @return the bytes sent.
+	 */
+	public long bytesSentAt(final int row) {
+		return bytesSent[row];
+	}
+
+	/**
+	 * Gets the bytes received by the IP of a row.
+	 *
+	 * @param row the row.
+	 * @return the bytes received.
+	 */
+	public long bytesReceivedAt(final int row) {
+		return bytesReceived[row];
+	}
+
+	/**
+	 * Gets the packets sent by the IP of a row.
+	 *
+	 * @param row the row.
+	 * @return the packets sent.
+	 */
+	public long packetsSentAt(final int row) {
+		return packetsSent[row];
+	}
+
+	/**
+	 * Gets the packets received by the IP of a row.
+	 *
+	 * @param row the row.
+	 * @return the packets received.
+	 */
+	public long packetsReceivedAt(final int row) {
+		return packetsReceived[row];
+	}
+
+	/**
+	 * Checks if the IP of a row had no traffic.
+	 *
+	 * @param row the row.
+	 * @return <tt>true</tt> if all counters are zero.
+	 */
+	public boolean isZeroAt(final int row) {
+		return bytesSent[row] == 0 && bytesReceived[row] == 0 && packetsSent[row] == 0 && packetsReceived[row] == 0;
+	}
+
+	/**
+	 * Checks if the IP of a row belongs to the LAN.
+	 *
+	 * @param row the row.
+	 * @return <tt>true</tt> if the IP belongs to the LAN.
+	 */
+	public boolean isLanAt(final int row) {
+		return (flags[row] & LAN) != 0;
+	}
+
+	/**
+	 * Marks the IP of a row as belonging to the LAN.
+	 *
+	 * @param row the row.
+	 * @param lan <tt>true</tt> if the IP belongs to the LAN.
+	 */
+	public void setLanAt(final int row, final boolean lan) {
+		flags[row] = (byte) (lan ? flags[row] | LAN : flags[row] & ~LAN);
+	}
+
+	/**
+	 * Checks if the row is excluded from writing.
+	 *
+	 * @param row the row.
+	 * @return <tt>true</tt> if the row is not written.
+	 */
+	public boolean isSkippedAt(final int row) {
+		return (flags[row] & SKIPPED) != 0;
+	}
+
+	/**
+	 * Excludes a row from writing or includes it back.
+	 *
+	 * @param row     the row.
+	 * @param skipped <tt>true</tt> if the row is not written.
+	 */
+	public void setSkippedAt(final int row, final boolean skipped) {
+		flags[row] = (byte) (skipped ? flags[row] | SKIPPED : flags[row] & ~SKIPPED);
+	}
+
+	/**
+	 * Number of rows to be written.
+	 *
+	 * @return number of rows not skipped.
+	 */
+	public int getWrittenCount() {
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if ((flags[row] & SKIPPED) == 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,320 @@
+package com.a9ski.mikrotik.backfill;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.accounting.ContentDecoder;
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+import com.a9ski.mikrotik.influxdb.LineProtocolFormatter;
+import com.a9ski.mikrotik.loadgen.CapturingAccountingClient;
+import com.a9ski.mikrotik.model.BackfillResult;
+
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Writes the polls captured by {@link CapturingAccountingClient} to the
+ * database, e.g. after a database outage. Every captured poll is aggregated
+ * per IP and written with its original timestamp (taken from the file name).
+ * Gzip compressed captures (<tt>.cgi.gz</tt>) are supported.
+ * <p>
+ * The polls are parsed in parallel, every parser thread with its own poll
+ * arena. The points are collected in poll order into large batches, which are
+ * written by several concurrent writers. The number of written points per
+ * second can be limited, so the backfill doesn't overload the database
+ * serving the live polls.
+ *
+ */
+@Log4j2
+public class Backfill {
+	/**
+	 * Default number of points in a write batch.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 20_000;
+	/**
+	 * Extension of the compressed captured polls.
+	 */
+	public static final String GZIP_EXTENSION = ".gz";
+
+	private static final String INVALID_POLL_MSG = "Cannot read captured poll '%s'";
+	private static final String PROGRESS_MSG = "Backfill of '%s': %d/%d polls, %d points written (%.0f points/s, %.2f MB/s), %d failed batches";
+
+	private final Path captureDir;
+	private final SubnetMatcher subnetMatcher;
+	private final InfluxDbClient dbClient;
+	private final int parsers;
+	private final int writers;
+	private final int batchSize;
+	private final long maxPointsPerSecond;
+	private final long progressInterval;
+	private final Retry retry;
+	private final ThreadLocal<PollArena> arenas = ThreadLocal.withInitial(PollArena::new);
+
+	private final AtomicLong parsedPolls = new AtomicLong();
+	private final AtomicLong invalidPolls = new AtomicLong();
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong writtenPoints = new AtomicLong();
+	private final AtomicLong writtenBytes = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong failedBatches = new AtomicLong();
+
+	/**
+	 * Creates a new backfill.
+	 *
+	 * @param captureDir         the directory with the captured polls of a router.
+	 * @param subnetMatcher      the LAN subnets of the router.
+	 * @param dbClient           the database client of the router.
+	 * @param parsers            number of parser threads. <tt>0</tt> uses the
+	 *                           number of processors.
+	 * @param writers            number of concurrent write requests. <tt>0</tt>
+	 *                           uses 2 writers.
+	 * @param batchSize          number of points in a write request. <tt>0</tt>
+	 *                           uses {@link #DEFAULT_BATCH_SIZE}.
+	 * @param maxPointsPerSecond maximal number of written points per second.
+	 *                           <tt>0</tt> disables the limit.
+	 * @param progressInterval   interval in milliseconds between the progress
+	 *                           logs. <tt>0</tt> logs every 5 seconds.
+	 * @param maxRetries         max number of attempts to write a batch.
+	 *                           <tt>0</tt> uses 3 attempts.
+	 */
+	@Builder
+	public Backfill(@NonNull final Path captureDir, @NonNull final SubnetMatcher subnetMatcher, @NonNull final InfluxDbClient dbClient, final int parsers, final int writers, final int batchSize,
+			final long maxPointsPerSecond, final long progressInterval, final int maxRetries) {
+		if (parsers < 0 || writers < 0 || batchSize < 0 || maxPointsPerSecond < 0 || progressInterval < 0 || maxRetries < 0) {
+			throw new IllegalArgumentException("Invalid backfill settings. Expected non-negative values");
+		}
+		this.captureDir = captureDir;
+		this.subnetMatcher = subnetMatcher;
+		this.dbClient = dbClient;
+		this.parsers = parsers > 0 ? parsers : Runtime.getRuntime().availableProcessors();
+		this.writers = writers > 0 ? writers : 2;
+		this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+		this.maxPointsPerSecond = maxPointsPerSecond;
+		this.progressInterval = progressInterval > 0 ? progressInterval : 5000;
+		// @formatter:off
+		this.retry = Retry.of("backfill.write", RetryConfig.custom()
+				.maxAttempts(maxRetries > 0 ? maxRetries : 3)
+				.intervalFunction(IntervalFunction.ofExponentialRandomBackoff())
+				.build());
+		// @formatter:on
+	}
+
+	/**
+	 * Lists the captured polls of a directory, ordered by their timestamps.
+	 *
+	 * @param captureDir the directory with captured polls.
+	 * @return the captured polls.
+	 * @throws IOException thrown if the directory cannot be read.
+	 */
+	public static List<Path> listPolls(@NonNull final Path captureDir) throws IOException {
+		try (Stream<Path> list = Files.list(captureDir)) {
+			// @formatter:off
+			return list
+				.filter(p -> timestampOf(p) > 0)
+				.sorted((a, b) -> Long.compare(timestampOf(a), timestampOf(b)))
+				.collect(Collectors.toList());
+			// @formatter:on
+		}
+	}
+
+	/**
+	 * Gets the timestamp of a captured poll from its file name.
+	 *
+	 * @param file the captured poll.
+	 * @return the timestamp in milliseconds or <tt>0</tt> if the file is not a
+	 *         captured poll.
+	 */
+	public static long timestampOf(@NonNull final Path file) {
+		String name = file.getFileName().toString();
+		if (name.endsWith(GZIP_EXTENSION)) {
+			name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+		}
+		if (!name.endsWith(CapturingAccountingClient.CAPTURE_EXTENSION)) {
+			return 0L;
+		}
+		try {
+			return Long.parseLong(name.substring(0, name.length() - CapturingAccountingClient.CAPTURE_EXTENSION.length()));
+		} catch (final NumberFormatException ex) {
+			return 0L;
+		}
+	}
+
+	/**
+	 * Runs the backfill. Polls that cannot be read and batches that cannot be
+	 * written are logged and counted, the backfill continues with the rest.
+	 *
+	 * @return the outcome of the backfill.
+	 * @throws IOException          thrown if the capture directory cannot be
+	 *                              read.
+	 * @throws InterruptedException thrown if the backfill is interrupted.
+	 */
+	public BackfillResult run() throws IOException, InterruptedException {
+		final List<Path> polls = listPolls(captureDir);
+		final long start = System.nanoTime();
+		final ExecutorService parserPool = Executors.newFixedThreadPool(parsers);
+		final ExecutorService writerPool = Executors.newFixedThreadPool(writers);
+		final ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+		// bounds the batches waiting for a writer
+		final Semaphore pendingBatches = new Semaphore(writers * 2);
+		try {
+			progress.scheduleAtFixedRate(() -> logProgress(polls.size(), start), progressInterval, progressInterval, TimeUnit.MILLISECONDS);
+
+			final Deque<Future<ParsedPoll>> parsing = new ArrayDeque<>();
+			final Deque<Path> parsingPolls = new ArrayDeque<>();
+			final StringBuilder batch = new StringBuilder();
+			int batchPoints = 0;
+			long submittedPoints = 0;
+			int next = 0;
+			while (next < polls.size() || !parsing.isEmpty()) {
+				// keeps the parsers busy, but only a few polls ahead of the writers
+				while (next < polls.size() && parsing.size() < parsers * 4) {
+					final Path poll = polls.get(next++);
+					parsing.add(parserPool.submit(() -> parse(poll)));
+					parsingPolls.add(poll);
+				}
+				final ParsedPoll parsed = take(parsingPolls.poll(), parsing.poll());
+				if (parsed == null) {
+					continue;
+				}
+				batch.append(parsed.lines);
+				batchPoints += parsed.points;
+				if (batchPoints >= batchSize) {
+					submittedPoints += batchPoints;
+					submit(writerPool, pendingBatches, batch.toString(), batchPoints, submittedPoints, start);
+					batch.setLength(0);
+					batchPoints = 0;
+				}
+			}
+			if (batchPoints > 0) {
+				submittedPoints += batchPoints;
+				submit(writerPool, pendingBatches, batch.toString(), batchPoints, submittedPoints, start);
+			}
+			writerPool.shutdown();
+			writerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} finally {
+			progress.shutdownNow();
+			parserPool.shutdownNow();
+			writerPool.shutdownNow();
+		}
+		logProgress(polls.size(), start);
+		// @formatter:off
+		return BackfillResult.builder()
+				.polls(parsedPolls.get())
+				.invalidPolls(invalidPolls.get())
+				.records(records.get())
+				.points(writtenPoints.get())
+				.bytes(writtenBytes.get())
+				.batches(batches.get())
+				.failedBatches(failedBatches.get())
+				.elapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+				.build();
+		// @formatter:on
+	}
+
+	/**
+	 * Waits for a parsed poll.
+	 *
+	 * @return the parsed poll or <tt>null</tt> if the poll cannot be read.
+	 */
+	private ParsedPoll take(final Path poll, final Future<ParsedPoll> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (final ExecutionException ex) {
+			invalidPolls.incrementAndGet();
+			log.warn(String.format(INVALID_POLL_MSG, poll), ex.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Parses a captured poll into points with the timestamp of the poll.
+	 */
+	private ParsedPoll parse(final Path poll) throws IOException, AccountingException {
+		final PollArena arena = arenas.get();
+		arena.reset();
+		try (InputStream in = ContentDecoder.decode(null, Files.newInputStream(poll))) {
+			arena.readBody(in);
+		}
+		arena.parseBody();
+		subnetMatcher.classify(arena.getTraffic(), arena.getSubnetTotals());
+
+		final long timestamp = timestampOf(poll);
+		final StringBuilder text = arena.getText();
+		final LineProtocolFormatter formatter = dbClient.getFormatter();
+		final int points = formatter.appendPoints(text, timestamp, arena.getTraffic(), Collections.emptyList()) + formatter.appendPoints(text, timestamp, arena.getSubnetTotals());
+		parsedPolls.incrementAndGet();
+		records.addAndGet(arena.getRecords());
+		return new ParsedPoll(text.toString(), points);
+	}
+
+	/**
+	 * Hands a batch to the writers, waiting for the rate limit and for a free
+	 * writer slot.
+	 */
+	private void submit(final ExecutorService writerPool, final Semaphore pendingBatches, final String lines, final int points, final long submittedPoints, final long start)
+			throws InterruptedException {
+		if (maxPointsPerSecond > 0) {
+			final long due = start + submittedPoints * TimeUnit.SECONDS.toNanos(1) / maxPointsPerSecond;
+			final long wait = due - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+		pendingBatches.acquire();
+		writerPool.execute(() -> {
+			try {
+				retry.executeRunnable(() -> dbClient.write(lines, points));
+				writtenPoints.addAndGet(points);
+				writtenBytes.addAndGet(lines.length());
+				batches.incrementAndGet();
+			} catch (final RuntimeException ex) {
+				failedBatches.incrementAndGet();
+				log.error(ex);
+			} finally {
+				pendingBatches.release();
+			}
+		});
+	}
+
+	private void logProgress(final int polls, final long start) {
+		final double seconds = Math.max(1L, System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+		log.info(String.format(PROGRESS_MSG, captureDir, parsedPolls.get() + invalidPolls.get(), polls, writtenPoints.get(), writtenPoints.get() / seconds,
+				writtenBytes.get() / seconds / (1024 * 1024), failedBatches.get()));
+	}
+
+	/**
+	 * The points of a parsed poll.
+	 */
+	private static final class ParsedPoll {
+		private final String lines;
+		private final int points;
+
+		ParsedPoll(final String lines, final int points) {
+			this.lines = lines;
+			this.points = points;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.a9ski.mikrotik.backfill;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+import com.a9ski.mikrotik.model.BackfillResult;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+
+import inet.ipaddr.AddressStringException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The <tt>backfill</tt> command of the application: writes captured polls to
+ * the database.
+ *
+ */
+@Log4j2
+@Parameters(commandDescription = "Writes captured polls (e.g. after a database outage) to the database with their original timestamps")
+public class BackfillCommand {
+	/**
+	 * Name of the command.
+	 */
+	public static final String NAME = "backfill";
+
+	private static final String RESULT_MSG = "Backfill of '%s' finished in %d ms: %d polls (%d invalid), %d records, %d points in %d batches (%d failed)";
+
+	@Parameter(names = { "--capture-dir" }, variableArity = true, required = true, description = "Directories with the captured polls, one per router")
+	private List<Path> captureDirs = new ArrayList<>();
+
+	@Parameter(names = { "--router-ip", "-r" }, description = "Router IP address written with the points, with a single capture directory only. Defaults to the name of the capture directory")
+	private String routerIp;
+
+	@Parameter(names = { "--db-url", "-d" }, required = true, description = "Database URL (e.g. http://192.168.1.1:8086)")
+	private String dbUrl;
+
+	@Parameter(names = { "--db-user", "-u" }, required = true, description = "Database user")
+	private String dbUser;
+
+	@Parameter(names = { "--db-password", "-p" }, required = true, description = "Database password")
+	private String dbPassword;
+
+	@Parameter(names = { "--db-name", "-db" }, required = true, description = "Database name")
+	private String dbName;
+
+	@Parameter(names = { "--subnet", "-n" }, variableArity = true, required = true, description = "LAN subnets (e.g. 192.168.1.0/24)")
+	private List<String> subnets = new ArrayList<>();
+
+	@Parameter(names = { "--parsers" }, description = "Number of parser threads")
+	private int parsers = Runtime.getRuntime().availableProcessors();
+
+	@Parameter(names = { "--writers" }, description = "Number of concurrent write requests")
+	private int writers = 2;
+
+	@Parameter(names = { "--batch-size" }, description = "Number of points in a write request")
+	private int batchSize = Backfill.DEFAULT_BATCH_SIZE;
+
+	@Parameter(names = { "--max-rate" }, description = "Maximal number of written points per second (0 for unlimited)")
+	private long maxRate = 0;
+
+	@Parameter(names = { "--no-gzip" }, description = "Do not compress the write requests")
+	private boolean noGzip;
+
+	/**
+	 * Runs the backfill of all capture directories, one after another.
+	 *
+	 * @throws IOException            thrown if a capture directory cannot be
+	 *                                read.
+	 * @throws InterruptedException   thrown if the backfill is interrupted.
+	 * @throws AddressStringException thrown if there is invalid subnet.
+	 * @throws ParameterException     thrown if the router IP address is given
+	 *                                with several capture directories.
+	 */
+	public void run() throws IOException, InterruptedException, AddressStringException {
+		if (routerIp != null && captureDirs.size() > 1) {
+			// the points of all routers would be written as one router
+			throw new ParameterException("--router-ip can be used with a single capture directory only");
+		}
+		final SubnetMatcher subnetMatcher = SubnetMatcher.compile(subnets);
+		for (final Path captureDir : captureDirs) {
+			final String router = routerIp != null ? routerIp : captureDir.toAbsolutePath().normalize().getFileName().toString();
+			try (InfluxDbClient dbClient = new InfluxDbClient(dbUrl, dbUser, dbPassword, dbName, router)) {
+				dbClient.setGzip(!noGzip);
+				// @formatter:off
+				final BackfillResult result = Backfill.builder()
+						.captureDir(captureDir)
+						.subnetMatcher(subnetMatcher)
+						.dbClient(dbClient)
+						.parsers(parsers)
+						.writers(writers)
+						.batchSize(batchSize)
+						.maxPointsPerSecond(maxRate)
+						.build()
+						.run();
+				// @formatter:on
+				log.info(String.format(RESULT_MSG, captureDir, result.getElapsedMillis(), result.getPolls(), result.getInvalidPolls(), result.getRecords(), result.getPoints(),
+						result.getBatches(), result.getFailedBatches()));
+			}
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package com.a9ski.mikrotik.cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.a9ski.mikrotik.RouterManager;
+import com.a9ski.mikrotik.config.RouterConfig;
+import com.a9ski.mikrotik.config.ServiceConfig;
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Splits the configured routers among the nodes of a cluster. Every
+ * heartbeat the coordinator:
+ * <ol>
+ * <li>records the heartbeat of its node in the {@link ClusterDirectory};</li>
+ * <li>assigns the routers to the live nodes with a {@link HashRing};</li>
+ * <li>acquires or renews the leases of its routers, and releases the leases of
+ * the routers assigned to other nodes after their services are stopped;</li>
+ * <li>runs the routers with a lease in the {@link RouterManager}.</li>
+ * </ol>
+ * A router of a node leaving the cluster is taken over when the node releases
+ * it (on close) or when its lease expires (on crash). A router is polled only
+ * while the node holds its lease (see {@link #mayPoll(String)}), so it is never
+ * polled by two nodes at the same time:
+ * <ul>
+ * <li>a poll starts only if the lease is valid for at least the maximal
+ * duration of a poll, so it finishes before a lease which cannot be renewed
+ * expires;</li>
+ * <li>the lease of a released router is kept (and renewed) until the poll of
+ * its stopped service finishes.</li>
+ * </ul>
+ *
+ */
+@Log4j2
+public class ClusterCoordinator implements PollGuard, Closeable {
+	/**
+	 * Default time in milliseconds after which a node without heartbeat is
+	 * dead and its leases expire.
+	 */
+	public static final long DEFAULT_LEASE_TIMEOUT = 30_000L;
+
+	private static final String DRAINING_MSG = "Node '%s' keeps router '%s' until its running poll finishes";
+
+	private final ClusterDirectory directory;
+	private final String node;
+	private final long leaseTimeout;
+	private final long maxPollDuration;
+	private final Map<String, Long> leases = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "cluster-coordinator");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private volatile ServiceConfig config = ServiceConfig.builder().routers(Collections.emptyMap()).build();
+	private RouterManager manager;
+
+	/**
+	 * Creates a new coordinator with the maximal duration of a poll of a third
+	 * of the lease timeout. The node joins the cluster with
+	 * {@link #start(RouterManager, ServiceConfig)}.
+	 *
+	 * @param dir          the coordination directory shared by the nodes.
+	 * @param node         the unique identifier of this node.
+	 * @param leaseTimeout time in milliseconds after which a node without
+	 *                     heartbeat is dead and its leases expire. The
+	 *                     heartbeat interval is a third of it.
+	 * @throws IOException thrown if the coordination directory cannot be
+	 *                     created.
+	 */
+	public ClusterCoordinator(@NonNull final Path dir, @NonNull final String node, final long leaseTimeout) throws IOException {
+		this(dir, node, leaseTimeout, leaseTimeout / 3);
+	}
+
+	/**
+	 * Creates a new coordinator. The node joins the cluster with
+	 * {@link #start(RouterManager, ServiceConfig)}.
+	 *
+	 * @param dir             the coordination directory shared by the nodes.
+	 * @param node            the unique identifier of this node.
+	 * @param leaseTimeout    time in milliseconds after which a node without
+	 *                        heartbeat is dead and its leases expire. The
+	 *                        heartbeat interval is a third of it.
+	 * @param maxPollDuration maximal duration of a poll in milliseconds (the
+	 *                        fetch timeout and the database write). A poll
+	 *                        starts only if the lease is valid for longer.
+	 * @throws IOException thrown if the coordination directory cannot be
+	 *                     created.
+	 */
+	public ClusterCoordinator(@NonNull final Path dir, @NonNull final String node, final long leaseTimeout, final long maxPollDuration) throws IOException {
+		if (node.isBlank()) {
+			throw new IllegalArgumentException("Invalid node identifier. Expected non-blank value");
+		}
+		if (maxPollDuration < 0 || maxPollDuration >= leaseTimeout) {
+			throw new IllegalArgumentException("Invalid maximal poll duration. Expected non-negative value shorter than the lease timeout");
+		}
+		this.directory = new ClusterDirectory(dir, leaseTimeout);
+		this.node = node;
+		this.leaseTimeout = leaseTimeout;
+		this.maxPollDuration = maxPollDuration;
+	}
+
+	/**
+	 * Joins the cluster and starts polling the share of the routers of this
+	 * node.
+	 *
+	 * @param manager the manager running the routers of this node.
+	 * @param config  the configuration of all routers of the cluster.
+	 */
+	public synchronized void start(@NonNull final RouterManager manager, @NonNull final ServiceConfig config) {
+		join(manager, config);
+		final long heartbeat = Math.max(1, leaseTimeout / 3);
+		executor.scheduleWithFixedDelay(() -> tick(System.currentTimeMillis()), 0, heartbeat, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Joins the cluster without starting the heartbeats.
+	 *
+	 * @param manager the manager running the routers of this node.
+	 * @param config  the configuration of all routers of the cluster.
+	 */
+	synchronized void join(final RouterManager manager, final ServiceConfig config) {
+		if (this.manager != null) {
+			throw new IllegalStateException("Cluster coordinator already started");
+		}
+		this.manager = manager;
+		this.config = config;
+	}
+
+	/**
+	 * Applies a new configuration of all routers of the cluster on the next
+	 * heartbeat.
+	 *
+	 * @param config the new configuration.
+	 */
+	public void apply(@NonNull final ServiceConfig config) {
+		this.config = config;
+		executor.execute(() -> tick(System.currentTimeMillis()));
+	}
+
+	/**
+	 * Runs a heartbeat: refreshes the membership and the leases and applies the
+	 * routers of this node to the router manager.
+	 *
+	 * @param now the current time in milliseconds.
+	 */
+	synchronized void tick(final long now) {
+		if (manager == null) {
+			return;
+		}
+		final Map<String, RouterConfig> routers = config.getRouters();
+		final Set<String> release = new TreeSet<>(leases.keySet());
+		try {
+			directory.heartbeat(node, now);
+			final Set<String> nodes = directory.getLiveNodes(now);
+			nodes.add(node);
+			final HashRing ring = new HashRing(nodes);
+			for (final String router : routers.keySet()) {
+				if (node.equals(ring.owner(router)) && directory.acquire(router, node, now)) {
+					if (leases.put(router, now + leaseTimeout) == null) {
+						log.info(String.format("Node '%s' acquired router '%s'", node, router));
+					}
+					release.remove(router);
+				}
+			}
+			for (final String router : release) {
+				// a stopped service still polling keeps the lease
+				if (manager.isStopping(router) && directory.acquire(router, node, now)) {
+					leases.put(router, now + leaseTimeout);
+				}
+			}
+		} catch (final IOException | RuntimeException ex) {
+			// the leases are not renewed; they stop the polls when they expire
+			log.warn(String.format("Cannot update the cluster state of node '%s'", node), ex);
+			release.clear();
+		}
+
+		// a lease which could not be renewed stops its router when it expires
+		leases.keySet().removeIf(router -> !release.contains(router) && !isHeld(router, now));
+		final Map<String, RouterConfig> owned = new TreeMap<>();
+		for (final String router : routers.keySet()) {
+			if (leases.containsKey(router) && !release.contains(router) && !manager.isStopping(router)) {
+				owned.put(router, routers.get(router));
+			}
+		}
+		try {
+			// stops the released routers before their leases are released
+			manager.apply(ServiceConfig.builder().routers(Collections.unmodifiableMap(owned)).build());
+		} catch (final ConfigurationException | RuntimeException ex) {
+			log.warn(ex);
+		}
+		for (final String router : release) {
+			if (manager.isStopping(router)) {
+				log.info(String.format(DRAINING_MSG, node, router));
+				continue;
+			}
+			leases.remove(router);
+			release(router);
+			log.info(String.format("Node '%s' released router '%s'", node, router));
+		}
+	}
+
+	private void release(final String router) {
+		try {
+			directory.release(router, node);
+		} catch (final IOException ex) {
+			log.warn(ex);
+		}
+	}
+
+	/**
+	 * Checks if this node holds a valid lease of a router.
+	 *
+	 * @param router the router name.
+	 * @param now    the current time in milliseconds.
+	 * @return <tt>true</tt> if this node holds a valid lease of the router.
+	 */
+	public boolean isHeld(final String router, final long now) {
+		final Long validUntil = leases.get(router);
+		return validUntil != null && now < validUntil;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean mayPoll(final String router) {
+		return isHeld(router, System.currentTimeMillis() + maxPollDuration);
+	}
+
+	/**
+	 * Gets the routers with a lease of this node.
+	 *
+	 * @return the router names.
+	 */
+	public Set<String> getHeldRouters() {
+		return Collections.unmodifiableSet(new TreeSet<>(leases.keySet()));
+	}
+
+	/**
+	 * Gets the identifier of this node.
+	 *
+	 * @return the node identifier.
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * Leaves the cluster: stops the heartbeats and the routers of this node and
+	 * releases their leases, so the other nodes take them over on their next
+	 * heartbeat.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(leaseTimeout, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			if (manager != null) {
+				manager.close();
+			}
+			for (final String router : new TreeSet<>(leases.keySet())) {
+				leases.remove(router);
+				if (manager == null || !manager.isStopping(router)) {
+					// the lease of a router still polling expires instead
+					release(router);
+				}
+			}
+			try {
+				directory.leave(node);
+			} catch (final IOException ex) {
+				log.warn(ex);
+			}
+		}
+	}
+}
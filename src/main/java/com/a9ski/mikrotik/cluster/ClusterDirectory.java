@@ -0,0 +1,267 @@
+package com.a9ski.mikrotik.cluster;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.TreeSet;
+
+import lombok.NonNull;
+
+/**
+ * The coordination directory shared by the nodes of a cluster, e.g. a local
+ * directory for several instances on one machine or a directory on a shared
+ * file system. It holds:
+ * <ul>
+ * <li><tt>nodes/&lt;node&gt;</tt> - a file per node, touched on every
+ * heartbeat. A node is live while its file was touched within the
+ * timeout;</li>
+ * <li><tt>leases/&lt;router&gt;/&lt;epoch&gt;</tt> - the lease of a router,
+ * containing the holder node and touched on every renewal. Only the highest
+ * epoch counts. A lease is taken over by creating the next epoch, which only
+ * one node can create, so two nodes never hold the same router. A released
+ * lease has a zero modification time.</li>
+ * </ul>
+ * A renewal and a take-over both write first and check afterwards: the holder
+ * renews and checks that no next epoch was created, a node taking over
+ * creates the next epoch and checks that the previous one was not renewed
+ * meanwhile (otherwise it deletes its epoch). The holder stops renewing in the
+ * last quarter of the timeout, so a lease about to expire is never renewed
+ * while another node sees it expired.
+ * <p>
+ * The modification times are compared with the clocks of all nodes, which
+ * must be synchronized (e.g. with NTP) much closer than a quarter of the
+ * timeout.
+ *
+ */
+public class ClusterDirectory {
+	private static final String NODES = "nodes";
+	private static final String LEASES = "leases";
+	private static final long RELEASED = 0L;
+
+	private final Path nodes;
+	private final Path leases;
+	private final long timeout;
+	private final long renewTimeout;
+
+	/**
+	 * Creates a new coordination directory.
+	 *
+	 * @param dir     the directory.
+	 * @param timeout time in milliseconds after which a node without heartbeat
+	 *                is dead and a lease without renewal is expired.
+	 * @throws IOException thrown if the directory cannot be created.
+	 */
+	public ClusterDirectory(@NonNull final Path dir, final long timeout) throws IOException {
+		if (timeout < 1) {
+			throw new IllegalArgumentException("Invalid timeout. Expected positive value");
+		}
+		this.nodes = Files.createDirectories(dir.resolve(NODES));
+		this.leases = Files.createDirectories(dir.resolve(LEASES));
+		this.timeout = timeout;
+		this.renewTimeout = timeout - timeout / 4;
+	}
+
+	/**
+	 * Records a heartbeat of a node.
+	 *
+	 * @param node the node.
+	 * @param now  the current time in milliseconds.
+	 * @throws IOException thrown if the node file cannot be written.
+	 */
+	public void heartbeat(@NonNull final String node, final long now) throws IOException {
+		final Path file = nodes.resolve(fileName(node));
+		if (!Files.exists(file)) {
+			Files.write(file, node.getBytes(StandardCharsets.UTF_8));
+		}
+		Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+	}
+
+	/**
+	 * Removes a node from the cluster.
+	 *
+	 * @param node the node.
+	 * @throws IOException thrown if the node file cannot be deleted.
+	 */
+	public void leave(@NonNull final String node) throws IOException {
+		Files.deleteIfExists(nodes.resolve(fileName(node)));
+	}
+
+	/**
+	 * Gets the live nodes.
+	 *
+	 * @param now the current time in milliseconds.
+	 * @return the nodes with a heartbeat within the timeout.
+	 * @throws IOException thrown if the directory cannot be read.
+	 */
+	public Set<String> getLiveNodes(final long now) throws IOException {
+		final Set<String> live = new TreeSet<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(nodes)) {
+			for (final Path file : files) {
+				try {
+					if (now - Files.getLastModifiedTime(file).toMillis() <= timeout) {
+						live.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+					}
+				} catch (final NoSuchFileException ex) {
+					// the node left meanwhile
+				}
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Acquires or renews the lease of a router. The lease is granted if it is
+	 * free, released, expired or held by the node and not close to its expiry.
+	 * An expired lease of the node itself is not renewed but taken over as any
+	 * other expired lease, since another node may be taking it over at the
+	 * same time.
+	 *
+	 * @param router the router.
+	 * @param node   the node.
+	 * @param now    the current time in milliseconds.
+	 * @return <tt>true</tt> if the node holds the lease until <tt>now</tt> plus
+	 *         the timeout.
+	 * @throws IOException thrown if the lease cannot be read or written.
+	 */
+	public boolean acquire(@NonNull final String router, @NonNull final String node, final long now) throws IOException {
+		final Path dir = Files.createDirectories(leases.resolve(fileName(router)));
+		final long epoch = highestEpoch(dir);
+		if (epoch >= 0) {
+			final Path file = dir.resolve(Long.toString(epoch));
+			final long renewed;
+			final String holder;
+			try {
+				renewed = Files.getLastModifiedTime(file).toMillis();
+				holder = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			} catch (final NoSuchFileException ex) {
+				// cleaned up by a node taking the lease over
+				return false;
+			}
+			final boolean valid = renewed != RELEASED && now - renewed <= timeout;
+			if (valid && holder.equals(node)) {
+				if (now - renewed > renewTimeout) {
+					// close to the expiry; taken over again when expired
+					return false;
+				}
+				try {
+					Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+				} catch (final NoSuchFileException ex) {
+					return false;
+				}
+				// taken over meanwhile?
+				return highestEpoch(dir) == epoch;
+			} else if (valid) {
+				return false;
+			}
+		}
+		final Path next = dir.resolve(Long.toString(epoch + 1));
+		try {
+			Files.write(next, node.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		} catch (final FileAlreadyExistsException ex) {
+			// another node won the lease
+			return false;
+		}
+		Files.setLastModifiedTime(next, FileTime.fromMillis(now));
+		if (epoch >= 0 && isRenewed(dir.resolve(Long.toString(epoch)), now)) {
+			// the holder renewed the lease after it was read
+			Files.deleteIfExists(next);
+			return false;
+		}
+		for (long old = epoch; old >= 0 && Files.deleteIfExists(dir.resolve(Long.toString(old))); old--) {
+			// deletes the previous epochs
+		}
+		return true;
+	}
+
+	/**
+	 * Releases the lease of a router held by a node, so another node can take
+	 * it over without waiting for the timeout.
+	 *
+	 * @param router the router.
+	 * @param node   the node.
+	 * @throws IOException thrown if the lease cannot be written.
+	 */
+	public void release(@NonNull final String router, @NonNull final String node) throws IOException {
+		final Path dir = leases.resolve(fileName(router));
+		if (!Files.isDirectory(dir)) {
+			return;
+		}
+		final long epoch = highestEpoch(dir);
+		if (epoch < 0) {
+			return;
+		}
+		final Path file = dir.resolve(Long.toString(epoch));
+		try {
+			if (node.equals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))) {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(RELEASED));
+			}
+		} catch (final NoSuchFileException ex) {
+			// taken over meanwhile
+		}
+	}
+
+	/**
+	 * Gets the holder of the lease of a router.
+	 *
+	 * @param router the router.
+	 * @param now    the current time in milliseconds.
+	 * @return the node holding a valid lease or <tt>null</tt>.
+	 * @throws IOException thrown if the lease cannot be read.
+	 */
+	public String getHolder(@NonNull final String router, final long now) throws IOException {
+		final Path dir = leases.resolve(fileName(router));
+		final long epoch = Files.isDirectory(dir) ? highestEpoch(dir) : -1;
+		if (epoch < 0) {
+			return null;
+		}
+		final Path file = dir.resolve(Long.toString(epoch));
+		try {
+			final long renewed = Files.getLastModifiedTime(file).toMillis();
+			return renewed != RELEASED && now - renewed <= timeout ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8) : null;
+		} catch (final NoSuchFileException ex) {
+			return null;
+		}
+	}
+
+	private boolean isRenewed(final Path file, final long now) throws IOException {
+		try {
+			final long renewed = Files.getLastModifiedTime(file).toMillis();
+			return renewed != RELEASED && now - renewed <= timeout;
+		} catch (final NoSuchFileException ex) {
+			return false;
+		}
+	}
+
+	private static long highestEpoch(final Path dir) throws IOException {
+		long highest = -1;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (final Path file : files) {
+				try {
+					highest = Math.max(highest, Long.parseLong(file.getFileName().toString()));
+				} catch (final NumberFormatException ex) {
+					// not a lease
+				}
+			}
+		}
+		return highest;
+	}
+
+	/**
+	 * Converts a node or router name to a file name.
+	 *
+	 * @param name the name.
+	 * @return the file name.
+	 */
+	private static String fileName(final String name) {
+		final String encoded = URLEncoder.encode(name, StandardCharsets.UTF_8);
+		return encoded.startsWith(".") ? "%2E" + encoded.substring(1) : encoded;
+	}
+}
@@ -0,0 +1,121 @@
+package com.a9ski.mikrotik.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import lombok.NonNull;
+
+/**
+ * Consistent hash ring assigning the routers to the cluster nodes. Every node
+ * is placed on the ring at several points (virtual nodes), so the routers are
+ * split evenly and a joining or leaving node moves only the routers of its
+ * own share. All nodes with the same members compute the same assignment.
+ * <p>
+ * The ring is immutable.
+ *
+ */
+public class HashRing {
+	/**
+	 * Default number of points of a node on the ring.
+	 */
+	public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+	private final long[] points;
+	private final String[] owners;
+
+	/**
+	 * Creates a new ring with the default number of virtual nodes.
+	 *
+	 * @param nodes the identifiers of the nodes.
+	 */
+	public HashRing(@NonNull final Collection<String> nodes) {
+		this(nodes, DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * Creates a new ring.
+	 *
+	 * @param nodes        the identifiers of the nodes.
+	 * @param virtualNodes number of points of a node on the ring.
+	 */
+	public HashRing(@NonNull final Collection<String> nodes, final int virtualNodes) {
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("Invalid number of virtual nodes. Expected positive value");
+		}
+		final String[] sorted = new TreeSet<>(nodes).toArray(new String[0]);
+		final long[] keys = new long[sorted.length * virtualNodes];
+		final int[] nodeOf = new int[keys.length];
+		for (int n = 0; n < sorted.length; n++) {
+			for (int v = 0; v < virtualNodes; v++) {
+				keys[n * virtualNodes + v] = hash(sorted[n] + "#" + v);
+				nodeOf[n * virtualNodes + v] = n;
+			}
+		}
+		// sorts the points together with their nodes; equal points keep the smaller node
+		final Integer[] order = new Integer[keys.length];
+		Arrays.setAll(order, i -> i);
+		Arrays.sort(order, (a, b) -> keys[a] != keys[b] ? Long.compare(keys[a], keys[b]) : Integer.compare(nodeOf[a], nodeOf[b]));
+		points = new long[keys.length];
+		owners = new String[keys.length];
+		for (int i = 0; i < order.length; i++) {
+			points[i] = keys[order[i]];
+			owners[i] = sorted[nodeOf[order[i]]];
+		}
+	}
+
+	/**
+	 * Gets the node owning a key: the node of the first point at or after the
+	 * hash of the key, wrapping around the ring.
+	 *
+	 * @param key the key (e.g. the router name).
+	 * @return the owner node or <tt>null</tt> if the ring is empty.
+	 */
+	public String owner(@NonNull final String key) {
+		if (points.length == 0) {
+			return null;
+		}
+		int i = Arrays.binarySearch(points, hash(key));
+		if (i < 0) {
+			i = -i - 1;
+		} else {
+			// the first of several equal points
+			while (i > 0 && points[i - 1] == points[i]) {
+				i--;
+			}
+		}
+		return owners[i == points.length ? 0 : i];
+	}
+
+	/**
+	 * Number of points on the ring.
+	 *
+	 * @return number of points.
+	 */
+	public int size() {
+		return points.length;
+	}
+
+	/**
+	 * Hashes a string with the 64-bit FNV-1a hash of its UTF-8 bytes, followed
+	 * by a finalizer spreading the bits of similar strings (e.g.
+	 * <tt>router1</tt> and <tt>router2</tt>) over the whole ring.
+	 *
+	 * @param value the string.
+	 * @return the hash.
+	 */
+	static long hash(final String value) {
+		long hash = 0xCBF29CE484222325L;
+		for (final byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xFF;
+			hash *= 0x100000001B3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
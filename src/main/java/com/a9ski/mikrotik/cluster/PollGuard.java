@@ -0,0 +1,20 @@
+package com.a9ski.mikrotik.cluster;
+
+/**
+ * Decides before every poll whether a router may be polled. In cluster mode a
+ * router is polled only while the node holds its lease, so a node which lost
+ * the lease (e.g. after a long pause) doesn't poll it together with the new
+ * holder.
+ *
+ */
+@FunctionalInterface
+public interface PollGuard {
+	/**
+	 * Checks if a router may be polled now. Called from the poll threads, so it
+	 * must not block.
+	 *
+	 * @param router the router name.
+	 * @return <tt>true</tt> if the router may be polled.
+	 */
+	boolean mayPoll(String router);
+}
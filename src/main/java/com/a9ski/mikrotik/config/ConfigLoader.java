@@ -0,0 +1,246 @@
+package com.a9ski.mikrotik.config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+
+import lombok.NonNull;
+
+/**
+ * Loads the service configuration from a properties file. Example:
+ *
+ * <pre>
+ * db.url=http://127.0.0.1:8086
+ * db.user=traffic
+ * db.password=secretpassword
+ * db.name=TrafficByIp
+ *
+ * # defaults for all routers
+ * default.interval=10
+ *
+ * router.home.host=192.168.88.1
+ * router.home.subnets=192.168.88.0/24
+ *
+ * router.office.host=10.1.0.1
+ * router.office.subnets=10.1.0.0/16, 10.2.0.0/16
+ * router.office.source=api
+ * router.office.user=accounting
+ * router.office.password=secret
+ * router.office.db.name=OfficeTraffic
+ * </pre>
+ *
+ * Every router setting may be given a default value with the
+ * <tt>default.</tt> prefix. The database settings of a router fall back to
+ * the global <tt>db.*</tt> settings. Intervals are in seconds. When the
+ * database is optional (Prometheus exporter mode), a router without
+ * <tt>db.url</tt> has no database. The alert rates
+ * (<tt>alert-ip-rate</tt>, <tt>alert-subnet-rate</tt>) are in bytes per second
+ * and <tt>alert-anomaly</tt> in standard deviations. <tt>hosts-ttl</tt> is in
+ * seconds.
+ *
+ */
+public class ConfigLoader {
+	private static final String ROUTER_PREFIX = "router.";
+	private static final String DEFAULT_PREFIX = "default.";
+	private static final String HOST = "host";
+	private static final String MISSING_MSG = "Missing setting '%s' for router '%s'";
+	private static final String INVALID_NUMBER_MSG = "Invalid number '%s' for setting '%s' of router '%s'";
+
+	private final boolean databaseRequired;
+
+	/**
+	 * Creates a new loader requiring a database for every router.
+	 */
+	public ConfigLoader() {
+		this(true);
+	}
+
+	/**
+	 * Creates a new loader.
+	 *
+	 * @param databaseRequired <tt>false</tt> if the routers may have no
+	 *                         database.
+	 */
+	public ConfigLoader(final boolean databaseRequired) {
+		this.databaseRequired = databaseRequired;
+	}
+
+	/**
+	 * Loads the configuration from a file.
+	 *
+	 * @param file the properties file.
+	 * @return the configuration.
+	 * @throws IOException            thrown if the file cannot be read.
+	 * @throws ConfigurationException thrown if the configuration is invalid.
+	 */
+	public ServiceConfig load(@NonNull final Path file) throws IOException, ConfigurationException {
+		final Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		return parse(properties);
+	}
+
+	/**
+	 * Parses the configuration.
+	 *
+	 * @param properties the configuration properties.
+	 * @return the configuration.
+	 * @throws ConfigurationException thrown if the configuration is invalid.
+	 */
+	public ServiceConfig parse(@NonNull final Properties properties) throws ConfigurationException {
+		final TreeSet<String> names = new TreeSet<>();
+		for (final String key : properties.stringPropertyNames()) {
+			if (key.startsWith(ROUTER_PREFIX) && key.endsWith("." + HOST)) {
+				names.add(key.substring(ROUTER_PREFIX.length(), key.length() - HOST.length() - 1));
+			}
+		}
+
+		final Map<String, RouterConfig> routers = new TreeMap<>();
+		for (final String name : names) {
+			if (name.isEmpty() || name.contains(".")) {
+				throw new ConfigurationException(String.format("Invalid router name '%s'", name));
+			}
+			routers.put(name, parseRouter(properties, name));
+		}
+		return ServiceConfig.builder().routers(Collections.unmodifiableMap(routers)).build();
+	}
+
+	private RouterConfig parseRouter(final Properties properties, final String name) throws ConfigurationException {
+		final RouterConfig defaults = RouterConfig.builder().build();
+		final String subnets = required(properties, name, "subnets");
+		final String captureDir = get(properties, name, "capture-dir");
+		final String ipv6Mapping = get(properties, name, "ipv6-mapping");
+		final String hostsFile = get(properties, name, "hosts-file");
+		final String archiveDir = get(properties, name, "archive-dir");
+		// @formatter:off
+		return RouterConfig.builder()
+				.name(name)
+				.host(required(properties, name, HOST))
+				.source(get(properties, name, "source", defaults.getSource()))
+				.apiPort((int) getLong(properties, name, "api-port", defaults.getApiPort()))
+				.user(get(properties, name, "user"))
+				.password(get(properties, name, "password", defaults.getPassword()))
+				.subnets(split(subnets))
+				.interval(getSeconds(properties, name, "interval", defaults.getInterval()))
+				.interfaces(Boolean.parseBoolean(get(properties, name, "interfaces", "false")))
+				.incremental(Boolean.parseBoolean(get(properties, name, "incremental", "false")))
+				.heartbeat(getSeconds(properties, name, "heartbeat", defaults.getHeartbeat()))
+				.forgetAfter(getSeconds(properties, name, "forget-after", defaults.getForgetAfter()))
+				.latencySlo(getSeconds(properties, name, "latency-slo", defaults.getLatencySlo()))
+				.captureDir(captureDir != null ? Paths.get(captureDir) : null)
+				.archiveDir(archiveDir != null ? Paths.get(archiveDir) : null)
+				.ipv6Rollup((int) getLong(properties, name, "ipv6-rollup", defaults.getIpv6Rollup()))
+				.ipv6Mapping(ipv6Mapping != null ? Paths.get(ipv6Mapping) : null)
+				.hostsFile(hostsFile != null ? Paths.get(hostsFile) : null)
+				.hostsTtl(getSeconds(properties, name, "hosts-ttl", defaults.getHostsTtl()))
+				.alertIpRate(getLong(properties, name, "alert-ip-rate", defaults.getAlertIpRate()))
+				.alertSubnetRate(getLong(properties, name, "alert-subnet-rate", defaults.getAlertSubnetRate()))
+				.alertAnomaly(getDouble(properties, name, "alert-anomaly", defaults.getAlertAnomaly()))
+				.database(parseDatabase(properties, name))
+				.build();
+		// @formatter:on
+	}
+
+	private DatabaseConfig parseDatabase(final Properties properties, final String name) throws ConfigurationException {
+		if (!databaseRequired && getDb(properties, name, "url") == null) {
+			return null;
+		}
+		// @formatter:off
+		return DatabaseConfig.builder()
+				.url(requiredDb(properties, name, "url"))
+				.user(requiredDb(properties, name, "user"))
+				.password(requiredDb(properties, name, "password"))
+				.name(requiredDb(properties, name, "name"))
+				.build();
+		// @formatter:on
+	}
+
+	private static List<String> split(final String value) {
+		// @formatter:off
+		return Arrays.stream(value.split("[,\\s]+"))
+				.filter(s -> !s.isEmpty())
+				.collect(Collectors.toUnmodifiableList());
+		// @formatter:on
+	}
+
+	private static String get(final Properties properties, final String router, final String key) {
+		final String value = properties.getProperty(ROUTER_PREFIX + router + "." + key, properties.getProperty(DEFAULT_PREFIX + key));
+		return value != null ? value.strip() : null;
+	}
+
+	private static String get(final Properties properties, final String router, final String key, final String defaultValue) {
+		final String value = get(properties, router, key);
+		return value != null ? value : defaultValue;
+	}
+
+	private static String required(final Properties properties, final String router, final String key) throws ConfigurationException {
+		final String value = get(properties, router, key);
+		if (value == null || value.isEmpty()) {
+			throw new ConfigurationException(String.format(MISSING_MSG, key, router));
+		}
+		return value;
+	}
+
+	private static String getDb(final Properties properties, final String router, final String key) {
+		return get(properties, router, "db." + key, properties.getProperty("db." + key));
+	}
+
+	private static String requiredDb(final Properties properties, final String router, final String key) throws ConfigurationException {
+		final String value = getDb(properties, router, key);
+		if (value == null) {
+			throw new ConfigurationException(String.format(MISSING_MSG, "db." + key, router));
+		}
+		return value.strip();
+	}
+
+	private static long getLong(final Properties properties, final String router, final String key, final long defaultValue) throws ConfigurationException {
+		final String value = get(properties, router, key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (final NumberFormatException ex) {
+			throw new ConfigurationException(String.format(INVALID_NUMBER_MSG, value, key, router), ex);
+		}
+	}
+
+	private static double getDouble(final Properties properties, final String router, final String key, final double defaultValue) throws ConfigurationException {
+		final String value = get(properties, router, key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (final NumberFormatException ex) {
+			throw new ConfigurationException(String.format(INVALID_NUMBER_MSG, value, key, router), ex);
+		}
+	}
+
+	private static long getSeconds(final Properties properties, final String router, final String key, final long defaultMillis) throws ConfigurationException {
+		final String value = get(properties, router, key);
+		if (value == null) {
+			return defaultMillis;
+		}
+		try {
+			return Math.round(Double.parseDouble(value) * TimeUnit.SECONDS.toMillis(1));
+		} catch (final NumberFormatException ex) {
+			throw new ConfigurationException(String.format(INVALID_NUMBER_MSG, value, key, router), ex);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.a9ski.mikrotik.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Watches the configuration file and reloads it when it changes. Several
+ * changes in a short period (e.g. an editor writing the file in steps) cause
+ * a single reload. An invalid file is logged and ignored, so the previous
+ * configuration stays in effect.
+ *
+ */
+@Log4j2
+public class ConfigWatcher implements Closeable {
+	private static final long DEBOUNCE_MILLIS = 500;
+
+	private final Path file;
+	private final ConfigLoader loader;
+	private final Listener listener;
+	private final WatchService watchService;
+	private final Thread thread;
+
+	/**
+	 * Creates and starts a new watcher.
+	 *
+	 * @param file     the configuration file.
+	 * @param loader   the configuration loader.
+	 * @param listener listener receiving every successfully loaded
+	 *                 configuration.
+	 * @throws IOException thrown if the directory of the file cannot be
+	 *                     watched.
+	 */
+	public ConfigWatcher(@NonNull final Path file, @NonNull final ConfigLoader loader, @NonNull final Listener listener) throws IOException {
+		this.file = file.toAbsolutePath();
+		this.loader = loader;
+		this.listener = listener;
+		this.watchService = this.file.getFileSystem().newWatchService();
+		this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		this.thread = new Thread(this::watch, "config-watcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				final WatchKey key = watchService.take();
+				boolean changed = isChanged(key);
+				key.reset();
+				if (!changed) {
+					continue;
+				}
+				// wait until the file is completely written
+				WatchKey next;
+				while ((next = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					isChanged(next);
+					next.reset();
+				}
+				reload();
+			}
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (final ClosedWatchServiceException ex) {
+			// watcher closed
+		}
+	}
+
+	private boolean isChanged(final WatchKey key) {
+		boolean changed = false;
+		for (final WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private void reload() {
+		try {
+			log.info(String.format("Reloading configuration %s", file));
+			listener.apply(loader.load(file));
+		} catch (final Exception ex) {
+			log.error(String.format("Cannot apply configuration %s: %s", file, ex.getMessage()));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		thread.interrupt();
+	}
+
+	/**
+	 * Listener receiving the reloaded configuration.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		/**
+		 * Applies a reloaded configuration.
+		 *
+		 * @param config the reloaded configuration.
+		 * @throws ConfigurationException thrown if the configuration cannot be
+		 *                                applied.
+		 */
+		void apply(ServiceConfig config) throws ConfigurationException;
+	}
+}
@@ -0,0 +1,29 @@
+package com.a9ski.mikrotik.config;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Connection settings of the InfluxDB database.
+ *
+ */
+@Builder(toBuilder = true)
+@Data
+public class DatabaseConfig {
+	/**
+	 * The URL of the database (e.g. http://192.168.1.1:8086).
+	 */
+	private final String url;
+	/**
+	 * The database user.
+	 */
+	private final String user;
+	/**
+	 * The database password.
+	 */
+	private final String password;
+	/**
+	 * The database name.
+	 */
+	private final String name;
+}
@@ -0,0 +1,143 @@
+package com.a9ski.mikrotik.config;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import com.a9ski.mikrotik.RouterHealth;
+import com.a9ski.mikrotik.TrafficService;
+import com.a9ski.mikrotik.enrichment.HostEnricher;
+import com.a9ski.mikrotik.routeros.RouterOsApiClient;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Settings of a single polled router.
+ *
+ */
+@Builder(toBuilder = true)
+@Data
+public class RouterConfig {
+	/**
+	 * Source reading the accounting web page.
+	 */
+	public static final String SOURCE_HTTP = "http";
+	/**
+	 * Source reading through the RouterOS API.
+	 */
+	public static final String SOURCE_API = "api";
+
+	/**
+	 * Unique name of the router.
+	 */
+	private final String name;
+	/**
+	 * The host name or IP address of the router.
+	 */
+	private final String host;
+	/**
+	 * The accounting source (<tt>http</tt> or <tt>api</tt>).
+	 */
+	@Builder.Default
+	private final String source = SOURCE_HTTP;
+	/**
+	 * The RouterOS API port.
+	 */
+	@Builder.Default
+	private final int apiPort = RouterOsApiClient.DEFAULT_PORT;
+	/**
+	 * The RouterOS API (or REST API) user.
+	 */
+	private final String user;
+	/**
+	 * The RouterOS API (or REST API) password.
+	 */
+	@Builder.Default
+	private final String password = "";
+	/**
+	 * The LAN subnets (e.g. 192.168.1.0/24).
+	 */
+	@Builder.Default
+	private final List<String> subnets = Collections.emptyList();
+	/**
+	 * The poll interval in milliseconds.
+	 */
+	@Builder.Default
+	private final long interval = TrafficService.SLEEP_TIME;
+	/**
+	 * Collect interface and simple queue counters.
+	 */
+	private final boolean interfaces;
+	/**
+	 * Incremental mode.
+	 */
+	private final boolean incremental;
+	/**
+	 * Interval in milliseconds between heartbeat points (incremental mode).
+	 */
+	@Builder.Default
+	private final long heartbeat = 300_000L;
+	/**
+	 * Time in milliseconds after which a quiet IP is forgotten (incremental
+	 * mode).
+	 */
+	@Builder.Default
+	private final long forgetAfter = 3_600_000L;
+	/**
+	 * Fetch latency objective in milliseconds. A router exceeding it in several
+	 * consecutive polls is degraded.
+	 */
+	@Builder.Default
+	private final long latencySlo = RouterHealth.DEFAULT_LATENCY_SLO;
+	/**
+	 * Directory where the raw accounting responses are stored or <tt>null</tt>.
+	 */
+	private final Path captureDir;
+	/**
+	 * Directory where the per-IP traffic is archived in columnar daily files
+	 * (in a subdirectory per router) or <tt>null</tt>.
+	 */
+	private final Path archiveDir;
+	/**
+	 * Prefix length to which the LAN IPv6 addresses are rolled up (e.g.
+	 * <tt>64</tt>) or <tt>0</tt> to keep every address.
+	 */
+	private final int ipv6Rollup;
+	/**
+	 * File mapping IPv6 addresses to host addresses (e.g. built from the NDP
+	 * table and the DHCP leases) or <tt>null</tt>.
+	 */
+	private final Path ipv6Mapping;
+	/**
+	 * File with the host names and MAC addresses of the LAN IPs (CSV, dnsmasq or
+	 * ISC dhcpd leases) or <tt>null</tt>.
+	 */
+	private final Path hostsFile;
+	/**
+	 * Time in milliseconds a host stays known after it disappeared from the
+	 * hosts file.
+	 */
+	@Builder.Default
+	private final long hostsTtl = HostEnricher.DEFAULT_TTL;
+	/**
+	 * Byte rate (bytes per second) of a LAN IP raising an alert. <tt>0</tt>
+	 * disables the rule.
+	 */
+	private final long alertIpRate;
+	/**
+	 * Byte rate (bytes per second) of a LAN subnet or of the WAN total raising
+	 * an alert. <tt>0</tt> disables the rule.
+	 */
+	private final long alertSubnetRate;
+	/**
+	 * Number of standard deviations above the moving average of a LAN IP
+	 * raising an anomaly alert. <tt>0</tt> disables the rule.
+	 */
+	private final double alertAnomaly;
+	/**
+	 * The database where the router traffic is written or <tt>null</tt> if the
+	 * traffic is only exported to Prometheus.
+	 */
+	private final DatabaseConfig database;
+}
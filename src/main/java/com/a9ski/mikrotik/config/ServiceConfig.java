@@ -0,0 +1,21 @@
+package com.a9ski.mikrotik.config;
+
+import java.util.Collections;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * The complete configuration of the service.
+ *
+ */
+@Builder
+@Data
+public class ServiceConfig {
+	/**
+	 * The routers by name.
+	 */
+	@Builder.Default
+	private final Map<String, RouterConfig> routers = Collections.emptyMap();
+}
@@ -0,0 +1,168 @@
+package com.a9ski.mikrotik.diagnostics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import com.a9ski.mikrotik.PollScheduler;
+import com.a9ski.mikrotik.RouterManager;
+import com.a9ski.mikrotik.TrafficService;
+import com.a9ski.mikrotik.http.TextServer;
+import com.a9ski.mikrotik.influxdb.WriteScheduler;
+import com.a9ski.mikrotik.model.PipelineState;
+import com.sun.net.httpserver.HttpExchange;
+
+import lombok.NonNull;
+
+/**
+ * Admin endpoint for diagnosing slow polls in production, at
+ * <tt>http://host:port/diagnostics</tt>:
+ * <ul>
+ * <li><tt>GET /diagnostics/state</tt> - the state of the poll scheduler, the
+ * write scheduler and the pipeline of every router, one line of
+ * <tt>key=value</tt> pairs each.</li>
+ * <li><tt>POST /diagnostics/jfr/start[?duration=seconds]</tt> - starts a JFR
+ * recording of the poller (see {@link PollerRecorder}) and responds with the
+ * recording file.</li>
+ * <li><tt>POST /diagnostics/jfr/stop</tt> - stops the recording and responds
+ * with the recording file.</li>
+ * </ul>
+ * The endpoint has no authentication, so it should listen on the loopback
+ * address only.
+ *
+ */
+public class DiagnosticsServer implements Closeable {
+	/**
+	 * Path of the diagnostics endpoint.
+	 */
+	public static final String PATH = "/diagnostics";
+
+	private final RouterManager manager;
+	private final PollScheduler scheduler;
+	private final WriteScheduler writeScheduler;
+	private final PollerRecorder recorder;
+	private final TextServer server;
+
+	/**
+	 * Creates and starts a new endpoint.
+	 *
+	 * @param address        the local address of the endpoint.
+	 * @param manager        the router manager.
+	 * @param scheduler      the poll scheduler.
+	 * @param writeScheduler the write scheduler.
+	 * @param recordingDir   the directory of the JFR recording files.
+	 * @throws IOException thrown if the server cannot be started.
+	 */
+	public DiagnosticsServer(@NonNull final InetSocketAddress address, @NonNull final RouterManager manager, @NonNull final PollScheduler scheduler,
+			@NonNull final WriteScheduler writeScheduler, @NonNull final Path recordingDir) throws IOException {
+		this.manager = manager;
+		this.scheduler = scheduler;
+		this.writeScheduler = writeScheduler;
+		this.recorder = new PollerRecorder(recordingDir);
+		this.server = new TextServer(address, "diagnostics");
+		this.server.handle(PATH + "/state", "GET", TextServer.TEXT_PLAIN, this::state);
+		this.server.handle(PATH + "/jfr/start", "POST", TextServer.TEXT_PLAIN, this::startRecording);
+		this.server.handle(PATH + "/jfr/stop", "POST", TextServer.TEXT_PLAIN, this::stopRecording);
+	}
+
+	/**
+	 * Writes the state of the schedulers and of the pipelines of all routers.
+	 *
+	 * @param out the output.
+	 */
+	public void dumpState(@NonNull final StringBuilder out) {
+		out.append("scheduler polls_in_flight=").append(scheduler.getPollsInFlight());
+		out.append(" queued_polls=").append(scheduler.getQueuedPolls());
+		out.append(" skipped_polls=").append(scheduler.getSkippedPolls());
+		out.append(" rejected_polls=").append(scheduler.getRejectedPolls());
+		out.append(" free_degraded_polls=").append(scheduler.getAvailableDegradedPolls()).append('\n');
+		out.append("writes limited=").append(writeScheduler.isLimited());
+		out.append(" waited_ms=").append(writeScheduler.getWaitMillis());
+		out.append(" rejected_writes=").append(writeScheduler.getRejectedWrites());
+		out.append(" rejected_points=").append(writeScheduler.getRejectedPoints()).append('\n');
+		out.append("jfr recording=").append(recorder.isRecording());
+		if (recorder.getFile() != null) {
+			out.append(" file=").append(recorder.getFile());
+		}
+		out.append('\n');
+		for (final String name : manager.getRouterNames()) {
+			final TrafficService service = manager.getService(name);
+			if (service == null) {
+				continue;
+			}
+			final PipelineState state = service.getPipelineState();
+			out.append("router=").append(state.getRouter());
+			out.append(" polling=").append(state.isPolling());
+			out.append(" stage=").append(state.getStage() != null ? state.getStage() : "-");
+			out.append(" stage_ms=").append(state.getStageMillis());
+			out.append(" records=").append(state.getRecords());
+			out.append(" spool_bytes=").append(state.getSpoolBytes());
+			out.append(" written_batches=").append(state.getWrittenBatches());
+			out.append(" retried_writes=").append(state.getRetriedWrites());
+			out.append(" failed_batches=").append(state.getFailedBatches());
+			out.append(" degraded=").append(state.isDegraded());
+			out.append(" last_poll_ms=").append(state.getLastPollMillis());
+			for (final Map.Entry<String, Long> stage : state.getLastStageMillis().entrySet()) {
+				out.append(" last_").append(stage.getKey()).append("_ms=").append(stage.getValue());
+			}
+			out.append('\n');
+		}
+	}
+
+	private void state(final HttpExchange exchange, final StringBuilder out) {
+		dumpState(out);
+	}
+
+	private void startRecording(final HttpExchange exchange, final StringBuilder out) throws IOException {
+		final String duration = queryParameter(exchange.getRequestURI(), "duration");
+		final Duration maxDuration;
+		try {
+			maxDuration = duration != null ? Duration.ofSeconds(Long.parseLong(duration)) : null;
+		} catch (final NumberFormatException ex) {
+			throw new IllegalArgumentException(String.format("Invalid duration '%s'. Expected number of seconds", duration));
+		}
+		if (maxDuration != null && (maxDuration.isNegative() || maxDuration.isZero())) {
+			throw new IllegalArgumentException("Invalid duration. Expected positive value");
+		}
+		out.append(recorder.start(maxDuration)).append('\n');
+	}
+
+	private void stopRecording(final HttpExchange exchange, final StringBuilder out) {
+		out.append(recorder.stop()).append('\n');
+	}
+
+	private static String queryParameter(final URI uri, final String name) {
+		final String query = uri.getRawQuery();
+		if (query == null) {
+			return null;
+		}
+		for (final String parameter : query.split("&")) {
+			if (parameter.startsWith(name + "=")) {
+				return parameter.substring(name.length() + 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the URI of the diagnostics endpoint.
+	 *
+	 * @return the URI of the diagnostics endpoint.
+	 */
+	public URI getUri() {
+		return server.getUri(PATH);
+	}
+
+	/**
+	 * Stops the endpoint and the running recording.
+	 */
+	@Override
+	public void close() {
+		server.close();
+		recorder.close();
+	}
+}
@@ -0,0 +1,44 @@
+package com.a9ski.mikrotik.diagnostics;
+
+/**
+ * Stage of the poll of a router (see {@link PollTrace}).
+ *
+ */
+public enum PollStage {
+	/**
+	 * Fetching and parsing the accounting records.
+	 */
+	LOAD,
+	/**
+	 * Reading the interface and queue counters.
+	 */
+	INTERFACES,
+	/**
+	 * Suppressing the points of IPs without traffic (incremental mode).
+	 */
+	FILTER,
+	/**
+	 * Classifying the IPs as LAN or WAN and summing the subnet totals.
+	 */
+	CLASSIFY,
+	/**
+	 * Adding the source/destination pairs to the traffic matrix.
+	 */
+	MATRIX,
+	/**
+	 * Appending the poll to the archive.
+	 */
+	ARCHIVE,
+	/**
+	 * Evaluating the alert rules.
+	 */
+	ALERTS,
+	/**
+	 * Updating the counters of the Prometheus exporter.
+	 */
+	EXPORT,
+	/**
+	 * Writing the points to the database.
+	 */
+	WRITE
+}
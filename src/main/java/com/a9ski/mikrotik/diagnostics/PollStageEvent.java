@@ -0,0 +1,34 @@
+package com.a9ski.mikrotik.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of a poll stage. The duration of the event is the duration of the
+ * stage.
+ *
+ */
+@Name(PollStageEvent.NAME)
+@Label("Poll Stage")
+@Description("A stage of the poll of a router")
+@Category({ "MikroTik Accounting", "Poll" })
+@StackTrace(false)
+class PollStageEvent extends jdk.jfr.Event {
+	/**
+	 * Name of the event.
+	 */
+	static final String NAME = "com.a9ski.mikrotik.PollStage";
+
+	@Label("Router")
+	String router;
+
+	@Label("Stage")
+	String stage;
+
+	@Label("Records")
+	@Description("Number of records or points processed by the stage")
+	long records;
+}
@@ -0,0 +1,192 @@
+package com.a9ski.mikrotik.diagnostics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import lombok.NonNull;
+
+/**
+ * Traces the stages of the polls of a router. Every stage is committed as a
+ * {@link PollStageEvent} JFR event (recorded only while a recording enabling
+ * it runs, see {@link PollerRecorder}), and the current stage and the
+ * durations of the stages of the last poll are kept for the diagnostics
+ * endpoint, together with the sizes of the buffers of the poll.
+ * <p>
+ * The stages are traced by the polling thread; the getters may be called by
+ * any thread. The stage durations of a finished poll are published as an
+ * immutable copy, so a reader never sees the durations of two polls mixed,
+ * and the buffer sizes are published by the polling thread at the end of a
+ * stage, so a reader never touches the buffers themselves.
+ *
+ */
+public class PollTrace {
+	private static final PollStage[] STAGES = PollStage.values();
+	private static final String[] STAGE_NAMES = new String[STAGES.length];
+
+	static {
+		for (final PollStage stage : STAGES) {
+			STAGE_NAMES[stage.ordinal()] = stage.name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private final String router;
+	private volatile long[] lastStageNanos = new long[STAGES.length];
+	private final long[] stageNanos = new long[STAGES.length];
+	private PollStageEvent event;
+	private volatile PollStage stage;
+	private volatile long stageStart;
+	private volatile long pollStart;
+	private volatile long lastPollNanos;
+	private volatile long records;
+	private volatile long spoolBytes;
+
+	/**
+	 * Creates a new trace.
+	 *
+	 * @param router the router name.
+	 */
+	public PollTrace(@NonNull final String router) {
+		this.router = router;
+	}
+
+	/**
+	 * Starts a poll.
+	 */
+	public void start() {
+		for (int i = 0; i < stageNanos.length; i++) {
+			stageNanos[i] = 0;
+		}
+		pollStart = System.nanoTime();
+	}
+
+	/**
+	 * Starts a stage of the poll.
+	 *
+	 * @param stage the stage.
+	 */
+	public void begin(@NonNull final PollStage stage) {
+		event = new PollStageEvent();
+		event.begin();
+		stageStart = System.nanoTime();
+		this.stage = stage;
+	}
+
+	/**
+	 * Ends the current stage of the poll.
+	 *
+	 * @param records the number of records or points processed by the stage.
+	 */
+	public void end(final long records) {
+		final PollStage current = stage;
+		if (current == null) {
+			return;
+		}
+		stageNanos[current.ordinal()] += System.nanoTime() - stageStart;
+		stage = null;
+		event.end();
+		if (event.shouldCommit()) {
+			event.router = router;
+			event.stage = STAGE_NAMES[current.ordinal()];
+			event.records = records;
+			event.commit();
+		}
+		event = null;
+	}
+
+	/**
+	 * Publishes the sizes of the buffers of the poll at the end of a stage.
+	 *
+	 * @param records    the number of accounting records of the poll.
+	 * @param spoolBytes the size of the line protocol text buffered for the
+	 *                   database in bytes.
+	 */
+	public void buffered(final long records, final long spoolBytes) {
+		this.records = records;
+		this.spoolBytes = spoolBytes;
+	}
+
+	/**
+	 * Ends the poll, including the stage interrupted by a failure.
+	 */
+	public void finish() {
+		end(0);
+		lastStageNanos = stageNanos.clone();
+		lastPollNanos = System.nanoTime() - pollStart;
+		pollStart = 0;
+	}
+
+	/**
+	 * Checks if a poll runs at the moment.
+	 *
+	 * @return <tt>true</tt> if a poll runs.
+	 */
+	public boolean isPolling() {
+		return pollStart != 0;
+	}
+
+	/**
+	 * Gets the current stage of the poll.
+	 *
+	 * @return the current stage or <tt>null</tt> if no stage runs.
+	 */
+	public PollStage getStage() {
+		return stage;
+	}
+
+	/**
+	 * Gets the time spent in the current stage.
+	 *
+	 * @return the time in milliseconds or <tt>0</tt> if no stage runs.
+	 */
+	public long getStageMillis() {
+		final long start = stageStart;
+		return stage != null ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) : 0L;
+	}
+
+	/**
+	 * Gets the duration of the last finished poll.
+	 *
+	 * @return the duration in milliseconds.
+	 */
+	public long getLastPollMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(lastPollNanos);
+	}
+
+	/**
+	 * Gets the durations of the stages of the last finished poll.
+	 *
+	 * @return the duration in milliseconds of every stage, by lower case stage
+	 *         name in the order of the stages.
+	 */
+	public Map<String, Long> getLastStageMillis() {
+		final long[] nanos = lastStageNanos;
+		final Map<String, Long> stages = new LinkedHashMap<>();
+		for (int i = 0; i < nanos.length; i++) {
+			stages.put(STAGE_NAMES[i], TimeUnit.NANOSECONDS.toMillis(nanos[i]));
+		}
+		return Collections.unmodifiableMap(stages);
+	}
+
+	/**
+	 * Gets the number of accounting records of the current (or last) poll, as
+	 * published at the end of a stage.
+	 *
+	 * @return number of records.
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Gets the size of the line protocol text buffered for the database, as
+	 * published at the end of a stage.
+	 *
+	 * @return the size in bytes.
+	 */
+	public long getSpoolBytes() {
+		return spoolBytes;
+	}
+}
@@ -0,0 +1,149 @@
+package com.a9ski.mikrotik.diagnostics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Starts and stops a JFR recording of the poller on demand, without
+ * restarting the service. The recording is scoped to the poller: instead of a
+ * full profile it enables the {@link PollStageEvent poll stage events} and the
+ * few JDK events explaining a slow poll (execution samples, lock contention,
+ * parking, socket I/O, allocation samples and garbage collections), with
+ * thresholds hiding the short ones. JFR cannot filter by thread; the poll
+ * threads are named <tt>poll-&lt;router&gt;</tt>, so the events of a router
+ * can be selected by thread in the analysis.
+ * <p>
+ * A single recording runs at a time. It is written to a file in the recording
+ * directory when stopped or when its maximal duration elapses.
+ *
+ */
+@Log4j2
+public class PollerRecorder implements Closeable {
+	private static final String RECORDING_NAME = "poller";
+	private static final Duration THRESHOLD = Duration.ofMillis(10);
+	private static final Duration SAMPLING_PERIOD = Duration.ofMillis(10);
+	private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+	private final Path dir;
+	private Recording recording;
+	private Path file;
+
+	/**
+	 * Creates a new recorder.
+	 *
+	 * @param dir the directory of the recording files.
+	 */
+	public PollerRecorder(@NonNull final Path dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Starts a recording.
+	 *
+	 * @param maxDuration the duration after which the recording stops by itself
+	 *                    or <tt>null</tt> to record until stopped.
+	 * @return the file the recording is written to.
+	 * @throws IOException           thrown if the recording file cannot be
+	 *                               created.
+	 * @throws IllegalStateException thrown if a recording runs already.
+	 */
+	public synchronized Path start(final Duration maxDuration) throws IOException {
+		if (isRecording()) {
+			throw new IllegalStateException(String.format("Recording to %s runs already", file));
+		}
+		closeRecording();
+		Files.createDirectories(dir);
+		final Path destination = dir.resolve(String.format("%s-%s.jfr", RECORDING_NAME, LocalDateTime.now().format(FILE_TIME))).toAbsolutePath();
+		final Recording newRecording = new Recording();
+		try {
+			newRecording.setName(RECORDING_NAME);
+			newRecording.enable(PollStageEvent.class);
+			newRecording.enable("jdk.ExecutionSample").withPeriod(SAMPLING_PERIOD);
+			newRecording.enable("jdk.ObjectAllocationSample");
+			newRecording.enable("jdk.JavaMonitorEnter").withThreshold(THRESHOLD);
+			newRecording.enable("jdk.ThreadPark").withThreshold(THRESHOLD);
+			newRecording.enable("jdk.SocketRead").withThreshold(THRESHOLD);
+			newRecording.enable("jdk.SocketWrite").withThreshold(THRESHOLD);
+			newRecording.enable("jdk.GarbageCollection");
+			newRecording.setToDisk(true);
+			newRecording.setDestination(destination);
+			if (maxDuration != null) {
+				newRecording.setDuration(maxDuration);
+			}
+			newRecording.start();
+		} catch (final IOException | RuntimeException ex) {
+			newRecording.close();
+			throw ex;
+		}
+		recording = newRecording;
+		file = destination;
+		log.info(String.format("Started JFR recording of the poller to %s", file));
+		return file;
+	}
+
+	/**
+	 * Stops the recording and writes it to its file. A recording stopped after
+	 * its maximal duration is already written.
+	 *
+	 * @return the recording file.
+	 * @throws IllegalStateException thrown if there is no recording.
+	 */
+	public synchronized Path stop() {
+		if (recording == null) {
+			throw new IllegalStateException("No recording");
+		}
+		if (recording.getState() == RecordingState.RUNNING) {
+			recording.stop();
+		}
+		final Path stopped = file;
+		closeRecording();
+		log.info(String.format("Stopped JFR recording of the poller to %s", stopped));
+		return stopped;
+	}
+
+	/**
+	 * Checks if a recording runs.
+	 *
+	 * @return <tt>true</tt> if a recording runs.
+	 */
+	public synchronized boolean isRecording() {
+		return recording != null && recording.getState() == RecordingState.RUNNING;
+	}
+
+	/**
+	 * Gets the file of the current recording.
+	 *
+	 * @return the recording file or <tt>null</tt> if there is no recording.
+	 */
+	public synchronized Path getFile() {
+		return file;
+	}
+
+	private void closeRecording() {
+		if (recording != null) {
+			recording.close();
+			recording = null;
+			file = null;
+		}
+	}
+
+	/**
+	 * Stops the running recording.
+	 */
+	@Override
+	public synchronized void close() {
+		if (recording != null) {
+			stop();
+		}
+	}
+}
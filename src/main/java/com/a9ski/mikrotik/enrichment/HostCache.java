@@ -0,0 +1,173 @@
+package com.a9ski.mikrotik.enrichment;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.model.HostInfo;
+
+import lombok.NonNull;
+
+/**
+ * Cache of the host names and MAC addresses of the LAN IPs, bounded in time
+ * and size:
+ * <ul>
+ * <li>a host stays in the cache for the TTL after it was last seen in the
+ * source, so a lease removed from the source (or a source which cannot be
+ * read) doesn't drop the host name immediately;</li>
+ * <li>when there are more hosts than the maximal size, the hosts seen least
+ * recently are evicted.</li>
+ * </ul>
+ * The hosts are kept in an immutable open addressing table, replaced as a
+ * whole by {@link #update(Collection, long)}. A lookup reads the current table
+ * through a single volatile read, so it never blocks and allocates nothing,
+ * however slow the update is.
+ *
+ */
+public class HostCache {
+	private final long ttl;
+	private final int maxSize;
+	private volatile Table table = new Table(0);
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param ttl     time in milliseconds a host stays in the cache after it was
+	 *                last seen in the source.
+	 * @param maxSize the maximal number of hosts.
+	 */
+	public HostCache(final long ttl, final int maxSize) {
+		if (ttl < 1) {
+			throw new IllegalArgumentException("Invalid TTL. Expected positive value");
+		}
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Invalid maximal size. Expected positive value");
+		}
+		this.ttl = ttl;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Gets the host of an IP.
+	 *
+	 * @param high the high 64 bits of the key of the IP (see {@link Ipv6}).
+	 * @param low  the low 64 bits of the key of the IP.
+	 * @param now  the current time in milliseconds.
+	 * @return the host or <tt>null</tt> if the IP is unknown or expired.
+	 */
+	public HostInfo get(final long high, final long low, final long now) {
+		final Table current = table;
+		final int row = current.indexOf(high, low);
+		if (row < 0 || now - current.seen[row] > ttl) {
+			return null;
+		}
+		return current.hosts[row];
+	}
+
+	/**
+	 * Replaces the cached hosts with the hosts of the source, seen now, and the
+	 * unexpired hosts missing in the source. Updates are serialized; the
+	 * lookups continue with the previous table until the new one is complete.
+	 *
+	 * @param hosts the hosts read from the source. When an IP is listed several
+	 *              times, the last host wins.
+	 * @param now   the current time in milliseconds.
+	 */
+	public synchronized void update(@NonNull final Collection<HostInfo> hosts, final long now) {
+		final Table previous = table;
+		Table next = new Table(hosts.size() + previous.size);
+		final long[] key = new long[2];
+		for (final HostInfo host : hosts) {
+			if (Ipv6.parse(host.getIp(), key)) {
+				next.put(key[Ipv6.HIGH], key[Ipv6.LOW], host, now);
+			}
+		}
+		for (int row = 0; row < previous.size; row++) {
+			if (now - previous.seen[row] <= ttl && next.indexOf(previous.ipsHigh[row], previous.ips[row]) < 0) {
+				next.put(previous.ipsHigh[row], previous.ips[row], previous.hosts[row], previous.seen[row]);
+			}
+		}
+		if (next.size > maxSize) {
+			next = next.mostRecent(maxSize);
+		}
+		table = next;
+	}
+
+	/**
+	 * Number of cached hosts, including the expired hosts not yet removed by an
+	 * update.
+	 *
+	 * @return number of cached hosts.
+	 */
+	public int size() {
+		return table.size;
+	}
+
+	/**
+	 * Open addressing table of the hosts. It is filled before it is published
+	 * and never modified afterwards.
+	 */
+	private static final class Table {
+		private final long[] ipsHigh;
+		private final long[] ips;
+		private final long[] seen;
+		private final HostInfo[] hosts;
+		private final int[] index;
+		private int size;
+
+		private Table(final int capacity) {
+			ipsHigh = new long[capacity];
+			ips = new long[capacity];
+			seen = new long[capacity];
+			hosts = new HostInfo[capacity];
+			index = new int[Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1];
+		}
+
+		private int indexOf(final long high, final long low) {
+			final int mask = index.length - 1;
+			for (int i = (int) (Ipv6.hash(high, low) >>> 32) & mask;; i = (i + 1) & mask) {
+				final int row = index[i] - 1;
+				if (row < 0) {
+					return -1;
+				} else if (ips[row] == low && ipsHigh[row] == high) {
+					return row;
+				}
+			}
+		}
+
+		private void put(final long high, final long low, final HostInfo host, final long time) {
+			final int mask = index.length - 1;
+			int i = (int) (Ipv6.hash(high, low) >>> 32) & mask;
+			int row = -1;
+			while (index[i] != 0) {
+				if (ips[index[i] - 1] == low && ipsHigh[index[i] - 1] == high) {
+					row = index[i] - 1;
+					break;
+				}
+				i = (i + 1) & mask;
+			}
+			if (row < 0) {
+				row = size++;
+				index[i] = row + 1;
+				ipsHigh[row] = high;
+				ips[row] = low;
+			}
+			hosts[row] = host;
+			seen[row] = time;
+		}
+
+		private Table mostRecent(final int count) {
+			final Integer[] rows = new Integer[size];
+			Arrays.setAll(rows, row -> row);
+			// stable, the earlier rows of the same time are kept
+			Arrays.sort(rows, Comparator.comparingLong((Integer row) -> seen[row]).reversed());
+			final Table table = new Table(count);
+			for (int i = 0; i < count; i++) {
+				final int row = rows[i];
+				table.put(ipsHigh[row], ips[row], hosts[row], seen[row]);
+			}
+			return table;
+		}
+	}
+}
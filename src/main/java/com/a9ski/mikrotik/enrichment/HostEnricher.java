@@ -0,0 +1,157 @@
+package com.a9ski.mikrotik.enrichment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.a9ski.mikrotik.logging.LogLimiter;
+import com.a9ski.mikrotik.model.HostInfo;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Enriches the LAN IPs with the host names and MAC addresses of a hosts file
+ * (see {@link HostsFile}). The file is read by a background thread every
+ * refresh interval (parsed again only when it is modified) into a
+ * {@link HostCache}, so a lookup on the write path never waits for the file.
+ *
+ */
+@Log4j2
+public class HostEnricher implements Closeable {
+	/**
+	 * Default interval in milliseconds between the refreshes of the hosts
+	 * file.
+	 */
+	public static final long DEFAULT_REFRESH_INTERVAL = 30_000L;
+	/**
+	 * Default time in milliseconds a host stays known after it disappeared from
+	 * the hosts file.
+	 */
+	public static final long DEFAULT_TTL = 3_600_000L;
+	/**
+	 * Default maximal number of cached hosts.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 65_536;
+
+	private static final String LOADED_MSG = "Loaded %d hosts from hosts file %s";
+	private static final long MISSING_FILE_LOG_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+	private final Path file;
+	private final HostCache cache;
+	private final ScheduledExecutorService executor;
+	private final AtomicLong refreshes = new AtomicLong();
+	private final LogLimiter missingFile = new LogLimiter(MISSING_FILE_LOG_INTERVAL);
+	private FileTime modified;
+	private List<HostInfo> hosts = Collections.emptyList();
+
+	/**
+	 * Creates a new enricher and starts refreshing the hosts file with the
+	 * default interval, TTL and size.
+	 *
+	 * @param file the hosts file.
+	 */
+	public HostEnricher(@NonNull final Path file) {
+		this(file, DEFAULT_REFRESH_INTERVAL, DEFAULT_TTL, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Creates a new enricher and starts refreshing the hosts file. The first
+	 * refresh runs immediately in the background.
+	 *
+	 * @param file            the hosts file.
+	 * @param refreshInterval interval in milliseconds between the refreshes.
+	 * @param ttl             time in milliseconds a host stays known after it
+	 *                        disappeared from the file.
+	 * @param maxSize         the maximal number of cached hosts.
+	 */
+	public HostEnricher(@NonNull final Path file, final long refreshInterval, final long ttl, final int maxSize) {
+		if (refreshInterval < 1) {
+			throw new IllegalArgumentException("Invalid refresh interval. Expected positive value");
+		}
+		this.file = file;
+		this.cache = new HostCache(ttl, maxSize);
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "host-enricher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.executor.scheduleWithFixedDelay(this::refresh, 0, refreshInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Reads the hosts file if it was modified and updates the cache. The hosts
+	 * still listed in the file are seen now. A file which cannot be read keeps
+	 * the cached hosts until they expire. A missing file is logged at most once
+	 * per 10 minutes.
+	 */
+	public synchronized void refresh() {
+		final long now = System.currentTimeMillis();
+		try {
+			final FileTime fileModified = Files.getLastModifiedTime(file);
+			if (!fileModified.equals(modified)) {
+				hosts = HostsFile.load(file);
+				modified = fileModified;
+				log.info(String.format(LOADED_MSG, hosts.size(), file));
+			}
+			cache.update(hosts, now);
+		} catch (final NoSuchFileException ex) {
+			if (missingFile.tryAcquire(now)) {
+				log.warn(missingFile.message("hosts_file_missing").with("file", String.valueOf(file)));
+			}
+			cache.update(Collections.emptyList(), now);
+		} catch (final IOException | RuntimeException ex) {
+			log.warn(String.format("Cannot read hosts file %s", file), ex);
+			cache.update(Collections.emptyList(), now);
+		} finally {
+			refreshes.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the host of an IP without blocking.
+	 *
+	 * @param high the high 64 bits of the key of the IP (see
+	 *             {@link com.a9ski.mikrotik.arena.Ipv6}).
+	 * @param low  the low 64 bits of the key of the IP.
+	 * @return the host or <tt>null</tt> if the IP is unknown.
+	 */
+	public HostInfo get(final long high, final long low) {
+		return cache.get(high, low, System.currentTimeMillis());
+	}
+
+	/**
+	 * Number of cached hosts.
+	 *
+	 * @return number of cached hosts.
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Number of completed refreshes.
+	 *
+	 * @return number of completed refreshes.
+	 */
+	public long getRefreshesCount() {
+		return refreshes.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
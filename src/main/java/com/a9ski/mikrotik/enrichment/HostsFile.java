@@ -0,0 +1,146 @@
+package com.a9ski.mikrotik.enrichment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.model.HostInfo;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Reads the host names and MAC addresses of the LAN IPs from a local file.
+ * The format is detected per line:
+ * <ul>
+ * <li>CSV with the columns <tt>ip,mac,hostname</tt> (an empty column is
+ * unknown), e.g. exported from the DHCP server of the router;</li>
+ * <li>dnsmasq leases (<tt>expiry mac ip hostname client-id</tt>, a
+ * <tt>*</tt> host name is unknown);</li>
+ * <li>ISC dhcpd leases (<tt>lease ip { ... }</tt> blocks with
+ * <tt>hardware ethernet</tt> and <tt>client-hostname</tt>); free and expired
+ * leases are skipped.</li>
+ * </ul>
+ * Empty lines, <tt>#</tt> comments and a CSV header are ignored. When an IP is
+ * listed several times, the last entry wins.
+ *
+ */
+@Log4j2
+public final class HostsFile {
+	private static final String INVALID_LINE_MSG = "Invalid line %d of hosts file %s: '%s'";
+	private static final String UNKNOWN_HOSTNAME = "*";
+
+	private HostsFile() {
+	}
+
+	/**
+	 * Loads the hosts from a file.
+	 *
+	 * @param file the hosts file.
+	 * @return the hosts in the order of the file.
+	 * @throws IOException thrown if the file cannot be read.
+	 */
+	public static List<HostInfo> load(@NonNull final Path file) throws IOException {
+		return parse(Files.readAllLines(file, StandardCharsets.UTF_8), file.toString());
+	}
+
+	/**
+	 * Parses the lines of a hosts file.
+	 *
+	 * @param lines the lines.
+	 * @param name  the name of the file, used in the warnings.
+	 * @return the hosts in the order of the file.
+	 */
+	public static List<HostInfo> parse(@NonNull final List<String> lines, final String name) {
+		final List<HostInfo> hosts = new ArrayList<>(lines.size());
+		final long[] key = new long[2];
+		// the ISC dhcpd lease being parsed
+		String leaseIp = null;
+		String leaseMac = null;
+		String leaseHostname = null;
+		boolean leaseActive = true;
+		boolean first = true;
+		for (int n = 0; n < lines.size(); n++) {
+			final String line = lines.get(n).strip();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			if (leaseIp != null) {
+				if (line.equals("}")) {
+					if (leaseActive) {
+						hosts.add(host(leaseIp, leaseMac, leaseHostname));
+					}
+					leaseIp = null;
+				} else if (line.startsWith("hardware ethernet ")) {
+					leaseMac = value(line, "hardware ethernet ");
+				} else if (line.startsWith("client-hostname ")) {
+					leaseHostname = unquote(value(line, "client-hostname "));
+				} else if (line.startsWith("binding state ")) {
+					leaseActive = "active".equals(value(line, "binding state "));
+				}
+				continue;
+			}
+			if (line.startsWith("lease ") && line.endsWith("{")) {
+				leaseIp = line.substring("lease ".length(), line.length() - 1).strip();
+				leaseMac = null;
+				leaseHostname = null;
+				leaseActive = true;
+				if (!Ipv6.parse(leaseIp, key)) {
+					log.warn(String.format(INVALID_LINE_MSG, n + 1, name, line));
+					leaseIp = null;
+				}
+				continue;
+			}
+			final boolean csv = line.indexOf(',') >= 0;
+			final HostInfo host = csv ? parseCsv(line) : parseDnsmasq(line);
+			if (host != null && Ipv6.parse(host.getIp(), key)) {
+				hosts.add(host);
+			} else if (!first || !csv) {
+				// the first CSV line may be a header
+				log.warn(String.format(INVALID_LINE_MSG, n + 1, name, line));
+			}
+			first = false;
+		}
+		return hosts;
+	}
+
+	private static HostInfo parseCsv(final String line) {
+		final String[] fields = line.split(",", -1);
+		if (fields.length < 3) {
+			return null;
+		}
+		return host(fields[0].strip(), fields[1].strip(), fields[2].strip());
+	}
+
+	private static HostInfo parseDnsmasq(final String line) {
+		final String[] fields = line.split("\\s+");
+		if (fields.length < 4 || !fields[0].chars().allMatch(Character::isDigit)) {
+			return null;
+		}
+		return host(fields[2], fields[1], UNKNOWN_HOSTNAME.equals(fields[3]) ? null : fields[3]);
+	}
+
+	private static String value(final String line, final String prefix) {
+		final String value = line.substring(prefix.length()).strip();
+		return value.endsWith(";") ? value.substring(0, value.length() - 1).strip() : value;
+	}
+
+	private static String unquote(final String value) {
+		return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+	}
+
+	private static HostInfo host(final String ip, final String mac, final String hostname) {
+		// @formatter:off
+		return HostInfo.builder()
+				.ip(ip)
+				.mac(mac == null || mac.isEmpty() ? null : mac.toLowerCase(Locale.ROOT).replace('-', ':'))
+				.hostname(hostname == null || hostname.isEmpty() ? null : hostname)
+				.build();
+		// @formatter:on
+	}
+}
@@ -0,0 +1,144 @@
+package com.a9ski.mikrotik.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Small HTTP server answering requests with plain text, shared by the
+ * endpoints of the poller. The requests are served one at a time by a single
+ * daemon thread. A request with another method than the one of its handler is
+ * answered with <tt>405</tt>, the exceptions of a handler are mapped to the
+ * status code:
+ * <ul>
+ * <li>{@link IllegalArgumentException} - <tt>400</tt> (invalid request);</li>
+ * <li>{@link IllegalStateException} - <tt>409</tt> (conflicting request);</li>
+ * <li>{@link IOException} - <tt>500</tt>.</li>
+ * </ul>
+ * The message of the exception is the body of the response.
+ *
+ */
+@Log4j2
+public class TextServer implements Closeable {
+	/**
+	 * Content type of plain text responses.
+	 */
+	public static final String TEXT_PLAIN = "text/plain; charset=utf-8";
+
+	private static final String METHOD_NOT_ALLOWED_MSG = "Method %s not allowed. Expected %s";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Creates and starts a new server.
+	 *
+	 * @param address    the local address of the server.
+	 * @param threadName the name of the thread serving the requests.
+	 * @throws IOException thrown if the server cannot be started.
+	 */
+	public TextServer(@NonNull final InetSocketAddress address, @NonNull final String threadName) throws IOException {
+		this.executor = Executors.newSingleThreadExecutor(r -> {
+			final Thread thread = new Thread(r, threadName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server = HttpServer.create(address, 0);
+		this.server.setExecutor(executor);
+		this.server.start();
+	}
+
+	/**
+	 * Adds the handler of a path.
+	 *
+	 * @param path        the path.
+	 * @param method      the accepted request method.
+	 * @param contentType the content type of the responses.
+	 * @param handler     the handler writing the response body.
+	 */
+	public void handle(@NonNull final String path, @NonNull final String method, @NonNull final String contentType, @NonNull final Handler handler) {
+		server.createContext(path, exchange -> handle(exchange, method, contentType, handler));
+	}
+
+	private void handle(final HttpExchange exchange, final String method, final String contentType, final Handler handler) {
+		try (exchange) {
+			final StringBuilder text = new StringBuilder();
+			int status = 200;
+			try {
+				if (method.equals(exchange.getRequestMethod())) {
+					handler.handle(exchange, text);
+				} else {
+					status = 405;
+					text.append(String.format(METHOD_NOT_ALLOWED_MSG, exchange.getRequestMethod(), method)).append('\n');
+				}
+			} catch (final IllegalArgumentException ex) {
+				status = 400;
+				text.setLength(0);
+				text.append(ex.getMessage()).append('\n');
+			} catch (final IllegalStateException ex) {
+				status = 409;
+				text.setLength(0);
+				text.append(ex.getMessage()).append('\n');
+			} catch (final IOException ex) {
+				log.warn(ex);
+				status = 500;
+				text.setLength(0);
+				text.append(ex.getMessage()).append('\n');
+			}
+			final byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", contentType);
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (final IOException | RuntimeException ex) {
+			log.error(ex);
+		}
+	}
+
+	/**
+	 * Gets the URI of a path of the server.
+	 *
+	 * @param path the path.
+	 * @return the URI of the path.
+	 */
+	public URI getUri(@NonNull final String path) {
+		final InetSocketAddress address = server.getAddress();
+		return URI.create(String.format("http://%s:%d%s", address.getHostString(), address.getPort(), path));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Handler of the requests of a path.
+	 */
+	@FunctionalInterface
+	public interface Handler {
+		/**
+		 * Handles a request.
+		 *
+		 * @param exchange the request.
+		 * @param out      the response body.
+		 * @throws IOException thrown if the request fails.
+		 */
+		void handle(HttpExchange exchange, StringBuilder out) throws IOException;
+	}
+}
@@ -0,0 +1,88 @@
+package com.a9ski.mikrotik.incremental;
+
+import com.a9ski.mikrotik.arena.TrafficTable;
+
+import lombok.NonNull;
+
+/**
+ * Filter that reduces the points written to the database. IPs without traffic
+ * in the current poll are not written, except:
+ * <ul>
+ * <li>the first poll without traffic, so the graphs drop to zero;</li>
+ * <li>heartbeat (zero valued) points written every <tt>heartbeatInterval</tt>
+ * while the IP is known.</li>
+ * </ul>
+ * An IP without traffic for <tt>expireAfter</tt> is forgotten.
+ *
+ */
+public class IncrementalFilter {
+	private static final int EXPECTED_IPS = 1024;
+
+	private final long heartbeatInterval;
+	private final long expireAfter;
+	private final LastSeenMap lastSeen = new LastSeenMap(EXPECTED_IPS);
+
+	/**
+	 * Creates a new filter.
+	 *
+	 * @param heartbeatInterval interval in milliseconds between the heartbeat
+	 *                          points of a quiet IP. <tt>0</tt> disables the
+	 *                          heartbeat points.
+	 * @param expireAfter       time in milliseconds after which a quiet IP is
+	 *                          forgotten.
+	 */
+	public IncrementalFilter(final long heartbeatInterval, final long expireAfter) {
+		if (heartbeatInterval < 0) {
+			throw new IllegalArgumentException("Invalid heartbeat interval. Expected non-negative value");
+		}
+		if (expireAfter < 1) {
+			throw new IllegalArgumentException("Invalid expire time. Expected positive value");
+		}
+		this.heartbeatInterval = heartbeatInterval;
+		this.expireAfter = expireAfter;
+	}
+
+	/**
+	 * Filters the traffic of a poll in place: the rows of the IPs without
+	 * traffic are skipped and zero valued rows are added for the closing and
+	 * heartbeat points of the quiet IPs.
+	 *
+	 * @param now     the time of the poll in milliseconds.
+	 * @param traffic the traffic of the poll.
+	 */
+	public synchronized void filter(final long now, @NonNull final TrafficTable traffic) {
+		final int polled = traffic.size();
+		for (int row = 0; row < polled; row++) {
+			if (!traffic.isZeroAt(row)) {
+				lastSeen.markActive(traffic.ipHighAt(row), traffic.ipAt(row), now);
+			} else {
+				traffic.setSkippedAt(row, true);
+			}
+		}
+
+		for (int i = 0; i < lastSeen.capacity(); i++) {
+			if (lastSeen.isEmptyAt(i) || lastSeen.lastActiveAt(i) == now) {
+				continue;
+			}
+			final long lastActive = lastSeen.lastActiveAt(i);
+			final long lastWritten = lastSeen.lastWrittenAt(i);
+			if (now - lastActive >= expireAfter) {
+				lastSeen.removeAt(i);
+				// an entry may have been shifted into this slot
+				i--;
+			} else if (lastWritten == lastActive || (heartbeatInterval > 0 && now - lastWritten >= heartbeatInterval)) {
+				traffic.setSkippedAt(traffic.row(lastSeen.highKeyAt(i), lastSeen.keyAt(i)), false);
+				lastSeen.markWritten(i, now);
+			}
+		}
+	}
+
+	/**
+	 * Number of tracked IP addresses.
+	 *
+	 * @return number of tracked IP addresses.
+	 */
+	public synchronized int getTrackedCount() {
+		return lastSeen.size();
+	}
+}
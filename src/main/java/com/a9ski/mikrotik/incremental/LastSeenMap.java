@@ -0,0 +1,223 @@
+package com.a9ski.mikrotik.incremental;
+
+import java.util.Arrays;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+
+/**
+ * Compact open addressing (linear probing) map from the 128-bit key of an IP
+ * address (see {@link com.a9ski.mikrotik.arena.Ipv6}) to the time the IP had
+ * traffic for the last time and the time a point was written for it for the
+ * last time. The state is kept in parallel primitive arrays, so an entry costs
+ * no objects. The all-ones key marks an empty slot; it is a multicast address,
+ * which never has traffic of its own.
+ * <p>
+ * The map is not thread safe.
+ *
+ */
+public class LastSeenMap {
+	private static final int MIN_CAPACITY = 16;
+	private static final long EMPTY = -1L;
+
+	private long[] highKeys;
+	private long[] keys;
+	private long[] lastActive;
+	private long[] lastWritten;
+	private int size;
+
+	/**
+	 * Creates a new map.
+	 *
+	 * @param expectedSize expected number of IP addresses.
+	 */
+	public LastSeenMap(final int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	private static int tableSizeFor(final int expectedSize) {
+		final int required = Math.max(MIN_CAPACITY, expectedSize * 2);
+		return Integer.highestOneBit(required - 1) << 1;
+	}
+
+	private void allocate(final int capacity) {
+		highKeys = new long[capacity];
+		Arrays.fill(highKeys, EMPTY);
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		lastActive = new long[capacity];
+		lastWritten = new long[capacity];
+	}
+
+	private int slot(final long highKey, final long key) {
+		return (int) (Ipv6.hash(highKey, key) >>> 32) & (keys.length - 1);
+	}
+
+	/**
+	 * Checks if a slot is empty.
+	 *
+	 * @param index the slot index.
+	 * @return <tt>true</tt> if the slot is empty.
+	 */
+	public boolean isEmptyAt(final int index) {
+		return keys[index] == EMPTY && highKeys[index] == EMPTY;
+	}
+
+	/**
+	 * Finds the slot of a key.
+	 *
+	 * @param highKey the high 64 bits of the key.
+	 * @param key     the low 64 bits of the key.
+	 * @return the slot index or <tt>-1</tt> if the key is missing.
+	 */
+	public int indexOf(final long highKey, final long key) {
+		for (int i = slot(highKey, key);; i = (i + 1) & (keys.length - 1)) {
+			if (keys[i] == key && highKeys[i] == highKey) {
+				return i;
+			} else if (isEmptyAt(i)) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Records a point written for an IP address with traffic.
+	 *
+	 * @param highKey the high 64 bits of the key.
+	 * @param key     the low 64 bits of the key.
+	 * @param time    the time of the poll.
+	 */
+	public void markActive(final long highKey, final long key, final long time) {
+		int index = indexOf(highKey, key);
+		if (index < 0) {
+			if ((size + 1) * 2 > keys.length) {
+				resize(keys.length * 2);
+			}
+			index = slot(highKey, key);
+			while (!isEmptyAt(index)) {
+				index = (index + 1) & (keys.length - 1);
+			}
+			highKeys[index] = highKey;
+			keys[index] = key;
+			size++;
+		}
+		lastActive[index] = time;
+		lastWritten[index] = time;
+	}
+
+	/**
+	 * Records a heartbeat (zero valued) point written for an IP address.
+	 *
+	 * @param index the slot index.
+	 * @param time  the time of the poll.
+	 */
+	public void markWritten(final int index, final long time) {
+		lastWritten[index] = time;
+	}
+
+	/**
+	 * Gets the key stored in a slot.
+	 *
+	 * @param index the slot index.
+	 * @return the numeric IP address (the low 64 bits of the key) or
+	 *         <tt>-1</tt> if the slot is empty.
+	 */
+	public long keyAt(final int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Gets the high 64 bits of the key stored in a slot.
+	 *
+	 * @param index the slot index.
+	 * @return the high 64 bits, <tt>0</tt> for an IPv4 address.
+	 */
+	public long highKeyAt(final int index) {
+		return highKeys[index];
+	}
+
+	/**
+	 * Gets the time of the last poll with traffic for the IP in a slot.
+	 *
+	 * @param index the slot index.
+	 * @return the time of the last poll with traffic.
+	 */
+	public long lastActiveAt(final int index) {
+		return lastActive[index];
+	}
+
+	/**
+	 * Gets the time of the last written point for the IP in a slot.
+	 *
+	 * @param index the slot index.
+	 * @return the time of the last written point.
+	 */
+	public long lastWrittenAt(final int index) {
+		return lastWritten[index];
+	}
+
+	/**
+	 * Removes the entry in a slot. The following entries of the probe sequence
+	 * are shifted back, so the caller iterating over the slots must re-check
+	 * the same index.
+	 *
+	 * @param index the slot index.
+	 */
+	public void removeAt(final int index) {
+		final int mask = keys.length - 1;
+		int hole = index;
+		highKeys[hole] = EMPTY;
+		keys[hole] = EMPTY;
+		size--;
+		for (int i = (hole + 1) & mask; !isEmptyAt(i); i = (i + 1) & mask) {
+			final int home = slot(highKeys[i], keys[i]);
+			// move the entry if its home slot is not between the hole and its current slot
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				highKeys[hole] = highKeys[i];
+				keys[hole] = keys[i];
+				lastActive[hole] = lastActive[i];
+				lastWritten[hole] = lastWritten[i];
+				highKeys[i] = EMPTY;
+				keys[i] = EMPTY;
+				hole = i;
+			}
+		}
+	}
+
+	private void resize(final int capacity) {
+		final long[] oldHighKeys = highKeys;
+		final long[] oldKeys = keys;
+		final long[] oldActive = lastActive;
+		final long[] oldWritten = lastWritten;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY || oldHighKeys[i] != EMPTY) {
+				int index = slot(oldHighKeys[i], oldKeys[i]);
+				while (!isEmptyAt(index)) {
+					index = (index + 1) & (keys.length - 1);
+				}
+				highKeys[index] = oldHighKeys[i];
+				keys[index] = oldKeys[i];
+				lastActive[index] = oldActive[i];
+				lastWritten[index] = oldWritten[i];
+			}
+		}
+	}
+
+	/**
+	 * Number of slots. Used to iterate over the entries.
+	 *
+	 * @return the number of slots.
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Number of IP addresses in the map.
+	 *
+	 * @return number of IP addresses.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -1,19 +1,25 @@
 package com.a9ski.mikrotik.influxdb;
 
 import java.io.Closeable;
-import java.util.Map;
-import java.util.Set;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDB.ConsistencyLevel;
 import org.influxdb.InfluxDBException;
 import org.influxdb.InfluxDBFactory;
-import org.influxdb.dto.Point;
 import org.influxdb.dto.Query;
 
-import com.a9ski.mikrotik.model.TrafficData;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.enrichment.HostEnricher;
+import com.a9ski.mikrotik.model.InterfaceCounters;
+import com.a9ski.mikrotik.model.WriteResult;
+
+import io.github.resilience4j.retry.Retry;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
 
 /**
  * Influx DB client.
@@ -21,17 +27,28 @@ import com.a9ski.mikrotik.model.TrafficData;
  * @author Kiril Arabadzhiyski
  *
  */
+@Log4j2
 public class InfluxDbClient implements Closeable {
+	/**
+	 * Default maximal number of points of a write request.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 5000;
 	private static final String RETENTION_POLICY = "180_days_retention_policy";
-	private static final String MEASUREMENT = "IPTrafficData";
+	private static final String REJECTED_MSG = "Write of %d WAN points of router %s rejected by the write scheduler";
 	private InfluxDB influxDB;
 	private final String routerIp;
+	private final LineProtocolFormatter formatter;
 	private final String databaseName;
 	private final AtomicLong recordsCount = new AtomicLong();
 	private final AtomicBoolean initialized = new AtomicBoolean();
 	private String serverUrl;
 	private String username;
 	private String password;
+	private volatile boolean gzip;
+	private volatile HostEnricher hostEnricher;
+	private volatile WriteScheduler writeScheduler;
+	private volatile long maxWanWait;
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
 
 
 	/**
@@ -45,6 +62,7 @@ public class InfluxDbClient implements Closeable {
 	 */
 	public InfluxDbClient(final String serverUrl, final String username, final String password, final String databaseName, final String routerIp) {
 		this.routerIp = routerIp;
+		this.formatter = new LineProtocolFormatter(routerIp);
 		this.serverUrl = serverUrl;
 		this.username = username;
 		this.password = password;
@@ -60,32 +78,178 @@ public class InfluxDbClient implements Closeable {
 			influxDB.query(new Query(String.format("CREATE DATABASE %s WITH DURATION 180d REPLICATION 1 NAME \"%s\"", databaseName, RETENTION_POLICY)));
 			influxDB.setRetentionPolicy(RETENTION_POLICY);
 			influxDB.setDatabase(databaseName);
+			if (gzip) {
+				influxDB.enableGzip();
+			}
 			// influxDB.enableBatch(BatchOptions.DEFAULTS);
 			initialized.set(true);
 		}
 	}
 
 	/**
-	 * Writes data to the database.
+	 * Writes the traffic of a poll arena to the database. The points are
+	 * formatted in the line protocol into the text buffer of the arena, together
+	 * with the subnet totals, and sent in batches of up to
+	 * {@link #getBatchSize()} points. The skipped rows of the traffic table are
+	 * not written.
+	 * <p>
+	 * The writes are idempotent: all points of a poll have the timestamp of the
+	 * poll, so a point is identified by the router, its tags (e.g. the IP) and
+	 * the poll. A batch written again (a retry after a timeout of a write which
+	 * succeeded on the server, or a replay of the poll) overwrites its points
+	 * instead of duplicating them. Every batch is a single request, retried on
+	 * its own; a failed batch doesn't stop the following batches.
+	 *
+	 * @param arena      the poll arena with the traffic of the poll.
+	 * @param interfaces the interface and queue counters (deltas since the
+	 *                   previous poll).
+	 * @param timestamp  the timestamp of the poll in milliseconds, unique per
+	 *                   poll of the router.
+	 * @param retry      the retry of a failed batch.
+	 * @return the outcome of the write.
+	 */
+	public WriteResult write(final PollArena arena, final List<InterfaceCounters> interfaces, final long timestamp, @NonNull final Retry retry) {
+		final StringBuilder text = arena.getText();
+		final Outcome outcome = new Outcome();
+		text.setLength(0);
+		final WriteScheduler scheduler = writeScheduler;
+		if (scheduler == null) {
+			final int points = formatter.appendPoints(text, timestamp, arena.getTraffic(), interfaces) + formatter.appendPoints(text, timestamp, arena.getSubnetTotals());
+			writeBatches(text, points, null, true, retry, outcome);
+			return outcome.toResult();
+		}
+
+		// the LAN points first, they are never rejected by the scheduler
+		int points = formatter.appendPoints(text, timestamp, arena.getTraffic(), LineProtocolFormatter.ROWS_LAN) + formatter.appendPoints(text, timestamp, interfaces)
+				+ formatter.appendPoints(text, timestamp, arena.getSubnetTotals());
+		writeBatches(text, points, scheduler, true, retry, outcome);
+		text.setLength(0);
+		points = formatter.appendPoints(text, timestamp, arena.getTraffic(), LineProtocolFormatter.ROWS_WAN);
+		final long rejected = outcome.rejectedPoints;
+		writeBatches(text, points, scheduler, false, retry, outcome);
+		if (outcome.rejectedPoints > rejected) {
+			log.warn(String.format(REJECTED_MSG, outcome.rejectedPoints - rejected, routerIp));
+		}
+		return outcome.toResult();
+	}
+
+	/**
+	 * Acquires the tokens of a batch from the write scheduler.
+	 *
+	 * @param scheduler the write scheduler.
+	 * @param points    the number of points of the batch.
+	 * @param bytes     the size of the batch in bytes.
+	 * @param lan       <tt>true</tt> for the LAN points, which have priority.
+	 * @return <tt>true</tt> if the batch may be written.
+	 */
+	private boolean acquire(final WriteScheduler scheduler, final int points, final int bytes, final boolean lan) {
+		try {
+			return scheduler.acquire(points, bytes, lan, maxWanWait);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InfluxDBException(ex);
+		}
+	}
+
+	/**
+	 * Splits points at the line boundaries into batches and writes every batch
+	 * with its own retry. A batch is a single request, so it is written
+	 * completely or not at all. Every batch acquires its own tokens from the
+	 * write scheduler, so the batches of a poll are spread over time instead of
+	 * being sent in a burst; a rejected batch is skipped.
+	 *
+	 * @param text      the points in the line protocol, every point ending with
+	 *                  a new line.
+	 * @param points    the number of points.
+	 * @param scheduler the write scheduler or <tt>null</tt> for unlimited
+	 *                  writes.
+	 * @param lan       <tt>true</tt> for the LAN points, which have priority.
+	 * @param retry     the retry of a failed batch.
+	 * @param outcome   the outcome of the write.
+	 */
+	private void writeBatches(final StringBuilder text, final int points, final WriteScheduler scheduler, final boolean lan, final Retry retry, final Outcome outcome) {
+		int start = 0;
+		int remaining = points;
+		while (remaining > 0) {
+			final int batchPoints = Math.min(batchSize, remaining);
+			int end = start;
+			for (int i = 0; i < batchPoints; i++) {
+				end = text.indexOf("\n", end) + 1;
+			}
+			if (scheduler == null || acquire(scheduler, batchPoints, end - start, lan)) {
+				writeBatch(text.substring(start, end), batchPoints, retry, outcome);
+			} else {
+				outcome.rejectedPoints += batchPoints;
+			}
+			start = end;
+			remaining -= batchPoints;
+		}
+	}
+
+	/**
+	 * Writes a batch with its own retry.
+	 *
+	 * @param lines   the points of the batch in the line protocol.
+	 * @param points  the number of points of the batch.
+	 * @param retry   the retry of a failed batch.
+	 * @param outcome the outcome of the write.
+	 */
+	private void writeBatch(final String lines, final int points, final Retry retry, final Outcome outcome) {
+		final int[] attempts = new int[1];
+		try {
+			retry.executeRunnable(() -> {
+				attempts[0]++;
+				write(lines, points);
+			});
+			outcome.batches++;
+			outcome.points += points;
+		} catch (final RuntimeException ex) {
+			outcome.failedBatches++;
+			outcome.failedPoints += points;
+			if (outcome.error == null) {
+				outcome.error = ex;
+			}
+		}
+		outcome.retries += Math.max(0, attempts[0] - 1);
+	}
+
+	/**
+	 * Sets the maximal number of points of a write request.
 	 *
-	 * @param lanIps  the list of IPs belonging to the local area network (LAN)
-	 * @param traffic the traffic data. Key is the IP address, Value is summary of
-	 *                the traffic for that IP.
+	 * @param batchSize the maximal number of points of a batch.
 	 */
-	public void write(final Set<String> lanIps, final Map<String, TrafficData> traffic) {
+	public void setBatchSize(final int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Invalid batch size. Expected positive value");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Gets the maximal number of points of a write request.
+	 *
+	 * @return the maximal number of points of a batch.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Writes points formatted in the line protocol (see
+	 * {@link LineProtocolFormatter}) in a
+	 * single request.
+	 *
+	 * @param lines  the points in the line protocol, separated by new lines.
+	 * @param points the number of points.
+	 */
+	public void write(final String lines, final int points) {
 		if (!initialized.get()) {
 			initialize();
 		}
 
-		final long now = System.currentTimeMillis();
-
 		try {
-			// Write points to InfluxDB.
-			//@formatter:off
-			traffic.keySet().stream()
-				.map(ip -> createPoint(now, ip, lanIps.contains(ip), traffic.get(ip)))
-				.forEach(this::write);
-			//@formatter:on
+			influxDB.write(databaseName, RETENTION_POLICY, ConsistencyLevel.ONE, TimeUnit.MILLISECONDS, lines);
+			recordsCount.addAndGet(points);
 		} catch (final InfluxDBException ex) {
 			initialized.set(false);
 			throw ex;
@@ -93,47 +257,87 @@ public class InfluxDbClient implements Closeable {
 	}
 
 	/**
-	 * Writes a point to the database.
+	 * Enables gzip compression of the write requests. Takes effect on the next
+	 * connection.
 	 *
-	 * @param point the point to be written.
+	 * @param gzip <tt>true</tt> to compress the write requests.
 	 */
-	private void write(Point point) {
-		influxDB.write(point);
-		recordsCount.incrementAndGet();
+	public void setGzip(final boolean gzip) {
+		this.gzip = gzip;
 	}
 
 	/**
-	 * Creates a point for given timestamp and ip.
+	 * Sets the scheduler limiting the writes of all routers. The LAN points of
+	 * a poll are written first; the WAN points are dropped if their write would
+	 * wait longer than the maximal wait.
 	 *
-	 * @param timestamp   the timestamp of the point.
-	 * @param ip          the IP addres
-	 * @param isLanIp     boolean flag indicating that the IP belongs to the local
-	 *                    area network (LAN)
-	 * @param trafficData summary of the traffic for the given IP.
-	 * @return
-	 */
-	private Point createPoint(long timestamp, String ip, boolean isLanIp, TrafficData trafficData) {
-		//@formatter:off
-		return Point.measurement(MEASUREMENT)
-		    .time(timestamp, TimeUnit.MILLISECONDS)
-		    .tag("ip", ip)
-		    .tag("type", isLanIp ? "LAN" : "WAN")
-		    .tag("routerIp", routerIp)
-		    .addField("isWan", isLanIp ? 0 : 1)
-		    .addField("bytesSent", trafficData.getBytesSent())
-		    .addField("bytesReceived", trafficData.getBytesReceived())
-		    .addField("packetsSent", trafficData.getPacketsSent())
-		    .addField("packetsReceived", trafficData.getPacketsReceived())
-		    .build();
-	    //@formatter:off
+	 * @param writeScheduler the scheduler or <tt>null</tt> for unlimited
+	 *                       writes.
+	 * @param maxWanWait     maximal wait of the WAN points in milliseconds.
+	 */
+	public void setWriteScheduler(final WriteScheduler writeScheduler, final long maxWanWait) {
+		this.writeScheduler = writeScheduler;
+		this.maxWanWait = maxWanWait;
+	}
+
+	/**
+	 * Sets the enricher adding the <tt>hostname</tt> and <tt>mac</tt> tags to
+	 * the points of the LAN IPs. The enricher is closed with the client.
+	 *
+	 * @param hostEnricher the enricher or <tt>null</tt>.
+	 */
+	public void setHostEnricher(final HostEnricher hostEnricher) {
+		this.hostEnricher = hostEnricher;
+		formatter.setHostEnricher(hostEnricher);
+	}
+
+	/**
+	 * Gets the formatter of the points of the router in the line protocol.
+	 *
+	 * @return the line protocol formatter.
+	 */
+	public LineProtocolFormatter getFormatter() {
+		return formatter;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void close() {
-		influxDB.close();
+	public synchronized void close() {
+		if (hostEnricher != null) {
+			hostEnricher.close();
+		}
+		if (influxDB != null) {
+			influxDB.close();
+		}
+	}
+
+	/**
+	 * Accumulates the outcome of a write.
+	 */
+	private static final class Outcome {
+		private long points;
+		private long batches;
+		private long retries;
+		private long failedBatches;
+		private long failedPoints;
+		private long rejectedPoints;
+		private RuntimeException error;
+
+		private WriteResult toResult() {
+			// @formatter:off
+			return WriteResult.builder()
+					.points(points)
+					.batches(batches)
+					.retries(retries)
+					.failedBatches(failedBatches)
+					.failedPoints(failedPoints)
+					.rejectedPoints(rejectedPoints)
+					.error(error)
+					.build();
+			// @formatter:on
+		}
 	}
 
 	/**
@@ -0,0 +1,189 @@
+package com.a9ski.mikrotik.influxdb;
+
+import java.util.List;
+
+import com.a9ski.mikrotik.arena.SubnetTotals;
+import com.a9ski.mikrotik.arena.TrafficTable;
+import com.a9ski.mikrotik.enrichment.HostEnricher;
+import com.a9ski.mikrotik.model.HostInfo;
+import com.a9ski.mikrotik.model.InterfaceCounters;
+
+/**
+ * Formats the points of the polls of a router in the InfluxDB line protocol,
+ * the body of the write requests of {@link InfluxDbClient}. The formatter
+ * doesn't connect to the database, so it can also format points which are
+ * never written (e.g. the warm-up of the poll path).
+ *
+ */
+public class LineProtocolFormatter {
+	static final int ROWS_ALL = 0;
+	static final int ROWS_LAN = 1;
+	static final int ROWS_WAN = 2;
+
+	private static final String MEASUREMENT = "IPTrafficData";
+	private static final String INTERFACE_MEASUREMENT = "InterfaceTrafficData";
+	private static final String SUBNET_MEASUREMENT = "SubnetTrafficData";
+
+	private final String routerIp;
+	private volatile HostEnricher hostEnricher;
+
+	/**
+	 * Creates a new formatter.
+	 *
+	 * @param routerIp the router IP address tagging the points or
+	 *                 <tt>null</tt>.
+	 */
+	public LineProtocolFormatter(final String routerIp) {
+		this.routerIp = routerIp;
+	}
+
+	/**
+	 * Sets the enricher adding the <tt>hostname</tt> and <tt>mac</tt> tags to
+	 * the points of the LAN IPs.
+	 *
+	 * @param hostEnricher the enricher or <tt>null</tt>.
+	 */
+	public void setHostEnricher(final HostEnricher hostEnricher) {
+		this.hostEnricher = hostEnricher;
+	}
+
+	/**
+	 * Formats the points of a poll in the
+	 * <a href="https://docs.influxdata.com/influxdb/v1.8/write_protocols/line_protocol_reference/">line
+	 * protocol</a>. The traffic points are formatted without allocation. The
+	 * points of the known LAN IPs are tagged with the host name and MAC address
+	 * of the host enricher.
+	 *
+	 * @param text       the text to append to.
+	 * @param timestamp  the timestamp of the points in milliseconds.
+	 * @param traffic    the traffic table.
+	 * @param interfaces the interface and queue counters.
+	 * @return number of appended points.
+	 */
+	public int appendPoints(final StringBuilder text, final long timestamp, final TrafficTable traffic, final List<InterfaceCounters> interfaces) {
+		return appendPoints(text, timestamp, traffic, ROWS_ALL) + appendPoints(text, timestamp, interfaces);
+	}
+
+	/**
+	 * Formats the traffic points of the LAN or the WAN IPs (or both) in the line
+	 * protocol.
+	 *
+	 * @param text      the text to append to.
+	 * @param timestamp the timestamp of the points in milliseconds.
+	 * @param traffic   the traffic table.
+	 * @param rows      {@link #ROWS_ALL}, {@link #ROWS_LAN} or {@link #ROWS_WAN}.
+	 * @return number of appended points.
+	 */
+	int appendPoints(final StringBuilder text, final long timestamp, final TrafficTable traffic, final int rows) {
+		int points = 0;
+		for (int row = 0; row < traffic.size(); row++) {
+			if (traffic.isSkippedAt(row)) {
+				continue;
+			}
+			final boolean isLanIp = traffic.isLanAt(row);
+			if (rows == ROWS_LAN && !isLanIp || rows == ROWS_WAN && isLanIp) {
+				continue;
+			}
+			final HostInfo host = isLanIp ? host(traffic.ipHighAt(row), traffic.ipAt(row)) : null;
+			text.append(MEASUREMENT);
+			if (host != null && host.getHostname() != null) {
+				text.append(",hostname=");
+				appendTagValue(text, host.getHostname());
+			}
+			text.append(",ip=");
+			traffic.appendIp(text, row);
+			if (host != null && host.getMac() != null) {
+				text.append(",mac=");
+				appendTagValue(text, host.getMac());
+			}
+			appendRouterIp(text);
+			text.append(",type=").append(isLanIp ? "LAN" : "WAN");
+			text.append(" bytesReceived=").append(traffic.bytesReceivedAt(row)).append('i');
+			text.append(",bytesSent=").append(traffic.bytesSentAt(row)).append('i');
+			text.append(",isWan=").append(isLanIp ? 0 : 1).append('i');
+			text.append(",packetsReceived=").append(traffic.packetsReceivedAt(row)).append('i');
+			text.append(",packetsSent=").append(traffic.packetsSentAt(row)).append('i');
+			text.append(' ').append(timestamp).append('\n');
+			points++;
+		}
+		return points;
+	}
+
+	/**
+	 * Formats the interface and queue counters in the line protocol.
+	 *
+	 * @param text       the text to append to.
+	 * @param timestamp  the timestamp of the points in milliseconds.
+	 * @param interfaces the interface and queue counters.
+	 * @return number of appended points.
+	 */
+	int appendPoints(final StringBuilder text, final long timestamp, final List<InterfaceCounters> interfaces) {
+		for (final InterfaceCounters counters : interfaces) {
+			text.append(INTERFACE_MEASUREMENT).append(",name=");
+			appendTagValue(text, counters.getName());
+			appendRouterIp(text);
+			text.append(",type=").append(counters.getType().name());
+			text.append(" rxBytes=").append(counters.getRxBytes()).append('i');
+			text.append(",rxDrops=").append(counters.getRxDrops()).append('i');
+			text.append(",rxPackets=").append(counters.getRxPackets()).append('i');
+			text.append(",txBytes=").append(counters.getTxBytes()).append('i');
+			text.append(",txDrops=").append(counters.getTxDrops()).append('i');
+			text.append(",txPackets=").append(counters.getTxPackets()).append('i');
+			text.append(' ').append(timestamp).append('\n');
+		}
+		return interfaces.size();
+	}
+
+	/**
+	 * Formats the subnet totals of a poll in the line protocol. Every LAN subnet
+	 * and the WAN total is a point tagged with the subnet (or <tt>WAN</tt>).
+	 *
+	 * @param text      the text to append to.
+	 * @param timestamp the timestamp of the points in milliseconds.
+	 * @param totals    the subnet totals.
+	 * @return number of appended points.
+	 */
+	public int appendPoints(final StringBuilder text, final long timestamp, final SubnetTotals totals) {
+		for (int i = 0; i < totals.size(); i++) {
+			text.append(SUBNET_MEASUREMENT);
+			appendRouterIp(text);
+			text.append(",subnet=");
+			appendTagValue(text, totals.nameAt(i));
+			text.append(",type=").append(totals.isWanAt(i) ? "WAN" : "LAN");
+			text.append(" bytesReceived=").append(totals.bytesReceivedAt(i)).append('i');
+			text.append(",bytesSent=").append(totals.bytesSentAt(i)).append('i');
+			text.append(",packetsReceived=").append(totals.packetsReceivedAt(i)).append('i');
+			text.append(",packetsSent=").append(totals.packetsSentAt(i)).append('i');
+			text.append(' ').append(timestamp).append('\n');
+		}
+		return totals.size();
+	}
+
+	private HostInfo host(final long high, final long low) {
+		final HostEnricher enricher = hostEnricher;
+		return enricher != null ? enricher.get(high, low) : null;
+	}
+
+	private void appendRouterIp(final StringBuilder text) {
+		if (routerIp != null) {
+			text.append(",routerIp=");
+			appendTagValue(text, routerIp);
+		}
+	}
+
+	/**
+	 * Appends a tag value, escaping the commas, equal signs and spaces.
+	 *
+	 * @param text  the text to append to.
+	 * @param value the tag value.
+	 */
+	private static void appendTagValue(final StringBuilder text, final String value) {
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == ',' || c == '=' || c == ' ') {
+				text.append('\\');
+			}
+			text.append(c);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.a9ski.mikrotik.influxdb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the writes of all routers to the database with two token buckets:
+ * points per second and bytes per second. Many routers polling at the same
+ * moment would otherwise hit the database with all their points at once; the
+ * buckets spread the writes over time, allowing a burst of one second of
+ * tokens.
+ * <p>
+ * A write reserves its tokens in advance and waits until the buckets are
+ * refilled. A priority write (the LAN points) always gets its tokens, even if
+ * the buckets go into debt. A normal write (the WAN points) is rejected if it
+ * would have to wait longer than its maximal wait, so it is the one shed when
+ * the database cannot keep up: the debt of the priority writes makes the wait
+ * of the normal writes longer, never the other way around.
+ * <p>
+ * The scheduler is thread safe and shared by the database clients of all
+ * routers.
+ *
+ */
+public class WriteScheduler {
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final long pointsPerSecond;
+	private final long bytesPerSecond;
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicLong rejectedWrites = new AtomicLong();
+	private final AtomicLong rejectedPoints = new AtomicLong();
+	private double pointTokens;
+	private double byteTokens;
+	private long refilled;
+
+	/**
+	 * Creates a new scheduler with full buckets.
+	 *
+	 * @param pointsPerSecond maximal number of written points per second (0 for
+	 *                        unlimited).
+	 * @param bytesPerSecond  maximal number of written bytes (of the line
+	 *                        protocol text, before compression) per second (0
+	 *                        for unlimited).
+	 */
+	public WriteScheduler(final long pointsPerSecond, final long bytesPerSecond) {
+		this(pointsPerSecond, bytesPerSecond, System.nanoTime());
+	}
+
+	/**
+	 * Creates a new scheduler with full buckets.
+	 *
+	 * @param pointsPerSecond maximal number of written points per second.
+	 * @param bytesPerSecond  maximal number of written bytes per second.
+	 * @param now             the current time in nanoseconds.
+	 */
+	WriteScheduler(final long pointsPerSecond, final long bytesPerSecond, final long now) {
+		if (pointsPerSecond < 0 || bytesPerSecond < 0) {
+			throw new IllegalArgumentException("Invalid write rate. Expected non-negative value");
+		}
+		this.pointsPerSecond = pointsPerSecond;
+		this.bytesPerSecond = bytesPerSecond;
+		this.pointTokens = pointsPerSecond;
+		this.byteTokens = bytesPerSecond;
+		this.refilled = now;
+	}
+
+	/**
+	 * Waits for the tokens of a write.
+	 *
+	 * @param points   number of points of the write.
+	 * @param bytes    size of the write in bytes.
+	 * @param priority <tt>true</tt> for a priority write, which is never
+	 *                 rejected.
+	 * @param maxWait  maximal wait of a normal write in milliseconds.
+	 * @return <tt>true</tt> if the write may proceed, <tt>false</tt> if it is
+	 *         rejected.
+	 * @throws InterruptedException thrown if interrupted while waiting.
+	 */
+	public boolean acquire(final long points, final long bytes, final boolean priority, final long maxWait) throws InterruptedException {
+		final long wait = reserve(points, bytes, priority, TimeUnit.MILLISECONDS.toNanos(maxWait), System.nanoTime());
+		if (wait < 0) {
+			rejectedWrites.incrementAndGet();
+			rejectedPoints.addAndGet(points);
+			return false;
+		}
+		if (wait > 0) {
+			waitNanos.addAndGet(wait);
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+		return true;
+	}
+
+	/**
+	 * Reserves the tokens of a write.
+	 *
+	 * @param points   number of points of the write.
+	 * @param bytes    size of the write in bytes.
+	 * @param priority <tt>true</tt> for a priority write.
+	 * @param maxWait  maximal wait of a normal write in nanoseconds.
+	 * @param now      the current time in nanoseconds.
+	 * @return the time to wait before the write in nanoseconds or <tt>-1</tt>
+	 *         if the write is rejected.
+	 */
+	synchronized long reserve(final long points, final long bytes, final boolean priority, final long maxWait, final long now) {
+		if (now > refilled) {
+			final double elapsed = (double) (now - refilled) / SECOND;
+			pointTokens = Math.min(pointsPerSecond, pointTokens + elapsed * pointsPerSecond);
+			byteTokens = Math.min(bytesPerSecond, byteTokens + elapsed * bytesPerSecond);
+			refilled = now;
+		}
+		final long wait = Math.max(waitFor(points, pointTokens, pointsPerSecond), waitFor(bytes, byteTokens, bytesPerSecond));
+		if (!priority && wait > maxWait) {
+			return -1;
+		}
+		if (pointsPerSecond > 0) {
+			pointTokens -= points;
+		}
+		if (bytesPerSecond > 0) {
+			byteTokens -= bytes;
+		}
+		return wait;
+	}
+
+	private static long waitFor(final long amount, final double tokens, final long rate) {
+		if (rate == 0 || amount <= tokens) {
+			return 0;
+		}
+		return (long) Math.ceil((amount - tokens) * SECOND / rate);
+	}
+
+	/**
+	 * Checks if the scheduler limits the writes.
+	 *
+	 * @return <tt>true</tt> if a rate is limited.
+	 */
+	public boolean isLimited() {
+		return pointsPerSecond > 0 || bytesPerSecond > 0;
+	}
+
+	/**
+	 * Gets the total time the writes waited for tokens.
+	 *
+	 * @return the wait time in milliseconds.
+	 */
+	public long getWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+	}
+
+	/**
+	 * Gets the number of rejected writes.
+	 *
+	 * @return number of rejected writes.
+	 */
+	public long getRejectedWrites() {
+		return rejectedWrites.get();
+	}
+
+	/**
+	 * Gets the number of points of the rejected writes.
+	 *
+	 * @return number of rejected points.
+	 */
+	public long getRejectedPoints() {
+		return rejectedPoints.get();
+	}
+}
@@ -0,0 +1,105 @@
+package com.a9ski.mikrotik.loadgen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.a9ski.mikrotik.accounting.AccountingClient;
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+import com.a9ski.mikrotik.arena.PollArena;
+
+import lombok.NonNull;
+
+/**
+ * Accounting client that stores every response body on disk, so it can be
+ * replayed later by {@link ReplaySnapshotSource}. Each body is written in a
+ * separate file named after the poll timestamp (milliseconds since epoch).
+ * Files are never overwritten: a poll with the timestamp of an existing file
+ * (two polls in the same millisecond) is stored under the next free
+ * timestamp, so the captures keep their order.
+ *
+ */
+public class CapturingAccountingClient extends AccountingClient {
+	/**
+	 * File extension of the captured polls.
+	 */
+	public static final String CAPTURE_EXTENSION = ".cgi";
+
+	private final Path captureDir;
+
+	/**
+	 * Creates a new capturing client.
+	 *
+	 * @param routerUri  the URI of the Mikrotik accounting page.
+	 * @param captureDir the directory where the responses are stored.
+	 * @throws IOException thrown if the capture directory cannot be created.
+	 */
+	public CapturingAccountingClient(@NonNull final URI routerUri, @NonNull final Path captureDir) throws IOException {
+		this(routerUri, captureDir, null, null);
+	}
+
+	/**
+	 * Creates a new capturing client with REST API credentials.
+	 *
+	 * @param routerUri  the URI of the Mikrotik accounting page.
+	 * @param captureDir the directory where the responses are stored.
+	 * @param user       the REST API user or <tt>null</tt>.
+	 * @param password   the REST API password.
+	 * @throws IOException thrown if the capture directory cannot be created.
+	 */
+	public CapturingAccountingClient(@NonNull final URI routerUri, @NonNull final Path captureDir, final String user, final String password) throws IOException {
+		super(routerUri, user, password);
+		this.captureDir = Files.createDirectories(captureDir);
+	}
+
+	/**
+	 * Creates a new capturing client.
+	 *
+	 * @param routerHost the host name or IP address the Mikrotik router.
+	 * @param captureDir the directory where the responses are stored.
+	 * @throws IOException thrown if the capture directory cannot be created.
+	 */
+	public CapturingAccountingClient(@NonNull final String routerHost, @NonNull final Path captureDir) throws IOException {
+		this(URI.create(String.format("http://%s/accounting/ip.cgi", routerHost)), captureDir);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected String loadBody() throws AccountingException, InterruptedException, IOException {
+		final long timestamp = System.currentTimeMillis();
+		final String body = super.loadBody();
+		try (OutputStream out = createCaptureFile(timestamp)) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return body;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadBody(final PollArena arena) throws AccountingException, InterruptedException, IOException {
+		final long timestamp = System.currentTimeMillis();
+		super.loadBody(arena);
+		try (OutputStream out = createCaptureFile(timestamp)) {
+			out.write(arena.getBody(), 0, arena.getBodyLength());
+		}
+	}
+
+	private OutputStream createCaptureFile(final long timestamp) throws IOException {
+		for (long name = timestamp;; name++) {
+			try {
+				return Files.newOutputStream(captureDir.resolve(name + CAPTURE_EXTENSION), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			} catch (final FileAlreadyExistsException ex) {
+				// captured in the same millisecond, try the next one
+			}
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.a9ski.mikrotik.loadgen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.TrafficService;
+import com.a9ski.mikrotik.accounting.AccountingClient;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+
+import inet.ipaddr.AddressStringException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Load generator that simulates many MikroTik routers on the local machine.
+ * The routers serve either synthetic accounting pages or polls captured with
+ * {@link CapturingAccountingClient}. When database parameters are given, a
+ * {@link TrafficService} is started for every simulated router, so the whole
+ * read/aggregate/write pipeline is measured. Otherwise only the accounting
+ * clients are polled.
+ *
+ */
+@Log4j2
+public class LoadGenerator {
+	private static final long REPORT_INTERVAL = 10;
+
+	@Parameter(names = { "--routers" }, description = "Number of simulated routers")
+	private int routers = 1;
+
+	@Parameter(names = { "--records" }, description = "Records per poll (synthetic mode)")
+	private int recordsPerPoll = 1000;
+
+	@Parameter(names = { "--lan-hosts" }, description = "LAN hosts per router (synthetic mode)")
+	private int lanHosts = 250;
+
+	@Parameter(names = { "--wan-peers" }, description = "Active WAN peers per router (synthetic mode)")
+	private int wanPeers = 2000;
+
+	@Parameter(names = { "--zipf" }, description = "Zipf exponent of the LAN hosts distribution (synthetic mode)")
+	private double zipfExponent = 1.1;
+
+	@Parameter(names = { "--wan-churn" }, description = "Fraction of WAN peers replaced on each poll (synthetic mode)")
+	private double wanChurn = 0.05;
+
+	@Parameter(names = { "--latency" }, description = "Response latency in milliseconds")
+	private long latency = 0;
+
+	@Parameter(names = { "--compress" }, description = "Compress the accounting pages like a gzip relay in front of the routers")
+	private boolean compress;
+
+	@Parameter(names = { "--port" }, description = "Local port of the simulator (0 for ephemeral port)")
+	private int port = 0;
+
+	@Parameter(names = { "--replay-dir" }, description = "Directory with captured polls. Enables replay mode")
+	private Path replayDir;
+
+	@Parameter(names = { "--speed" }, description = "Replay speed factor (replay mode)")
+	private double speed = 1.0;
+
+	@Parameter(names = { "--subnet", "-n" }, variableArity = true, description = "LAN subnets of the captured router (replay mode)")
+	private List<String> subnets = new ArrayList<>();
+
+	@Parameter(names = { "--interval" }, description = "Poll interval in milliseconds (synthetic mode)")
+	private long interval = TrafficService.SLEEP_TIME;
+
+	@Parameter(names = { "--duration" }, description = "Duration of the test in seconds")
+	private long duration = 60;
+
+	@Parameter(names = { "--db-url", "-d" }, description = "Database URL (e.g. http://192.168.1.1:8086). Enables the full pipeline")
+	private String dbUrl;
+
+	@Parameter(names = { "--db-user", "-u" }, description = "Database user")
+	private String dbUser;
+
+	@Parameter(names = { "--db-password", "-p" }, description = "Database password")
+	private String dbPassword;
+
+	@Parameter(names = { "--db-name", "-db" }, description = "Database name")
+	private String dbName;
+
+	@Parameter(names = { "--help", "-h" }, help = true)
+	private boolean help;
+
+	private final AtomicLong polledRecords = new AtomicLong();
+	private final AtomicLong polls = new AtomicLong();
+
+	/**
+	 * The main method of the load generator.
+	 *
+	 * @param args command line arguments
+	 * @throws Exception thrown if the load test fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		final LoadGenerator generator = new LoadGenerator();
+		//@formatter:off
+		final JCommander c = JCommander.newBuilder()
+			.addObject(generator)
+			.build();
+		//@formatter:on
+		c.setProgramName("mikrotik-accounting-loadgen");
+		try {
+			c.parse(args);
+			if (generator.help) {
+				c.usage();
+			} else {
+				generator.run();
+			}
+		} catch (final ParameterException ex) {
+			System.err.println(ex.getMessage());
+			c.usage();
+		}
+	}
+
+	/**
+	 * Runs the load test.
+	 *
+	 * @throws IOException            thrown if the simulator cannot be started
+	 *                                or the capture cannot be read.
+	 * @throws InterruptedException   thrown if the test is interrupted.
+	 * @throws AddressStringException thrown if there is invalid subnet.
+	 */
+	private void run() throws IOException, InterruptedException, AddressStringException {
+		final List<Closeable> pollers = new ArrayList<>();
+		final ScheduledExecutorService executor = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		try (RouterSimulator simulator = new RouterSimulator(port, latency, compress)) {
+			final long pollInterval;
+			if (replayDir != null) {
+				if (subnets.isEmpty()) {
+					throw new ParameterException("Replay mode requires the LAN subnets of the captured router");
+				}
+				pollInterval = ReplaySnapshotSource.load(replayDir, false).getPollInterval(speed, TrafficService.SLEEP_TIME);
+			} else {
+				pollInterval = interval;
+			}
+
+			for (int i = 0; i < routers; i++) {
+				final String name = "router" + i;
+				final List<String> routerSubnets = new ArrayList<>();
+				final URI uri;
+				if (replayDir != null) {
+					uri = simulator.addRouter(name, ReplaySnapshotSource.load(replayDir, true));
+					routerSubnets.addAll(subnets);
+				} else {
+					final SyntheticSnapshotSource source = createSyntheticSource(i);
+					uri = simulator.addRouter(name, source);
+					routerSubnets.add(source.getLanSubnet());
+				}
+				log.info(String.format("Simulated router %s: %s", name, uri));
+				pollers.add(startPoller(executor, name, uri, routerSubnets, pollInterval));
+			}
+
+			final long start = System.nanoTime();
+			executor.scheduleAtFixedRate(() -> report(simulator, start, pollers), REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.SECONDS);
+			Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+			report(simulator, start, pollers);
+		} finally {
+			for (final Closeable poller : pollers) {
+				poller.close();
+			}
+			executor.shutdownNow();
+		}
+	}
+
+	private SyntheticSnapshotSource createSyntheticSource(final int routerIndex) {
+		// @formatter:off
+		return SyntheticSnapshotSource.builder()
+				.routerIndex(routerIndex)
+				.recordsPerPoll(recordsPerPoll)
+				.lanHosts(lanHosts)
+				.wanPeers(wanPeers)
+				.zipfExponent(zipfExponent)
+				.wanChurn(wanChurn)
+				.seed(routerIndex)
+				.build();
+		// @formatter:on
+	}
+
+	/**
+	 * Starts polling a simulated router. If database parameters are given a
+	 * {@link TrafficService} is started, otherwise only the accounting client is
+	 * polled.
+	 *
+	 * @return the poller, closed at the end of the test.
+	 */
+	private Closeable startPoller(final ScheduledExecutorService executor, final String name, final URI uri, final List<String> routerSubnets, final long pollInterval)
+			throws AddressStringException {
+		final AccountingClient client = new AccountingClient(uri);
+		if (dbUrl != null) {
+			// @formatter:off
+			return TrafficService.builder()
+					.accountingClient(client)
+					.subnetMatcher(SubnetMatcher.compile(routerSubnets))
+					.dbClient(new InfluxDbClient(dbUrl, dbUser, dbPassword, dbName, name))
+					.name(name)
+					.sleepTime(pollInterval)
+					.maxRetries(TrafficService.MAX_RETRIES)
+					.build();
+			// @formatter:on
+		}
+		final ScheduledFuture<?> future = executor.scheduleAtFixedRate(() -> {
+			try {
+				polledRecords.addAndGet(client.loadRecords().size());
+				polls.incrementAndGet();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch (final Exception ex) {
+				log.error(ex);
+			}
+		}, 0L, pollInterval, TimeUnit.MILLISECONDS);
+		return () -> future.cancel(true);
+	}
+
+	private void report(final RouterSimulator simulator, final long start, final List<Closeable> pollers) {
+		long records = polledRecords.get();
+		long iterations = polls.get();
+		for (final Closeable poller : pollers) {
+			if (poller instanceof TrafficService) {
+				records += ((TrafficService) poller).getRecordsCount();
+				iterations += ((TrafficService) poller).getIterationsCount();
+			}
+		}
+		final double seconds = Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+		log.info(String.format("%.0fs: %d requests, %.1f MB served, %d polls, %d records (%.0f records/s)", seconds, simulator.getRequestsCount(), simulator.getBytesServed() / 1e6,
+				iterations, records, records / seconds));
+	}
+}
@@ -0,0 +1,125 @@
+package com.a9ski.mikrotik.loadgen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.NonNull;
+
+/**
+ * Replays the polls captured by {@link CapturingAccountingClient}. Every call
+ * to {@link #nextSnapshot()} returns the next captured body. After the last
+ * body the source either starts from the beginning or returns empty bodies.
+ *
+ */
+public class ReplaySnapshotSource implements SnapshotSource {
+	private final List<String> bodies;
+	private final long[] timestamps;
+	private final boolean loop;
+	private final AtomicInteger position = new AtomicInteger();
+
+	private ReplaySnapshotSource(final List<String> bodies, final long[] timestamps, final boolean loop) {
+		this.bodies = bodies;
+		this.timestamps = timestamps;
+		this.loop = loop;
+	}
+
+	/**
+	 * Loads the captured polls from a directory.
+	 *
+	 * @param captureDir the directory with captured polls.
+	 * @param loop       if <tt>true</tt> the replay starts from the beginning
+	 *                   after the last poll.
+	 * @return new replay source.
+	 * @throws IOException thrown if the captured polls cannot be read.
+	 */
+	public static ReplaySnapshotSource load(@NonNull final Path captureDir, final boolean loop) throws IOException {
+		final List<Path> files;
+		try (Stream<Path> list = Files.list(captureDir)) {
+			// @formatter:off
+			files = list
+				.filter(p -> p.getFileName().toString().endsWith(CapturingAccountingClient.CAPTURE_EXTENSION))
+				.sorted((a, b) -> Long.compare(timestampOf(a), timestampOf(b)))
+				.collect(Collectors.toList());
+			// @formatter:on
+		}
+		if (files.isEmpty()) {
+			throw new IOException(String.format("No captured polls found in '%s'", captureDir));
+		}
+		final List<String> bodies = new ArrayList<>(files.size());
+		final long[] timestamps = new long[files.size()];
+		for (int i = 0; i < files.size(); i++) {
+			bodies.add(Files.readString(files.get(i), StandardCharsets.UTF_8));
+			timestamps[i] = timestampOf(files.get(i));
+		}
+		return new ReplaySnapshotSource(bodies, timestamps, loop);
+	}
+
+	private static long timestampOf(final Path file) {
+		final String name = file.getFileName().toString();
+		try {
+			return Long.parseLong(name.substring(0, name.length() - CapturingAccountingClient.CAPTURE_EXTENSION.length()));
+		} catch (final NumberFormatException ex) {
+			return 0L;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String nextSnapshot() {
+		final int index = position.getAndIncrement();
+		if (index < bodies.size()) {
+			return bodies.get(index);
+		} else if (loop) {
+			return bodies.get(index % bodies.size());
+		} else {
+			return "";
+		}
+	}
+
+	/**
+	 * Number of captured polls.
+	 *
+	 * @return number of captured polls.
+	 */
+	public int size() {
+		return bodies.size();
+	}
+
+	/**
+	 * Calculates the poll interval that replays the capture at <tt>speed</tt>
+	 * times the original rate. The original interval is the median gap between
+	 * the captured polls.
+	 *
+	 * @param speed the replay speed factor (e.g. 10 for 10&times; speed).
+	 * @param defaultInterval interval used when the capture contains a single
+	 *                        poll.
+	 * @return the poll interval in milliseconds, at least 1.
+	 */
+	public long getPollInterval(final double speed, final long defaultInterval) {
+		if (speed <= 0) {
+			throw new IllegalArgumentException("Invalid replay speed. Expected positive value");
+		}
+		final long original;
+		if (timestamps.length < 2) {
+			original = defaultInterval;
+		} else {
+			final long[] gaps = new long[timestamps.length - 1];
+			for (int i = 1; i < timestamps.length; i++) {
+				gaps[i - 1] = timestamps[i] - timestamps[i - 1];
+			}
+			Arrays.sort(gaps);
+			original = gaps[gaps.length / 2];
+		}
+		return Math.max(1L, Math.round(original / speed));
+	}
+}
@@ -0,0 +1,165 @@
+package com.a9ski.mikrotik.loadgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.NonNull;
+
+/**
+ * Embedded HTTP server that simulates the accounting page of many MikroTik
+ * routers. Each router is served under
+ * <tt>http://127.0.0.1:port/routerName/accounting/ip.cgi</tt>. Optionally the
+ * simulator compresses the pages like a relay in front of the routers.
+ *
+ */
+public class RouterSimulator implements Closeable {
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final Map<String, SnapshotSource> routers = new ConcurrentHashMap<>();
+	private final long latencyMillis;
+	private final boolean compress;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong bytesServed = new AtomicLong();
+
+	/**
+	 * Creates and starts a new simulator.
+	 *
+	 * @param port          the local port (0 for ephemeral port).
+	 * @param latencyMillis the delay before each response is sent.
+	 * @throws IOException thrown if the server cannot be started.
+	 */
+	public RouterSimulator(final int port, final long latencyMillis) throws IOException {
+		this(port, latencyMillis, false);
+	}
+
+	/**
+	 * Creates and starts a new simulator.
+	 *
+	 * @param port          the local port (0 for ephemeral port).
+	 * @param latencyMillis the delay before each response is sent.
+	 * @param compress      compress the pages with gzip, if accepted by the
+	 *                      client.
+	 * @throws IOException thrown if the server cannot be started.
+	 */
+	public RouterSimulator(final int port, final long latencyMillis, final boolean compress) throws IOException {
+		if (latencyMillis < 0) {
+			throw new IllegalArgumentException("Invalid latency. Expected non-negative value");
+		}
+		this.latencyMillis = latencyMillis;
+		this.compress = compress;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.server.setExecutor(executor);
+		this.server.start();
+	}
+
+	/**
+	 * Adds a simulated router.
+	 *
+	 * @param name   the router name, used as a path prefix.
+	 * @param source the source of the accounting pages.
+	 * @return the URI of the accounting page of the router.
+	 */
+	public URI addRouter(@NonNull final String name, @NonNull final SnapshotSource source) {
+		if (routers.putIfAbsent(name, source) != null) {
+			throw new IllegalArgumentException(String.format("Router '%s' already exists", name));
+		}
+		server.createContext(String.format("/%s/accounting/ip.cgi", name), exchange -> handle(exchange, source));
+		return getUri(name);
+	}
+
+	/**
+	 * Gets the URI of the accounting page of a simulated router.
+	 *
+	 * @param name the router name.
+	 * @return the URI of the accounting page.
+	 */
+	public URI getUri(@NonNull final String name) {
+		final InetSocketAddress address = server.getAddress();
+		return URI.create(String.format("http://%s:%d/%s/accounting/ip.cgi", address.getHostString(), address.getPort(), name));
+	}
+
+	private void handle(final HttpExchange exchange, final SnapshotSource source) throws IOException {
+		try (exchange) {
+			if (latencyMillis > 0) {
+				try {
+					Thread.sleep(latencyMillis);
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					exchange.sendResponseHeaders(503, -1);
+					return;
+				}
+			}
+			byte[] body = source.nextSnapshot().getBytes(StandardCharsets.US_ASCII);
+			exchange.getResponseHeaders().add("Content-Type", "text/plain");
+			if (compress && body.length > 0 && acceptsGzip(exchange)) {
+				body = gzip(body);
+				exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			}
+			// counted before the response is sent, so a client having its response sees the count
+			requests.incrementAndGet();
+			bytesServed.addAndGet(body.length);
+			exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+			if (body.length > 0) {
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		}
+	}
+
+	private static boolean acceptsGzip(final HttpExchange exchange) {
+		final String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		return accept != null && accept.toLowerCase(Locale.ROOT).contains("gzip");
+	}
+
+	private static byte[] gzip(final byte[] body) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(body);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Number of served requests.
+	 *
+	 * @return number of served requests.
+	 */
+	public long getRequestsCount() {
+		return requests.get();
+	}
+
+	/**
+	 * Number of served body bytes (after compression).
+	 *
+	 * @return number of served body bytes.
+	 */
+	public long getBytesServed() {
+		return bytesServed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,15 @@
+package com.a9ski.mikrotik.loadgen;
+
+/**
+ * Source of accounting page bodies served by the {@link RouterSimulator}.
+ *
+ */
+public interface SnapshotSource {
+	/**
+	 * Produces the body of the next accounting page. Each call represents a
+	 * single poll of the simulated router.
+	 *
+	 * @return the body in the <tt>ip.cgi</tt> text format.
+	 */
+	String nextSnapshot();
+}
@@ -0,0 +1,147 @@
+package com.a9ski.mikrotik.loadgen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import lombok.Builder;
+
+/**
+ * Generates synthetic accounting pages. LAN hosts are picked with a Zipf
+ * distribution (a few hosts produce most of the traffic), WAN peers are picked
+ * uniformly from a pool that is partially replaced on each poll.
+ * <p>
+ * The LAN of the router with index <tt>n</tt> is <tt>10.n.0.0/16</tt>.
+ *
+ */
+public class SyntheticSnapshotSource implements SnapshotSource {
+	private static final int MAX_LAN_HOSTS = 65534;
+	private static final int AVG_PACKET_SIZE = 800;
+
+	private final int routerIndex;
+	private final int recordsPerPoll;
+	private final double wanChurn;
+	private final double[] lanCdf;
+	private final String[] lanHosts;
+	private final String[] wanPeers;
+	private final Random random;
+
+	/**
+	 * Creates a new source.
+	 *
+	 * @param routerIndex    index of the simulated router (0-255), used for the
+	 *                       LAN subnet.
+	 * @param recordsPerPoll number of lines returned on each poll.
+	 * @param lanHosts       number of LAN hosts.
+	 * @param wanPeers       number of WAN peers active at any time.
+	 * @param zipfExponent   the exponent of the Zipf distribution over the LAN
+	 *                       hosts. <tt>0</tt> means uniform distribution.
+	 * @param wanChurn       fraction (0-1) of the WAN peers replaced on each
+	 *                       poll.
+	 * @param seed           seed of the random generator.
+	 */
+	@Builder
+	public SyntheticSnapshotSource(final int routerIndex, final int recordsPerPoll, final int lanHosts, final int wanPeers, final double zipfExponent, final double wanChurn,
+			final long seed) {
+		if (routerIndex < 0 || routerIndex > 255) {
+			throw new IllegalArgumentException("Invalid router index. Expected value between 0 and 255");
+		}
+		if (recordsPerPoll < 0) {
+			throw new IllegalArgumentException("Invalid records per poll. Expected non-negative value");
+		}
+		if (lanHosts < 1 || lanHosts > MAX_LAN_HOSTS) {
+			throw new IllegalArgumentException(String.format("Invalid number of LAN hosts. Expected value between 1 and %d", MAX_LAN_HOSTS));
+		}
+		if (wanPeers < 1) {
+			throw new IllegalArgumentException("Invalid number of WAN peers. Expected positive value");
+		}
+		if (wanChurn < 0 || wanChurn > 1) {
+			throw new IllegalArgumentException("Invalid WAN churn. Expected value between 0 and 1");
+		}
+		this.routerIndex = routerIndex;
+		this.recordsPerPoll = recordsPerPoll;
+		this.wanChurn = wanChurn;
+		this.random = new Random(seed);
+		this.lanCdf = zipfCdf(lanHosts, zipfExponent);
+		this.lanHosts = new String[lanHosts];
+		for (int i = 0; i < lanHosts; i++) {
+			this.lanHosts[i] = lanIp(i);
+		}
+		this.wanPeers = new String[wanPeers];
+		for (int i = 0; i < wanPeers; i++) {
+			this.wanPeers[i] = randomWanIp();
+		}
+	}
+
+	/**
+	 * Gets the LAN subnet of the simulated router.
+	 *
+	 * @return the LAN subnet (e.g. <tt>10.1.0.0/16</tt>).
+	 */
+	public String getLanSubnet() {
+		return String.format("10.%d.0.0/16", routerIndex);
+	}
+
+	/**
+	 * Calculates the cumulative distribution function of the Zipf distribution.
+	 *
+	 * @param n        number of elements.
+	 * @param exponent the exponent of the distribution.
+	 * @return the cumulative probabilities.
+	 */
+	private static double[] zipfCdf(final int n, final double exponent) {
+		final double[] cdf = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1.0 / Math.pow(i + 1, exponent);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < n; i++) {
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+
+	private String lanIp(final int hostIndex) {
+		final int host = hostIndex + 1;
+		return String.format("10.%d.%d.%d", routerIndex, host >> 8, host & 0xFF);
+	}
+
+	private String randomWanIp() {
+		int first;
+		do {
+			first = 11 + random.nextInt(213);
+		} while (first == 127 || first == 172 || first == 192);
+		return String.format("%d.%d.%d.%d", first, random.nextInt(256), random.nextInt(256), 1 + random.nextInt(254));
+	}
+
+	private String nextLanHost() {
+		final int index = Arrays.binarySearch(lanCdf, random.nextDouble());
+		return lanHosts[Math.min(index < 0 ? -index - 1 : index, lanHosts.length - 1)];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized String nextSnapshot() {
+		final int replaced = (int) Math.round(wanPeers.length * wanChurn);
+		for (int i = 0; i < replaced; i++) {
+			wanPeers[random.nextInt(wanPeers.length)] = randomWanIp();
+		}
+
+		final StringBuilder body = new StringBuilder(recordsPerPoll * 48);
+		for (int i = 0; i < recordsPerPoll; i++) {
+			final String lan = nextLanHost();
+			final String wan = wanPeers[random.nextInt(wanPeers.length)];
+			final long packets = 1 + random.nextInt(1000);
+			final long bytes = packets * (40 + random.nextInt(2 * AVG_PACKET_SIZE));
+			if (random.nextBoolean()) {
+				body.append(lan).append(' ').append(wan);
+			} else {
+				body.append(wan).append(' ').append(lan);
+			}
+			body.append(' ').append(bytes).append(' ').append(packets).append(" * *\n");
+		}
+		return body.toString();
+	}
+}
@@ -0,0 +1,76 @@
+package com.a9ski.mikrotik.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.message.StringMapMessage;
+
+/**
+ * Limits a repeating log message (e.g. a bad accounting line or a failing poll)
+ * to one per interval. The suppressed occurrences are only counted; the count
+ * is reported with the next logged message. Callers check
+ * {@link #tryAcquire(long)} before building the message, so a suppressed
+ * message costs a single atomic read.
+ * <p>
+ * The messages are structured: {@link #message(String)} starts a
+ * <tt>key="value"</tt> message with the event name and the number of the
+ * suppressed occurrences.
+ * <p>
+ * The limiter is thread safe.
+ *
+ */
+public final class LogLimiter {
+	private final long interval;
+	private final AtomicLong next = new AtomicLong(Long.MIN_VALUE);
+	private final AtomicLong suppressed = new AtomicLong();
+
+	/**
+	 * Creates a new limiter.
+	 *
+	 * @param interval the minimal time between two logged messages in
+	 *                 milliseconds.
+	 */
+	public LogLimiter(final long interval) {
+		if (interval < 0) {
+			throw new IllegalArgumentException("Invalid log interval. Expected non-negative value");
+		}
+		this.interval = interval;
+	}
+
+	/**
+	 * Checks if a message may be logged now. A message which may not be logged
+	 * is counted as suppressed.
+	 *
+	 * @param now the current time in milliseconds.
+	 * @return <tt>true</tt> if the message may be logged.
+	 */
+	public boolean tryAcquire(final long now) {
+		final long due = next.get();
+		if (now >= due && next.compareAndSet(due, now + interval)) {
+			return true;
+		}
+		suppressed.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Creates a structured message with the event name and the number of the
+	 * occurrences suppressed since the last logged message, and resets that
+	 * number.
+	 *
+	 * @param event the event name (e.g. <tt>bad_line</tt>).
+	 * @return new message; more fields are added with
+	 *         {@link StringMapMessage#with(String, String)}.
+	 */
+	public StringMapMessage message(final String event) {
+		return new StringMapMessage().with("event", event).with("suppressed", suppressed.getAndSet(0));
+	}
+
+	/**
+	 * Gets the number of occurrences suppressed since the last logged message.
+	 *
+	 * @return number of suppressed occurrences.
+	 */
+	public long getSuppressed() {
+		return suppressed.get();
+	}
+}
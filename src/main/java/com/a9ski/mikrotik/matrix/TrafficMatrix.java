@@ -0,0 +1,222 @@
+package com.a9ski.mikrotik.matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.PairTable;
+import com.a9ski.mikrotik.model.MatrixEntry;
+
+import lombok.NonNull;
+
+/**
+ * Sliding-window traffic matrix of a router: the traffic between its LAN hosts
+ * and the remote prefixes, built from the source/destination pairs of the
+ * accounting records before they are collapsed per address. The remote
+ * addresses are bucketed by prefix (<tt>/24</tt> and <tt>/48</tt> by default),
+ * so the matrix stays small even if a host talks to many addresses of a
+ * network. The traffic between two LAN hosts and between two WAN addresses is
+ * ignored.
+ * <p>
+ * The matrix is a ring of time buckets, each a sparse matrix (a
+ * {@link PairTable} keyed by the host and the remote prefix). A bucket is
+ * cleared and reused when its time slot comes around again, so the buckets
+ * older than the retention expire without any background work, and a query
+ * sums the buckets overlapping its window.
+ * <p>
+ * The matrix is updated by the poll of its router and queried by the matrix
+ * endpoint; both lock the matrix, the update once per poll.
+ *
+ */
+public class TrafficMatrix {
+	/**
+	 * Default length of the prefix of the remote IPv4 addresses.
+	 */
+	public static final int DEFAULT_IPV4_PREFIX = 24;
+	/**
+	 * Default length of the prefix of the remote IPv6 addresses.
+	 */
+	public static final int DEFAULT_IPV6_PREFIX = 48;
+	/**
+	 * Default duration of a time bucket in milliseconds.
+	 */
+	public static final long DEFAULT_BUCKET = 60_000L;
+	/**
+	 * Default retention of the matrix in milliseconds.
+	 */
+	public static final long DEFAULT_RETENTION = 3_600_000L;
+
+	private static final int EXPECTED_PAIRS = 1024;
+
+	private final String router;
+	private final long bucketDuration;
+	private final int ipv4Prefix;
+	private final int ipv6Prefix;
+	private final long ipv4Mask;
+	private final long ipv6MaskHigh;
+	private final long ipv6MaskLow;
+	private final PairTable[] buckets;
+	private final long[] bucketStarts;
+	private final PairTable window = new PairTable(EXPECTED_PAIRS);
+
+	/**
+	 * Creates a new matrix.
+	 *
+	 * @param router         the name of the router.
+	 * @param bucketDuration duration of a time bucket in milliseconds.
+	 * @param retention      the time in milliseconds the traffic is kept,
+	 *                       rounded up to whole buckets.
+	 * @param ipv4Prefix     length of the prefix of the remote IPv4 addresses.
+	 * @param ipv6Prefix     length of the prefix of the remote IPv6 addresses.
+	 */
+	public TrafficMatrix(@NonNull final String router, final long bucketDuration, final long retention, final int ipv4Prefix, final int ipv6Prefix) {
+		checkParameters(bucketDuration, retention, ipv4Prefix, ipv6Prefix);
+		this.router = router;
+		this.bucketDuration = bucketDuration;
+		this.ipv4Prefix = ipv4Prefix;
+		this.ipv6Prefix = ipv6Prefix;
+		this.ipv4Mask = mask(ipv4Prefix + 32);
+		this.ipv6MaskHigh = mask(ipv6Prefix);
+		this.ipv6MaskLow = mask(ipv6Prefix - 64);
+		// one more bucket, so a full retention is kept next to the current bucket
+		final int count = (int) Math.min(Integer.MAX_VALUE, (retention + bucketDuration - 1) / bucketDuration + 1);
+		this.buckets = new PairTable[count];
+		this.bucketStarts = new long[count];
+		Arrays.fill(bucketStarts, Long.MIN_VALUE);
+	}
+
+	static void checkParameters(final long bucketDuration, final long retention, final int ipv4Prefix, final int ipv6Prefix) {
+		if (bucketDuration < 1 || retention < 1) {
+			throw new IllegalArgumentException("Invalid matrix bucket or retention. Expected positive value");
+		}
+		if (ipv4Prefix < 0 || ipv4Prefix > 32 || ipv6Prefix < 0 || ipv6Prefix > 128) {
+			throw new IllegalArgumentException("Invalid matrix prefix length. Expected value between 0 and 32 (IPv4) or 128 (IPv6)");
+		}
+	}
+
+	private static long mask(final int bits) {
+		if (bits <= 0) {
+			return 0L;
+		}
+		return bits >= 64 ? -1L : -1L << (64 - bits);
+	}
+
+	/**
+	 * Adds the traffic of a poll to the bucket of its time.
+	 *
+	 * @param timestamp the time of the poll in milliseconds.
+	 * @param pairs     the source/destination pairs of the accounting records
+	 *                  of the poll.
+	 * @param lan       the LAN subnets of the router.
+	 */
+	public synchronized void add(final long timestamp, @NonNull final PairTable pairs, @NonNull final SubnetMatcher lan) {
+		final PairTable bucket = bucket(timestamp);
+		for (int row = 0; row < pairs.size(); row++) {
+			final long sourceHigh = pairs.firstHighAt(row);
+			final long sourceLow = pairs.firstLowAt(row);
+			final long destinationHigh = pairs.secondHighAt(row);
+			final long destinationLow = pairs.secondLowAt(row);
+			final boolean sourceLan = lan.indexOf(sourceHigh, sourceLow) >= 0;
+			if (sourceLan == lan.indexOf(destinationHigh, destinationLow) >= 0) {
+				continue;
+			}
+			if (sourceLan) {
+				final int cell = cell(bucket, sourceHigh, sourceLow, destinationHigh, destinationLow);
+				bucket.addAt(cell, pairs.bytesSentAt(row), pairs.packetsSentAt(row), 0L, 0L);
+			} else {
+				final int cell = cell(bucket, destinationHigh, destinationLow, sourceHigh, sourceLow);
+				bucket.addAt(cell, 0L, 0L, pairs.bytesSentAt(row), pairs.packetsSentAt(row));
+			}
+		}
+	}
+
+	private int cell(final PairTable bucket, final long hostHigh, final long hostLow, final long remoteHigh, final long remoteLow) {
+		if (Ipv6.isIpv4(remoteHigh, remoteLow)) {
+			return bucket.row(hostHigh, hostLow, 0L, remoteLow & ipv4Mask);
+		}
+		return bucket.row(hostHigh, hostLow, remoteHigh & ipv6MaskHigh, remoteLow & ipv6MaskLow);
+	}
+
+	private PairTable bucket(final long timestamp) {
+		final long start = Math.floorDiv(timestamp, bucketDuration) * bucketDuration;
+		final int slot = (int) Math.floorMod(Math.floorDiv(timestamp, bucketDuration), (long) buckets.length);
+		if (buckets[slot] == null) {
+			buckets[slot] = new PairTable(EXPECTED_PAIRS);
+		} else if (bucketStarts[slot] != start) {
+			buckets[slot].clear();
+		}
+		bucketStarts[slot] = start;
+		return buckets[slot];
+	}
+
+	/**
+	 * Finds the host and remote prefix pairs with the most traffic (bytes sent
+	 * and received) in a window ending now. The window is rounded to whole
+	 * buckets.
+	 *
+	 * @param now    the end of the window in milliseconds.
+	 * @param length the length of the window in milliseconds.
+	 * @param limit  the maximal number of pairs.
+	 * @param host   the key of the LAN host (see {@link Ipv6}) or <tt>null</tt>
+	 *               for all hosts.
+	 * @return the pairs, with the most traffic first.
+	 */
+	public synchronized List<MatrixEntry> top(final long now, final long length, final int limit, final long[] host) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit. Expected positive value");
+		}
+		window.clear();
+		final long from = now - length;
+		for (int slot = 0; slot < buckets.length; slot++) {
+			final long start = bucketStarts[slot];
+			if (buckets[slot] == null || start > now || start + bucketDuration <= from) {
+				continue;
+			}
+			final PairTable bucket = buckets[slot];
+			for (int row = 0; row < bucket.size(); row++) {
+				if (host != null && (bucket.firstLowAt(row) != host[Ipv6.LOW] || bucket.firstHighAt(row) != host[Ipv6.HIGH])) {
+					continue;
+				}
+				final int cell = window.row(bucket.firstHighAt(row), bucket.firstLowAt(row), bucket.secondHighAt(row), bucket.secondLowAt(row));
+				window.addAt(cell, bucket.bytesSentAt(row), bucket.packetsSentAt(row), bucket.bytesReceivedAt(row), bucket.packetsReceivedAt(row));
+			}
+		}
+
+		final Comparator<Integer> byBytes = Comparator.comparingLong(row -> window.bytesSentAt(row) + window.bytesReceivedAt(row));
+		final PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, byBytes);
+		for (int row = 0; row < window.size(); row++) {
+			top.add(row);
+			if (top.size() > limit) {
+				top.poll();
+			}
+		}
+		final List<MatrixEntry> entries = new ArrayList<>(top.size());
+		while (!top.isEmpty()) {
+			entries.add(entry(top.poll()));
+		}
+		Collections.reverse(entries);
+		return entries;
+	}
+
+	private MatrixEntry entry(final int row) {
+		final long remoteHigh = window.secondHighAt(row);
+		final long remoteLow = window.secondLowAt(row);
+		final int prefix = Ipv6.isIpv4(remoteHigh, remoteLow) ? ipv4Prefix : ipv6Prefix;
+		// @formatter:off
+		return MatrixEntry.builder()
+				.router(router)
+				.host(Ipv6.format(window.firstHighAt(row), window.firstLowAt(row)))
+				.remote(Ipv6.append(new StringBuilder(43), remoteHigh, remoteLow).append('/').append(prefix).toString())
+				.bytesSent(window.bytesSentAt(row))
+				.bytesReceived(window.bytesReceivedAt(row))
+				.packetsSent(window.packetsSentAt(row))
+				.packetsReceived(window.packetsReceivedAt(row))
+				.build();
+		// @formatter:on
+	}
+}
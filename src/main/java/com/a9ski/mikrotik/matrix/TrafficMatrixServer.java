@@ -0,0 +1,191 @@
+package com.a9ski.mikrotik.matrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.http.TextServer;
+import com.a9ski.mikrotik.model.MatrixEntry;
+
+import lombok.NonNull;
+
+/**
+ * Answers the top-N queries of the traffic matrices of all routers at
+ * <tt>http://host:port/matrix</tt> with the parameters:
+ * <ul>
+ * <li><tt>window</tt> - the length of the window in seconds (default
+ * {@value #DEFAULT_WINDOW});</li>
+ * <li><tt>top</tt> - the number of pairs (default {@value #DEFAULT_TOP});</li>
+ * <li><tt>router</tt> - the router (default all routers);</li>
+ * <li><tt>host</tt> - the LAN host (default all hosts).</li>
+ * </ul>
+ * Every pair is a line of <tt>key=value</tt> fields, the pairs with the most
+ * traffic first, e.g.
+ *
+ * <pre>
+ * router=home host=192.168.88.10 remote=142.250.180.0/24 bytes_sent=51234 bytes_received=9812345 packets_sent=812 packets_received=7120
+ * </pre>
+ *
+ * The queries are answered from memory. The matrix of a router is kept while
+ * the router is configured, also when its service is reconfigured or the
+ * router is unreachable; it is removed with the router.
+ *
+ */
+public class TrafficMatrixServer implements Closeable {
+	/**
+	 * Path of the matrix endpoint.
+	 */
+	public static final String MATRIX_PATH = "/matrix";
+	/**
+	 * Default length of the query window in seconds.
+	 */
+	public static final long DEFAULT_WINDOW = 900;
+	/**
+	 * Default number of pairs of a query.
+	 */
+	public static final int DEFAULT_TOP = 20;
+
+	private final Map<String, TrafficMatrix> routers = new ConcurrentHashMap<>();
+	private final long bucketDuration;
+	private final long retention;
+	private final int ipv4Prefix;
+	private final int ipv6Prefix;
+	private final TextServer server;
+
+	/**
+	 * Creates and starts a new server.
+	 *
+	 * @param address        the local address of the endpoint.
+	 * @param bucketDuration duration of a time bucket in milliseconds.
+	 * @param retention      the time in milliseconds the traffic is kept.
+	 * @param ipv4Prefix     length of the prefix of the remote IPv4 addresses.
+	 * @param ipv6Prefix     length of the prefix of the remote IPv6 addresses.
+	 * @throws IOException thrown if the server cannot be started.
+	 */
+	public TrafficMatrixServer(@NonNull final InetSocketAddress address, final long bucketDuration, final long retention, final int ipv4Prefix, final int ipv6Prefix) throws IOException {
+		TrafficMatrix.checkParameters(bucketDuration, retention, ipv4Prefix, ipv6Prefix);
+		this.bucketDuration = bucketDuration;
+		this.retention = retention;
+		this.ipv4Prefix = ipv4Prefix;
+		this.ipv6Prefix = ipv6Prefix;
+		this.server = new TextServer(address, "traffic-matrix");
+		this.server.handle(MATRIX_PATH, "GET", TextServer.TEXT_PLAIN, (exchange, out) -> query(exchange.getRequestURI(), out));
+	}
+
+	/**
+	 * Gets the matrix of a router, creating it if missing. The matrix is kept
+	 * when the service of the router is reconfigured.
+	 *
+	 * @param router the name of the router.
+	 * @return the matrix of the router.
+	 */
+	public TrafficMatrix matrix(@NonNull final String router) {
+		return routers.computeIfAbsent(router, r -> new TrafficMatrix(r, bucketDuration, retention, ipv4Prefix, ipv6Prefix));
+	}
+
+	/**
+	 * Removes the matrix of a removed router.
+	 *
+	 * @param router the name of the router.
+	 */
+	public void remove(@NonNull final String router) {
+		routers.remove(router);
+	}
+
+	/**
+	 * Finds the host and remote prefix pairs with the most traffic.
+	 *
+	 * @param now    the end of the window in milliseconds.
+	 * @param window the length of the window in milliseconds.
+	 * @param limit  the maximal number of pairs.
+	 * @param router the router or <tt>null</tt> for all routers.
+	 * @param host   the key of the LAN host or <tt>null</tt> for all hosts.
+	 * @return the pairs, with the most traffic first.
+	 */
+	public List<MatrixEntry> top(final long now, final long window, final int limit, final String router, final long[] host) {
+		final List<MatrixEntry> entries = new ArrayList<>();
+		routers.forEach((name, matrix) -> {
+			if (router == null || router.equals(name)) {
+				entries.addAll(matrix.top(now, window, limit, host));
+			}
+		});
+		entries.sort(Comparator.comparingLong((MatrixEntry e) -> e.getBytesSent() + e.getBytesReceived()).reversed());
+		return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+	}
+
+	private void query(final URI uri, final StringBuilder out) {
+		final Map<String, String> parameters = parameters(uri);
+		final long window = parseLong(parameters, "window", DEFAULT_WINDOW);
+		final long limit = parseLong(parameters, "top", DEFAULT_TOP);
+		if (window < 1 || limit < 1 || limit > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid window or top. Expected positive value");
+		}
+		long[] host = null;
+		if (parameters.containsKey("host")) {
+			host = new long[2];
+			if (!Ipv6.parse(parameters.get("host"), host)) {
+				throw new IllegalArgumentException(String.format("Invalid host '%s'", parameters.get("host")));
+			}
+		}
+		for (final MatrixEntry entry : top(System.currentTimeMillis(), TimeUnit.SECONDS.toMillis(window), (int) limit, parameters.get("router"), host)) {
+			out.append("router=").append(entry.getRouter());
+			out.append(" host=").append(entry.getHost());
+			out.append(" remote=").append(entry.getRemote());
+			out.append(" bytes_sent=").append(entry.getBytesSent());
+			out.append(" bytes_received=").append(entry.getBytesReceived());
+			out.append(" packets_sent=").append(entry.getPacketsSent());
+			out.append(" packets_received=").append(entry.getPacketsReceived()).append('\n');
+		}
+	}
+
+	private static Map<String, String> parameters(final URI uri) {
+		final Map<String, String> parameters = new HashMap<>();
+		final String query = uri.getRawQuery();
+		if (query != null) {
+			for (final String parameter : query.split("&")) {
+				final int eq = parameter.indexOf('=');
+				if (eq > 0) {
+					parameters.put(parameter.substring(0, eq), URLDecoder.decode(parameter.substring(eq + 1), StandardCharsets.UTF_8));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static long parseLong(final Map<String, String> parameters, final String name, final long defaultValue) {
+		final String value = parameters.get(name);
+		try {
+			return value != null ? Long.parseLong(value) : defaultValue;
+		} catch (final NumberFormatException ex) {
+			throw new IllegalArgumentException(String.format("Invalid %s '%s'. Expected number", name, value));
+		}
+	}
+
+	/**
+	 * Gets the URI of the matrix endpoint.
+	 *
+	 * @return the URI of the matrix endpoint.
+	 */
+	public URI getUri() {
+		return server.getUri(MATRIX_PATH);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		server.close();
+	}
+}
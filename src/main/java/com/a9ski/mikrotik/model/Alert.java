@@ -0,0 +1,50 @@
+package com.a9ski.mikrotik.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Alert raised by a rule evaluated on the traffic of a poll.
+ *
+ */
+@Builder
+@Data
+public class Alert {
+	/**
+	 * Rule of an IP exceeding the byte rate threshold.
+	 */
+	public static final String IP_RATE = "ip-rate";
+	/**
+	 * Rule of a subnet (or the WAN total) exceeding the byte rate threshold.
+	 */
+	public static final String SUBNET_RATE = "subnet-rate";
+	/**
+	 * Rule of an IP with a byte rate far above its moving average.
+	 */
+	public static final String ANOMALY = "anomaly";
+
+	/**
+	 * the name of the router.
+	 */
+	private final String router;
+	/**
+	 * the rule raising the alert (e.g. {@link #IP_RATE}).
+	 */
+	private final String rule;
+	/**
+	 * the IP address or subnet.
+	 */
+	private final String target;
+	/**
+	 * the byte rate (sent and received) in bytes per second.
+	 */
+	private final long rate;
+	/**
+	 * the exceeded threshold in bytes per second.
+	 */
+	private final long threshold;
+	/**
+	 * the time of the poll in milliseconds.
+	 */
+	private final long timestamp;
+}
@@ -0,0 +1,45 @@
+package com.a9ski.mikrotik.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Outcome of a backfill of captured polls.
+ *
+ */
+@Builder
+@Data
+public class BackfillResult {
+	/**
+	 * number of parsed polls.
+	 */
+	private final long polls;
+	/**
+	 * number of polls that cannot be read.
+	 */
+	private final long invalidPolls;
+	/**
+	 * number of parsed accounting records.
+	 */
+	private final long records;
+	/**
+	 * number of written points.
+	 */
+	private final long points;
+	/**
+	 * number of written line protocol characters (before compression).
+	 */
+	private final long bytes;
+	/**
+	 * number of written batches.
+	 */
+	private final long batches;
+	/**
+	 * number of batches that cannot be written.
+	 */
+	private final long failedBatches;
+	/**
+	 * duration of the backfill in milliseconds.
+	 */
+	private final long elapsedMillis;
+}
@@ -0,0 +1,26 @@
+package com.a9ski.mikrotik.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Host name and MAC address of a LAN IP, e.g. from a DHCP lease.
+ *
+ */
+@Builder
+@Data
+public class HostInfo {
+	/**
+	 * the IP address of the host.
+	 */
+	private final String ip;
+	/**
+	 * the host name or <tt>null</tt> if unknown.
+	 */
+	private final String hostname;
+	/**
+	 * the MAC address (lower case, colon separated) or <tt>null</tt> if
+	 * unknown.
+	 */
+	private final String mac;
+}
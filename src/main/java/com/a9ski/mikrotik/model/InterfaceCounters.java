@@ -0,0 +1,61 @@
+package com.a9ski.mikrotik.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Traffic counters of a router interface or queue.
+ *
+ */
+@Builder(toBuilder = true)
+@Data
+public class InterfaceCounters {
+	/**
+	 * Kind of the counted object.
+	 */
+	public enum Type {
+		/**
+		 * Router interface (ethernet, bridge, vlan etc.)
+		 */
+		INTERFACE,
+		/**
+		 * Simple queue. For queues <tt>tx</tt> is the upload and <tt>rx</tt> is
+		 * the download of the queue target.
+		 */
+		QUEUE
+	}
+
+	/**
+	 * the interface or queue name.
+	 */
+	private final String name;
+	/**
+	 * the kind of the counted object.
+	 */
+	@Builder.Default
+	private final Type type = Type.INTERFACE;
+	/**
+	 * bytes received by the interface.
+	 */
+	private final long rxBytes;
+	/**
+	 * bytes transmitted by the interface.
+	 */
+	private final long txBytes;
+	/**
+	 * packets received by the interface.
+	 */
+	private final long rxPackets;
+	/**
+	 * packets transmitted by the interface.
+	 */
+	private final long txPackets;
+	/**
+	 * received packets dropped by the interface.
+	 */
+	private final long rxDrops;
+	/**
+	 * transmitted packets dropped by the interface.
+	 */
+	private final long txDrops;
+}
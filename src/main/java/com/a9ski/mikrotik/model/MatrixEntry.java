@@ -0,0 +1,41 @@
+package com.a9ski.mikrotik.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Traffic between a LAN host and a remote prefix over a time window.
+ *
+ */
+@Builder
+@Data
+public class MatrixEntry {
+	/**
+	 * name of the router.
+	 */
+	private final String router;
+	/**
+	 * IP address of the LAN host.
+	 */
+	private final String host;
+	/**
+	 * remote prefix (e.g. <tt>8.8.8.0/24</tt>).
+	 */
+	private final String remote;
+	/**
+	 * bytes sent by the host to the prefix.
+	 */
+	private final long bytesSent;
+	/**
+	 * bytes received by the host from the prefix.
+	 */
+	private final long bytesReceived;
+	/**
+	 * packets sent by the host to the prefix.
+	 */
+	private final long packetsSent;
+	/**
+	 * packets received by the host from the prefix.
+	 */
+	private final long packetsReceived;
+}
@@ -0,0 +1,63 @@
+package com.a9ski.mikrotik.model;
+
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * State of the poll pipeline of a router, read without stopping the polls.
+ *
+ */
+@Builder
+@Data
+public class PipelineState {
+	/**
+	 * name of the router.
+	 */
+	private final String router;
+	/**
+	 * <tt>true</tt> if a poll of the router runs at the moment.
+	 */
+	private final boolean polling;
+	/**
+	 * current stage of the poll or <tt>null</tt> if no stage runs.
+	 */
+	private final String stage;
+	/**
+	 * time spent in the current stage in milliseconds.
+	 */
+	private final long stageMillis;
+	/**
+	 * duration of the last finished poll in milliseconds.
+	 */
+	private final long lastPollMillis;
+	/**
+	 * durations of the stages of the last finished poll in milliseconds.
+	 */
+	private final Map<String, Long> lastStageMillis;
+	/**
+	 * number of accounting records of the current (or last) poll.
+	 */
+	private final long records;
+	/**
+	 * size of the line protocol text buffered for the database in bytes.
+	 */
+	private final long spoolBytes;
+	/**
+	 * number of batches written to the database.
+	 */
+	private final long writtenBatches;
+	/**
+	 * number of repeated write attempts of batches.
+	 */
+	private final long retriedWrites;
+	/**
+	 * number of batches not written after all attempts.
+	 */
+	private final long failedBatches;
+	/**
+	 * <tt>true</tt> if the router is polled on the degraded schedule.
+	 */
+	private final boolean degraded;
+}
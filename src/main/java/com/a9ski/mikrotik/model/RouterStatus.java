@@ -0,0 +1,45 @@
+package com.a9ski.mikrotik.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Health of a router, computed over the most recent polls.
+ *
+ */
+@Builder
+@Data
+public class RouterStatus {
+	/**
+	 * <tt>true</tt> if the router is polled on the degraded schedule.
+	 */
+	private final boolean degraded;
+	/**
+	 * number of polls in the rolling window.
+	 */
+	private final int samples;
+	/**
+	 * median fetch latency in milliseconds.
+	 */
+	private final long latencyP50;
+	/**
+	 * 95th percentile of the fetch latency in milliseconds.
+	 */
+	private final long latencyP95;
+	/**
+	 * 99th percentile of the fetch latency in milliseconds.
+	 */
+	private final long latencyP99;
+	/**
+	 * ratio of the failed fetches in the rolling window.
+	 */
+	private final double errorRate;
+	/**
+	 * number of failed fetches since the last successful one.
+	 */
+	private final int consecutiveFailures;
+	/**
+	 * number of polls postponed by the backoff of the degraded schedule.
+	 */
+	private final long deferredPolls;
+}
@@ -0,0 +1,41 @@
+package com.a9ski.mikrotik.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Outcome of the write of a poll to the database.
+ *
+ */
+@Builder
+@Data
+public class WriteResult {
+	/**
+	 * number of written points.
+	 */
+	private final long points;
+	/**
+	 * number of written batches.
+	 */
+	private final long batches;
+	/**
+	 * number of repeated write attempts of the batches.
+	 */
+	private final long retries;
+	/**
+	 * number of batches that cannot be written.
+	 */
+	private final long failedBatches;
+	/**
+	 * number of points of the batches that cannot be written.
+	 */
+	private final long failedPoints;
+	/**
+	 * number of points rejected by the write scheduler.
+	 */
+	private final long rejectedPoints;
+	/**
+	 * the error of the first batch that cannot be written or <tt>null</tt>.
+	 */
+	private final RuntimeException error;
+}
@@ -0,0 +1,150 @@
+package com.a9ski.mikrotik.prometheus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.http.TextServer;
+
+import lombok.NonNull;
+
+/**
+ * Serves the per-IP traffic counters of all routers in the
+ * <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus
+ * text format</a> at <tt>http://host:port/metrics</tt>. Every IP address has
+ * the counters <tt>bytes_sent_total</tt>, <tt>bytes_received_total</tt>,
+ * <tt>packets_sent_total</tt> and <tt>packets_received_total</tt>, labelled
+ * with <tt>ip</tt>, <tt>type</tt> (LAN or WAN) and <tt>router</tt>.
+ * <p>
+ * The scrapes read the counters without locking, so they never block the
+ * polls.
+ *
+ */
+public class PrometheusExporter implements Closeable {
+	/**
+	 * Path of the metrics endpoint.
+	 */
+	public static final String METRICS_PATH = "/metrics";
+	/**
+	 * Default time in milliseconds after which the counters of an IP without
+	 * traffic are removed.
+	 */
+	public static final long DEFAULT_EXPIRE_AFTER = 3_600_000L;
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	// @formatter:off
+	private static final String[][] METRICS = {
+			{ "bytes_sent_total", "Bytes sent by the IP address" },
+			{ "bytes_received_total", "Bytes received by the IP address" },
+			{ "packets_sent_total", "Packets sent by the IP address" },
+			{ "packets_received_total", "Packets received by the IP address" } };
+	// @formatter:on
+
+	private final Map<String, TrafficCounters> routers = new ConcurrentHashMap<>();
+	private final long expireAfter;
+	private final TextServer server;
+	private final AtomicLong scrapes = new AtomicLong();
+
+	/**
+	 * Creates and starts a new exporter.
+	 *
+	 * @param address     the local address of the endpoint.
+	 * @param expireAfter time in milliseconds after which the counters of an IP
+	 *                    without traffic are removed.
+	 * @throws IOException thrown if the server cannot be started.
+	 */
+	public PrometheusExporter(@NonNull final InetSocketAddress address, final long expireAfter) throws IOException {
+		if (expireAfter < 1) {
+			throw new IllegalArgumentException("Invalid expiry time. Expected positive value");
+		}
+		this.expireAfter = expireAfter;
+		this.server = new TextServer(address, "prometheus-exporter");
+		this.server.handle(METRICS_PATH, "GET", CONTENT_TYPE, (exchange, out) -> {
+			scrape(out);
+			scrapes.incrementAndGet();
+		});
+	}
+
+	/**
+	 * Gets the counters of a router, creating them if missing. The counters are
+	 * kept when the service of the router is reconfigured; the counters of a
+	 * router not polled for the expiry time are removed.
+	 *
+	 * @param router the name of the router.
+	 * @return the counters of the router.
+	 */
+	public TrafficCounters counters(@NonNull final String router) {
+		return routers.computeIfAbsent(router, r -> new TrafficCounters(r, expireAfter));
+	}
+
+	/**
+	 * Writes the counters of all routers in the Prometheus text format.
+	 *
+	 * @param out the output.
+	 */
+	public void scrape(@NonNull final StringBuilder out) {
+		final long now = System.currentTimeMillis();
+		routers.values().removeIf(counters -> now - counters.getLastUpdate() >= expireAfter);
+		final Map<String, TrafficCounters.Snapshot> snapshots = new TreeMap<>();
+		routers.forEach((router, counters) -> snapshots.put(router, counters.snapshot()));
+		for (int metric = 0; metric < METRICS.length; metric++) {
+			out.append("# HELP ").append(METRICS[metric][0]).append(' ').append(METRICS[metric][1]).append('\n');
+			out.append("# TYPE ").append(METRICS[metric][0]).append(" counter\n");
+			for (final Map.Entry<String, TrafficCounters.Snapshot> e : snapshots.entrySet()) {
+				final TrafficCounters.Snapshot snapshot = e.getValue();
+				for (int row = 0; row < snapshot.size(); row++) {
+					out.append(METRICS[metric][0]).append("{ip=\"");
+					Ipv6.append(out, snapshot.ipHighAt(row), snapshot.ipAt(row));
+					out.append("\",type=\"").append(snapshot.isLanAt(row) ? "LAN" : "WAN").append("\",router=\"");
+					appendLabelValue(out, e.getKey());
+					out.append("\"} ").append(snapshot.counterAt(row, metric)).append('\n');
+				}
+			}
+		}
+	}
+
+	private static void appendLabelValue(final StringBuilder out, final String value) {
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				out.append('\\').append(c);
+			} else if (c == '\n') {
+				out.append("\\n");
+			} else {
+				out.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Gets the URI of the metrics endpoint.
+	 *
+	 * @return the URI of the metrics endpoint.
+	 */
+	public URI getUri() {
+		return server.getUri(METRICS_PATH);
+	}
+
+	/**
+	 * Number of served scrapes.
+	 *
+	 * @return number of served scrapes.
+	 */
+	public long getScrapesCount() {
+		return scrapes.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		server.close();
+	}
+}
@@ -0,0 +1,315 @@
+package com.a9ski.mikrotik.prometheus;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.TrafficTable;
+
+/**
+ * Monotonically increasing traffic counters of the IP addresses of a router.
+ * The counters are stored in the primitive arrays of a segment and located
+ * through an open addressing index, like in {@link TrafficTable}.
+ * <p>
+ * The counters have a single writer, the poll of the router, which updates
+ * them without locking. Any number of readers (scrapes) iterate the published
+ * segment without locking and without blocking the writer: the counter values
+ * are written through an {@link AtomicLongArray} and a new row becomes
+ * visible when the volatile segment size is incremented. Growing the segment
+ * and expiring rows copy the live rows into a new segment, which is published
+ * atomically.
+ *
+ */
+public class TrafficCounters {
+	/**
+	 * Index of the bytes sent counter.
+	 */
+	public static final int BYTES_SENT = 0;
+	/**
+	 * Index of the bytes received counter.
+	 */
+	public static final int BYTES_RECEIVED = 1;
+	/**
+	 * Index of the packets sent counter.
+	 */
+	public static final int PACKETS_SENT = 2;
+	/**
+	 * Index of the packets received counter.
+	 */
+	public static final int PACKETS_RECEIVED = 3;
+	/**
+	 * Number of counters of an IP address.
+	 */
+	public static final int COUNTERS = 4;
+
+	private static final int MIN_CAPACITY = 16;
+
+	private final String router;
+	private final long expireAfter;
+	private volatile Segment segment = new Segment(MIN_CAPACITY);
+	private long lastExpiry;
+	private volatile long lastUpdate = System.currentTimeMillis();
+
+	/**
+	 * Creates new counters.
+	 *
+	 * @param router      the name of the router, used as a label.
+	 * @param expireAfter time in milliseconds after which the counters of an IP
+	 *                    without traffic are removed.
+	 */
+	public TrafficCounters(final String router, final long expireAfter) {
+		if (expireAfter < 1) {
+			throw new IllegalArgumentException("Invalid expiry time. Expected positive value");
+		}
+		this.router = router;
+		this.expireAfter = expireAfter;
+	}
+
+	/**
+	 * Adds the traffic of a poll. The rows without traffic are ignored, and the
+	 * counters of the IPs without traffic for the expiry time are removed. Must
+	 * not be called concurrently.
+	 *
+	 * @param now     the current time in milliseconds.
+	 * @param traffic the classified traffic table of the poll.
+	 */
+	public void add(final long now, final TrafficTable traffic) {
+		for (int row = 0; row < traffic.size(); row++) {
+			if (!traffic.isZeroAt(row)) {
+				final int i = row(traffic.ipHighAt(row), traffic.ipAt(row), traffic.isLanAt(row), now);
+				final Segment s = segment;
+				s.add(i, BYTES_SENT, traffic.bytesSentAt(row));
+				s.add(i, BYTES_RECEIVED, traffic.bytesReceivedAt(row));
+				s.add(i, PACKETS_SENT, traffic.packetsSentAt(row));
+				s.add(i, PACKETS_RECEIVED, traffic.packetsReceivedAt(row));
+			}
+		}
+		if (now - lastExpiry >= expireAfter / 4) {
+			lastExpiry = now;
+			expire(now);
+		}
+		lastUpdate = now;
+	}
+
+	/**
+	 * Finds the row of an IP address, adding a zero row if the IP is missing. A
+	 * full segment is replaced by a larger copy.
+	 */
+	private int row(final long high, final long ip, final boolean lan, final long now) {
+		final Segment s = segment;
+		final int row = s.indexOf(high, ip);
+		if (row >= 0) {
+			s.lan[row] = lan;
+			s.lastSeen[row] = now;
+			return row;
+		}
+		if (s.size == s.ips.length) {
+			final Segment grown = new Segment(s.ips.length * 2);
+			for (int i = 0; i < s.size; i++) {
+				grown.copy(s, i);
+			}
+			segment = grown;
+			return grown.append(high, ip, lan, now);
+		}
+		return s.append(high, ip, lan, now);
+	}
+
+	/**
+	 * Removes the counters of the IPs without traffic for the expiry time. Must
+	 * not be called concurrently with {@link #add}.
+	 *
+	 * @param now the current time in milliseconds.
+	 * @return number of removed IPs.
+	 */
+	public int expire(final long now) {
+		final Segment s = segment;
+		final int size = s.size;
+		int live = 0;
+		for (int i = 0; i < size; i++) {
+			if (now - s.lastSeen[i] < expireAfter) {
+				live++;
+			}
+		}
+		if (live < size) {
+			final Segment compacted = new Segment(Math.max(MIN_CAPACITY, live));
+			for (int i = 0; i < size; i++) {
+				if (now - s.lastSeen[i] < expireAfter) {
+					compacted.copy(s, i);
+				}
+			}
+			segment = compacted;
+		}
+		return size - live;
+	}
+
+	/**
+	 * Gets the name of the router.
+	 *
+	 * @return the name of the router.
+	 */
+	public String getRouter() {
+		return router;
+	}
+
+	/**
+	 * Gets the time of the last {@link #add} call.
+	 *
+	 * @return the time in milliseconds.
+	 */
+	public long getLastUpdate() {
+		return lastUpdate;
+	}
+
+	/**
+	 * Gets the current counters without copying them. The snapshot sees the
+	 * later updates of the counters of its IPs, but not the later added or
+	 * expired IPs.
+	 *
+	 * @return the current counters.
+	 */
+	public Snapshot snapshot() {
+		return segment;
+	}
+
+	/**
+	 * Read-only view of the counters.
+	 */
+	public interface Snapshot {
+		/**
+		 * Number of IP addresses.
+		 *
+		 * @return number of IP addresses.
+		 */
+		int size();
+
+		/**
+		 * Gets an IP address: the numeric IPv4 address or the low 64 bits of the
+		 * IPv6 key.
+		 *
+		 * @param row the row.
+		 * @return the numeric IP address.
+		 */
+		long ipAt(int row);
+
+		/**
+		 * Gets the high 64 bits of the IP key.
+		 *
+		 * @param row the row.
+		 * @return the high 64 bits, <tt>0</tt> for an IPv4 address.
+		 */
+		long ipHighAt(int row);
+
+		/**
+		 * Checks if an IP address belongs to the LAN.
+		 *
+		 * @param row the row.
+		 * @return <tt>true</tt> if the IP belongs to the LAN.
+		 */
+		boolean isLanAt(int row);
+
+		/**
+		 * Gets a counter of an IP address.
+		 *
+		 * @param row     the row.
+		 * @param counter the counter (e.g. {@link TrafficCounters#BYTES_SENT}).
+		 * @return the counter value.
+		 */
+		long counterAt(int row, int counter);
+	}
+
+	/**
+	 * Rows of the counters. Only the writer uses the index and the last seen
+	 * times; the readers see the rows below the volatile size.
+	 */
+	private static final class Segment implements Snapshot {
+		private final long[] ipsHigh;
+		private final long[] ips;
+		private final boolean[] lan;
+		private final long[] lastSeen;
+		private final AtomicLongArray counters;
+		private final int[] index;
+		private volatile int size;
+
+		Segment(final int capacity) {
+			ipsHigh = new long[capacity];
+			ips = new long[capacity];
+			lan = new boolean[capacity];
+			lastSeen = new long[capacity];
+			counters = new AtomicLongArray(capacity * COUNTERS);
+			index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+		}
+
+		private int slot(final long high, final long ip) {
+			return (int) (Ipv6.hash(high, ip) >>> 32) & (index.length - 1);
+		}
+
+		int indexOf(final long high, final long ip) {
+			for (int i = slot(high, ip);; i = (i + 1) & (index.length - 1)) {
+				final int row = index[i] - 1;
+				if (row < 0) {
+					return -1;
+				} else if (ips[row] == ip && ipsHigh[row] == high) {
+					return row;
+				}
+			}
+		}
+
+		/**
+		 * Appends a row. The segment must have a free row.
+		 */
+		int append(final long high, final long ip, final boolean isLan, final long now) {
+			final int row = size;
+			ipsHigh[row] = high;
+			ips[row] = ip;
+			lan[row] = isLan;
+			lastSeen[row] = now;
+			int i = slot(high, ip);
+			while (index[i] != 0) {
+				i = (i + 1) & (index.length - 1);
+			}
+			index[i] = row + 1;
+			// publishes the row to the readers
+			size = row + 1;
+			return row;
+		}
+
+		void copy(final Segment from, final int fromRow) {
+			final int row = size;
+			for (int c = 0; c < COUNTERS; c++) {
+				counters.lazySet(row * COUNTERS + c, from.counters.get(fromRow * COUNTERS + c));
+			}
+			append(from.ipsHigh[fromRow], from.ips[fromRow], from.lan[fromRow], from.lastSeen[fromRow]);
+		}
+
+		void add(final int row, final int counter, final long value) {
+			if (value != 0) {
+				final int i = row * COUNTERS + counter;
+				counters.lazySet(i, counters.get(i) + value);
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public long ipAt(final int row) {
+			return ips[row];
+		}
+
+		@Override
+		public long ipHighAt(final int row) {
+			return ipsHigh[row];
+		}
+
+		@Override
+		public boolean isLanAt(final int row) {
+			return lan[row];
+		}
+
+		@Override
+		public long counterAt(final int row, final int counter) {
+			return counters.get(row * COUNTERS + counter);
+		}
+	}
+}
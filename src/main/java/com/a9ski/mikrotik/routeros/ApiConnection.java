@@ -0,0 +1,229 @@
+package com.a9ski.mikrotik.routeros;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import lombok.NonNull;
+
+/**
+ * Connection speaking the
+ * <a href="https://wiki.mikrotik.com/wiki/Manual:API">RouterOS API</a> word
+ * protocol over a non-blocking socket channel. A sentence is a sequence of
+ * length-prefixed words terminated by an empty word.
+ * <p>
+ * The connection waits for the socket to become readable or writable with a
+ * selector, so a slow peer never makes it spin.
+ *
+ */
+public class ApiConnection implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_WORD_LENGTH = 16 * 1024 * 1024;
+
+	private final SocketChannel channel;
+	private final Selector selector;
+	private final SelectionKey key;
+	private final long readTimeoutMillis;
+	private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/**
+	 * Wraps an already connected channel.
+	 *
+	 * @param channel     the connected channel.
+	 * @param readTimeout the maximum time to wait for data from the peer or for
+	 *                    the peer to accept data.
+	 * @throws IOException thrown if the channel cannot be switched to
+	 *                     non-blocking mode.
+	 */
+	public ApiConnection(@NonNull final SocketChannel channel, @NonNull final Duration readTimeout) throws IOException {
+		this.channel = channel;
+		this.readTimeoutMillis = readTimeout.toMillis();
+		this.selector = Selector.open();
+		channel.configureBlocking(false);
+		this.key = channel.register(selector, SelectionKey.OP_READ);
+		in.flip();
+	}
+
+	/**
+	 * Opens a new connection.
+	 *
+	 * @param address        the address of the router API service.
+	 * @param connectTimeout the connect timeout.
+	 * @param readTimeout    the maximum time to wait for data from the router.
+	 * @return new connection.
+	 * @throws IOException thrown if the connection cannot be established.
+	 */
+	public static ApiConnection open(@NonNull final InetSocketAddress address, @NonNull final Duration connectTimeout, @NonNull final Duration readTimeout) throws IOException {
+		final SocketChannel channel = SocketChannel.open();
+		try {
+			channel.socket().connect(address, (int) connectTimeout.toMillis());
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+			return new ApiConnection(channel, readTimeout);
+		} catch (final IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Writes a sentence.
+	 *
+	 * @param words the words of the sentence. The terminating empty word is
+	 *              appended automatically.
+	 * @throws IOException thrown if a communication error occurs.
+	 */
+	public void writeSentence(final String... words) throws IOException {
+		out.clear();
+		for (final String word : words) {
+			final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+			ensureOutCapacity(bytes.length + 5);
+			encodeLength(bytes.length, out);
+			out.put(bytes);
+		}
+		ensureOutCapacity(1);
+		encodeLength(0, out);
+		out.flip();
+		while (out.hasRemaining()) {
+			if (channel.write(out) == 0) {
+				awaitWritable();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the socket send buffer has free space.
+	 */
+	private void awaitWritable() throws IOException {
+		key.interestOps(SelectionKey.OP_WRITE);
+		try {
+			if (selector.select(readTimeoutMillis) == 0) {
+				throw new SocketTimeoutException(String.format("The router didn't accept data within %d ms", readTimeoutMillis));
+			}
+			selector.selectedKeys().clear();
+		} finally {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private void ensureOutCapacity(final int required) {
+		if (out.remaining() < required) {
+			final ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(out.capacity() * 2, out.position() + required));
+			out.flip();
+			bigger.put(out);
+			out = bigger;
+		}
+	}
+
+	/**
+	 * Reads the next word.
+	 *
+	 * @return the word or an empty string at the end of a sentence.
+	 * @throws IOException thrown if a communication error occurs or the word is
+	 *                     longer than 16 MB.
+	 */
+	public String readWord() throws IOException {
+		final int length = readLength();
+		if (length == 0) {
+			return "";
+		} else if (length < 0 || length > MAX_WORD_LENGTH) {
+			throw new IOException(String.format("Invalid word length %d. Expected at most %d bytes", Integer.toUnsignedLong(length), MAX_WORD_LENGTH));
+		}
+		final byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			ensureAvailable(1);
+			final int chunk = Math.min(in.remaining(), length - offset);
+			in.get(bytes, offset, chunk);
+			offset += chunk;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int readLength() throws IOException {
+		ensureAvailable(1);
+		final int first = in.get() & 0xFF;
+		if ((first & 0x80) == 0x00) {
+			return first;
+		} else if ((first & 0xC0) == 0x80) {
+			return ((first & ~0xC0) << 8) | readByte();
+		} else if ((first & 0xE0) == 0xC0) {
+			return ((first & ~0xE0) << 16) | (readByte() << 8) | readByte();
+		} else if ((first & 0xF0) == 0xE0) {
+			return ((first & ~0xF0) << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+		} else if (first == 0xF0) {
+			return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+		}
+		throw new IOException(String.format("Invalid word length prefix 0x%02X", first));
+	}
+
+	private int readByte() throws IOException {
+		ensureAvailable(1);
+		return in.get() & 0xFF;
+	}
+
+	/**
+	 * Waits until at least <tt>count</tt> bytes are available in the input
+	 * buffer.
+	 */
+	private void ensureAvailable(final int count) throws IOException {
+		while (in.remaining() < count) {
+			in.compact();
+			try {
+				final int read = channel.read(in);
+				if (read < 0) {
+					throw new EOFException("Connection closed by the router");
+				}
+				if (read == 0 && selector.select(readTimeoutMillis) == 0) {
+					throw new SocketTimeoutException(String.format("No response from the router within %d ms", readTimeoutMillis));
+				}
+				selector.selectedKeys().clear();
+			} finally {
+				in.flip();
+			}
+		}
+	}
+
+	/**
+	 * Encodes the length of a word.
+	 *
+	 * @param length the length.
+	 * @param buffer the buffer where the encoded length is written.
+	 */
+	static void encodeLength(final int length, final ByteBuffer buffer) {
+		if (length < 0x80) {
+			buffer.put((byte) length);
+		} else if (length < 0x4000) {
+			buffer.putShort((short) (length | 0x8000));
+		} else if (length < 0x200000) {
+			buffer.put((byte) ((length >> 16) | 0xC0));
+			buffer.putShort((short) length);
+		} else if (length < 0x10000000) {
+			buffer.putInt(length | 0xE0000000);
+		} else {
+			buffer.put((byte) 0xF0);
+			buffer.putInt(length);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			selector.close();
+		} finally {
+			channel.close();
+		}
+	}
+}
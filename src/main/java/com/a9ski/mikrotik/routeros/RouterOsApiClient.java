@@ -0,0 +1,318 @@
+package com.a9ski.mikrotik.routeros;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.a9ski.mikrotik.accounting.AccountingSource;
+import com.a9ski.mikrotik.accounting.InterfaceCountersSource;
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.model.InterfaceCounters;
+
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Client reading accounting snapshots and interface counters through the
+ * <a href="https://wiki.mikrotik.com/wiki/Manual:API">RouterOS API</a>. The
+ * connection is kept open between the polls and re-established after a
+ * communication error.
+ *
+ */
+@Log4j2
+public class RouterOsApiClient implements AccountingSource, InterfaceCountersSource, Closeable {
+	/**
+	 * Default port of the RouterOS API service.
+	 */
+	public static final int DEFAULT_PORT = 8728;
+
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(3);
+	private static final Duration READ_TIMEOUT = Duration.ofSeconds(10);
+	private static final String REPLY_DATA = "!re";
+	private static final String REPLY_DONE = "!done";
+	private static final String REPLY_TRAP = "!trap";
+	private static final String REPLY_FATAL = "!fatal";
+	private static final String INVALID_NUMBER_MSG = "Invalid number for attribute '%s': '%s'";
+
+	private final InetSocketAddress address;
+	private final String user;
+	private final String password;
+	private ApiConnection connection;
+
+	/**
+	 * Creates a new client.
+	 *
+	 * @param routerHost the host name or IP address of the router.
+	 * @param port       the port of the API service (usually 8728).
+	 * @param user       the API user.
+	 * @param password   the API password.
+	 */
+	public RouterOsApiClient(@NonNull final String routerHost, final int port, @NonNull final String user, @NonNull final String password) {
+		this(InetSocketAddress.createUnresolved(routerHost, port), user, password);
+	}
+
+	/**
+	 * Creates a new client.
+	 *
+	 * @param address  the address of the API service.
+	 * @param user     the API user.
+	 * @param password the API password.
+	 */
+	public RouterOsApiClient(@NonNull final InetSocketAddress address, @NonNull final String user, @NonNull final String password) {
+		this.address = address;
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * Takes a new accounting snapshot and reads its records.
+	 *
+	 * @return list of accounting records
+	 * @throws AccountingException  thrown if the router returns an error.
+	 * @throws IOException          thrown if a communication error occurs.
+	 * @throws InterruptedException thrown if the current thread is interrupted.
+	 */
+	@Override
+	public synchronized List<AccountingRecord> loadRecords() throws AccountingException, InterruptedException, IOException {
+		final ApiConnection conn = connection();
+		try {
+			conn.writeSentence("/ip/accounting/snapshot/take");
+			readUntilDone(conn, null);
+			conn.writeSentence("/ip/accounting/snapshot/print", "=.proplist=src-address,dst-address,bytes,packets");
+			final List<AccountingRecord> records = new ArrayList<>();
+			readUntilDone(conn, () -> {
+				final AccountingRecord.AccountingRecordBuilder builder = AccountingRecord.builder();
+				for (String word = conn.readWord(); !word.isEmpty(); word = conn.readWord()) {
+					if (word.startsWith("=src-address=")) {
+						builder.sourceIp(word.substring(13));
+					} else if (word.startsWith("=dst-address=")) {
+						builder.destinationIp(word.substring(13));
+					} else if (word.startsWith("=bytes=")) {
+						builder.byteCount(parseLong(word, 7));
+					} else if (word.startsWith("=packets=")) {
+						builder.packetCount(parseLong(word, 9));
+					}
+				}
+				records.add(builder.build());
+			});
+			return records;
+		} catch (final IOException ex) {
+			disconnect();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Reads the counters of all router interfaces and simple queues.
+	 *
+	 * @return list of interface and queue counters.
+	 * @throws AccountingException thrown if the router returns an error.
+	 * @throws IOException         thrown if a communication error occurs.
+	 */
+	@Override
+	public synchronized List<InterfaceCounters> loadInterfaceCounters() throws AccountingException, IOException {
+		final ApiConnection conn = connection();
+		try {
+			conn.writeSentence("/interface/print", "=.proplist=name,rx-byte,tx-byte,rx-packet,tx-packet,rx-drop,tx-drop");
+			final List<InterfaceCounters> counters = new ArrayList<>();
+			readUntilDone(conn, () -> {
+				final InterfaceCounters.InterfaceCountersBuilder builder = InterfaceCounters.builder();
+				for (String word = conn.readWord(); !word.isEmpty(); word = conn.readWord()) {
+					if (word.startsWith("=name=")) {
+						builder.name(word.substring(6));
+					} else if (word.startsWith("=rx-byte=")) {
+						builder.rxBytes(parseLong(word, 9));
+					} else if (word.startsWith("=tx-byte=")) {
+						builder.txBytes(parseLong(word, 9));
+					} else if (word.startsWith("=rx-packet=")) {
+						builder.rxPackets(parseLong(word, 11));
+					} else if (word.startsWith("=tx-packet=")) {
+						builder.txPackets(parseLong(word, 11));
+					} else if (word.startsWith("=rx-drop=")) {
+						builder.rxDrops(parseLong(word, 9));
+					} else if (word.startsWith("=tx-drop=")) {
+						builder.txDrops(parseLong(word, 9));
+					}
+				}
+				counters.add(builder.build());
+			});
+			conn.writeSentence("/queue/simple/print", "=.proplist=name,bytes,packets,dropped");
+			readUntilDone(conn, () -> {
+				final InterfaceCounters.InterfaceCountersBuilder builder = InterfaceCounters.builder().type(InterfaceCounters.Type.QUEUE);
+				for (String word = conn.readWord(); !word.isEmpty(); word = conn.readWord()) {
+					if (word.startsWith("=name=")) {
+						builder.name(word.substring(6));
+					} else if (word.startsWith("=bytes=")) {
+						builder.txBytes(parseLong(word, 7, '/')).rxBytes(parseLong(word, word.indexOf('/') + 1));
+					} else if (word.startsWith("=packets=")) {
+						builder.txPackets(parseLong(word, 9, '/')).rxPackets(parseLong(word, word.indexOf('/') + 1));
+					} else if (word.startsWith("=dropped=")) {
+						builder.txDrops(parseLong(word, 9, '/')).rxDrops(parseLong(word, word.indexOf('/') + 1));
+					}
+				}
+				counters.add(builder.build());
+			});
+			return counters;
+		} catch (final IOException ex) {
+			disconnect();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Reads reply sentences until <tt>!done</tt>.
+	 *
+	 * @param conn    the connection.
+	 * @param handler handler of the attribute words of the <tt>!re</tt>
+	 *                sentences or <tt>null</tt> to skip them.
+	 */
+	private void readUntilDone(final ApiConnection conn, final SentenceHandler handler) throws AccountingException, IOException {
+		while (true) {
+			final String reply = conn.readWord();
+			if (REPLY_DATA.equals(reply) && handler != null) {
+				handler.handle();
+			} else if (REPLY_DONE.equals(reply)) {
+				skipSentence(conn);
+				return;
+			} else if (REPLY_TRAP.equals(reply)) {
+				final String message = readMessage(conn);
+				readUntilDone(conn, null);
+				throw new AccountingException(String.format("RouterOS API error: %s", message));
+			} else if (REPLY_FATAL.equals(reply)) {
+				final String message = readMessage(conn);
+				disconnect();
+				throw new AccountingException(String.format("RouterOS API fatal error: %s", message));
+			} else {
+				skipSentence(conn);
+			}
+		}
+	}
+
+	private String readMessage(final ApiConnection conn) throws IOException {
+		String message = "";
+		for (String word = conn.readWord(); !word.isEmpty(); word = conn.readWord()) {
+			if (word.startsWith("=message=")) {
+				message = word.substring(9);
+			} else if (!word.startsWith("=") && !word.startsWith(".")) {
+				message = word;
+			}
+		}
+		return message;
+	}
+
+	private void skipSentence(final ApiConnection conn) throws IOException {
+		while (!conn.readWord().isEmpty()) {
+			// skip the attributes
+		}
+	}
+
+	private long parseLong(final String word, final int offset) throws IOException {
+		return parseLong(word, offset, '\0');
+	}
+
+	/**
+	 * Parses the number starting at <tt>offset</tt> and ending before
+	 * <tt>separator</tt> (or at the end of the word).
+	 */
+	private long parseLong(final String word, final int offset, final char separator) throws IOException {
+		final int end = separator != '\0' && word.indexOf(separator, offset) >= 0 ? word.indexOf(separator, offset) : word.length();
+		try {
+			return Long.parseLong(word, offset, end, 10);
+		} catch (final NumberFormatException | IndexOutOfBoundsException ex) {
+			throw new IOException(String.format(INVALID_NUMBER_MSG, word.substring(1, word.indexOf('=', 1)), word.substring(Math.min(offset, word.length()))));
+		}
+	}
+
+	/**
+	 * Gets the current connection or opens and authenticates a new one.
+	 */
+	private ApiConnection connection() throws AccountingException, IOException {
+		if (connection == null) {
+			final InetSocketAddress resolved = address.isUnresolved() ? new InetSocketAddress(address.getHostString(), address.getPort()) : address;
+			final ApiConnection conn = ApiConnection.open(resolved, CONNECT_TIMEOUT, READ_TIMEOUT);
+			try {
+				login(conn);
+			} catch (final AccountingException | IOException ex) {
+				conn.close();
+				throw ex;
+			}
+			connection = conn;
+		}
+		return connection;
+	}
+
+	/**
+	 * Authenticates the connection. Supports both the plain login (RouterOS
+	 * 6.43+) and the legacy MD5 challenge login.
+	 */
+	private void login(final ApiConnection conn) throws AccountingException, IOException {
+		conn.writeSentence("/login", "=name=" + user, "=password=" + password);
+		String challenge = null;
+		final String reply = conn.readWord();
+		for (String word = conn.readWord(); !word.isEmpty(); word = conn.readWord()) {
+			if (word.startsWith("=ret=")) {
+				challenge = word.substring(5);
+			}
+		}
+		if (!REPLY_DONE.equals(reply)) {
+			throw new AccountingException(String.format("RouterOS API login failed for user '%s'", user));
+		}
+		if (challenge != null) {
+			conn.writeSentence("/login", "=name=" + user, "=response=00" + challengeResponse(challenge));
+			readUntilDone(conn, null);
+		}
+	}
+
+	private String challengeResponse(final String challenge) throws AccountingException {
+		try {
+			final MessageDigest md5 = MessageDigest.getInstance("MD5");
+			md5.update((byte) 0);
+			md5.update(password.getBytes(StandardCharsets.UTF_8));
+			for (int i = 0; i + 1 < challenge.length(); i += 2) {
+				md5.update((byte) Integer.parseInt(challenge, i, i + 2, 16));
+			}
+			final StringBuilder hex = new StringBuilder();
+			for (final byte b : md5.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (final NoSuchAlgorithmException ex) {
+			throw new AccountingException("MD5 is not supported", ex);
+		}
+	}
+
+	private void disconnect() {
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (final IOException ex) {
+				log.debug(ex);
+			} finally {
+				connection = null;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void close() {
+		disconnect();
+	}
+
+	/**
+	 * Handler of the attributes of a single <tt>!re</tt> sentence.
+	 */
+	@FunctionalInterface
+	private interface SentenceHandler {
+		void handle() throws IOException;
+	}
+}
@@ -0,0 +1,56 @@
+package com.a9ski.mikrotik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.model.InterfaceCounters;
+
+class InterfaceCountersTrackerTest {
+
+	private final InterfaceCountersTracker tracker = new InterfaceCountersTracker();
+
+	@Test
+	void testFirstPollProducesNoDeltas() {
+		assertEquals(Collections.emptyList(), tracker.update(Collections.singletonList(counters("ether1", InterfaceCounters.Type.INTERFACE, 100))));
+	}
+
+	@Test
+	void testDeltas() {
+		tracker.update(Arrays.asList(counters("ether1", InterfaceCounters.Type.INTERFACE, 100), counters("ether1", InterfaceCounters.Type.QUEUE, 10)));
+		final List<InterfaceCounters> deltas = tracker.update(Arrays.asList(counters("ether1", InterfaceCounters.Type.INTERFACE, 150), counters("ether1", InterfaceCounters.Type.QUEUE, 30)));
+		assertEquals(Arrays.asList(counters("ether1", InterfaceCounters.Type.INTERFACE, 50), counters("ether1", InterfaceCounters.Type.QUEUE, 20)), deltas);
+	}
+
+	@Test
+	void testCounterReset() {
+		tracker.update(Collections.singletonList(counters("ether1", InterfaceCounters.Type.INTERFACE, 1000)));
+		assertEquals(Collections.singletonList(counters("ether1", InterfaceCounters.Type.INTERFACE, 40)), tracker.update(Collections.singletonList(counters("ether1", InterfaceCounters.Type.INTERFACE, 40))));
+	}
+
+	@Test
+	void testRemovedInterfaceIsForgotten() {
+		tracker.update(Collections.singletonList(counters("ether1", InterfaceCounters.Type.INTERFACE, 100)));
+		tracker.update(Collections.emptyList());
+		assertEquals(Collections.emptyList(), tracker.update(Collections.singletonList(counters("ether1", InterfaceCounters.Type.INTERFACE, 200))));
+	}
+
+	private InterfaceCounters counters(String name, InterfaceCounters.Type type, long value) {
+		// @formatter:off
+		return InterfaceCounters.builder()
+			.name(name)
+			.type(type)
+			.rxBytes(value)
+			.txBytes(2 * value)
+			.rxPackets(value / 10)
+			.txPackets(value / 5)
+			.rxDrops(0)
+			.txDrops(0)
+			.build();
+		// @formatter:on
+	}
+}
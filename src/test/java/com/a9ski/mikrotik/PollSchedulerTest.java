@@ -0,0 +1,167 @@
+package com.a9ski.mikrotik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class PollSchedulerTest {
+
+	@Test
+	void testSlowPollDoesNotBlockOtherPolls() throws Exception {
+		try (PollScheduler scheduler = new PollScheduler(PollScheduler.Mode.PLATFORM, 2)) {
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch fastPolls = new CountDownLatch(5);
+			final PollScheduler.ScheduledPoll slow = scheduler.schedule("slow", () -> await(release), 10);
+			final PollScheduler.ScheduledPoll fast = scheduler.schedule("fast", fastPolls::countDown, 10);
+
+			assertTrue(fastPolls.await(5, TimeUnit.SECONDS));
+			assertTrue(slow.isRunning());
+			assertTrue(scheduler.getSkippedPolls() > 0);
+
+			release.countDown();
+			assertTrue(slow.cancel(1000));
+			assertTrue(fast.cancel(1000));
+			assertFalse(slow.isRunning());
+		}
+	}
+
+	@Test
+	void testPollIsNotRunConcurrently() throws Exception {
+		try (PollScheduler scheduler = new PollScheduler(PollScheduler.Mode.PLATFORM, 4)) {
+			final AtomicInteger concurrent = new AtomicInteger();
+			final AtomicInteger maxConcurrent = new AtomicInteger();
+			final CountDownLatch polls = new CountDownLatch(5);
+			final PollScheduler.ScheduledPoll poll = scheduler.schedule("router", () -> {
+				maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+				sleep(20);
+				concurrent.decrementAndGet();
+				polls.countDown();
+			}, 1);
+
+			assertTrue(polls.await(5, TimeUnit.SECONDS));
+			assertTrue(poll.cancel(1000));
+			assertTrue(maxConcurrent.get() == 1);
+		}
+	}
+
+	@Test
+	void testNoPollStartsAfterCancel() throws Exception {
+		try (PollScheduler scheduler = new PollScheduler(PollScheduler.Mode.PLATFORM, 2)) {
+			for (int i = 0; i < 20; i++) {
+				final AtomicInteger started = new AtomicInteger();
+				final CountDownLatch polls = new CountDownLatch(3);
+				final PollScheduler.ScheduledPoll poll = scheduler.schedule("router", () -> {
+					started.incrementAndGet();
+					polls.countDown();
+				}, 1);
+				assertTrue(polls.await(5, TimeUnit.SECONDS));
+				assertTrue(poll.cancel(1000));
+				final int afterCancel = started.get();
+				sleep(5);
+				assertEquals(afterCancel, started.get());
+			}
+
+			// a cancel timing out keeps the poll cancelled
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch slowStarted = new CountDownLatch(1);
+			final AtomicInteger started = new AtomicInteger();
+			final PollScheduler.ScheduledPoll slow = scheduler.schedule("slow", () -> {
+				started.incrementAndGet();
+				slowStarted.countDown();
+				await(release);
+			}, 1);
+			assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+			assertFalse(slow.cancel(10));
+			assertTrue(slow.isRunning());
+			release.countDown();
+			assertTrue(slow.cancel(1000));
+			assertFalse(slow.isRunning());
+			sleep(5);
+			assertEquals(1, started.get());
+		}
+	}
+
+	@Test
+	void testDegradedRoutersAreIsolated() throws Exception {
+		try (PollScheduler scheduler = new PollScheduler(PollScheduler.Mode.PLATFORM, 3, 1)) {
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch slowStarted = new CountDownLatch(1);
+			final CountDownLatch healthyPolls = new CountDownLatch(5);
+			final AtomicInteger slowRunning = new AtomicInteger();
+			final AtomicInteger maxSlowRunning = new AtomicInteger();
+			final Runnable slowTask = () -> {
+				maxSlowRunning.accumulateAndGet(slowRunning.incrementAndGet(), Math::max);
+				slowStarted.countDown();
+				await(release);
+				slowRunning.decrementAndGet();
+			};
+			final PollScheduler.ScheduledPoll slow1 = scheduler.schedule("slow1", slowTask, 10, degradedHealth("slow1"));
+			final PollScheduler.ScheduledPoll slow2 = scheduler.schedule("slow2", slowTask, 10, degradedHealth("slow2"));
+			final PollScheduler.ScheduledPoll healthy = scheduler.schedule("healthy", healthyPolls::countDown, 10, new RouterHealth("healthy", 10, 1000));
+
+			assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+			assertTrue(healthyPolls.await(5, TimeUnit.SECONDS));
+			assertTrue(scheduler.getRejectedPolls() > 0);
+			assertTrue(maxSlowRunning.get() == 1);
+
+			release.countDown();
+			assertTrue(slow1.cancel(1000));
+			assertTrue(slow2.cancel(1000));
+			assertTrue(healthy.cancel(1000));
+		}
+	}
+
+	@Test
+	void testVirtualMode() throws Exception {
+		assumeTrue(PollScheduler.isVirtualThreadsSupported());
+		try (PollScheduler scheduler = new PollScheduler(PollScheduler.Mode.AUTO, 1)) {
+			assertTrue(scheduler.isVirtual());
+			final CountDownLatch polls = new CountDownLatch(3);
+			final PollScheduler.ScheduledPoll poll = scheduler.schedule("router", polls::countDown, 10);
+			assertTrue(polls.await(5, TimeUnit.SECONDS));
+			assertTrue(poll.cancel(1000));
+		}
+	}
+
+	@Test
+	void testVirtualModeUnsupported() {
+		assumeFalse(PollScheduler.isVirtualThreadsSupported());
+		assertThrows(IllegalStateException.class, () -> new PollScheduler(PollScheduler.Mode.VIRTUAL, 1));
+		try (PollScheduler scheduler = new PollScheduler(PollScheduler.Mode.AUTO, 1)) {
+			assertFalse(scheduler.isVirtual());
+		}
+	}
+
+	private static RouterHealth degradedHealth(final String name) {
+		final RouterHealth health = new RouterHealth(name, 1, 1000);
+		for (int i = 0; i < RouterHealth.FAILURE_THRESHOLD; i++) {
+			health.recordFailure(1, 0);
+		}
+		return health;
+	}
+
+	private static void await(final CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
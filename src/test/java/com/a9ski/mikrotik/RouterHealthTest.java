@@ -0,0 +1,79 @@
+package com.a9ski.mikrotik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.model.RouterStatus;
+
+class RouterHealthTest {
+
+	@Test
+	void testDegradeAfterConsecutiveFailures() {
+		final RouterHealth health = new RouterHealth("router", 1000, 500);
+		health.recordFailure(100, 0);
+		health.recordFailure(100, 1000);
+		assertFalse(health.isDegraded());
+		assertTrue(health.shouldPoll(2000));
+
+		health.recordFailure(100, 2000);
+		assertTrue(health.isDegraded());
+		// first backoff is twice the interval
+		assertFalse(health.shouldPoll(3000));
+		assertTrue(health.shouldPoll(4000));
+
+		health.recordFailure(100, 4000);
+		assertFalse(health.shouldPoll(7000));
+		assertTrue(health.shouldPoll(8000));
+
+		health.recordSuccess(100, 8000);
+		assertFalse(health.isDegraded());
+		assertTrue(health.shouldPoll(8001));
+
+		final RouterStatus status = health.getStatus();
+		assertEquals(5, status.getSamples());
+		assertEquals(0.8, status.getErrorRate(), 0.0001);
+		assertEquals(0, status.getConsecutiveFailures());
+		assertEquals(2, status.getDeferredPolls());
+	}
+
+	@Test
+	void testDegradeAfterConsecutiveSlowPolls() {
+		final RouterHealth health = new RouterHealth("router", 1000, 500);
+		health.recordSuccess(600, 0);
+		health.recordSuccess(600, 1000);
+		health.recordSuccess(100, 2000);
+		health.recordSuccess(600, 3000);
+		health.recordSuccess(600, 4000);
+		assertFalse(health.isDegraded());
+		health.recordSuccess(600, 5000);
+		assertTrue(health.isDegraded());
+		assertEquals(0.0, health.getStatus().getErrorRate());
+	}
+
+	@Test
+	void testBackoffIsLimited() {
+		final RouterHealth health = new RouterHealth("router", 1000, 500);
+		for (int i = 0; i < 100; i++) {
+			health.recordFailure(100, 0);
+		}
+		assertFalse(health.shouldPoll(RouterHealth.MAX_BACKOFF - 1));
+		assertTrue(health.shouldPoll(RouterHealth.MAX_BACKOFF));
+	}
+
+	@Test
+	void testLatencyPercentiles() {
+		final RouterHealth health = new RouterHealth("router", 1000, 5000);
+		for (int i = 1; i <= 200; i++) {
+			health.recordSuccess(i, i);
+		}
+		final RouterStatus status = health.getStatus();
+		// only the last 128 polls (73..200) are in the window
+		assertEquals(RouterHealth.WINDOW_SIZE, status.getSamples());
+		assertEquals(136, status.getLatencyP50());
+		assertEquals(194, status.getLatencyP95());
+		assertEquals(199, status.getLatencyP99());
+	}
+}
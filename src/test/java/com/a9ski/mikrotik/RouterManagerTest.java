@@ -0,0 +1,150 @@
+package com.a9ski.mikrotik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.config.DatabaseConfig;
+import com.a9ski.mikrotik.config.RouterConfig;
+import com.a9ski.mikrotik.config.ServiceConfig;
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+
+import inet.ipaddr.AddressStringException;
+
+class RouterManagerTest {
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final AtomicInteger slowPolls = new AtomicInteger();
+
+	private final TrafficServiceFactory factory = new TrafficServiceFactory(null, null, null, null, null, null) {
+		@Override
+		public TrafficService create(RouterConfig config) throws AddressStringException, IOException {
+			if (config.getHost().equals("unreachable")) {
+				throw new IOException("Cannot create capture directory");
+			}
+			// @formatter:off
+			return TrafficService.builder()
+					.accountingClient(config.getHost().equals("slow") ? RouterManagerTest.this::slowPoll : () -> Collections.emptyList())
+					.subnetMatcher(SubnetMatcher.compile(config.getSubnets()))
+					.dbClient(Mockito.mock(InfluxDbClient.class))
+					.sleepTime(config.getInterval())
+					.maxRetries(1)
+					.deferStart(true)
+					.build();
+			// @formatter:on
+		}
+	};
+
+	private final RouterManager manager = new RouterManager(factory);
+
+	@AfterEach
+	void tearDown() {
+		manager.close();
+	}
+
+	@Test
+	void testApplyDifference() throws ConfigurationException {
+		manager.apply(config(router("r1", "10.1.0.0/16"), router("r2", "10.2.0.0/16")));
+		final TrafficService r1 = manager.getService("r1");
+		final TrafficService r2 = manager.getService("r2");
+
+		manager.apply(config(router("r1", "10.1.0.0/16"), router("r2", "10.20.0.0/16"), router("r3", "10.3.0.0/16")));
+		assertEquals(Arrays.asList("r1", "r2", "r3"), Arrays.asList(manager.getRouterNames().toArray()));
+		assertSame(r1, manager.getService("r1"));
+		assertNotSame(r2, manager.getService("r2"));
+
+		manager.apply(config(router("r3", "10.3.0.0/16")));
+		assertEquals(Collections.singleton("r3"), manager.getRouterNames());
+	}
+
+	@Test
+	void testInvalidChangeKeepsRunningService() throws ConfigurationException {
+		manager.apply(config(router("r1", "10.1.0.0/16")));
+		final TrafficService r1 = manager.getService("r1");
+
+		final ConfigurationException ex = assertThrows(ConfigurationException.class, () -> manager.apply(config(router("r1", "10.1.0.0/99"), router("r2", "10.2.0.0/16"))));
+		assertTrue(ex.getMessage().startsWith("Cannot start routers [r1: Invalid subnets of router 'r1'"));
+		assertSame(r1, manager.getService("r1"));
+		assertEquals(Arrays.asList("r1", "r2"), Arrays.asList(manager.getRouterNames().toArray()));
+	}
+
+	@Test
+	void testFailedStartKeepsRunningService() throws ConfigurationException {
+		manager.apply(config(router("r1", "10.1.0.0/16")));
+		final TrafficService r1 = manager.getService("r1");
+
+		final ConfigurationException ex = assertThrows(ConfigurationException.class, () -> manager.apply(config(router("r1", "unreachable", "10.1.0.0/16"))));
+		assertEquals("Cannot start routers [r1: Cannot create capture directory]", ex.getMessage());
+		assertSame(r1, manager.getService("r1"));
+	}
+
+	@Test
+	void testChangedRouterNotPolledTwice() throws ConfigurationException, InterruptedException {
+		manager.apply(config(router("r1", "slow", "10.1.0.0/16")));
+		// the first poll of the running service is in progress
+		waitFor(() -> inFlight.get() == 1);
+		manager.apply(config(router("r1", "slow", "10.2.0.0/16")));
+		// the new service polls after the poll of the stopped service finished
+		waitFor(() -> slowPolls.get() == 2);
+		assertEquals(1, maxInFlight.get());
+	}
+
+	private List<AccountingRecord> slowPoll() throws InterruptedException {
+		maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		try {
+			Thread.sleep(300);
+			return Collections.emptyList();
+		} finally {
+			inFlight.decrementAndGet();
+			slowPolls.incrementAndGet();
+		}
+	}
+
+	private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+		for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+
+	private ServiceConfig config(RouterConfig... routers) {
+		final Map<String, RouterConfig> map = new TreeMap<>();
+		for (RouterConfig router : routers) {
+			map.put(router.getName(), router);
+		}
+		return ServiceConfig.builder().routers(map).build();
+	}
+
+	private RouterConfig router(String name, String subnet) {
+		return router(name, name, subnet);
+	}
+
+	private RouterConfig router(String name, String host, String subnet) {
+		// @formatter:off
+		return RouterConfig.builder()
+				.name(name)
+				.host(host)
+				.subnets(Collections.singletonList(subnet))
+				.interval(60_000)
+				.database(DatabaseConfig.builder().url("http://127.0.0.1:8086").user("u").password("p").name("db").build())
+				.build();
+		// @formatter:on
+	}
+}
@@ -0,0 +1,174 @@
+package com.a9ski.mikrotik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.a9ski.mikrotik.accounting.AccountingClient;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+import com.a9ski.mikrotik.loadgen.RouterSimulator;
+import com.a9ski.mikrotik.loadgen.SyntheticSnapshotSource;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import inet.ipaddr.AddressStringException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * End-to-end performance test of the poll pipeline: a traffic service polls a
+ * stub router over HTTP and writes to a stub InfluxDB. The test asserts budgets
+ * on the poll latency, the written points per second and the allocation per
+ * record of the polling thread, so it fails on performance regressions of
+ * {@link TrafficService#run()}.
+ * <p>
+ * Runs with the <tt>performance</tt> profile (<tt>mvn test -Pperformance</tt>).
+ * The budgets can be overridden with the system properties
+ * <tt>performance.maxPollMillis</tt>, <tt>performance.minPointsPerSecond</tt>
+ * and <tt>performance.maxBytesPerRecord</tt>.
+ */
+@Log4j2
+@EnabledIfSystemProperty(named = "performance", matches = "true")
+class TrafficServicePerformanceTest {
+	private static final int RECORDS = 100_000;
+	private static final int WARM_UP_POLLS = 20;
+	private static final int POLLS = 30;
+
+	// about twice the measured baseline (p90 230 ms, 120000 points/s and 150
+	// bytes per record, mostly the copies of the line protocol text)
+	private static final long MAX_POLL_MILLIS = Long.getLong("performance.maxPollMillis", 500);
+	private static final long MIN_POINTS_PER_SECOND = Long.getLong("performance.minPointsPerSecond", 50_000);
+	private static final long MAX_BYTES_PER_RECORD = Long.getLong("performance.maxBytesPerRecord", 300);
+
+	private RouterSimulator router;
+	private HttpServer influx;
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong points = new AtomicLong();
+	private final AtomicLong maxWritePoints = new AtomicLong();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		router = new RouterSimulator(0, 0);
+		influx = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		influx.createContext("/query", exchange -> respond(exchange, 200, "{\"results\":[{\"statement_id\":0}]}"));
+		influx.createContext("/ping", exchange -> respond(exchange, 204, null));
+		influx.createContext("/write", this::write);
+		influx.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		router.close();
+		influx.stop(0);
+	}
+
+	@Test
+	void testPollBudgets() throws AddressStringException, InterruptedException {
+		// @formatter:off
+		final SyntheticSnapshotSource source = SyntheticSnapshotSource.builder()
+				.routerIndex(1)
+				.recordsPerPoll(RECORDS)
+				.lanHosts(2_000)
+				.wanPeers(20_000)
+				.zipfExponent(1.1)
+				.wanChurn(0.1)
+				.seed(42)
+				.build();
+		final InfluxDbClient dbClient = new InfluxDbClient(String.format("http://127.0.0.1:%d", influx.getAddress().getPort()), "u", "p", "db", "router");
+		final TrafficService service = TrafficService.builder()
+				.accountingClient(new AccountingClient(router.addRouter("router", source)))
+				.subnetMatcher(SubnetMatcher.compile(Collections.singletonList(source.getLanSubnet())))
+				.dbClient(dbClient)
+				.name("router")
+				.sleepTime(60_000)
+				.maxRetries(1)
+				.build();
+		// @formatter:on
+
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		try (service) {
+			// the polls are driven by the test thread, which allocation is measured
+			service.stop();
+			final long iterationsBefore = service.getIterationsCount();
+			final long writesBefore = writes.get();
+			final long batchesBefore = service.getWrittenBatchesCount();
+			for (int poll = 0; poll < WARM_UP_POLLS; poll++) {
+				service.run();
+			}
+			final long pointsBefore = points.get();
+			final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+			final long[] latencies = new long[POLLS];
+			final long start = System.nanoTime();
+			for (int poll = 0; poll < POLLS; poll++) {
+				final long pollStart = System.nanoTime();
+				service.run();
+				latencies[poll] = System.nanoTime() - pollStart;
+			}
+			final long elapsed = System.nanoTime() - start;
+			final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+			final long written = points.get() - pointsBefore;
+
+			assertEquals(WARM_UP_POLLS + POLLS, service.getIterationsCount() - iterationsBefore);
+			// every poll is written in batches of at most the batch size
+			assertEquals(service.getWrittenBatchesCount() - batchesBefore, writes.get() - writesBefore);
+			assertTrue(writes.get() - writesBefore >= WARM_UP_POLLS + POLLS);
+			assertTrue(maxWritePoints.get() <= dbClient.getBatchSize(), String.format("Write of %d points exceeds the batch size", maxWritePoints.get()));
+			assertEquals(0, service.getFailedBatchesCount());
+			Arrays.sort(latencies);
+			final long p90 = TimeUnit.NANOSECONDS.toMillis(latencies[POLLS * 9 / 10]);
+			final long pointsPerSecond = written * TimeUnit.SECONDS.toNanos(1) / elapsed;
+			final long bytesPerRecord = allocated / ((long) POLLS * RECORDS);
+			log.info(String.format("Poll of %d records: p90 %d ms, %d points/s, %d bytes allocated per record", RECORDS, p90, pointsPerSecond, bytesPerRecord));
+
+			assertTrue(p90 <= MAX_POLL_MILLIS, String.format("Poll latency p90 %d ms exceeds the budget of %d ms", p90, MAX_POLL_MILLIS));
+			assertTrue(pointsPerSecond >= MIN_POINTS_PER_SECOND, String.format("Throughput %d points/s is below the budget of %d points/s", pointsPerSecond, MIN_POINTS_PER_SECOND));
+			assertTrue(bytesPerRecord <= MAX_BYTES_PER_RECORD, String.format("Allocation %d bytes per record exceeds the budget of %d bytes", bytesPerRecord, MAX_BYTES_PER_RECORD));
+		}
+	}
+
+	private void write(final HttpExchange exchange) throws IOException {
+		InputStream body = exchange.getRequestBody();
+		if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			body = new GZIPInputStream(body);
+		}
+		long lines = 0;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					lines++;
+				}
+			}
+		}
+		points.addAndGet(lines);
+		maxWritePoints.accumulateAndGet(lines, Math::max);
+		writes.incrementAndGet();
+		respond(exchange, 204, null);
+	}
+
+	private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+		final byte[] bytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+}
@@ -0,0 +1,104 @@
+package com.a9ski.mikrotik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.message.StringMapMessage;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+import com.sun.net.httpserver.HttpServer;
+
+import inet.ipaddr.AddressStringException;
+
+class WarmUpTest {
+	@Test
+	void testRun() {
+		assertEquals(3, WarmUp.run(3, 60_000));
+		// the time limit stops the warm-up
+		assertEquals(0, WarmUp.run(1000, 0));
+		assertThrows(IllegalArgumentException.class, () -> WarmUp.run(-1, 0));
+	}
+
+	@Test
+	void testNothingWritten() throws IOException {
+		// a database at the default address must not see the synthetic polls
+		final HttpServer db;
+		try {
+			db = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 8086), 0);
+		} catch (BindException ex) {
+			assumeTrue(false, "Port 8086 in use");
+			return;
+		}
+		final AtomicInteger requests = new AtomicInteger();
+		db.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		});
+		db.start();
+		try {
+			assertEquals(3, WarmUp.run(3, 60_000));
+			assertEquals(0, requests.get());
+		} finally {
+			db.stop(0);
+		}
+	}
+
+	@Test
+	void testTimeToFirstPollLogged() throws AddressStringException, InterruptedException {
+		final List<StringMapMessage> messages = new CopyOnWriteArrayList<>();
+		final AbstractAppender appender = new AbstractAppender("first-poll", null, null, true, Property.EMPTY_ARRAY) {
+			@Override
+			public void append(LogEvent event) {
+				if (event.getMessage() instanceof StringMapMessage) {
+					messages.add((StringMapMessage) event.getMessage());
+				}
+			}
+		};
+		appender.start();
+		final Logger logger = (Logger) LogManager.getLogger(TrafficService.class);
+		logger.addAppender(appender);
+		WarmUp.run(3, 60_000);
+		// @formatter:off
+		final TrafficService service = TrafficService.builder()
+				.accountingClient(() -> Collections.emptyList())
+				.subnetMatcher(SubnetMatcher.compile(Collections.singletonList("10.0.0.0/8")))
+				.dbClient(Mockito.mock(InfluxDbClient.class))
+				.name("home")
+				.sleepTime(60_000)
+				.maxRetries(1)
+				.build();
+		// @formatter:on
+		try {
+			for (int i = 0; i < 500 && messages.stream().noneMatch(m -> "first_poll".equals(m.get("event"))); i++) {
+				Thread.sleep(10);
+			}
+		} finally {
+			service.close();
+			logger.removeAppender(appender);
+			appender.stop();
+		}
+		final StringMapMessage firstPoll = messages.stream().filter(m -> "first_poll".equals(m.get("event"))).findFirst().orElse(null);
+		assertTrue(firstPoll != null, messages.toString());
+		assertEquals("home", firstPoll.get("router"));
+		assertTrue(Long.parseLong(firstPoll.get("uptime_ms")) > 0);
+	}
+}
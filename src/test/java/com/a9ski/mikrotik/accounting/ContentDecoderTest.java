@@ -0,0 +1,75 @@
+package com.a9ski.mikrotik.accounting;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.accounting.ContentDecoder.CountingInputStream;
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+
+class ContentDecoderTest {
+
+	private static final byte[] PAGE = "10.0.0.1 8.8.8.8 100 2 * *\n8.8.8.8 10.0.0.1 1000 3 * *\n".repeat(20).getBytes(StandardCharsets.US_ASCII);
+
+	@Test
+	void testGzip() throws AccountingException, IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		compress(new GZIPOutputStream(out));
+		final byte[] gzip = out.toByteArray();
+		assertArrayEquals(PAGE, decode("gzip", gzip));
+		assertArrayEquals(PAGE, decode("X-GZIP", gzip));
+		// a relay serving a .gz file without a content encoding
+		assertArrayEquals(PAGE, decode(null, gzip));
+	}
+
+	@Test
+	void testDeflate() throws AccountingException, IOException {
+		final ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+		compress(new DeflaterOutputStream(zlib));
+		assertArrayEquals(PAGE, decode("deflate", zlib.toByteArray()));
+
+		final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		compress(new DeflaterOutputStream(raw, new Deflater(Deflater.DEFAULT_COMPRESSION, true)));
+		assertArrayEquals(PAGE, decode("deflate", raw.toByteArray()));
+	}
+
+	@Test
+	void testIdentity() throws AccountingException, IOException {
+		assertArrayEquals(PAGE, decode("identity", PAGE));
+		assertArrayEquals(new byte[0], decode(null, new byte[0]));
+		assertThrows(AccountingException.class, () -> decode("br", PAGE));
+	}
+
+	@Test
+	void testCountingInputStream() throws IOException {
+		try (CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(PAGE))) {
+			in.read();
+			in.readAllBytes();
+			assertEquals(PAGE.length, in.getCount());
+		}
+	}
+
+	private static void compress(final OutputStream out) throws IOException {
+		try (out) {
+			out.write(PAGE);
+		}
+	}
+
+	private static byte[] decode(final String encoding, final byte[] body) throws AccountingException, IOException {
+		try (InputStream in = ContentDecoder.decode(encoding, new ByteArrayInputStream(body))) {
+			return in.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package com.a9ski.mikrotik.accounting.parsers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.accounting.exceptions.IllegalRecordException;
+
+class JsonArrayParserTest {
+
+	private final JsonArrayParser parser = new JsonArrayParser();
+
+	@Test
+	void testParseRestResponse() throws IllegalRecordException {
+		final List<Map<String, String>> items = parser.parse("[{\".id\":\"*1\",\"name\":\"ether1\",\"rx-byte\":\"12345\",\"running\":true,\"comment\":null},\n {\"name\":\"wlan \\\"1\\\"\"}]");
+		assertEquals(2, items.size());
+		assertEquals("*1", items.get(0).get(".id"));
+		assertEquals("12345", items.get(0).get("rx-byte"));
+		assertEquals("true", items.get(0).get("running"));
+		assertNull(items.get(0).get("comment"));
+		assertEquals("wlan \"1\"", items.get(1).get("name"));
+	}
+
+	@Test
+	void testParseEmptyArray() throws IllegalRecordException {
+		assertEquals(Collections.emptyList(), parser.parse(" [ ] "));
+	}
+
+	@Test
+	void testParseInvalidContent() {
+		final IllegalRecordException ex = assertThrows(IllegalRecordException.class, () -> parser.parse("{\"name\":\"ether1\"}"));
+		assertEquals("Unexpected character '{' at position 0", ex.getMessage());
+		assertThrows(IllegalRecordException.class, () -> parser.parse("[{\"name\":\"ether1\""));
+	}
+}
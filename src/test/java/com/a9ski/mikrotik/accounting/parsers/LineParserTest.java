@@ -1,6 +1,7 @@
 package com.a9ski.mikrotik.accounting.parsers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
@@ -49,6 +50,17 @@ class LineParserTest {
 		assertEquals("Line with invalid number for field 'packet': '192.168.1.1 192.168.0.2 42 x * *'", ex.getMessage());
 	}
 
+	@Test
+	void testTryParse() {
+		final LineParser parser = new LineParser();
+		assertEquals(expectedRecord, parser.tryParse("192.168.1.1 192.168.0.2 42 6 * *"));
+		assertNull(parser.tryParse("192.168.1.1"));
+		assertNull(parser.tryParse("192.168.1.1 192.168.0.2 x 6 * *"));
+		assertNull(parser.tryParse("192.168.1.1 192.168.0.2 42 -6 * *"));
+		assertNull(parser.tryParse("192.168.1.1 192.168.0.2 42 99999999999999999999 * *"));
+		assertEquals(4, parser.getInvalidLines());
+	}
+
 	private AccountingRecord record(String srcIp, String dstIp, long bytes, long packets) {
 		// @formatter:off
 		return AccountingRecord.builder()
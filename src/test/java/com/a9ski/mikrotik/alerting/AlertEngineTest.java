@@ -0,0 +1,221 @@
+package com.a9ski.mikrotik.alerting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.arena.Ipv4;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.model.Alert;
+import com.sun.net.httpserver.HttpServer;
+
+import inet.ipaddr.AddressStringException;
+
+class AlertEngineTest {
+
+	private final PollArena arena = new PollArena();
+	private final List<Alert> alerts = new ArrayList<>();
+
+	@Test
+	void testRateThresholds() throws AddressStringException {
+		final AlertEngine engine = engine(AlertRules.builder().ipRate(1000).subnetRate(5000).cooldown(10_000).build());
+
+		poll(engine, 1000, "10.0.0.1 8.8.8.8 900 1 * *");
+		assertTrue(alerts.isEmpty());
+
+		poll(engine, 2000, "10.0.0.1 8.8.8.8 2000 1 * *", "10.0.0.2 8.8.8.8 500 1 * *");
+		assertEquals(1, alerts.size());
+		assertAlert(alerts.get(0), Alert.IP_RATE, "10.0.0.1", 2000, 1000);
+
+		// cooldown of the IP, the subnet and the WAN exceed their threshold
+		poll(engine, 3000, "10.0.0.1 8.8.8.8 3000 1 * *", "10.0.0.2 8.8.8.8 3000 1 * *");
+		assertEquals(4, alerts.size());
+		assertAlert(alerts.get(1), Alert.IP_RATE, "10.0.0.2", 3000, 1000);
+		assertAlert(alerts.get(2), Alert.SUBNET_RATE, "10.0.0.0/16", 6000, 5000);
+		assertAlert(alerts.get(3), Alert.SUBNET_RATE, "WAN", 6000, 5000);
+
+		// two seconds since the previous poll: half the rate
+		poll(engine, 5000, "10.0.0.1 8.8.8.8 4000 1 * *");
+		assertEquals(4, alerts.size());
+
+		poll(engine, 13_000, "10.0.0.1 8.8.8.8 9000 1 * *");
+		assertEquals(5, alerts.size());
+		assertAlert(alerts.get(4), Alert.IP_RATE, "10.0.0.1", 1125, 1000);
+		assertEquals(5, engine.getAlertsCount());
+	}
+
+	@Test
+	void testAnomaly() throws AddressStringException {
+		final AlertEngine engine = engine(AlertRules.builder().anomalySigma(3).anomalyMinRate(1000).anomalyWarmup(5).cooldown(1).build());
+
+		long now = 0;
+		for (int i = 0; i < 20; i++) {
+			now += 1000;
+			poll(engine, now, String.format("10.0.0.1 8.8.8.8 %d 1 * *", 1000 + (i % 2) * 100));
+		}
+		assertTrue(alerts.isEmpty());
+		final double mean = engine.getMeanRate(Ipv4.parse("10.0.0.1"));
+		assertTrue(mean > 1000 && mean < 1100, String.valueOf(mean));
+
+		now += 1000;
+		poll(engine, now, "10.0.0.1 8.8.8.8 5000 1 * *");
+		assertEquals(1, alerts.size());
+		assertEquals(Alert.ANOMALY, alerts.get(0).getRule());
+		assertEquals(5000, alerts.get(0).getRate());
+		assertTrue(alerts.get(0).getThreshold() < 5000);
+
+		// a new IP is not evaluated during the warm up
+		now += 1000;
+		poll(engine, now, "10.0.0.2 8.8.8.8 1000 1 * *");
+		now += 1000;
+		poll(engine, now, "10.0.0.2 8.8.8.8 100000 1 * *");
+		assertEquals(1, alerts.size());
+		assertTrue(Double.isNaN(engine.getMeanRate(Ipv4.parse("10.0.0.3"))));
+	}
+
+	@Test
+	void testForget() throws AddressStringException {
+		final AlertEngine engine = new AlertEngine("router", AlertRules.builder().anomalySigma(3).build(), alerts::add, 1000, 10_000);
+		final String[] records = new String[200];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = String.format("10.0.%d.%d 8.8.8.8 100 1 * *", i / 250, i % 250 + 1);
+		}
+		poll(engine, 1000, records);
+		// WAN IPs are not tracked
+		assertEquals(200, engine.getTrackedCount());
+
+		// 500 bytes in 5 seconds
+		poll(engine, 6000, "10.0.0.1 8.8.8.8 500 1 * *");
+		poll(engine, 12_000, "10.0.0.2 8.8.8.8 100 1 * *");
+		assertEquals(2, engine.getTrackedCount());
+		assertEquals(100, engine.getMeanRate(Ipv4.parse("10.0.0.1")), 0.01);
+		assertTrue(Double.isNaN(engine.getMeanRate(Ipv4.parse("10.0.0.3"))));
+	}
+
+	@Test
+	void testWebhook() throws IOException, InterruptedException {
+		final List<String> bodies = new CopyOnWriteArrayList<>();
+		final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/alerts", exchange -> {
+			try (InputStream in = exchange.getRequestBody()) {
+				bodies.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+			}
+			final int status = bodies.size() == 1 ? 204 : 500;
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+		});
+		server.start();
+		try {
+			final WebhookNotifier notifier = new WebhookNotifier(URI.create(String.format("http://127.0.0.1:%d/alerts", server.getAddress().getPort())));
+			notifier.notify(alert("home \"1\""));
+			waitFor(() -> notifier.getSentCount() == 1);
+			notifier.notify(alert("home"));
+			waitFor(() -> notifier.getFailedCount() == 1);
+
+			assertEquals(2, bodies.size());
+			assertEquals("{\"router\":\"home \\\"1\\\"\",\"rule\":\"ip-rate\",\"target\":\"10.0.0.1\",\"rate\":2000,\"threshold\":1000,\"timestamp\":1600000000000}", bodies.get(0));
+			assertEquals(0, notifier.getDroppedCount());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void testWebhookBusy() throws IOException, InterruptedException {
+		// accepts the connections but doesn't answer until the end of the test
+		final CountDownLatch release = new CountDownLatch(1);
+		final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/alerts", exchange -> {
+			try {
+				release.await(10, TimeUnit.SECONDS);
+				exchange.sendResponseHeaders(204, -1);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} finally {
+				exchange.close();
+			}
+		});
+		server.start();
+		try {
+			final WebhookNotifier notifier = new WebhookNotifier(URI.create(String.format("http://127.0.0.1:%d/alerts", server.getAddress().getPort())), 2);
+			final long start = System.nanoTime();
+			for (int i = 0; i < 5; i++) {
+				notifier.notify(alert("home"));
+			}
+			assertTrue(System.nanoTime() - start < 1_000_000_000L);
+			assertEquals(3, notifier.getDroppedCount());
+		} finally {
+			release.countDown();
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void testWebhookNotSent() {
+		// the HTTP client rejects the scheme before sending
+		final WebhookNotifier notifier = new WebhookNotifier(URI.create("ftp://127.0.0.1/alerts"), 1);
+		for (int i = 0; i < 3; i++) {
+			notifier.notify(alert("home"));
+		}
+		assertEquals(3, notifier.getFailedCount());
+		assertEquals(0, notifier.getDroppedCount());
+	}
+
+	private static Alert alert(final String router) {
+		// @formatter:off
+		return Alert.builder()
+				.router(router)
+				.rule(Alert.IP_RATE)
+				.target("10.0.0.1")
+				.rate(2000)
+				.threshold(1000)
+				.timestamp(1_600_000_000_000L)
+				.build();
+		// @formatter:on
+	}
+
+	private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+		for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+
+	private AlertEngine engine(final AlertRules rules) {
+		return new AlertEngine("router", rules, alerts::add, 1000, 3_600_000);
+	}
+
+	private void poll(final AlertEngine engine, final long now, final String... records) throws AddressStringException {
+		arena.reset();
+		for (final String record : records) {
+			final String[] fields = record.split(" ");
+			arena.addRecord(fields[0], fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+		}
+		SubnetMatcher.compile(Collections.singletonList("10.0.0.0/16")).classify(arena.getTraffic(), arena.getSubnetTotals());
+		engine.evaluate(now, arena.getTraffic(), arena.getSubnetTotals());
+	}
+
+	private static void assertAlert(final Alert alert, final String rule, final String target, final long rate, final long threshold) {
+		assertEquals("router", alert.getRouter());
+		assertEquals(rule, alert.getRule());
+		assertEquals(target, alert.getTarget());
+		assertEquals(rate, alert.getRate());
+		assertEquals(threshold, alert.getThreshold());
+	}
+}
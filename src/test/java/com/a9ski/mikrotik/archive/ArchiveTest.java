@@ -0,0 +1,211 @@
+package com.a9ski.mikrotik.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.TrafficSnapshot;
+import com.a9ski.mikrotik.arena.TrafficTable;
+
+class ArchiveTest {
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	// 2020-09-13T00:00:00Z
+	private static final long START = 1_599_955_200_000L;
+	private static final String[] IPS = { "192.168.88.10", "192.168.88.11", "8.8.8.8", "2001:db8::1", "fd00::10" };
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void testWriteAndScan() throws IOException {
+		try (ArchiveWriter writer = new ArchiveWriter(dir, "home", 7)) {
+			// two days, a poll every hour
+			for (int poll = 0; poll < 48; poll++) {
+				writer.append(snapshot(START + TimeUnit.HOURS.toMillis(poll), poll));
+			}
+		}
+		final List<Path> files = files();
+		assertEquals(2, files.size());
+		files.forEach(file -> assertTrue(file.getFileName().toString().endsWith(".tca"), file.toString()));
+
+		final ArchiveReader reader = ArchiveReader.open(files.get(0));
+		assertEquals("home", reader.getRouter());
+		assertEquals(IPS.length, reader.getDictionarySize());
+		assertEquals(24 * IPS.length, reader.getRows());
+		assertEquals((24 * IPS.length + 6) / 7, reader.getBlocksCount());
+		assertEquals(START, reader.getMinTime());
+		assertEquals(START + TimeUnit.HOURS.toMillis(23), reader.getMaxTime());
+
+		final TrafficTable traffic = new TrafficTable(16);
+		assertEquals(24 * IPS.length, reader.scan(START, START + DAY, traffic));
+		assertEquals(IPS.length, traffic.size());
+		final long[] key = new long[2];
+		for (int ip = 0; ip < IPS.length; ip++) {
+			Ipv6.parse(IPS[ip], key);
+			final int row = traffic.indexOf(key[Ipv6.HIGH], key[Ipv6.LOW]);
+			assertEquals(expectedSent(ip, 0, 24), traffic.bytesSentAt(row), IPS[ip]);
+			assertEquals(24L * (ip + 1), traffic.packetsSentAt(row));
+			assertEquals(24_000L * (ip + 1), traffic.bytesReceivedAt(row));
+			assertEquals(IPS[ip].startsWith("192.") || IPS[ip].startsWith("fd00"), traffic.isLanAt(row));
+		}
+
+		// a range within a block; no rows outside of the file
+		final TrafficTable hours = new TrafficTable(16);
+		assertEquals(3 * IPS.length, reader.scan(START + TimeUnit.HOURS.toMillis(5), START + TimeUnit.HOURS.toMillis(8), hours));
+		Ipv6.parse(IPS[0], key);
+		assertEquals(expectedSent(0, 5, 8), hours.bytesSentAt(hours.indexOf(key[Ipv6.HIGH], key[Ipv6.LOW])));
+		assertEquals(0, reader.scan(START + DAY, START + 2 * DAY, new TrafficTable(16)));
+	}
+
+	@Test
+	void testIpRange() throws IOException {
+		try (ArchiveWriter writer = new ArchiveWriter(dir, "home", 7)) {
+			for (int poll = 0; poll < 24; poll++) {
+				writer.append(snapshot(START + TimeUnit.HOURS.toMillis(poll), poll));
+			}
+		}
+		final ArchiveReader reader = ArchiveReader.open(files().get(0));
+		final long[] first = new long[2];
+		final long[] last = new long[2];
+
+		// the LAN subnet
+		Ipv6.parse("192.168.88.0", first);
+		Ipv6.parse("192.168.88.255", last);
+		final TrafficTable lan = new TrafficTable(16);
+		assertEquals(24 * 2, reader.scan(START, START + DAY, first, last, lan));
+		assertEquals(2, lan.size());
+		Ipv6.parse(IPS[1], first);
+		assertEquals(expectedSent(1, 0, 24), lan.bytesSentAt(lan.indexOf(first[Ipv6.HIGH], first[Ipv6.LOW])));
+
+		// a single IP in a time range
+		Ipv6.parse(IPS[3], first);
+		final TrafficTable single = new TrafficTable(16);
+		assertEquals(3, reader.scan(START + TimeUnit.HOURS.toMillis(5), START + TimeUnit.HOURS.toMillis(8), first, first, single));
+		assertEquals(expectedSent(3, 5, 8), single.bytesSentAt(single.indexOf(first[Ipv6.HIGH], first[Ipv6.LOW])));
+
+		// no IP of the file in the range
+		Ipv6.parse("10.0.0.0", first);
+		Ipv6.parse("10.255.255.255", last);
+		assertEquals(0, reader.scan(START, START + DAY, first, last, new TrafficTable(16)));
+		Ipv6.parse("fe80::", first);
+		Ipv6.parse("fe80::ffff", last);
+		assertEquals(0, reader.scan(START, START + DAY, first, last, new TrafficTable(16)));
+
+		Ipv6.parse(IPS[2], first);
+		final TrafficSnapshot totals = ArchiveReader.totals(dir, START, START + DAY, first, first);
+		assertEquals(1, totals.size());
+		assertEquals(expectedSent(2, 0, 24), totals.get(IPS[2]).getBytesSent());
+	}
+
+	@Test
+	void testTotals() throws IOException {
+		for (final String router : new String[] { "home", "office" }) {
+			try (ArchiveWriter writer = new ArchiveWriter(dir.resolve(router), router)) {
+				for (int poll = 0; poll < 48; poll++) {
+					writer.append(snapshot(START + TimeUnit.HOURS.toMillis(poll), poll));
+				}
+				writer.append(TrafficSnapshot.EMPTY);
+			}
+		}
+		Files.write(dir.resolve("home").resolve("broken.tca"), new byte[] { 1, 2, 3 });
+
+		final TrafficSnapshot totals = ArchiveReader.totals(dir, START + DAY, START + 2 * DAY);
+		assertEquals(IPS.length, totals.size());
+		assertEquals(2 * expectedSent(0, 24, 48), totals.get(IPS[0]).getBytesSent());
+		assertEquals(START + 2 * DAY, totals.getTimestamp());
+		assertEquals(0, ArchiveReader.totals(dir, START + 2 * DAY, START + 3 * DAY).size());
+	}
+
+	@Test
+	void testPartFile() throws IOException {
+		final ArchiveWriter writer = new ArchiveWriter(dir, "home");
+		writer.append(snapshot(START, 0));
+		// an incomplete file is not read
+		assertEquals(0, files().size());
+		assertEquals(0, ArchiveReader.totals(dir, START, START + DAY).size());
+		writer.close();
+		assertEquals(1, files().size());
+		assertFalse(Files.list(dir).anyMatch(file -> file.toString().endsWith(".part")));
+		assertThrows(IOException.class, () -> {
+			final Path broken = dir.resolve("broken.tca");
+			Files.write(broken, new byte[32]);
+			ArchiveReader.open(broken);
+		});
+	}
+
+	@Test
+	void testFailedWrite() throws IOException {
+		final AtomicBoolean full = new AtomicBoolean();
+		try (ArchiveWriter writer = new ArchiveWriter(dir, "home", 7) {
+			@Override
+			protected OutputStream openFile(final Path file) throws IOException {
+				return new FilterOutputStream(super.openFile(file)) {
+					@Override
+					public void write(final int b) throws IOException {
+						if (full.get()) {
+							throw new IOException("No space left on device");
+						}
+						super.write(b);
+					}
+				};
+			}
+		}) {
+			writer.append(snapshot(START, 0));
+			full.set(true);
+			// the block is full in the second poll
+			assertThrows(IOException.class, () -> writer.append(snapshot(START + TimeUnit.HOURS.toMillis(1), 1)));
+			assertEquals(0, Files.list(dir).count());
+			full.set(false);
+			writer.append(snapshot(START + TimeUnit.HOURS.toMillis(2), 2));
+			writer.append(snapshot(START + TimeUnit.HOURS.toMillis(3), 3));
+		}
+		// the rows of the abandoned file are lost
+		final List<Path> files = files();
+		assertEquals(1, files.size());
+		final ArchiveReader reader = ArchiveReader.open(files.get(0));
+		assertEquals(2 * IPS.length, reader.getRows());
+		assertEquals(START + TimeUnit.HOURS.toMillis(2), reader.getMinTime());
+	}
+
+	private static long expectedSent(final int ip, final int fromPoll, final int toPoll) {
+		long sent = 0;
+		for (int poll = fromPoll; poll < toPoll; poll++) {
+			sent += 1000L * (ip + 1) + poll * 300L;
+		}
+		return sent;
+	}
+
+	private static TrafficSnapshot snapshot(final long timestamp, final int poll) {
+		final TrafficTable table = new TrafficTable(16);
+		final long[] key = new long[2];
+		for (int ip = 0; ip < IPS.length; ip++) {
+			Ipv6.parse(IPS[ip], key);
+			table.addSent(key[Ipv6.HIGH], key[Ipv6.LOW], 1000L * (ip + 1) + poll * 300L, ip + 1);
+			table.addReceived(key[Ipv6.HIGH], key[Ipv6.LOW], 1000L * (ip + 1), 1);
+			table.setLanAt(table.indexOf(key[Ipv6.HIGH], key[Ipv6.LOW]), IPS[ip].startsWith("192.") || IPS[ip].startsWith("fd00"));
+		}
+		return TrafficSnapshot.of(timestamp, table);
+	}
+
+	private List<Path> files() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(file -> file.toString().endsWith(".tca")).sorted().collect(Collectors.toList());
+		}
+	}
+}
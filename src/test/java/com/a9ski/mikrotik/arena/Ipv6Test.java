@@ -0,0 +1,48 @@
+package com.a9ski.mikrotik.arena;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class Ipv6Test {
+
+	private final long[] key = new long[2];
+
+	@Test
+	void testParse() {
+		assertTrue(Ipv6.parse("2001:DB8::1", key));
+		assertEquals(0x20010DB800000000L, key[Ipv6.HIGH]);
+		assertEquals(1L, key[Ipv6.LOW]);
+		assertTrue(Ipv6.parse("192.168.1.1", key));
+		assertEquals(0L, key[Ipv6.HIGH]);
+		assertEquals(0xC0A80101L, key[Ipv6.LOW]);
+		// IPv4-mapped addresses are keyed as IPv4
+		assertTrue(Ipv6.parse("::ffff:192.168.1.1", key));
+		assertEquals(0xC0A80101L, key[Ipv6.LOW]);
+		// the zone is ignored
+		assertTrue(Ipv6.parse("fe80::1%ether1", key));
+		assertEquals("fe80::1", Ipv6.format(key[Ipv6.HIGH], key[Ipv6.LOW]));
+	}
+
+	@Test
+	void testFormat() {
+		for (String ip : Arrays.asList("2001:db8::1", "1:0:0:1::1", "2001:db8::", "ff02::1:ff00:0", "1:2:3:4:5:6:7:8", "2001:db8:0:1::1", "64:ff9b::c000:201")) {
+			assertTrue(Ipv6.parse(ip, key), ip);
+			assertEquals(ip, Ipv6.format(key[Ipv6.HIGH], key[Ipv6.LOW]));
+		}
+		// the first longest run of zero groups is compressed
+		assertTrue(Ipv6.parse("2001:0db8:0000:0000:0001:0000:0000:0001", key));
+		assertEquals("2001:db8::1:0:0:1", Ipv6.format(key[Ipv6.HIGH], key[Ipv6.LOW]));
+	}
+
+	@Test
+	void testInvalid() {
+		for (String invalid : Arrays.asList("", ":", "::", "::1", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2::3", "12345::1", "1:2:3:4:5:6:7::8", ":1::", "1:", "g::1", "::ffff:1.2.3")) {
+			assertFalse(Ipv6.parse(invalid, key), invalid);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.a9ski.mikrotik.arena;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.incremental.IncrementalFilter;
+import com.a9ski.mikrotik.influxdb.LineProtocolFormatter;
+
+import inet.ipaddr.AddressStringException;
+
+class PollArenaTest {
+
+	private final PollArena arena = new PollArena();
+
+	@Test
+	void testParseBody() throws IOException {
+		readBody("10.0.0.1 8.8.8.8 100 2 * *\n8.8.8.8 10.0.0.1 1000 3 * *\n\nnot a line\n10.0.0.1 8.8.4.4 50 1 * *\n10.0.0.2 8.8.8.8 7 1");
+		arena.parseBody();
+		assertEquals(4, arena.getRecords());
+		assertEquals(1, arena.getInvalidRecords());
+
+		final TrafficTable traffic = arena.getTraffic();
+		assertEquals(4, traffic.size());
+		final int row = traffic.indexOf(Ipv4.parse("10.0.0.1"));
+		assertEquals(150, traffic.bytesSentAt(row));
+		assertEquals(3, traffic.packetsSentAt(row));
+		assertEquals(1000, traffic.bytesReceivedAt(row));
+		assertEquals(3, traffic.packetsReceivedAt(row));
+		final int google = traffic.indexOf(Ipv4.parse("8.8.8.8"));
+		assertEquals(107, traffic.bytesReceivedAt(google));
+
+		arena.reset();
+		assertEquals(0, arena.getTraffic().size());
+		assertEquals(-1, traffic.indexOf(Ipv4.parse("10.0.0.1")));
+	}
+
+	@Test
+	void testIpv4() {
+		assertEquals(0xC0A80101L, Ipv4.parse("192.168.1.1"));
+		assertEquals(0xFFFFFFFFL, Ipv4.parse("255.255.255.255"));
+		assertEquals("10.20.30.40", Ipv4.format(Ipv4.parse("10.20.30.40")));
+		for (String invalid : Arrays.asList("", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.", "fe80::1")) {
+			assertEquals(Ipv4.INVALID, Ipv4.parse(invalid), invalid);
+		}
+	}
+
+	@Test
+	void testIpv6Aggregation(@TempDir Path dir) throws IOException, AddressStringException {
+		final Path mapping = dir.resolve("ipv6.txt");
+		Files.writeString(mapping, "# address host\n2001:db8:1:2::99 10.0.0.5\ninvalid line\n");
+		final SubnetMatcher subnets = SubnetMatcher.compile(Arrays.asList("10.0.0.0/24", "2001:db8:1::/48"));
+		final Ipv6Rollup rollup = new Ipv6Rollup(subnets, 64, mapping);
+		assertEquals(1, rollup.size());
+		arena.setRollup(rollup);
+
+		// @formatter:off
+		readBody("2001:db8:1:2:a:b:c:d 2606:4700::1111 100 1 * *\n"
+				+ "2001:db8:1:2:e:f:1:2 2606:4700::1111 50 1 * *\n"
+				+ "2001:db8:1:3::7 2001:db8:1:2::1 10 1 * *\n"
+				+ "2001:db8:1:2::99 2606:4700::1111 5 1 * *\n"
+				+ "10.0.0.5 8.8.8.8 1 1 * *\n");
+		// @formatter:on
+		arena.parseBody();
+		arena.addRecord("2606:4700::1111", "2001:db8:1:3::8", 1000, 2);
+		classify(subnets);
+		assertEquals(6, arena.getRecords());
+
+		final TrafficSnapshot snapshot = TrafficSnapshot.of(1000, arena.getTraffic());
+		assertEquals(Arrays.asList("8.8.8.8", "10.0.0.5", "2001:db8:1:2::", "2001:db8:1:3::", "2606:4700::1111"), new ArrayList<>(snapshot.toMap().keySet()));
+		assertEquals(150, snapshot.get("2001:db8:1:2::").getBytesSent());
+		assertEquals(10, snapshot.get("2001:db8:1:2::").getBytesReceived());
+		assertEquals(1000, snapshot.get("2001:db8:1:3::").getBytesReceived());
+		assertEquals(155, snapshot.get("2606:4700::1111").getBytesReceived());
+		// the mapped address is aggregated with the IPv4 address of the host
+		assertEquals(6, snapshot.get("10.0.0.5").getBytesSent());
+
+		final SubnetTotals totals = arena.getSubnetTotals();
+		assertEquals(6, totals.bytesSentAt(0));
+		assertEquals(160, totals.bytesSentAt(1));
+		assertEquals(1010, totals.bytesReceivedAt(1));
+		assertEquals(1000, totals.bytesSentAt(2));
+
+		final LineProtocolFormatter formatter = new LineProtocolFormatter("router");
+		final StringBuilder text = new StringBuilder();
+		formatter.appendPoints(text, 1000, arena.getTraffic(), Collections.emptyList());
+		assertTrue(text.toString().contains("IPTrafficData,ip=2001:db8:1:2::,routerIp=router,type=LAN bytesReceived=10i,bytesSent=150i"), text.toString());
+		assertTrue(text.toString().contains("IPTrafficData,ip=2606:4700::1111,routerIp=router,type=WAN"), text.toString());
+	}
+
+	@Test
+	void testLineProtocol() throws IOException, AddressStringException {
+		readBody("10.0.0.1 8.8.8.8 100 2 * *\n");
+		arena.parseBody();
+		classify(SubnetMatcher.compile(Collections.singletonList("10.0.0.0/8")));
+		final LineProtocolFormatter formatter = new LineProtocolFormatter("home router");
+
+		final StringBuilder text = new StringBuilder();
+		assertEquals(2, formatter.appendPoints(text, 1000, arena.getTraffic(), Collections.emptyList()));
+		// @formatter:off
+		assertEquals("IPTrafficData,ip=10.0.0.1,routerIp=home\\ router,type=LAN bytesReceived=0i,bytesSent=100i,isWan=0i,packetsReceived=0i,packetsSent=2i 1000\n"
+				+ "IPTrafficData,ip=8.8.8.8,routerIp=home\\ router,type=WAN bytesReceived=100i,bytesSent=0i,isWan=1i,packetsReceived=2i,packetsSent=0i 1000\n", text.toString());
+		// @formatter:on
+	}
+
+	@Test
+	void testSubnetTotals() throws IOException, AddressStringException {
+		readBody("10.0.0.1 8.8.8.8 100 2 * *\n8.8.8.8 10.0.0.1 1000 3 * *\n10.1.0.5 10.0.0.1 10 1 * *\n10.1.0.5 1.1.1.1 20 1 * *\n");
+		arena.parseBody();
+		classify(SubnetMatcher.compile(Arrays.asList("10.0.0.0/16", "10.1.0.0/16")));
+
+		final SubnetTotals totals = arena.getSubnetTotals();
+		assertEquals(3, totals.size());
+		assertEquals("10.0.0.0/16", totals.nameAt(0));
+		assertEquals(100, totals.bytesSentAt(0));
+		assertEquals(1010, totals.bytesReceivedAt(0));
+		assertEquals(4, totals.packetsReceivedAt(0));
+		assertEquals("10.1.0.0/16", totals.nameAt(1));
+		assertEquals(30, totals.bytesSentAt(1));
+		assertEquals(0, totals.bytesReceivedAt(1));
+		assertEquals(SubnetTotals.WAN, totals.nameAt(2));
+		assertTrue(totals.isWanAt(2));
+		assertEquals(1000, totals.bytesSentAt(2));
+		assertEquals(120, totals.bytesReceivedAt(2));
+
+		final LineProtocolFormatter formatter = new LineProtocolFormatter("router");
+		final StringBuilder text = new StringBuilder();
+		assertEquals(3, formatter.appendPoints(text, 1000, totals));
+		// @formatter:off
+		assertEquals("SubnetTrafficData,routerIp=router,subnet=10.0.0.0/16,type=LAN bytesReceived=1010i,bytesSent=100i,packetsReceived=4i,packetsSent=2i 1000\n"
+				+ "SubnetTrafficData,routerIp=router,subnet=10.1.0.0/16,type=LAN bytesReceived=0i,bytesSent=30i,packetsReceived=0i,packetsSent=2i 1000\n"
+				+ "SubnetTrafficData,routerIp=router,subnet=WAN,type=WAN bytesReceived=120i,bytesSent=1000i,packetsReceived=3i,packetsSent=3i 1000\n", text.toString());
+		// @formatter:on
+	}
+
+	@Test
+	void testSnapshot() throws IOException, AddressStringException {
+		readBody("10.0.0.1 200.1.1.1 100 2 * *\n8.8.8.8 10.0.0.1 1000 3 * *\n10.0.0.2 8.8.8.8 7 1 * *\n");
+		arena.parseBody();
+		arena.getTraffic().row(Ipv4.parse("10.0.0.3"));
+		classify(SubnetMatcher.compile(Collections.singletonList("10.0.0.0/8")));
+
+		final TrafficSnapshot snapshot = TrafficSnapshot.of(1000, arena.getTraffic());
+		arena.reset();
+
+		assertEquals(1000, snapshot.getTimestamp());
+		assertEquals(Arrays.asList("8.8.8.8", "10.0.0.1", "10.0.0.2", "200.1.1.1"), new ArrayList<>(snapshot.toMap().keySet()));
+		assertEquals(100, snapshot.get("200.1.1.1").getBytesReceived());
+		assertEquals(1000, snapshot.get("10.0.0.1").getBytesReceived());
+		assertEquals(100, snapshot.get("10.0.0.1").getBytesSent());
+		assertTrue(snapshot.isLanAt(snapshot.indexOf(Ipv4.parse("10.0.0.2"))));
+		assertFalse(snapshot.isLanAt(snapshot.indexOf(Ipv4.parse("8.8.8.8"))));
+		// no traffic
+		assertNull(snapshot.get("10.0.0.3"));
+		assertNull(snapshot.get("invalid"));
+		assertEquals(0, TrafficSnapshot.EMPTY.size());
+	}
+
+	@Test
+	void testSteadyStatePollDoesNotAllocate() throws IOException, AddressStringException {
+		final StringBuilder page = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			page.append("10.0.").append(i % 250).append('.').append(i % 7).append(' ');
+			page.append(i % 3).append('.').append(i % 11).append(".1.").append(i % 200).append(' ');
+			page.append(1000 + i).append(' ').append(1 + i % 10).append(" * *\n");
+		}
+		final byte[] body = page.toString().getBytes(StandardCharsets.US_ASCII);
+		final ByteArrayInputStream in = new ByteArrayInputStream(body);
+		final SubnetMatcher subnets = SubnetMatcher.compile(Collections.singletonList("10.0.0.0/16"));
+		final IncrementalFilter filter = new IncrementalFilter(60_000, 300_000);
+		final LineProtocolFormatter formatter = new LineProtocolFormatter("router");
+
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		long allocated = 0;
+		for (int poll = 0; poll < 200; poll++) {
+			if (poll == 100) {
+				// warmed up: the buffers reached their size and the code is compiled
+				allocated = threads.getThreadAllocatedBytes(threadId);
+			}
+			in.reset();
+			arena.reset();
+			arena.readBody(in);
+			arena.parseBody();
+			filter.filter(poll * 10_000L, arena.getTraffic());
+			classify(subnets);
+			formatter.appendPoints(arena.getText(), poll * 10_000L, arena.getTraffic(), Collections.emptyList());
+			formatter.appendPoints(arena.getText(), poll * 10_000L, arena.getSubnetTotals());
+		}
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+
+		assertEquals(5000, arena.getRecords());
+		assertTrue(arena.getText().length() > 0);
+		// a single record costs about 100 bytes with the string based pipeline
+		assertTrue(allocated / 100 < 1024, String.format("Allocated %d bytes per poll", allocated / 100));
+	}
+
+	private void readBody(String body) throws IOException {
+		arena.reset();
+		arena.readBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	private void classify(SubnetMatcher subnets) {
+		subnets.classify(arena.getTraffic(), arena.getSubnetTotals());
+	}
+}
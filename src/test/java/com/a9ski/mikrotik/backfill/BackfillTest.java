@@ -0,0 +1,128 @@
+package com.a9ski.mikrotik.backfill;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+import com.a9ski.mikrotik.model.BackfillResult;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+
+import inet.ipaddr.AddressStringException;
+
+class BackfillTest {
+
+	@TempDir
+	Path captureDir;
+
+	private final List<String> batches = new CopyOnWriteArrayList<>();
+	private final AtomicInteger failures = new AtomicInteger();
+	private InfluxDbClient dbClient;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		dbClient = spy(new InfluxDbClient("http://127.0.0.1:8086", "u", "p", "db", "router"));
+		doAnswer(invocation -> {
+			if (failures.getAndDecrement() > 0) {
+				throw new IllegalStateException("Database unavailable");
+			}
+			batches.add(invocation.getArgument(0));
+			return null;
+		}).when(dbClient).write(anyString(), anyInt());
+
+		for (int i = 1; i <= 20; i++) {
+			final String body = String.format("10.0.0.%d 8.8.8.8 %d 1 * *\n", i, i * 100);
+			if (i % 2 == 0) {
+				try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(captureDir.resolve(i * 10_000 + ".cgi.gz")))) {
+					out.write(body.getBytes(StandardCharsets.US_ASCII));
+				}
+			} else {
+				Files.writeString(captureDir.resolve(i * 10_000 + ".cgi"), body);
+			}
+		}
+		// cannot be read
+		Files.createDirectory(captureDir.resolve("5000.cgi"));
+		Files.writeString(captureDir.resolve("notes.txt"), "not a poll");
+	}
+
+	@Test
+	void testBackfill() throws IOException, InterruptedException, AddressStringException {
+		failures.set(1);
+		final BackfillResult result = backfill(0).run();
+
+		assertEquals(20, result.getPolls());
+		assertEquals(1, result.getInvalidPolls());
+		assertEquals(20, result.getRecords());
+		// two IPs, the LAN total and the WAN total of every poll
+		assertEquals(80, result.getPoints());
+		assertEquals(0, result.getFailedBatches());
+		assertEquals(result.getBatches(), batches.size());
+		assertTrue(batches.size() >= 3);
+
+		final String lines = String.join("", batches);
+		for (int i = 1; i <= 20; i++) {
+			final String point = String.format("IPTrafficData,ip=10.0.0.%d,routerIp=router,type=LAN bytesReceived=0i,bytesSent=%di,isWan=0i,packetsReceived=0i,packetsSent=1i %d\n", i,
+					i * 100, i * 10_000);
+			assertTrue(lines.contains(point), point);
+		}
+	}
+
+	@Test
+	void testRateLimit() throws IOException, InterruptedException, AddressStringException {
+		final BackfillResult result = backfill(200).run();
+		assertEquals(80, result.getPoints());
+		// the last batch may be submitted after 80 points at 200 points/s
+		assertTrue(result.getElapsedMillis() >= 300, String.format("Finished in %d ms", result.getElapsedMillis()));
+	}
+
+	@Test
+	void testTimestamps() {
+		assertEquals(1000, Backfill.timestampOf(Path.of("1000.cgi")));
+		assertEquals(1000, Backfill.timestampOf(Path.of("1000.cgi.gz")));
+		assertEquals(0, Backfill.timestampOf(Path.of("notes.txt")));
+		assertEquals(0, Backfill.timestampOf(Path.of("x.cgi")));
+	}
+
+	@Test
+	void testRouterIpWithSeveralCaptureDirs() {
+		final BackfillCommand command = new BackfillCommand();
+		JCommander.newBuilder().addObject(command).build()
+				.parse("--capture-dir", "a", "b", "-r", "10.0.0.1", "-d", "http://127.0.0.1:8086", "-u", "u", "-p", "p", "-db", "db", "-n", "10.0.0.0/24");
+		assertThrows(ParameterException.class, command::run);
+	}
+
+	private Backfill backfill(long maxPointsPerSecond) throws AddressStringException {
+		// @formatter:off
+		return Backfill.builder()
+				.captureDir(captureDir)
+				.subnetMatcher(SubnetMatcher.compile(Collections.singletonList("10.0.0.0/24")))
+				.dbClient(dbClient)
+				.parsers(3)
+				.writers(2)
+				.batchSize(30)
+				.maxPointsPerSecond(maxPointsPerSecond)
+				.build();
+		// @formatter:on
+	}
+}
@@ -0,0 +1,298 @@
+package com.a9ski.mikrotik.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import com.a9ski.mikrotik.PollScheduler;
+import com.a9ski.mikrotik.RouterManager;
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.TrafficService;
+import com.a9ski.mikrotik.TrafficServiceFactory;
+import com.a9ski.mikrotik.config.DatabaseConfig;
+import com.a9ski.mikrotik.config.RouterConfig;
+import com.a9ski.mikrotik.config.ServiceConfig;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+
+import inet.ipaddr.AddressStringException;
+
+class ClusterCoordinatorTest {
+	private static final long LEASE = 30_000;
+
+	@TempDir
+	Path dir;
+
+	private final List<ClusterCoordinator> nodes = new ArrayList<>();
+	private final Map<ClusterCoordinator, RouterManager> managers = new HashMap<>();
+
+	@AfterEach
+	void tearDown() {
+		nodes.forEach(ClusterCoordinator::close);
+	}
+
+	@Test
+	void testHashRing() {
+		final HashRing ring = new HashRing(Arrays.asList("a", "b", "c"));
+		assertEquals(3 * HashRing.DEFAULT_VIRTUAL_NODES, ring.size());
+		final Map<String, Integer> counts = new TreeMap<>();
+		final Map<String, String> owners = new HashMap<>();
+		for (int i = 0; i < 3000; i++) {
+			final String owner = ring.owner("router" + i);
+			owners.put("router" + i, owner);
+			counts.merge(owner, 1, Integer::sum);
+		}
+		assertEquals(3, counts.size());
+		counts.values().forEach(count -> assertTrue(count > 700 && count < 1300, counts.toString()));
+
+		// only the routers of the leaving node move
+		final HashRing smaller = new HashRing(Arrays.asList("c", "a"));
+		owners.forEach((router, owner) -> {
+			if (!"b".equals(owner)) {
+				assertEquals(owner, smaller.owner(router));
+			}
+		});
+		assertNull(new HashRing(Collections.emptyList()).owner("router"));
+	}
+
+	@Test
+	void testLeases() throws IOException {
+		final ClusterDirectory directory = new ClusterDirectory(dir, 1000);
+		assertTrue(directory.acquire("192.168.88.1", "a", 10_000));
+		assertFalse(directory.acquire("192.168.88.1", "b", 10_500));
+		assertTrue(directory.acquire("192.168.88.1", "a", 10_700));
+		// not renewed close to the expiry
+		assertFalse(directory.acquire("192.168.88.1", "a", 11_600));
+		assertEquals("a", directory.getHolder("192.168.88.1", 11_700));
+
+		// expired
+		assertFalse(directory.acquire("192.168.88.1", "b", 11_700));
+		assertTrue(directory.acquire("192.168.88.1", "b", 11_701));
+		// an expired lease is not renewed by its former holder
+		assertFalse(directory.acquire("192.168.88.1", "a", 11_702));
+
+		directory.release("192.168.88.1", "a");
+		assertEquals("b", directory.getHolder("192.168.88.1", 11_703));
+		directory.release("192.168.88.1", "b");
+		assertNull(directory.getHolder("192.168.88.1", 11_703));
+		assertTrue(directory.acquire("192.168.88.1", "a", 11_704));
+
+		directory.heartbeat("a", 20_000);
+		directory.heartbeat("node/b", 20_500);
+		assertEquals(new HashSet<>(Arrays.asList("a", "node/b")), directory.getLiveNodes(21_000));
+		assertEquals(Collections.singleton("node/b"), directory.getLiveNodes(21_001));
+		directory.leave("node/b");
+		assertTrue(directory.getLiveNodes(21_001).isEmpty());
+	}
+
+	@Test
+	void testSplitAndTakeOver() throws IOException {
+		final ServiceConfig config = config(12);
+		final ClusterCoordinator a = node("a", config);
+		final ClusterCoordinator b = node("b", config);
+		final ClusterCoordinator c = node("c", config);
+
+		long now = System.currentTimeMillis();
+		// the first node takes all routers, until the others join
+		a.tick(now);
+		assertEquals(12, managers.get(a).getRouterNames().size());
+		b.tick(now);
+		c.tick(now);
+		assertTrue(managers.get(b).getRouterNames().isEmpty());
+
+		// the first node releases the routers of the others
+		for (int i = 0; i < 2; i++) {
+			now += LEASE / 3;
+			for (final ClusterCoordinator node : nodes) {
+				node.tick(now);
+				assertPolledOnce(config);
+			}
+		}
+		assertAllPolled(config);
+		nodes.forEach(node -> assertFalse(managers.get(node).getRouterNames().isEmpty()));
+		final Set<String> routersOfA = managers.get(a).getRouterNames();
+		routersOfA.forEach(router -> assertTrue(a.isHeld(router, System.currentTimeMillis())));
+		assertFalse(b.isHeld(routersOfA.iterator().next(), System.currentTimeMillis()));
+
+		// the routers of a crashed node are taken over after the lease timeout
+		managers.get(a).close();
+		nodes.remove(a);
+		now += LEASE / 3;
+		b.tick(now);
+		assertEquals(routersOfA.size(), config.getRouters().size() - managers.get(b).getRouterNames().size() - managers.get(c).getRouterNames().size());
+		now += LEASE - LEASE / 3 + 1;
+		b.tick(now);
+		c.tick(now);
+		assertAllPolled(config);
+
+		// a closed node releases its routers immediately
+		c.close();
+		nodes.remove(c);
+		now += 1;
+		b.tick(now);
+		assertEquals(12, managers.get(b).getRouterNames().size());
+	}
+
+	@Test
+	void testNoConcurrentPolls() throws IOException, InterruptedException {
+		// the polls are longer than the stop timeout of the services
+		final ServiceConfig config = config(6, 10);
+		final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+		final Map<String, Set<String>> polled = new ConcurrentHashMap<>();
+		final AtomicInteger concurrentPolls = new AtomicInteger();
+		final PollRecorder recorder = (node, router) -> {
+			final AtomicInteger polls = running.computeIfAbsent(router, r -> new AtomicInteger());
+			if (polls.incrementAndGet() > 1) {
+				concurrentPolls.incrementAndGet();
+			}
+			polled.computeIfAbsent(node, n -> ConcurrentHashMap.newKeySet()).add(router);
+			try {
+				Thread.sleep(300);
+			} finally {
+				polls.decrementAndGet();
+			}
+		};
+		final ClusterCoordinator a = new ClusterCoordinator(dir, "a", 600, 350);
+		final ClusterCoordinator b = new ClusterCoordinator(dir, "b", 600, 350);
+		// a poll of a shared scheduler is not interrupted by the stop of its service
+		try (PollScheduler schedulerA = new PollScheduler(PollScheduler.Mode.PLATFORM, 6); PollScheduler schedulerB = new PollScheduler(PollScheduler.Mode.PLATFORM, 6)) {
+			a.start(new RouterManager(factory(a, "a", schedulerA, recorder)), config);
+			waitFor(() -> polled.getOrDefault("a", Collections.emptySet()).size() == 6);
+
+			// the routers of b move from a, while a polls them
+			b.start(new RouterManager(factory(b, "b", schedulerB, recorder)), config);
+			waitFor(() -> polled.containsKey("b") && a.getHeldRouters().size() < 6);
+
+			// b takes over all routers of a
+			a.close();
+			polled.remove("b");
+			waitFor(() -> polled.getOrDefault("b", Collections.emptySet()).size() == 6);
+		} finally {
+			a.close();
+			b.close();
+		}
+		assertEquals(0, concurrentPolls.get());
+	}
+
+	private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timeout");
+			Thread.sleep(10);
+		}
+	}
+
+	private ClusterCoordinator node(final String name, final ServiceConfig config) throws IOException {
+		final ClusterCoordinator node = new ClusterCoordinator(dir, name, LEASE);
+		final RouterManager manager = new RouterManager(factory(node));
+		node.join(manager, config);
+		nodes.add(node);
+		managers.put(node, manager);
+		return node;
+	}
+
+	private void assertPolledOnce(final ServiceConfig config) {
+		for (final String router : config.getRouters().keySet()) {
+			final long running = nodes.stream().filter(node -> managers.get(node).getRouterNames().contains(router)).count();
+			assertTrue(running <= 1, router);
+		}
+	}
+
+	private void assertAllPolled(final ServiceConfig config) {
+		for (final String router : config.getRouters().keySet()) {
+			assertEquals(1, nodes.stream().filter(node -> managers.get(node).getRouterNames().contains(router)).count(), router);
+		}
+	}
+
+	private static TrafficServiceFactory factory(final PollGuard guard, final String node, final PollScheduler scheduler, final PollRecorder recorder) {
+		return new TrafficServiceFactory(null, null, null, null, null, null) {
+			@Override
+			public TrafficService create(RouterConfig config) throws AddressStringException {
+				// @formatter:off
+				return TrafficService.builder()
+						.accountingClient(() -> {
+							recorder.poll(node, config.getName());
+							return Collections.emptyList();
+						})
+						.subnetMatcher(SubnetMatcher.compile(config.getSubnets()))
+						.dbClient(Mockito.mock(InfluxDbClient.class))
+						.pollGuard(guard)
+						.scheduler(scheduler)
+						.name(config.getName())
+						.sleepTime(config.getInterval())
+						.maxRetries(1)
+						.deferStart(true)
+						.build();
+				// @formatter:on
+			}
+		};
+	}
+
+	private static TrafficServiceFactory factory(final PollGuard guard) {
+		return new TrafficServiceFactory(null, null, null, null, null, null) {
+			@Override
+			public TrafficService create(RouterConfig config) throws AddressStringException {
+				// @formatter:off
+				return TrafficService.builder()
+						.accountingClient(() -> Collections.emptyList())
+						.subnetMatcher(SubnetMatcher.compile(config.getSubnets()))
+						.dbClient(Mockito.mock(InfluxDbClient.class))
+						.pollGuard(guard)
+						.name(config.getName())
+						.sleepTime(config.getInterval())
+						.maxRetries(1)
+						.deferStart(true)
+						.build();
+				// @formatter:on
+			}
+		};
+	}
+
+	private static ServiceConfig config(final int routers) {
+		return config(routers, 60_000);
+	}
+
+	private static ServiceConfig config(final int routers, final long interval) {
+		final Map<String, RouterConfig> map = new TreeMap<>();
+		for (int i = 0; i < routers; i++) {
+			// @formatter:off
+			map.put("r" + i, RouterConfig.builder()
+					.name("r" + i)
+					.host("10.0.0." + i)
+					.subnets(Collections.singletonList("10.0.0.0/8"))
+					.interval(interval)
+					.database(DatabaseConfig.builder().url("http://127.0.0.1:8086").user("u").password("p").name("db").build())
+					.build());
+			// @formatter:on
+		}
+		return ServiceConfig.builder().routers(map).build();
+	}
+
+	/**
+	 * Records a poll of a router by a node.
+	 */
+	@FunctionalInterface
+	private interface PollRecorder {
+		void poll(String node, String router) throws InterruptedException;
+	}
+}
@@ -0,0 +1,85 @@
+package com.a9ski.mikrotik.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+
+class ConfigLoaderTest {
+
+	private final ConfigLoader loader = new ConfigLoader();
+
+	@Test
+	void testParseRouters() throws ConfigurationException, IOException {
+		final ServiceConfig config = loader.parse(properties(
+				"db.url=http://127.0.0.1:8086",
+				"db.user=traffic",
+				"db.password=secret",
+				"db.name=TrafficByIp",
+				"default.interval=5",
+				"router.home.host=192.168.88.1",
+				"router.home.subnets=192.168.88.0/24",
+				"router.office.host=10.1.0.1",
+				"router.office.subnets=10.1.0.0/16, 10.2.0.0/16",
+				"router.office.source=api",
+				"router.office.user=accounting",
+				"router.office.interval=30",
+				"router.office.db.name=OfficeTraffic"));
+
+		assertEquals(Arrays.asList("home", "office"), Arrays.asList(config.getRouters().keySet().toArray()));
+
+		final RouterConfig home = config.getRouters().get("home");
+		assertEquals("192.168.88.1", home.getHost());
+		assertEquals(RouterConfig.SOURCE_HTTP, home.getSource());
+		assertEquals(5000, home.getInterval());
+		assertEquals("TrafficByIp", home.getDatabase().getName());
+
+		final RouterConfig office = config.getRouters().get("office");
+		assertEquals(Arrays.asList("10.1.0.0/16", "10.2.0.0/16"), office.getSubnets());
+		assertEquals(RouterConfig.SOURCE_API, office.getSource());
+		assertEquals("accounting", office.getUser());
+		assertEquals(30000, office.getInterval());
+		assertEquals("OfficeTraffic", office.getDatabase().getName());
+		assertEquals("http://127.0.0.1:8086", office.getDatabase().getUrl());
+	}
+
+	@Test
+	void testMissingSettings() throws IOException {
+		final ConfigurationException ex = assertThrows(ConfigurationException.class, () -> loader.parse(properties("router.home.host=192.168.88.1", "db.url=http://127.0.0.1:8086")));
+		assertEquals("Missing setting 'subnets' for router 'home'", ex.getMessage());
+
+		final ConfigurationException dbEx = assertThrows(ConfigurationException.class,
+				() -> loader.parse(properties("router.home.host=192.168.88.1", "router.home.subnets=192.168.88.0/24")));
+		assertEquals("Missing setting 'db.url' for router 'home'", dbEx.getMessage());
+	}
+
+	@Test
+	void testOptionalDatabase() throws ConfigurationException, IOException {
+		final ServiceConfig config = new ConfigLoader(false).parse(properties("router.home.host=192.168.88.1", "router.home.subnets=192.168.88.0/24"));
+		assertNull(config.getRouters().get("home").getDatabase());
+
+		final ConfigurationException ex = assertThrows(ConfigurationException.class, () -> new ConfigLoader(false).parse(properties("router.office.host=10.1.0.1",
+				"router.office.subnets=10.1.0.0/16", "router.office.db.url=http://127.0.0.1:8086")));
+		assertEquals("Missing setting 'db.user' for router 'office'", ex.getMessage());
+	}
+
+	@Test
+	void testEmptyConfig() throws ConfigurationException, IOException {
+		assertTrue(loader.parse(properties("db.url=http://127.0.0.1:8086")).getRouters().isEmpty());
+	}
+
+	private Properties properties(String... lines) throws IOException {
+		final Properties properties = new Properties();
+		properties.load(new StringReader(String.join("\n", lines)));
+		return properties;
+	}
+}
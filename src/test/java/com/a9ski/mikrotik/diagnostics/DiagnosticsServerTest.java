@@ -0,0 +1,138 @@
+package com.a9ski.mikrotik.diagnostics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import com.a9ski.mikrotik.PollScheduler;
+import com.a9ski.mikrotik.RouterManager;
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.TrafficService;
+import com.a9ski.mikrotik.TrafficServiceFactory;
+import com.a9ski.mikrotik.config.DatabaseConfig;
+import com.a9ski.mikrotik.config.RouterConfig;
+import com.a9ski.mikrotik.config.ServiceConfig;
+import com.a9ski.mikrotik.exceptions.ConfigurationException;
+import com.a9ski.mikrotik.influxdb.InfluxDbClient;
+import com.a9ski.mikrotik.influxdb.WriteScheduler;
+
+import inet.ipaddr.AddressStringException;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class DiagnosticsServerTest {
+	private final HttpClient http = HttpClient.newHttpClient();
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void testStateAndRecording() throws IOException, InterruptedException, ConfigurationException {
+		final TrafficServiceFactory factory = new TrafficServiceFactory(null, null, null, null, null, null) {
+			@Override
+			public TrafficService create(final RouterConfig config) throws AddressStringException {
+				// @formatter:off
+				return TrafficService.builder()
+						.accountingClient(() -> Collections.emptyList())
+						.subnetMatcher(SubnetMatcher.compile(config.getSubnets()))
+						.dbClient(Mockito.mock(InfluxDbClient.class))
+						.name(config.getName())
+						.sleepTime(config.getInterval())
+						.maxRetries(1)
+						.deferStart(true)
+						.build();
+				// @formatter:on
+			}
+		};
+		// @formatter:off
+		final RouterConfig router = RouterConfig.builder()
+				.name("home")
+				.host("home")
+				.subnets(Collections.singletonList("10.0.0.0/24"))
+				.interval(60_000)
+				.database(DatabaseConfig.builder().url("http://127.0.0.1:8086").user("u").password("p").name("db").build())
+				.build();
+		// @formatter:on
+		try (PollScheduler scheduler = new PollScheduler(PollScheduler.Mode.PLATFORM, 1);
+				RouterManager manager = new RouterManager(factory);
+				DiagnosticsServer server = new DiagnosticsServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), manager, scheduler, new WriteScheduler(0, 0), dir)) {
+			manager.apply(ServiceConfig.builder().routers(Collections.singletonMap("home", router)).build());
+
+			final HttpResponse<String> state = http.send(HttpRequest.newBuilder(uri(server, "/state")).build(), BodyHandlers.ofString());
+			assertEquals(200, state.statusCode());
+			assertTrue(state.body().startsWith("scheduler polls_in_flight="), state.body());
+			assertTrue(state.body().contains("\nrouter=home polling="), state.body());
+			assertTrue(state.body().contains(" last_write_ms="), state.body());
+			assertEquals(405, post(server, "/state").statusCode());
+
+			assertEquals(409, post(server, "/jfr/stop").statusCode());
+			assertEquals(400, post(server, "/jfr/start?duration=x").statusCode());
+			final HttpResponse<String> started = post(server, "/jfr/start?duration=600");
+			assertEquals(200, started.statusCode());
+			assertEquals(409, post(server, "/jfr/start").statusCode());
+
+			final PollTrace trace = new PollTrace("home");
+			trace.start();
+			trace.begin(PollStage.LOAD);
+			trace.end(42);
+			trace.buffered(42, 0);
+			trace.finish();
+			assertEquals(42, trace.getRecords());
+			assertEquals(0, trace.getSpoolBytes());
+
+			final HttpResponse<String> stopped = post(server, "/jfr/stop");
+			assertEquals(200, stopped.statusCode());
+			assertEquals(started.body(), stopped.body());
+			final Path file = Paths.get(stopped.body().trim());
+			assertTrue(Files.size(file) > 0);
+			final List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream().filter(e -> PollStageEvent.NAME.equals(e.getEventType().getName())).collect(Collectors.toList());
+			assertEquals(1, events.size());
+			assertEquals("home", events.get(0).getString("router"));
+			assertEquals("load", events.get(0).getString("stage"));
+			assertEquals(42, events.get(0).getLong("records"));
+		}
+	}
+
+	@Test
+	void testTrace() {
+		final PollTrace trace = new PollTrace("home");
+		trace.start();
+		assertTrue(trace.isPolling());
+		trace.begin(PollStage.WRITE);
+		assertEquals(PollStage.WRITE, trace.getStage());
+		// the failed stage is ended with the poll
+		trace.finish();
+		assertNull(trace.getStage());
+		assertEquals(0, trace.getStageMillis());
+		assertFalse(trace.isPolling());
+	}
+
+	private static URI uri(final DiagnosticsServer server, final String path) {
+		return URI.create(server.getUri() + path);
+	}
+
+	private HttpResponse<String> post(final DiagnosticsServer server, final String path) throws IOException, InterruptedException {
+		return http.send(HttpRequest.newBuilder(uri(server, path)).POST(BodyPublishers.noBody()).build(), BodyHandlers.ofString());
+	}
+}
@@ -0,0 +1,137 @@
+package com.a9ski.mikrotik.enrichment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.arena.Ipv4;
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.influxdb.LineProtocolFormatter;
+import com.a9ski.mikrotik.model.HostInfo;
+
+import inet.ipaddr.AddressStringException;
+
+class HostEnricherTest {
+
+	@Test
+	void testParse() {
+		// @formatter:off
+		final List<HostInfo> csv = HostsFile.parse(Arrays.asList(
+				"# exported leases",
+				"ip,mac,hostname",
+				"192.168.88.10,4C-32-75-AA-BB-01,laptop",
+				"192.168.88.11,,printer",
+				"not an ip,,x",
+				"2001:db8::10,4c:32:75:aa:bb:02,"), "hosts.csv");
+		// @formatter:on
+		assertEquals(3, csv.size());
+		assertEquals(HostInfo.builder().ip("192.168.88.10").mac("4c:32:75:aa:bb:01").hostname("laptop").build(), csv.get(0));
+		assertEquals(HostInfo.builder().ip("192.168.88.11").hostname("printer").build(), csv.get(1));
+		assertEquals(HostInfo.builder().ip("2001:db8::10").mac("4c:32:75:aa:bb:02").build(), csv.get(2));
+
+		final List<HostInfo> dnsmasq = HostsFile.parse(Arrays.asList("1600000000 4c:32:75:aa:bb:01 192.168.88.10 laptop 01:4c:32:75:aa:bb:01",
+				"1600000000 4c:32:75:aa:bb:03 192.168.88.12 * *"), "dnsmasq.leases");
+		assertEquals(Arrays.asList(HostInfo.builder().ip("192.168.88.10").mac("4c:32:75:aa:bb:01").hostname("laptop").build(),
+				HostInfo.builder().ip("192.168.88.12").mac("4c:32:75:aa:bb:03").build()), dnsmasq);
+
+		// @formatter:off
+		final List<HostInfo> isc = HostsFile.parse(Arrays.asList(
+				"lease 192.168.88.10 {",
+				"  starts 4 2020/09/10 12:00:00;",
+				"  binding state active;",
+				"  next binding state free;",
+				"  hardware ethernet 4c:32:75:aa:bb:01;",
+				"  client-hostname \"laptop\";",
+				"}",
+				"lease 192.168.88.13 {",
+				"  binding state free;",
+				"  hardware ethernet 4c:32:75:aa:bb:04;",
+				"}"), "dhcpd.leases");
+		// @formatter:on
+		assertEquals(Collections.singletonList(HostInfo.builder().ip("192.168.88.10").mac("4c:32:75:aa:bb:01").hostname("laptop").build()), isc);
+	}
+
+	@Test
+	void testCacheExpiryAndEviction() {
+		final HostCache cache = new HostCache(1000, 3);
+		cache.update(Arrays.asList(host("10.0.0.1", "a"), host("10.0.0.2", "b"), host("10.0.0.1", "c")), 0);
+		assertEquals(2, cache.size());
+		assertEquals("c", cache.get(0, Ipv4.parse("10.0.0.1"), 0).getHostname());
+
+		// 10.0.0.1 disappeared from the source, it is known until the TTL elapses
+		cache.update(Arrays.asList(host("10.0.0.2", "b"), host("10.0.0.3", "d")), 500);
+		assertEquals("c", cache.get(0, Ipv4.parse("10.0.0.1"), 1000).getHostname());
+		assertNull(cache.get(0, Ipv4.parse("10.0.0.1"), 1001));
+		assertEquals("d", cache.get(0, Ipv4.parse("10.0.0.3"), 1001).getHostname());
+		assertNull(cache.get(0, Ipv4.parse("10.0.0.4"), 1001));
+
+		// the least recently seen host is evicted
+		cache.update(Arrays.asList(host("10.0.0.4", "e"), host("10.0.0.5", "f")), 900);
+		assertEquals(3, cache.size());
+		assertNull(cache.get(0, Ipv4.parse("10.0.0.1"), 900));
+		assertEquals("b", cache.get(0, Ipv4.parse("10.0.0.2"), 900).getHostname());
+
+		cache.update(Collections.emptyList(), 2000);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void testEnrichPoints(@TempDir final Path dir) throws IOException, AddressStringException, InterruptedException {
+		final Path file = dir.resolve("hosts.csv");
+		Files.write(file, Arrays.asList("10.0.0.1,4c:32:75:aa:bb:01,my laptop", "2001:db8::1,,phone", "8.8.8.8,,dns"), StandardCharsets.UTF_8);
+
+		final PollArena arena = new PollArena();
+		arena.addRecord("10.0.0.1", "8.8.8.8", 100, 1);
+		arena.addRecord("2001:db8::1", "10.0.0.2", 50, 1);
+		SubnetMatcher.compile(Arrays.asList("10.0.0.0/24", "2001:db8::/32")).classify(arena.getTraffic(), arena.getSubnetTotals());
+
+		try (HostEnricher enricher = new HostEnricher(file, 60_000, 60_000, 100)) {
+			waitForRefresh(enricher, 1);
+			final LineProtocolFormatter formatter = new LineProtocolFormatter("router");
+			formatter.setHostEnricher(enricher);
+			final StringBuilder text = new StringBuilder();
+			assertEquals(4, formatter.appendPoints(text, 1000, arena.getTraffic(), Collections.emptyList()));
+			final String lines = text.toString();
+			assertTrue(lines.contains("IPTrafficData,hostname=my\\ laptop,ip=10.0.0.1,mac=4c:32:75:aa:bb:01,routerIp=router,type=LAN "), lines);
+			assertTrue(lines.contains("IPTrafficData,hostname=phone,ip=2001:db8::1,routerIp=router,type=LAN "), lines);
+			assertTrue(lines.contains("IPTrafficData,ip=10.0.0.2,routerIp=router,type=LAN "), lines);
+			// WAN IPs are not enriched
+			assertTrue(lines.contains("IPTrafficData,ip=8.8.8.8,routerIp=router,type=WAN "), lines);
+
+			// a modified file is parsed again
+			Files.write(file, Collections.singletonList("10.0.0.1,,desktop"), StandardCharsets.UTF_8);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+			enricher.refresh();
+			final long[] key = new long[2];
+			Ipv6.parse("10.0.0.1", key);
+			assertEquals("desktop", enricher.get(key[Ipv6.HIGH], key[Ipv6.LOW]).getHostname());
+			Ipv6.parse("2001:db8::1", key);
+			assertEquals("phone", enricher.get(key[Ipv6.HIGH], key[Ipv6.LOW]).getHostname());
+		}
+	}
+
+	private static HostInfo host(final String ip, final String hostname) {
+		return HostInfo.builder().ip(ip).hostname(hostname).build();
+	}
+
+	private static void waitForRefresh(final HostEnricher enricher, final long refreshes) throws InterruptedException {
+		for (int i = 0; i < 500 && enricher.getRefreshesCount() < refreshes; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(enricher.getRefreshesCount() >= refreshes);
+	}
+}
@@ -0,0 +1,84 @@
+package com.a9ski.mikrotik.incremental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.TrafficTable;
+
+class IncrementalFilterTest {
+
+	private static final long ZERO = 0;
+	private static final long SOME = 42;
+
+	private final IncrementalFilter filter = new IncrementalFilter(60_000, 300_000);
+
+	@Test
+	void testZeroValuedPointsAreDropped() {
+		assertEquals(Map.of("10.0.0.1", SOME), filter(0, "10.0.0.1", SOME, "10.0.0.2", ZERO));
+	}
+
+	@Test
+	void testQuietIpGetsClosingPointAndHeartbeats() {
+		filter(0, "10.0.0.1", SOME);
+		// first quiet poll drops the graph to zero
+		assertEquals(Map.of("10.0.0.1", ZERO), filter(10_000));
+		assertEquals(Collections.emptyMap(), filter(20_000));
+		// heartbeat
+		assertEquals(Map.of("10.0.0.1", ZERO), filter(70_000));
+		assertEquals(Collections.emptyMap(), filter(80_000));
+		// back with traffic
+		assertEquals(Map.of("10.0.0.1", SOME, "10.0.0.2", SOME), filter(90_000, "10.0.0.1", SOME, "10.0.0.2", SOME));
+	}
+
+	@Test
+	void testQuietIpIsForgotten() {
+		filter(0, "10.0.0.1", SOME);
+		filter(10_000);
+		assertEquals(1, filter.getTrackedCount());
+		assertEquals(Collections.emptyMap(), filter(300_000));
+		assertEquals(0, filter.getTrackedCount());
+	}
+
+	@Test
+	void testManyIps() {
+		final Object[] traffic = new Object[2 * 5000];
+		for (int i = 0; i < 5000; i++) {
+			traffic[2 * i] = "10.0." + (i / 256) + "." + (i % 256);
+			traffic[2 * i + 1] = SOME;
+		}
+		assertEquals(5000, filter(0, traffic).size());
+		assertEquals(5000, filter(10_000).size());
+		filter(20_000, "10.0.0.1", SOME);
+		assertEquals(1, filter(310_000).size());
+		assertEquals(1, filter.getTrackedCount());
+	}
+
+	/**
+	 * Filters a poll with the bytes sent by the IPs.
+	 *
+	 * @return the bytes sent by the written IPs.
+	 */
+	private Map<String, Long> filter(final long now, final Object... ipAndBytes) {
+		final TrafficTable table = new TrafficTable(16);
+		final long[] key = new long[2];
+		for (int i = 0; i < ipAndBytes.length; i += 2) {
+			Ipv6.parse((String) ipAndBytes[i], key);
+			final long bytes = (Long) ipAndBytes[i + 1];
+			table.addSent(key[Ipv6.HIGH], key[Ipv6.LOW], bytes, bytes > 0 ? 1 : 0);
+		}
+		filter.filter(now, table);
+		final Map<String, Long> written = new TreeMap<>();
+		for (int row = 0; row < table.size(); row++) {
+			if (!table.isSkippedAt(row)) {
+				written.put(Ipv6.format(table.ipHighAt(row), table.ipAt(row)), table.bytesSentAt(row));
+			}
+		}
+		return written;
+	}
+}
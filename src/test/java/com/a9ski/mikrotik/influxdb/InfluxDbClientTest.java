@@ -0,0 +1,113 @@
+package com.a9ski.mikrotik.influxdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.influxdb.InfluxDBException;
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.arena.Ipv4;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.model.WriteResult;
+
+import inet.ipaddr.AddressStringException;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+
+class InfluxDbClientTest {
+	private static final long TIMESTAMP = 1_600_000_000_000L;
+
+	@Test
+	void testBatchesRetriedSeparately() throws AddressStringException {
+		final List<String> batches = new ArrayList<>();
+		final int[] failures = { 1 };
+		final InfluxDbClient client = spy(new InfluxDbClient("http://127.0.0.1:8086", "u", "p", "db", "router"));
+		doAnswer(invocation -> {
+			final String lines = invocation.getArgument(0);
+			// the second batch fails once
+			if (batches.size() == 1 && failures[0]-- > 0) {
+				batches.add(lines);
+				throw new InfluxDBException("timeout");
+			}
+			return batches.add(lines);
+		}).when(client).write(anyString(), anyInt());
+		client.setBatchSize(3);
+
+		// 5 LAN and 5 WAN points and 2 subnet totals in 4 batches
+		final WriteResult result = client.write(arena(), Collections.emptyList(), TIMESTAMP, retry(2));
+		assertEquals(4, result.getBatches());
+		assertEquals(12, result.getPoints());
+		assertEquals(1, result.getRetries());
+		assertEquals(0, result.getFailedBatches());
+		assertNull(result.getError());
+
+		// the retry repeats the failed batch with the same points
+		assertEquals(5, batches.size());
+		assertEquals(batches.get(1), batches.get(2));
+		final Set<String> points = new HashSet<>();
+		for (final String batch : batches) {
+			for (final String point : batch.split("\n")) {
+				assertTrue(point.endsWith(" " + TIMESTAMP), point);
+				points.add(point);
+			}
+		}
+		assertEquals(12, points.size());
+	}
+
+	@Test
+	void testFailedBatch() throws AddressStringException {
+		final List<String> batches = new ArrayList<>();
+		final InfluxDbClient client = spy(new InfluxDbClient("http://127.0.0.1:8086", "u", "p", "db", "router"));
+		doAnswer(invocation -> {
+			if (batches.isEmpty()) {
+				batches.add(null);
+				throw new InfluxDBException("down");
+			}
+			return batches.add(invocation.getArgument(0));
+		}).when(client).write(anyString(), anyInt());
+		client.setBatchSize(5);
+
+		// the failed first batch doesn't stop the others
+		final WriteResult result = client.write(arena(), Collections.emptyList(), TIMESTAMP, retry(1));
+		assertEquals(2, result.getBatches());
+		assertEquals(7, result.getPoints());
+		assertEquals(1, result.getFailedBatches());
+		assertEquals(5, result.getFailedPoints());
+		assertEquals(0, result.getRetries());
+		assertNotNull(result.getError());
+		assertEquals(3, batches.size());
+
+		batches.clear();
+		assertTrue(client.write(arena(), Collections.emptyList(), TIMESTAMP, retry(1)).getError() instanceof InfluxDBException);
+		assertThrows(IllegalArgumentException.class, () -> client.setBatchSize(0));
+	}
+
+	private static Retry retry(final int maxAttempts) {
+		return Retry.of("test", RetryConfig.custom().maxAttempts(maxAttempts).waitDuration(Duration.ofMillis(1)).build());
+	}
+
+	private static PollArena arena() throws AddressStringException {
+		final PollArena arena = new PollArena();
+		arena.reset();
+		for (int i = 1; i <= 5; i++) {
+			arena.getTraffic().add(Ipv4.parse("10.0.0." + i), Ipv4.parse("8.8.8." + i), 100, 1);
+		}
+		SubnetMatcher.compile(Collections.singletonList("10.0.0.0/24")).classify(arena.getTraffic(), arena.getSubnetTotals());
+		return arena;
+	}
+}
@@ -0,0 +1,121 @@
+package com.a9ski.mikrotik.influxdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.arena.Ipv4;
+import com.a9ski.mikrotik.arena.PollArena;
+
+import inet.ipaddr.AddressStringException;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+
+class WriteSchedulerTest {
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final long TIMESTAMP = 1_600_000_000_000L;
+	private static final Retry SINGLE_ATTEMPT = Retry.of("test", RetryConfig.custom().maxAttempts(1).build());
+
+	@Test
+	void testTokenBuckets() {
+		final WriteScheduler scheduler = new WriteScheduler(1000, 100_000, 0);
+		// a burst of one second
+		assertEquals(0, scheduler.reserve(600, 1000, false, 0, 0));
+		assertEquals(0, scheduler.reserve(400, 1000, false, 0, 0));
+		// the points bucket is empty
+		assertEquals(-1, scheduler.reserve(100, 1000, false, SECOND / 20, 0));
+		assertEquals(SECOND / 10, scheduler.reserve(100, 1000, false, SECOND / 10, 0));
+		// refilled after half a second
+		assertEquals(0, scheduler.reserve(400, 1000, false, 0, SECOND / 2));
+		// the bytes bucket limits the write
+		assertEquals(SECOND / 2, scheduler.reserve(0, 150_000, false, SECOND, SECOND));
+
+		// the buckets don't overflow
+		assertEquals(0, scheduler.reserve(1000, 100_000, false, 0, 100 * SECOND));
+		assertEquals(-1, scheduler.reserve(1, 0, false, 0, 100 * SECOND));
+
+		final WriteScheduler unlimited = new WriteScheduler(0, 0, 0);
+		assertFalse(unlimited.isLimited());
+		assertEquals(0, unlimited.reserve(Long.MAX_VALUE / 2, Long.MAX_VALUE / 2, false, 0, 0));
+	}
+
+	@Test
+	void testPriority() {
+		final WriteScheduler scheduler = new WriteScheduler(1000, 0, 0);
+		// the priority writes go into debt
+		assertEquals(0, scheduler.reserve(1000, 0, true, 0, 0));
+		assertEquals(2 * SECOND, scheduler.reserve(2000, 0, true, 0, 0));
+		// a normal write waits for the debt to be paid
+		assertEquals(-1, scheduler.reserve(1, 0, false, 2 * SECOND, 0));
+		assertEquals(-1, scheduler.reserve(1, 0, false, SECOND, SECOND));
+		assertEquals(SECOND, scheduler.reserve(1000, 0, false, 2 * SECOND, 2 * SECOND));
+	}
+
+	@Test
+	void testLanPointsFirst() throws AddressStringException, InterruptedException {
+		final List<String> batches = new ArrayList<>();
+		final InfluxDbClient client = spy(new InfluxDbClient("http://127.0.0.1:8086", "u", "p", "db", "router"));
+		doAnswer(invocation -> batches.add(invocation.getArgument(0))).when(client).write(anyString(), anyInt());
+		final WriteScheduler scheduler = new WriteScheduler(10, 0);
+		client.setWriteScheduler(scheduler, 300);
+
+		final PollArena arena = new PollArena();
+		arena.reset();
+		for (int i = 1; i <= 5; i++) {
+			arena.getTraffic().add(Ipv4.parse("10.0.0." + i), Ipv4.parse("8.8.8." + i), 100, 1);
+		}
+		SubnetMatcher.compile(Collections.singletonList("10.0.0.0/24")).classify(arena.getTraffic(), arena.getSubnetTotals());
+
+		// 5 LAN points and 2 subnet totals, then the 5 WAN points
+		client.write(arena, Collections.emptyList(), TIMESTAMP, SINGLE_ATTEMPT);
+		assertEquals(2, batches.size());
+		assertTrue(batches.get(0).contains("type=LAN") && !batches.get(0).contains("ip=8.8.8."), batches.get(0));
+		assertEquals(5, batches.get(1).split("\n").length);
+		assertTrue(batches.get(1).contains("ip=8.8.8.1,"));
+
+		// the LAN points wait for the debt of the first write; the WAN points
+		// don't fit in the wait after them
+		client.write(arena, Collections.emptyList(), TIMESTAMP + 1000, SINGLE_ATTEMPT);
+		assertEquals(3, batches.size());
+		assertTrue(batches.get(2).contains("type=LAN"));
+		assertEquals(1, scheduler.getRejectedWrites());
+		assertEquals(5, scheduler.getRejectedPoints());
+		assertTrue(scheduler.getWaitMillis() > 0);
+	}
+
+	@Test
+	void testBatchesSpacedOut() throws AddressStringException {
+		final List<Long> sent = new ArrayList<>();
+		final InfluxDbClient client = spy(new InfluxDbClient("http://127.0.0.1:8086", "u", "p", "db", "router"));
+		doAnswer(invocation -> sent.add(System.nanoTime())).when(client).write(anyString(), anyInt());
+		client.setWriteScheduler(new WriteScheduler(10, 0), TimeUnit.SECONDS.toMillis(10));
+		client.setBatchSize(4);
+
+		final PollArena arena = new PollArena();
+		arena.reset();
+		for (int i = 1; i <= 10; i++) {
+			arena.getTraffic().add(Ipv4.parse("10.0.0." + i), Ipv4.parse("8.8.8." + i), 100, 1);
+		}
+		SubnetMatcher.compile(Collections.singletonList("10.0.0.0/24")).classify(arena.getTraffic(), arena.getSubnetTotals());
+
+		// 12 LAN points and 10 WAN points in 6 batches: the first two batches
+		// are the burst, every following batch waits for its own tokens
+		client.write(arena, Collections.emptyList(), TIMESTAMP, SINGLE_ATTEMPT);
+		assertEquals(6, sent.size());
+		for (int i = 2; i < sent.size(); i++) {
+			assertTrue(sent.get(i) - sent.get(i - 1) >= SECOND / 8, "batch " + i);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.a9ski.mikrotik.loadgen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.a9ski.mikrotik.accounting.AccountingClient;
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.arena.PollArena;
+
+import inet.ipaddr.IPAddressString;
+
+class RouterSimulatorTest {
+
+	@TempDir
+	Path tempDir;
+
+	private RouterSimulator simulator;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		simulator = new RouterSimulator(0, 0);
+	}
+
+	@AfterEach
+	void tearDown() {
+		simulator.close();
+	}
+
+	@Test
+	void testSyntheticRouters() throws AccountingException, InterruptedException, IOException {
+		for (int i = 0; i < 3; i++) {
+			final SyntheticSnapshotSource source = synthetic(i, 500);
+			final URI uri = simulator.addRouter("router" + i, source);
+			final IPAddressString lan = new IPAddressString(source.getLanSubnet());
+
+			final List<AccountingRecord> records = new AccountingClient(uri).loadRecords();
+
+			assertEquals(500, records.size());
+			records.forEach(r -> assertTrue(lan.contains(new IPAddressString(r.getSourceIp())) ^ lan.contains(new IPAddressString(r.getDestinationIp()))));
+		}
+		assertEquals(3, simulator.getRequestsCount());
+	}
+
+	@Test
+	void testCaptureAndReplay() throws AccountingException, InterruptedException, IOException {
+		final URI uri = simulator.addRouter("live", synthetic(1, 100));
+		final Path captureDir = tempDir.resolve("capture");
+		final CapturingAccountingClient capturing = new CapturingAccountingClient(uri, captureDir);
+		// polls in the same millisecond don't overwrite each other
+		final List<AccountingRecord> first = capturing.loadRecords();
+		final List<AccountingRecord> second = capturing.loadRecords();
+		final List<AccountingRecord> third = capturing.loadRecords();
+
+		final ReplaySnapshotSource replay = ReplaySnapshotSource.load(captureDir, false);
+		assertEquals(3, replay.size());
+		final AccountingClient client = new AccountingClient(simulator.addRouter("replay", replay));
+
+		assertEquals(first, client.loadRecords());
+		assertEquals(second, client.loadRecords());
+		assertEquals(third, client.loadRecords());
+		assertEquals(0, client.loadRecords().size());
+	}
+
+	@Test
+	void testCompressedPages() throws AccountingException, InterruptedException, IOException {
+		final AccountingClient plain = new AccountingClient(simulator.addRouter("plain", synthetic(2, 1000)));
+		try (RouterSimulator compressing = new RouterSimulator(0, 0, true)) {
+			final AccountingClient client = new AccountingClient(compressing.addRouter("compressed", synthetic(2, 1000)));
+
+			assertEquals(plain.loadRecords(), client.loadRecords());
+			assertTrue(client.getTransferredBytes() < client.getDecodedBytes() / 2);
+			assertEquals(compressing.getBytesServed(), client.getTransferredBytes());
+
+			final PollArena arena = new PollArena();
+			arena.reset();
+			client.loadRecords(arena);
+			assertEquals(1000, arena.getRecords());
+			assertEquals(0, arena.getInvalidRecords());
+			plain.loadRecords();
+			assertEquals(client.getDecodedBytes(), plain.getDecodedBytes());
+		}
+	}
+
+	@Test
+	void testReplayPollInterval() throws IOException {
+		Files.writeString(tempDir.resolve("1000.cgi"), "", StandardCharsets.UTF_8);
+		Files.writeString(tempDir.resolve("11000.cgi"), "", StandardCharsets.UTF_8);
+		Files.writeString(tempDir.resolve("21000.cgi"), "", StandardCharsets.UTF_8);
+
+		final ReplaySnapshotSource replay = ReplaySnapshotSource.load(tempDir, true);
+		assertEquals(10000, replay.getPollInterval(1, 5000));
+		assertEquals(1000, replay.getPollInterval(10, 5000));
+	}
+
+	private SyntheticSnapshotSource synthetic(int routerIndex, int records) {
+		// @formatter:off
+		return SyntheticSnapshotSource.builder()
+			.routerIndex(routerIndex)
+			.recordsPerPoll(records)
+			.lanHosts(50)
+			.wanPeers(200)
+			.zipfExponent(1.1)
+			.wanChurn(0.1)
+			.seed(42)
+			.build();
+		// @formatter:on
+	}
+}
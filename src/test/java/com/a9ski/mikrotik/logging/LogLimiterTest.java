@@ -0,0 +1,30 @@
+package com.a9ski.mikrotik.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.logging.log4j.message.StringMapMessage;
+import org.junit.jupiter.api.Test;
+
+class LogLimiterTest {
+
+	@Test
+	void testLimit() {
+		final LogLimiter limiter = new LogLimiter(1000);
+		assertTrue(limiter.tryAcquire(5000));
+		assertFalse(limiter.tryAcquire(5000));
+		assertFalse(limiter.tryAcquire(5999));
+		assertEquals(2, limiter.getSuppressed());
+		assertTrue(limiter.tryAcquire(6000));
+
+		final StringMapMessage message = limiter.message("bad_line").with("sample", "a b");
+		assertEquals("bad_line", message.get("event"));
+		assertEquals("2", message.get("suppressed"));
+		assertEquals("event=\"bad_line\" sample=\"a b\" suppressed=\"2\"", message.getFormattedMessage());
+		assertEquals(0, limiter.getSuppressed());
+
+		assertFalse(limiter.tryAcquire(6500));
+		assertEquals(1, limiter.getSuppressed());
+	}
+}
@@ -0,0 +1,127 @@
+package com.a9ski.mikrotik.matrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.arena.Ipv4;
+import com.a9ski.mikrotik.arena.Ipv6;
+import com.a9ski.mikrotik.arena.PollArena;
+import com.a9ski.mikrotik.model.MatrixEntry;
+
+import inet.ipaddr.AddressStringException;
+
+class TrafficMatrixTest {
+	private static final long MINUTE = 60_000L;
+	private static final long NOW = 1_600_000_000_000L / MINUTE * MINUTE;
+
+	@Test
+	void testPairsByPrefix() throws AddressStringException {
+		final SubnetMatcher lan = SubnetMatcher.compile(Arrays.asList("10.0.0.0/24", "2001:db8:1::/64"));
+		final TrafficMatrix matrix = new TrafficMatrix("home", MINUTE, 15 * MINUTE, 24, 48);
+		final PollArena arena = new PollArena();
+		arena.setPairsEnabled(true);
+		arena.reset();
+		add(arena, "10.0.0.1", "8.8.8.8", 100, 1);
+		add(arena, "10.0.0.1", "8.8.8.4", 200, 2);
+		add(arena, "8.8.8.8", "10.0.0.1", 5000, 5);
+		add(arena, "10.0.0.2", "1.1.1.1", 300, 3);
+		// LAN to LAN and WAN to WAN are ignored
+		add(arena, "10.0.0.1", "10.0.0.2", 1_000_000, 1);
+		add(arena, "9.9.9.9", "1.1.1.1", 1_000_000, 1);
+		arena.addRecord("2606:4700:10::1", "2001:db8:1::5", 700, 7);
+		assertEquals(8, arena.getTraffic().size());
+		assertEquals(7, arena.getPairs().size());
+		matrix.add(NOW, arena.getPairs(), lan);
+
+		final List<MatrixEntry> top = matrix.top(NOW, 15 * MINUTE, 10, null);
+		assertEquals(3, top.size());
+		assertEquals("10.0.0.1", top.get(0).getHost());
+		assertEquals("8.8.8.0/24", top.get(0).getRemote());
+		assertEquals(300, top.get(0).getBytesSent());
+		assertEquals(5000, top.get(0).getBytesReceived());
+		assertEquals(3, top.get(0).getPacketsSent());
+		assertEquals(5, top.get(0).getPacketsReceived());
+		assertEquals("2001:db8:1::5", top.get(1).getHost());
+		assertEquals("2606:4700:10::/48", top.get(1).getRemote());
+		assertEquals("1.1.1.0/24", top.get(2).getRemote());
+
+		assertEquals(1, matrix.top(NOW, 15 * MINUTE, 1, null).size());
+		final long[] host = new long[2];
+		Ipv6.parse("10.0.0.2", host);
+		assertEquals(Arrays.asList("1.1.1.0/24"), Arrays.asList(matrix.top(NOW, 15 * MINUTE, 10, host).stream().map(MatrixEntry::getRemote).toArray()));
+		assertThrows(IllegalArgumentException.class, () -> matrix.top(NOW, MINUTE, 0, null));
+	}
+
+	@Test
+	void testSlidingWindow() throws AddressStringException {
+		final SubnetMatcher lan = SubnetMatcher.compile(Arrays.asList("10.0.0.0/24"));
+		final TrafficMatrix matrix = new TrafficMatrix("home", MINUTE, 5 * MINUTE, 24, 48);
+		final PollArena arena = new PollArena();
+		arena.setPairsEnabled(true);
+		// a poll every minute for 10 minutes, 100 bytes each
+		for (int poll = 0; poll < 10; poll++) {
+			arena.reset();
+			add(arena, "10.0.0.1", "8.8.8.8", 100, 1);
+			matrix.add(NOW + poll * MINUTE + 1000, arena.getPairs(), lan);
+		}
+		final long now = NOW + 9 * MINUTE + 2000;
+		assertEquals(100, matrix.top(now, 1000, 1, null).get(0).getBytesSent());
+		// the window is rounded to the buckets it overlaps
+		assertEquals(300, matrix.top(now, 2 * MINUTE, 1, null).get(0).getBytesSent());
+		// the older buckets have expired
+		assertEquals(600, matrix.top(now, 60 * MINUTE, 1, null).get(0).getBytesSent());
+	}
+
+	@Test
+	void testServer() throws IOException, InterruptedException, AddressStringException {
+		try (TrafficMatrixServer server = new TrafficMatrixServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), MINUTE, 15 * MINUTE, 24, 48)) {
+			final SubnetMatcher lan = SubnetMatcher.compile(Arrays.asList("10.0.0.0/24"));
+			final PollArena arena = new PollArena();
+			arena.setPairsEnabled(true);
+			arena.reset();
+			add(arena, "10.0.0.1", "8.8.8.8", 100, 1);
+			server.matrix("home").add(System.currentTimeMillis(), arena.getPairs(), lan);
+			arena.reset();
+			add(arena, "10.0.0.7", "8.8.4.4", 900, 1);
+			server.matrix("office").add(System.currentTimeMillis(), arena.getPairs(), lan);
+
+			final HttpClient http = HttpClient.newHttpClient();
+			final HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(server.getUri() + "?window=60&top=5")).build(), BodyHandlers.ofString());
+			assertEquals(200, response.statusCode());
+			assertEquals("router=office host=10.0.0.7 remote=8.8.4.0/24 bytes_sent=900 bytes_received=0 packets_sent=1 packets_received=0\n"
+					+ "router=home host=10.0.0.1 remote=8.8.8.0/24 bytes_sent=100 bytes_received=0 packets_sent=1 packets_received=0\n", response.body());
+			final HttpResponse<String> home = http.send(HttpRequest.newBuilder(URI.create(server.getUri() + "?router=home&host=10.0.0.1")).build(), BodyHandlers.ofString());
+			assertTrue(home.body().startsWith("router=home host=10.0.0.1 "), home.body());
+			assertEquals(1, home.body().split("\n").length);
+			assertEquals(400, http.send(HttpRequest.newBuilder(URI.create(server.getUri() + "?top=x")).build(), BodyHandlers.ofString()).statusCode());
+
+			// an idle router keeps its matrix until it is removed
+			final TrafficMatrix matrix = server.matrix("home");
+			assertTrue(server.top(System.currentTimeMillis() + 60 * MINUTE, MINUTE, 5, "home", null).isEmpty());
+			assertSame(matrix, server.matrix("home"));
+			server.remove("home");
+			assertNotSame(matrix, server.matrix("home"));
+		}
+	}
+
+	private static void add(final PollArena arena, final String source, final String destination, final long bytes, final long packets) {
+		arena.getTraffic().add(Ipv4.parse(source), Ipv4.parse(destination), bytes, packets);
+	}
+}
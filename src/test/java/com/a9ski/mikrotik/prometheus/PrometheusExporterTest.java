@@ -0,0 +1,144 @@
+package com.a9ski.mikrotik.prometheus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.SubnetMatcher;
+import com.a9ski.mikrotik.arena.Ipv4;
+import com.a9ski.mikrotik.arena.SubnetTotals;
+import com.a9ski.mikrotik.arena.TrafficTable;
+
+import inet.ipaddr.AddressStringException;
+
+class PrometheusExporterTest {
+
+	private PrometheusExporter exporter;
+	private SubnetMatcher subnets;
+	private final TrafficTable traffic = new TrafficTable(16);
+	private final SubnetTotals totals = new SubnetTotals();
+
+	@BeforeEach
+	void setUp() throws IOException, AddressStringException {
+		exporter = new PrometheusExporter(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 60_000);
+		subnets = SubnetMatcher.compile(Collections.singletonList("10.0.0.0/8"));
+	}
+
+	@AfterEach
+	void tearDown() {
+		exporter.close();
+	}
+
+	@Test
+	void testScrape() throws IOException, InterruptedException {
+		final long now = System.currentTimeMillis();
+		poll("10.0.0.1", "8.8.8.8", 100, 2);
+		exporter.counters("home \"router\"").add(now, traffic);
+		poll("10.0.0.1", "8.8.8.8", 50, 1);
+		exporter.counters("home \"router\"").add(now + 10_000, traffic);
+
+		final HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(exporter.getUri()).build(), BodyHandlers.ofString());
+		assertEquals(200, response.statusCode());
+		// @formatter:off
+		assertEquals("# HELP bytes_sent_total Bytes sent by the IP address\n"
+				+ "# TYPE bytes_sent_total counter\n"
+				+ "bytes_sent_total{ip=\"10.0.0.1\",type=\"LAN\",router=\"home \\\"router\\\"\"} 150\n"
+				+ "bytes_sent_total{ip=\"8.8.8.8\",type=\"WAN\",router=\"home \\\"router\\\"\"} 0\n"
+				+ "# HELP bytes_received_total Bytes received by the IP address\n"
+				+ "# TYPE bytes_received_total counter\n"
+				+ "bytes_received_total{ip=\"10.0.0.1\",type=\"LAN\",router=\"home \\\"router\\\"\"} 0\n"
+				+ "bytes_received_total{ip=\"8.8.8.8\",type=\"WAN\",router=\"home \\\"router\\\"\"} 150\n"
+				+ "# HELP packets_sent_total Packets sent by the IP address\n"
+				+ "# TYPE packets_sent_total counter\n"
+				+ "packets_sent_total{ip=\"10.0.0.1\",type=\"LAN\",router=\"home \\\"router\\\"\"} 3\n"
+				+ "packets_sent_total{ip=\"8.8.8.8\",type=\"WAN\",router=\"home \\\"router\\\"\"} 0\n"
+				+ "# HELP packets_received_total Packets received by the IP address\n"
+				+ "# TYPE packets_received_total counter\n"
+				+ "packets_received_total{ip=\"10.0.0.1\",type=\"LAN\",router=\"home \\\"router\\\"\"} 0\n"
+				+ "packets_received_total{ip=\"8.8.8.8\",type=\"WAN\",router=\"home \\\"router\\\"\"} 3\n", response.body());
+		// @formatter:on
+		assertEquals(1, exporter.getScrapesCount());
+	}
+
+	@Test
+	void testExpiry() {
+		final TrafficCounters counters = new TrafficCounters("router", 60_000);
+		for (int i = 0; i < 100; i++) {
+			poll("10.0.1." + i, "8.8.8.8", 10, 1);
+			counters.add(i * 1000L, traffic);
+		}
+		// expired every 15 seconds: the hosts seen before 30 seconds are removed at 90 seconds
+		assertEquals(70, counters.snapshot().size());
+
+		assertEquals(10, counters.expire(100_000));
+		poll("10.0.0.1", "8.8.8.8", 10, 1);
+		counters.add(100_000, traffic);
+		final TrafficCounters.Snapshot snapshot = counters.snapshot();
+		assertEquals(61, snapshot.size());
+		long google = 0;
+		for (int row = 0; row < snapshot.size(); row++) {
+			final long ip = snapshot.ipAt(row);
+			assertFalse(ip >= Ipv4.parse("10.0.1.0") && ip <= Ipv4.parse("10.0.1.40"), Ipv4.format(ip));
+			if (ip == Ipv4.parse("8.8.8.8")) {
+				google = snapshot.counterAt(row, TrafficCounters.BYTES_RECEIVED);
+			}
+		}
+		assertEquals(1010, google);
+	}
+
+	@Test
+	void testConcurrentScrape() throws InterruptedException {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<String> failure = new AtomicReference<>();
+		final Thread scraper = new Thread(() -> {
+			long last = 0;
+			while (running.get()) {
+				final StringBuilder text = new StringBuilder();
+				exporter.scrape(text);
+				final int i = text.indexOf("bytes_received_total{ip=\"8.8.8.8\"");
+				if (i >= 0) {
+					final long value = Long.parseLong(text.substring(text.indexOf("} ", i) + 2, text.indexOf("\n", i)));
+					if (value < last) {
+						failure.set(String.format("Counter decreased from %d to %d", last, value));
+					}
+					last = value;
+				}
+			}
+		});
+		scraper.start();
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < 2000; i++) {
+			poll(String.format("10.%d.%d.1", i / 250, i % 250), "8.8.8.8", 1, 1);
+			exporter.counters("router").add(now, traffic);
+		}
+		running.set(false);
+		scraper.join();
+
+		assertEquals(null, failure.get());
+		final StringBuilder text = new StringBuilder();
+		exporter.scrape(text);
+		assertTrue(text.indexOf("bytes_received_total{ip=\"8.8.8.8\",type=\"WAN\",router=\"router\"} 2000\n") > 0);
+	}
+
+	private void poll(String source, String destination, long bytes, long packets) {
+		traffic.clear();
+		traffic.add(Ipv4.parse(source), Ipv4.parse(destination), bytes, packets);
+		totals.reset(subnets.getNames());
+		subnets.classify(traffic, totals);
+	}
+}
@@ -0,0 +1,176 @@
+package com.a9ski.mikrotik.routeros;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.a9ski.mikrotik.accounting.exceptions.AccountingException;
+import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.model.InterfaceCounters;
+
+class RouterOsApiClientTest {
+
+	private RouterOsApiStub stub;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		stub = new RouterOsApiStub("admin", "secret");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		stub.close();
+	}
+
+	@Test
+	void testLoadRecords() throws AccountingException, InterruptedException, IOException {
+		final List<AccountingRecord> expected = Arrays.asList(record("192.168.1.1", "192.168.0.2", 42, 6), record("192.168.1.2", "8.8.8.8", 1500, 1));
+		stub.records.addAll(expected);
+
+		try (RouterOsApiClient client = new RouterOsApiClient(stub.getAddress(), "admin", "secret")) {
+			assertEquals(expected, client.loadRecords());
+			stub.records.clear();
+			assertEquals(Collections.emptyList(), client.loadRecords());
+		}
+		assertEquals(1, stub.connections.get());
+	}
+
+	@Test
+	void testLoadInterfaceCounters() throws AccountingException, InterruptedException, IOException {
+		// @formatter:off
+		final InterfaceCounters ether1 = InterfaceCounters.builder()
+				.name("ether1")
+				.rxBytes(123456789012L)
+				.txBytes(42)
+				.rxPackets(1000)
+				.txPackets(10)
+				.rxDrops(3)
+				.txDrops(0)
+				.build();
+		// @formatter:on
+		// @formatter:off
+		final InterfaceCounters queue = InterfaceCounters.builder()
+				.name("guest")
+				.type(InterfaceCounters.Type.QUEUE)
+				.rxBytes(1000)
+				.txBytes(200)
+				.rxPackets(10)
+				.txPackets(2)
+				.rxDrops(5)
+				.txDrops(1)
+				.build();
+		// @formatter:on
+		stub.interfaces.add(ether1);
+		stub.queues.add(queue);
+
+		try (RouterOsApiClient client = new RouterOsApiClient(stub.getAddress(), "admin", "secret")) {
+			assertEquals(Arrays.asList(ether1, queue), client.loadInterfaceCounters());
+		}
+	}
+
+	@Test
+	void testLoginFailure() throws IOException {
+		try (RouterOsApiClient client = new RouterOsApiClient(stub.getAddress(), "admin", "wrong")) {
+			final AccountingException ex = assertThrows(AccountingException.class, () -> client.loadRecords());
+			assertEquals("RouterOS API login failed for user 'admin'", ex.getMessage());
+		}
+	}
+
+	@Test
+	void testLegacyLogin() throws AccountingException, InterruptedException, IOException {
+		stub.legacyLogin = true;
+		stub.records.add(record("192.168.0.1", "192.168.0.2", 1, 1));
+
+		try (RouterOsApiClient client = new RouterOsApiClient(stub.getAddress(), "admin", "secret")) {
+			assertEquals(1, client.loadRecords().size());
+		}
+		try (RouterOsApiClient client = new RouterOsApiClient(stub.getAddress(), "admin", "wrong")) {
+			final AccountingException ex = assertThrows(AccountingException.class, () -> client.loadRecords());
+			assertEquals("RouterOS API error: invalid user name or password (6)", ex.getMessage());
+		}
+	}
+
+	@Test
+	void testLongWords() throws AccountingException, InterruptedException, IOException {
+		final String longIp = "x".repeat(20000);
+		stub.records.add(record(longIp, "192.168.0.2", 1, 1));
+
+		try (RouterOsApiClient client = new RouterOsApiClient(stub.getAddress(), "admin", "secret")) {
+			assertEquals(longIp, client.loadRecords().get(0).getSourceIp());
+		}
+	}
+
+	@Test
+	void testWriteTimeout() throws IOException {
+		// the peer accepts the connection but never reads
+		try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+				ApiConnection conn = ApiConnection.open((InetSocketAddress) server.getLocalAddress(), Duration.ofSeconds(5), Duration.ofMillis(200));
+				SocketChannel peer = server.accept()) {
+			assertTrue(peer.isConnected());
+			assertThrows(SocketTimeoutException.class, () -> conn.writeSentence("x".repeat(32 * 1024 * 1024)));
+		}
+	}
+
+	@Test
+	void testInvalidWordLength() throws IOException {
+		try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+				ApiConnection conn = ApiConnection.open((InetSocketAddress) server.getLocalAddress(), Duration.ofSeconds(5), Duration.ofSeconds(5));
+				SocketChannel peer = server.accept()) {
+			// a word of 256 MB, then a word of 4 GB - 1 (a negative int)
+			peer.write(ByteBuffer.wrap(new byte[] { (byte) 0xF0, 0x10, 0x00, 0x00, 0x00 }));
+			assertThrows(IOException.class, conn::readWord);
+			peer.write(ByteBuffer.wrap(new byte[] { (byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF }));
+			assertThrows(IOException.class, conn::readWord);
+		}
+	}
+
+	@Test
+	void testEncodeLength() {
+		assertEncoded(0x00, 0x00);
+		assertEncoded(0x7F, 0x7F);
+		assertEncoded(0x80, 0x80, 0x80);
+		assertEncoded(0x3FFF, 0xBF, 0xFF);
+		assertEncoded(0x4000, 0xC0, 0x40, 0x00);
+		assertEncoded(0x1FFFFF, 0xDF, 0xFF, 0xFF);
+		assertEncoded(0x200000, 0xE0, 0x20, 0x00, 0x00);
+		assertEncoded(0x10000000, 0xF0, 0x10, 0x00, 0x00, 0x00);
+	}
+
+	private void assertEncoded(int length, int... expected) {
+		final ByteBuffer buffer = ByteBuffer.allocate(5);
+		ApiConnection.encodeLength(length, buffer);
+		buffer.flip();
+		final int[] actual = new int[buffer.remaining()];
+		for (int i = 0; i < actual.length; i++) {
+			actual[i] = buffer.get() & 0xFF;
+		}
+		assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+	}
+
+	private AccountingRecord record(String srcIp, String dstIp, long bytes, long packets) {
+		// @formatter:off
+		return AccountingRecord.builder()
+			.sourceIp(srcIp)
+			.destinationIp(dstIp)
+			.packetCount(packets)
+			.byteCount(bytes)
+			.build();
+		// @formatter:on
+	}
+}
@@ -0,0 +1,152 @@
+package com.a9ski.mikrotik.routeros;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.a9ski.mikrotik.accounting.model.AccountingRecord;
+import com.a9ski.mikrotik.model.InterfaceCounters;
+
+/**
+ * Minimal RouterOS API server implementing the word framing and the commands
+ * used by {@link RouterOsApiClient}. With <tt>legacyLogin</tt> it answers the
+ * login with an MD5 challenge, like RouterOS before 6.43.
+ */
+class RouterOsApiStub implements Closeable {
+	private static final String CHALLENGE = "0123456789abcdef0123456789abcdef";
+
+	private final ServerSocketChannel server;
+	private final Thread acceptor;
+	private final String user;
+	private final String password;
+	final List<AccountingRecord> records = new CopyOnWriteArrayList<>();
+	final List<InterfaceCounters> interfaces = new CopyOnWriteArrayList<>();
+	final List<InterfaceCounters> queues = new CopyOnWriteArrayList<>();
+	final AtomicInteger connections = new AtomicInteger();
+	volatile boolean legacyLogin;
+
+	RouterOsApiStub(String user, String password) throws IOException {
+		this.user = user;
+		this.password = password;
+		this.server = ServerSocketChannel.open();
+		this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		this.acceptor = new Thread(this::acceptLoop, "routeros-api-stub");
+		this.acceptor.setDaemon(true);
+		this.acceptor.start();
+	}
+
+	InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) server.getLocalAddress();
+	}
+
+	private void acceptLoop() {
+		while (server.isOpen()) {
+			try {
+				final SocketChannel channel = server.accept();
+				connections.incrementAndGet();
+				final Thread handler = new Thread(() -> serve(channel));
+				handler.setDaemon(true);
+				handler.start();
+			} catch (IOException ex) {
+				return;
+			}
+		}
+	}
+
+	private void serve(SocketChannel channel) {
+		try (ApiConnection conn = new ApiConnection(channel, Duration.ofMinutes(1))) {
+			while (true) {
+				final List<String> sentence = readSentence(conn);
+				switch (sentence.get(0)) {
+				case "/login":
+					if (legacyLogin && !sentence.contains("=name=" + user)) {
+						conn.writeSentence("!trap", "=message=invalid user name or password (6)");
+						conn.writeSentence("!done");
+					} else if (legacyLogin && sentence.stream().noneMatch(w -> w.startsWith("=response="))) {
+						// the password of the first sentence is ignored
+						conn.writeSentence("!done", "=ret=" + CHALLENGE);
+					} else if (legacyLogin && sentence.contains("=response=00" + challengeResponse())) {
+						conn.writeSentence("!done");
+					} else if (!legacyLogin && sentence.contains("=name=" + user) && sentence.contains("=password=" + password)) {
+						conn.writeSentence("!done");
+					} else {
+						conn.writeSentence("!trap", "=message=invalid user name or password (6)");
+						conn.writeSentence("!done");
+					}
+					break;
+				case "/ip/accounting/snapshot/take":
+					conn.writeSentence("!done");
+					break;
+				case "/ip/accounting/snapshot/print":
+					for (AccountingRecord r : records) {
+						conn.writeSentence("!re", "=src-address=" + r.getSourceIp(), "=dst-address=" + r.getDestinationIp(), "=packets=" + r.getPacketCount(),
+								"=bytes=" + r.getByteCount());
+					}
+					conn.writeSentence("!done");
+					break;
+				case "/interface/print":
+					for (InterfaceCounters i : interfaces) {
+						conn.writeSentence("!re", "=name=" + i.getName(), "=rx-byte=" + i.getRxBytes(), "=tx-byte=" + i.getTxBytes(), "=rx-packet=" + i.getRxPackets(),
+								"=tx-packet=" + i.getTxPackets(), "=rx-drop=" + i.getRxDrops(), "=tx-drop=" + i.getTxDrops());
+					}
+					conn.writeSentence("!done");
+					break;
+				case "/queue/simple/print":
+					for (InterfaceCounters q : queues) {
+						conn.writeSentence("!re", "=name=" + q.getName(), "=bytes=" + q.getTxBytes() + "/" + q.getRxBytes(), "=packets=" + q.getTxPackets() + "/" + q.getRxPackets(),
+								"=dropped=" + q.getTxDrops() + "/" + q.getRxDrops());
+					}
+					conn.writeSentence("!done");
+					break;
+				default:
+					conn.writeSentence("!trap", "=message=no such command");
+					conn.writeSentence("!done");
+				}
+			}
+		} catch (IOException ex) {
+			// connection closed by the client
+		}
+	}
+
+	private String challengeResponse() {
+		try {
+			final MessageDigest md5 = MessageDigest.getInstance("MD5");
+			md5.update((byte) 0);
+			md5.update(password.getBytes(StandardCharsets.UTF_8));
+			for (int i = 0; i < CHALLENGE.length(); i += 2) {
+				md5.update((byte) Integer.parseInt(CHALLENGE.substring(i, i + 2), 16));
+			}
+			final StringBuilder hex = new StringBuilder();
+			for (byte b : md5.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private List<String> readSentence(ApiConnection conn) throws IOException {
+		final List<String> words = new ArrayList<>();
+		for (String word = conn.readWord(); !word.isEmpty(); word = conn.readWord()) {
+			words.add(word);
+		}
+		return words;
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+	}
+}